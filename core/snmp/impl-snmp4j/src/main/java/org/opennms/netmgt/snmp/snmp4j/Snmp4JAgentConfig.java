@@ -28,19 +28,14 @@
 
 package org.opennms.netmgt.snmp.snmp4j;
 
-import java.io.IOException;
 import java.net.InetAddress;
 
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
 import org.snmp4j.CommunityTarget;
 import org.snmp4j.PDU;
 import org.snmp4j.ScopedPDU;
-import org.snmp4j.Snmp;
 import org.snmp4j.Target;
-import org.snmp4j.TransportMapping;
 import org.snmp4j.UserTarget;
-import org.snmp4j.mp.MPv3;
-import org.snmp4j.mp.MessageProcessingModel;
 import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.security.AuthMD5;
 import org.snmp4j.security.AuthSHA;
@@ -49,14 +44,10 @@ import org.snmp4j.security.PrivAES192;
 import org.snmp4j.security.PrivAES256;
 import org.snmp4j.security.PrivDES;
 import org.snmp4j.security.SecurityLevel;
-import org.snmp4j.security.SecurityProtocols;
-import org.snmp4j.security.USM;
-import org.snmp4j.security.UsmUser;
 import org.snmp4j.smi.Address;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.UdpAddress;
-import org.snmp4j.transport.DefaultUdpTransportMapping;
 
 public class Snmp4JAgentConfig {
     
@@ -323,37 +314,6 @@ public class Snmp4JAgentConfig {
         return securityLevel;
     }
 
-    public Snmp createSnmpSession() throws IOException {
-        TransportMapping transport = new DefaultUdpTransportMapping();
-        Snmp session = new Snmp(transport);
-        
-        if (isSnmpV3()) {
-            // Make a new USM
-            USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
-            // Add the specified user to the USM
-            usm.addUser(
-                getSecurityName(),
-                new UsmUser(
-                    getSecurityName(),
-                    getAuthProtocol(),
-                    getAuthPassPhrase(),
-                    getPrivProtocol(),
-                    getPrivPassPhrase()
-                )
-            );
-            // Remove the old SNMPv3 MessageProcessingModel. If you don't do this, you'll end up with
-            // two SNMPv3 MessageProcessingModel instances in the dispatcher and connections will fail.
-            MessageProcessingModel oldModel = session.getMessageDispatcher().getMessageProcessingModel(MessageProcessingModel.MPv3);
-            if (oldModel != null) {
-                session.getMessageDispatcher().removeMessageProcessingModel(oldModel);
-            }
-            // Add a new SNMPv3 MessageProcessingModel with the newly-created USM
-            session.getMessageDispatcher().addMessageProcessingModel(new MPv3(usm));
-        }
-        
-        return session;
-    }
-
     /**
      * Creates an SNMP4J PDU based on the SNMP4J version constants.
      * A v3 request requires a ScopedPDU.
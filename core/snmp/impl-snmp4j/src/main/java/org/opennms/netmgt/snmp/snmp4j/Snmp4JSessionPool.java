@@ -0,0 +1,387 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.MessageDispatcher;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.Snmp;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.snmp4j.util.DefaultTimeoutModel;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+import org.snmp4j.util.ThreadPool;
+
+/**
+ * A fixed set of long-lived SNMP4J sessions shared by all agents.
+ *
+ * <p>Each session owns one UDP transport. SNMP4J already matches responses
+ * to outstanding requests by request ID, so any number of agents can share
+ * a transport; an agent is always mapped to the same session. SNMPv3
+ * agents get one shared session per distinct set of credentials, since the
+ * USM of a session carries the user.</p>
+ *
+ * <p>The number of requests in flight is limited per agent and globally.
+ * The sizes can be tuned with the following system properties:</p>
+ * <ul>
+ * <li><code>org.opennms.snmp.snmp4j.sessions</code> - number of shared v1/v2c sessions (default 4)</li>
+ * <li><code>org.opennms.snmp.snmp4j.dispatcherThreads</code> - threads processing responses (default 8)</li>
+ * <li><code>org.opennms.snmp.snmp4j.maxOutstandingPerAgent</code> - in-flight window per agent (default 16)</li>
+ * <li><code>org.opennms.snmp.snmp4j.maxOutstanding</code> - global in-flight window (default 2000)</li>
+ * </ul>
+ */
+public class Snmp4JSessionPool implements Snmp4JSessionPoolMBean {
+
+    private static final Logger s_log = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    private final int m_maxOutstandingPerAgent;
+
+    private final Semaphore m_globalWindow;
+
+    /**
+     * The in-flight windows of the agents that have requests waiting or in
+     * flight; a window is dropped when its last request is released.
+     */
+    private final Map<InetAddress, AgentWindow> m_agentWindows = new HashMap<InetAddress, AgentWindow>();
+
+    private final ThreadPool m_dispatcherThreads;
+
+    private final CountingTimeoutModel m_timeoutModel = new CountingTimeoutModel();
+
+    private final Snmp[] m_sessions;
+
+    private final ConcurrentMap<String, Snmp> m_v3Sessions = new ConcurrentHashMap<String, Snmp>();
+
+    private final AtomicInteger m_outstanding = new AtomicInteger();
+
+    private final AtomicInteger m_peakOutstanding = new AtomicInteger();
+
+    private final AtomicLong m_requests = new AtomicLong();
+
+    private final AtomicLong m_timeouts = new AtomicLong();
+
+    private final AtomicLong m_windowTimeouts = new AtomicLong();
+
+    /**
+     * The in-flight window of one agent and the number of requests that
+     * hold or wait for one of its slots.
+     */
+    private static class AgentWindow {
+        private final Semaphore m_slots;
+        private int m_users = 0;
+
+        AgentWindow(final int slots) {
+            m_slots = new Semaphore(slots, true);
+        }
+    }
+
+    /**
+     * Counts the retransmissions SNMP4J makes: the timeout model is asked
+     * for the timeout of every transmission of a request.
+     */
+    private static class CountingTimeoutModel extends DefaultTimeoutModel {
+        private final AtomicLong m_retries = new AtomicLong();
+
+        @Override
+        public long getRetryTimeout(final int retryCount, final int totalNumberOfRetries, final long targetTimeout) {
+            if (retryCount > 0) {
+                m_retries.incrementAndGet();
+            }
+            return super.getRetryTimeout(retryCount, totalNumberOfRetries, targetTimeout);
+        }
+    }
+
+    public Snmp4JSessionPool() throws IOException {
+        this(Integer.getInteger("org.opennms.snmp.snmp4j.sessions", 4),
+             Integer.getInteger("org.opennms.snmp.snmp4j.dispatcherThreads", 8),
+             Integer.getInteger("org.opennms.snmp.snmp4j.maxOutstandingPerAgent", 16),
+             Integer.getInteger("org.opennms.snmp.snmp4j.maxOutstanding", 2000));
+    }
+
+    public Snmp4JSessionPool(final int sessions, final int dispatcherThreads, final int maxOutstandingPerAgent, final int maxOutstanding) throws IOException {
+        m_maxOutstandingPerAgent = Math.max(1, maxOutstandingPerAgent);
+        m_globalWindow = new Semaphore(Math.max(1, maxOutstanding), true);
+        m_dispatcherThreads = ThreadPool.create("Snmp4JDispatcher", Math.max(1, dispatcherThreads));
+
+        m_sessions = new Snmp[Math.max(1, sessions)];
+        try {
+            for (int i = 0; i < m_sessions.length; i++) {
+                m_sessions[i] = createSession(null);
+            }
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+        s_log.debug("Created {} shared SNMP sessions with {} dispatcher threads", m_sessions.length, dispatcherThreads);
+    }
+
+    private Snmp createSession(final USM usm) throws IOException {
+        final MessageDispatcher dispatcher = new MultiThreadedMessageDispatcher(m_dispatcherThreads, new MessageDispatcherImpl());
+        dispatcher.addMessageProcessingModel(new MPv1());
+        dispatcher.addMessageProcessingModel(new MPv2c());
+        if (usm != null) {
+            dispatcher.addMessageProcessingModel(new MPv3(usm));
+        }
+
+        final Snmp session = new Snmp(dispatcher, new DefaultUdpTransportMapping());
+        session.setTimeoutModel(m_timeoutModel);
+        session.listen();
+        return session;
+    }
+
+    /**
+     * Get the shared session to use for an agent.
+     *
+     * @param agentConfig the agent
+     * @return a listening {@link org.snmp4j.Snmp} session; it must not be closed by the caller
+     * @throws IOException if a new SNMPv3 session could not be opened
+     */
+    public Snmp getSession(final Snmp4JAgentConfig agentConfig) throws IOException {
+        if (!agentConfig.isSnmpV3()) {
+            return m_sessions[(agentConfig.getInetAddress().hashCode() & Integer.MAX_VALUE) % m_sessions.length];
+        }
+
+        final String key = String.valueOf(agentConfig.getSecurityName()) + '\0'
+            + agentConfig.getAuthProtocol() + '\0' + agentConfig.getAuthPassPhrase() + '\0'
+            + agentConfig.getPrivProtocol() + '\0' + agentConfig.getPrivPassPhrase();
+        Snmp session = m_v3Sessions.get(key);
+        if (session == null) {
+            synchronized (m_v3Sessions) {
+                session = m_v3Sessions.get(key);
+                if (session == null) {
+                    final USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+                    usm.addUser(agentConfig.getSecurityName(), new UsmUser(
+                        agentConfig.getSecurityName(),
+                        agentConfig.getAuthProtocol(),
+                        agentConfig.getAuthPassPhrase(),
+                        agentConfig.getPrivProtocol(),
+                        agentConfig.getPrivPassPhrase()
+                    ));
+                    session = createSession(usm);
+                    m_v3Sessions.put(key, session);
+                    s_log.debug("Created shared SNMPv3 session for security name {}", agentConfig.getSecurityName());
+                }
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Reserve a slot in the per-agent and global in-flight windows.
+     *
+     * @param agentConfig the agent
+     * @return true if a slot was reserved, false if none became available
+     *         within the agent's timeout (including its retries)
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean acquire(final Snmp4JAgentConfig agentConfig) throws InterruptedException {
+        final long wait = (long)agentConfig.getTimeout() * (agentConfig.getRetries() + 1);
+        final long deadline = System.currentTimeMillis() + wait;
+
+        final InetAddress address = agentConfig.getInetAddress();
+        final AgentWindow agentWindow = claimAgentWindow(address);
+        boolean acquired = false;
+        try {
+            if (!agentWindow.m_slots.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                m_windowTimeouts.incrementAndGet();
+                return false;
+            }
+            if (!m_globalWindow.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                agentWindow.m_slots.release();
+                m_windowTimeouts.incrementAndGet();
+                return false;
+            }
+            acquired = true;
+        } finally {
+            if (!acquired) {
+                unclaimAgentWindow(address, agentWindow);
+            }
+        }
+        final int outstanding = m_outstanding.incrementAndGet();
+        int peak = m_peakOutstanding.get();
+        while (outstanding > peak && !m_peakOutstanding.compareAndSet(peak, outstanding)) {
+            peak = m_peakOutstanding.get();
+        }
+        m_requests.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Release a slot reserved with {@link #acquire(Snmp4JAgentConfig)}.
+     *
+     * @param agentConfig the agent
+     */
+    public void release(final Snmp4JAgentConfig agentConfig) {
+        m_outstanding.decrementAndGet();
+        m_globalWindow.release();
+
+        final InetAddress address = agentConfig.getInetAddress();
+        final AgentWindow agentWindow;
+        synchronized (m_agentWindows) {
+            agentWindow = m_agentWindows.get(address);
+        }
+        if (agentWindow == null) {
+            s_log.warn("Released a request to {} that holds no slot in its window", address);
+            return;
+        }
+        agentWindow.m_slots.release();
+        unclaimAgentWindow(address, agentWindow);
+    }
+
+    private AgentWindow claimAgentWindow(final InetAddress address) {
+        synchronized (m_agentWindows) {
+            AgentWindow window = m_agentWindows.get(address);
+            if (window == null) {
+                window = new AgentWindow(m_maxOutstandingPerAgent);
+                m_agentWindows.put(address, window);
+            }
+            window.m_users++;
+            return window;
+        }
+    }
+
+    private void unclaimAgentWindow(final InetAddress address, final AgentWindow window) {
+        synchronized (m_agentWindows) {
+            if (--window.m_users == 0) {
+                m_agentWindows.remove(address);
+            }
+        }
+    }
+
+    /**
+     * Record a request that got no response, after all retries.
+     */
+    public void timedOut() {
+        m_timeouts.incrementAndGet();
+    }
+
+    /**
+     * @return the number of requests currently in flight
+     */
+    public int getOutstandingRequests() {
+        return m_outstanding.get();
+    }
+
+    /**
+     * @return the highest number of requests that were in flight at once
+     */
+    public int getPeakOutstandingRequests() {
+        return m_peakOutstanding.get();
+    }
+
+    /**
+     * @return the number of requests sent through the pool
+     */
+    public long getRequests() {
+        return m_requests.get();
+    }
+
+    /**
+     * @return the number of requests that timed out
+     */
+    public long getTimeouts() {
+        return m_timeouts.get();
+    }
+
+    /**
+     * @return the number of retransmissions
+     */
+    public long getRetries() {
+        return m_timeoutModel.m_retries.get();
+    }
+
+    /**
+     * @return the number of requests that could not get a slot in the in-flight window
+     */
+    public long getWindowTimeouts() {
+        return m_windowTimeouts.get();
+    }
+
+    /**
+     * @return the number of agents with requests waiting or in flight
+     */
+    public int getAgentWindowCount() {
+        synchronized (m_agentWindows) {
+            return m_agentWindows.size();
+        }
+    }
+
+    /**
+     * @return the number of open sessions, and so of UDP sockets
+     */
+    public int getSessionCount() {
+        int count = m_v3Sessions.size();
+        for (final Snmp session : m_sessions) {
+            if (session != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Close all sessions.
+     */
+    public void close() {
+        final List<Snmp> sessions = new ArrayList<Snmp>(m_v3Sessions.values());
+        m_v3Sessions.clear();
+        for (int i = 0; i < m_sessions.length; i++) {
+            if (m_sessions[i] != null) {
+                sessions.add(m_sessions[i]);
+                m_sessions[i] = null;
+            }
+        }
+        for (final Snmp session : sessions) {
+            try {
+                session.close();
+            } catch (final IOException e) {
+                s_log.error("error closing SNMP session: " + e, e);
+            }
+        }
+        m_dispatcherThreads.cancel();
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+/**
+ * JMX view of the {@link Snmp4JSessionPool} statistics. The pool is
+ * registered as <code>OpenNMS:Name=Snmp4JSessionPool</code> when it is
+ * created.
+ */
+public interface Snmp4JSessionPoolMBean {
+
+    /**
+     * @return the number of requests currently in flight
+     */
+    int getOutstandingRequests();
+
+    /**
+     * @return the highest number of requests that were in flight at once
+     */
+    int getPeakOutstandingRequests();
+
+    /**
+     * @return the number of requests sent through the pool
+     */
+    long getRequests();
+
+    /**
+     * @return the number of requests that timed out
+     */
+    long getTimeouts();
+
+    /**
+     * @return the number of retransmissions
+     */
+    long getRetries();
+
+    /**
+     * @return the number of requests that could not get a slot in the in-flight window
+     */
+    long getWindowTimeouts();
+
+    /**
+     * @return the number of agents with requests waiting or in flight
+     */
+    int getAgentWindowCount();
+
+    /**
+     * @return the number of open sessions, and so of UDP sockets
+     */
+    int getSessionCount();
+}
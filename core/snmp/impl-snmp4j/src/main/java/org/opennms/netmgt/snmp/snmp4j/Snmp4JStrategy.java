@@ -29,6 +29,7 @@
 package org.opennms.netmgt.snmp.snmp4j;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
@@ -37,6 +38,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.opennms.netmgt.snmp.CollectionTracker;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
 import org.opennms.netmgt.snmp.SnmpConfiguration;
@@ -90,6 +95,13 @@ public class Snmp4JStrategy implements SnmpStrategy {
     
     private Snmp4JValueFactory m_valueFactory;
 
+    /**
+     * The JMX name of the shared {@link Snmp4JSessionPool}.
+     */
+    public static final String SESSION_POOL_MBEAN_NAME = "OpenNMS:Name=Snmp4JSessionPool";
+
+    private static Snmp4JSessionPool s_sessionPool;
+
     /**
      * Initialize for v3 communications
      */
@@ -118,6 +130,33 @@ public class Snmp4JStrategy implements SnmpStrategy {
     public Snmp4JStrategy() {
         initialize();
     }
+
+    /**
+     * The sessions shared by all SNMP requests and walks.
+     *
+     * @return the {@link Snmp4JSessionPool}, created on first use
+     * @throws IOException if the shared sessions could not be opened
+     */
+    public static synchronized Snmp4JSessionPool getSessionPool() throws IOException {
+        if (s_sessionPool == null) {
+            s_sessionPool = new Snmp4JSessionPool();
+            registerSessionPool(s_sessionPool);
+        }
+        return s_sessionPool;
+    }
+
+    private static void registerSessionPool(final Snmp4JSessionPool pool) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(SESSION_POOL_MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(pool, name);
+        } catch (final JMException e) {
+            s_log.warn("Unable to register the SNMP session pool as {}", SESSION_POOL_MBEAN_NAME, e);
+        }
+    }
     
     /**
      * SNMP4J createWalker implemenetation.
@@ -238,45 +277,49 @@ public class Snmp4JStrategy implements SnmpStrategy {
      * @return
      */
     protected SnmpValue[] send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse) {
-        Snmp session;
+        final Snmp4JSessionPool pool;
+        final Snmp session;
 
         try {
-            session = agentConfig.createSnmpSession();
+            pool = getSessionPool();
+            session = pool.getSession(agentConfig);
         } catch (IOException e) {
             s_log.error("send: Could not create SNMP session for agent {} : {}", agentConfig, e, e);
             return new SnmpValue[] { null };
         }
 
         try {
-            if (expectResponse) {
-                try {
-                    session.listen();
-                } catch (IOException e) {
-                    s_log.error("send: error setting up listener for SNMP responses: {}", e, e);
-                    return new SnmpValue[] { null };
-                }
+            if (!pool.acquire(agentConfig)) {
+                s_log.warn("send: Timed out waiting for an in-flight slot for agent {}", agentConfig);
+                return new SnmpValue[] { null };
             }
-    
-            try {
-                ResponseEvent responseEvent = session.send(pdu, agentConfig.getTarget());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            s_log.warn("send: Interrupted waiting for an in-flight slot for agent {}", agentConfig);
+            return new SnmpValue[] { null };
+        }
 
-                if (expectResponse) {
-                    return processResponse(agentConfig, responseEvent);
-                } else {
-                    return null;
+        try {
+            ResponseEvent responseEvent = session.send(pdu, agentConfig.getTarget());
+
+            if (expectResponse) {
+                if (responseEvent != null && responseEvent.getResponse() == null && responseEvent.getError() == null) {
+                    pool.timedOut();
                 }
-            } catch (IOException e) {
-                s_log.error("send: error during SNMP operation: " + e, e);
-                return new SnmpValue[] { null };
-            } catch (Throwable e) {
-                s_log.error("send: unexpected error during SNMP operation: " + e, e);
-                return new SnmpValue[] { null };
+                return processResponse(agentConfig, responseEvent);
+            } else {
+                return null;
             }
+        } catch (IOException e) {
+            s_log.error("send: error during SNMP operation: " + e, e);
+            return new SnmpValue[] { null };
+        } catch (Throwable e) {
+            s_log.error("send: unexpected error during SNMP operation: " + e, e);
+            return new SnmpValue[] { null };
         } finally {
-            closeQuietly(session);
+            pool.release(agentConfig);
         }
     }
-    
 
     protected PDU buildPdu(Snmp4JAgentConfig agentConfig, int pduType, SnmpObjId[] oids, SnmpValue[] values) {
         PDU pdu = agentConfig.createPdu(pduType);
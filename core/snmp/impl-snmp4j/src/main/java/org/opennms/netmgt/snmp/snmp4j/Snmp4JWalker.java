@@ -149,7 +149,7 @@ public class Snmp4JWalker extends SnmpWalker {
 
         public void onResponse(ResponseEvent responseEvent) {
             // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
+            ((Snmp)responseEvent.getSource()).cancel(responseEvent.getRequest(), this);
 
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
@@ -158,6 +158,7 @@ public class Snmp4JWalker extends SnmpWalker {
                 }
             // Check to see if the response is null, indicating a timeout
             } else if (responseEvent.getResponse() == null) {
+                if (m_sessionPool != null) m_sessionPool.timedOut();
                 handleTimeout(getName()+": snmpTimeoutError for: " + getAddress());
             // Check to see if we got any kind of error
             } else if (responseEvent.getError() != null){
@@ -173,6 +174,9 @@ public class Snmp4JWalker extends SnmpWalker {
     }
     
     private Snmp m_session;
+    private Snmp4JSessionPool m_sessionPool;
+    private boolean m_windowReserved = false;
+    private PDU m_lastPdu;
     private final Target m_tgt;
     private final ResponseListener m_listener;
     private final Snmp4JAgentConfig m_agentConfig;
@@ -191,7 +195,26 @@ public class Snmp4JWalker extends SnmpWalker {
         if (s_log.isDebugEnabled()) {
             s_log.info("Walking "+getName()+" for "+getAddress()+" using version "+m_agentConfig.getVersionString()+" with config: "+m_agentConfig);
         }
-            
+
+        // the walk keeps a single request in flight, so it holds one window slot from start to close
+        try {
+            m_sessionPool = Snmp4JStrategy.getSessionPool();
+            if (!m_sessionPool.acquire(m_agentConfig)) {
+                handleTimeout(getName()+": timed out waiting for an in-flight request slot for: " + getAddress());
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            handleError(getName()+": interrupted waiting for an in-flight request slot for: " + getAddress(), e);
+            return;
+        } catch (IOException e) {
+            handleFatalError(e);
+            return;
+        }
+        synchronized (this) {
+            m_windowReserved = true;
+        }
+
         super.start();
     }
 
@@ -203,25 +226,37 @@ public class Snmp4JWalker extends SnmpWalker {
 
     protected void sendNextPdu(WalkerPduBuilder pduBuilder) throws IOException {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
-        if (m_session == null) {
-            m_session = m_agentConfig.createSnmpSession();
-            m_session.listen();
+        final Snmp session;
+        synchronized (this) {
+            if (m_session == null) {
+                m_session = Snmp4JStrategy.getSessionPool().getSession(m_agentConfig);
+            }
+            session = m_session;
+            m_lastPdu = snmp4JPduBuilder.getPdu();
         }
         
         if (s_log.isDebugEnabled()) {
             s_log.debug("Sending tracker pdu of size "+snmp4JPduBuilder.getPdu().size());
         }
-        m_session.send(snmp4JPduBuilder.getPdu(), m_tgt, null, m_listener);
+        session.send(snmp4JPduBuilder.getPdu(), m_tgt, null, m_listener);
     }
     
     protected int getVersion() {
         return m_tgt.getVersion();
     }
 
-    protected void close() throws IOException {
+    protected synchronized void close() throws IOException {
+        // the session is shared, so only drop our outstanding request
         if (m_session != null) {
-            m_session.close();
+            if (m_lastPdu != null) {
+                m_session.cancel(m_lastPdu, m_listener);
+                m_lastPdu = null;
+            }
             m_session = null;
         }
+        if (m_windowReserved) {
+            m_windowReserved = false;
+            m_sessionPool.release(m_agentConfig);
+        }
     }
 }
@@ -30,6 +30,18 @@ package org.opennms.netmgt.snmp.snmp4j;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
 import org.apache.log4j.Level;
 import org.apache.log4j.spi.LoggingEvent;
 import org.junit.Ignore;
@@ -311,6 +323,64 @@ public class Snmp4JStrategyTest extends MockSnmpAgentTestCase {
         MockLogAppender.resetLogLevel();
     }
     
+    /**
+     * Requests share the pooled sessions, so neither sockets nor
+     * threads should grow with the number of requests in flight.
+     */
+    @Test
+    public void testSharedSessionsStayFlat() throws Exception {
+        final Snmp4JSessionPool pool = Snmp4JStrategy.getSessionPool();
+        final SnmpObjId oid = SnmpObjId.get(".1.3.5.1.1.3.0");
+        final int workers = 8;
+        final int requestsPerWorker = 100;
+
+        // warm up: opens the shared sessions and their listener threads
+        assertSnmpValueEquals("warm-up", SnmpValue.SNMP_INT32, 42, m_strategy.get(getAgentConfig(), oid));
+
+        final int sessions = pool.getSessionCount();
+        final int threads = Thread.activeCount();
+        final long requests = pool.getRequests();
+
+        final AtomicInteger peakThreads = new AtomicInteger(threads);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < requestsPerWorker; j++) {
+                            final int active = Thread.activeCount();
+                            int peak = peakThreads.get();
+                            while (active > peak && !peakThreads.compareAndSet(peak, active)) {
+                                peak = peakThreads.get();
+                            }
+                            assertSnmpValueEquals("value " + j, SnmpValue.SNMP_INT32, 42, m_strategy.get(getAgentConfig(), oid));
+                        }
+                    } catch (final Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue("requests did not complete in time", executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals("failed requests: " + failures, 0, failures.size());
+
+        assertTrue("requests never overlapped", pool.getPeakOutstandingRequests() > 1);
+        assertEquals("sessions", sessions, pool.getSessionCount());
+        assertEquals("outstanding requests", 0, pool.getOutstandingRequests());
+        assertEquals("idle agent windows", 0, pool.getAgentWindowCount());
+        assertEquals("requests", requests + workers * requestsPerWorker, pool.getRequests());
+        assertTrue("thread count grew from " + threads + " to " + peakThreads.get() + " with " + workers + " workers", peakThreads.get() <= threads + workers + 2);
+
+        final ObjectName name = new ObjectName(Snmp4JStrategy.SESSION_POOL_MBEAN_NAME);
+        assertEquals("sessions over JMX", sessions, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SessionCount"));
+    }
+
     private void assertSnmpValueEquals(String message, int expectedType, int expectedValue, SnmpValue value) {
     	assertNotNull(message + " is null", value);
         assertEquals(message + " getType()", expectedType, value.getType());
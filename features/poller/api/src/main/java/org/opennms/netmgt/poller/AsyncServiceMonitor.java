@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} that can poll without tying up the calling thread
+ * for the length of the connect and read timeouts.
+ * </p>
+ *
+ * <p>
+ * The poller starts an asynchronous poll with <EM>pollAsync()</EM> and is
+ * told about the result through the callback.  Every started poll must
+ * eventually complete the callback exactly once, including when it times out
+ * or fails.  The synchronous <EM>poll()</EM> method is still required so the
+ * monitor can be used anywhere a plain ServiceMonitor is expected.
+ * </p>
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * <P>
+     * Starts polling the service and returns immediately.
+     * </P>
+     *
+     * @param svc the service to poll
+     * @param parameters
+     *            The package parameters (timeout, retry, etc...) to be used for
+     *            this poll.
+     * @param callback notified with the status once the poll has finished
+     * @exception java.lang.RuntimeException
+     *                Thrown if the poll could not be started, for example
+     *                because a required parameter is missing.
+     */
+    public void pollAsync(MonitoredService svc, Map<String, Object> parameters, PollStatusCallback callback);
+
+}
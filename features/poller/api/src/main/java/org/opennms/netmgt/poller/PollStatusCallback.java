@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import org.opennms.netmgt.model.PollStatus;
+
+/**
+ * Receives the result of an asynchronous poll started through
+ * {@link AsyncServiceMonitor#pollAsync(MonitoredService, java.util.Map, PollStatusCallback)}.
+ *
+ * <p>
+ * The callback is usually invoked from the thread that drives the monitor's
+ * I/O, so implementations must return quickly and must not block.  Anything
+ * expensive should be handed off to another thread.
+ * </p>
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+public interface PollStatusCallback {
+
+    /**
+     * <p>complete</p>
+     *
+     * @param status a {@link org.opennms.netmgt.model.PollStatus} object.
+     */
+    public void complete(PollStatus status);
+
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatusCallback;
+
+/**
+ * <p>
+ * Base class for monitors that implement {@link AsyncServiceMonitor}.  The
+ * synchronous <code>poll</code> method is implemented by starting an
+ * asynchronous poll and waiting for its callback, so subclasses only need to
+ * provide <code>pollAsync</code>.  A poll whose callback has not been called
+ * within {@link #getPollTimeout(Map)} is reported as unknown.
+ * </p>
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+abstract public class AbstractAsyncServiceMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
+
+    /**
+     * Default retries, used when a monitor does not override {@link #getPollTimeout(Map)}.
+     */
+    private static final int DEFAULT_RETRY = 0;
+
+    /**
+     * Default timeout, used when a monitor does not override {@link #getPollTimeout(Map)}.
+     */
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    /**
+     * Time, in milliseconds, allowed beyond the attempt timeouts before a
+     * synchronous poll stops waiting for the callback.
+     */
+    protected static final long POLL_TIMEOUT_SLACK = 5000L;
+
+    /** {@inheritDoc} */
+    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<PollStatus> result = new AtomicReference<PollStatus>();
+
+        pollAsync(svc, parameters, new PollStatusCallback() {
+            public void complete(PollStatus status) {
+                result.set(status);
+                latch.countDown();
+            }
+        });
+
+        final long timeout = getPollTimeout(parameters);
+        try {
+            if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                log().warn("poll: the poll of " + svc + " did not complete within " + timeout + "ms");
+                return PollStatus.unknown("The poll did not complete within " + timeout + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return PollStatus.unknown("Interrupted while waiting for the poll of " + svc + " to complete");
+        }
+        return result.get();
+    }
+
+    /**
+     * Returns how long, in milliseconds, {@link #poll(MonitoredService, Map)}
+     * waits for the callback of an asynchronous poll.  Monitors with their own
+     * default timeout or retries, or that make several attempts per poll,
+     * should override this.
+     *
+     * @param parameters the service parameters
+     * @return the time to wait for the callback
+     */
+    protected long getPollTimeout(Map<String, Object> parameters) {
+        return getPollTimeout(ParameterMap.getKeyedInteger(parameters, "timeout", DEFAULT_TIMEOUT), ParameterMap.getKeyedInteger(parameters, "retry", DEFAULT_RETRY) + 1);
+    }
+
+    /**
+     * <p>getPollTimeout</p>
+     *
+     * @param attemptTimeout the timeout of a single attempt, in milliseconds
+     * @param attempts the number of attempts a poll can make
+     * @return the time to wait for the callback of a poll making those attempts
+     */
+    protected static long getPollTimeout(long attemptTimeout, int attempts) {
+        return attemptTimeout * Math.max(1, attempts) + POLL_TIMEOUT_SLACK;
+    }
+
+    /** {@inheritDoc} */
+    abstract public void pollAsync(MonitoredService svc, Map<String, Object> parameters, PollStatusCallback callback);
+
+}
@@ -30,7 +30,6 @@ package org.opennms.netmgt.alarmd;
 
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.xml.event.Event;
-import org.springframework.transaction.annotation.Transactional;
 
 /**
  * AlarmPersting Interface
@@ -43,10 +42,11 @@ public interface AlarmPersister {
     /**
      * <p>persist</p>
      *
+     * Implementations manage their own transactions.
+     *
      * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
      * @return 
      */
-    @Transactional
     public abstract OnmsAlarm persist(Event event);
 
 }
@@ -28,26 +28,197 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ThreadCategory;
+import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.dao.AlarmDao;
+import org.opennms.netmgt.dao.DistPollerDao;
 import org.opennms.netmgt.dao.EventDao;
+import org.opennms.netmgt.dao.NodeDao;
+import org.opennms.netmgt.dao.ServiceTypeDao;
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsServiceType;
 import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.model.events.Parameter;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.UpdateField;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
 /**
  * Singleton to persist OnmsAlarms.
  *
+ * <p>Alarms are cached by reduction key; the cache is loaded when the
+ * persister starts. The OnmsEvent for an incoming event is built from the
+ * event itself rather than read back from the database, and only the alarm
+ * row is read when a reduction is written.</p>
+ *
+ * <p>By default every event is written through to the database before
+ * {@link #persist(Event)} returns. When <code>flushInterval</code> is
+ * positive (<code>org.opennms.alarmd.flushInterval</code>, in milliseconds)
+ * reductions of existing alarms are applied to the cached alarm and written
+ * behind: all of the reductions for a key are coalesced into a single alarm
+ * update every <code>flushInterval</code> milliseconds, or as soon as
+ * <code>flushBatchSize</code> events are pending. New alarms are always
+ * written immediately. If Alarmd stops abnormally, the reductions of at
+ * most the last <code>flushInterval</code> are lost; their events remain in
+ * the database without an alarm.</p>
+ *
+ * <p>Cached alarms that have nothing pending and have not been used for
+ * <code>cacheMaxAge</code> milliseconds
+ * (<code>org.opennms.alarmd.cacheMaxAge</code>) are dropped from the
+ * cache, as are the least recently used ones once it holds more than
+ * <code>cacheMaxSize</code> (<code>org.opennms.alarmd.cacheMaxSize</code>)
+ * alarms. A dropped alarm is read again the next time its reduction key
+ * is seen.</p>
+ *
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  * @version $Id: $
  */
-public class AlarmPersisterImpl implements AlarmPersister {
+public class AlarmPersisterImpl implements AlarmPersister, InitializingBean, DisposableBean {
+
+    /**
+     * The alarm for a reduction key and the reductions that have not yet
+     * been written. All access is synchronized on the instance.
+     */
+    private static final class CachedAlarm {
+        private final String m_reductionKey;
+        private OnmsAlarm m_alarm;
+        private final List<Reduction> m_pending = new ArrayList<Reduction>();
+        private boolean m_queued;
+        private long m_lastUsed = System.currentTimeMillis();
+        private boolean m_evicted;
+
+        private CachedAlarm(String reductionKey) {
+            m_reductionKey = reductionKey;
+        }
+    }
+
+    private static final class IdleAlarm {
+        private final CachedAlarm m_cached;
+        private final long m_lastUsed;
+
+        private IdleAlarm(CachedAlarm cached, long lastUsed) {
+            m_cached = cached;
+            m_lastUsed = lastUsed;
+        }
+    }
+
+    private static final class Reduction {
+        private final OnmsEvent m_onmsEvent;
+        private final Event m_event;
+
+        private Reduction(OnmsEvent onmsEvent, Event event) {
+            m_onmsEvent = onmsEvent;
+            m_event = event;
+        }
+    }
 
     private AlarmDao m_alarmDao;
     private EventDao m_eventDao;
+    private NodeDao m_nodeDao;
+    private DistPollerDao m_distPollerDao;
+    private ServiceTypeDao m_serviceTypeDao;
+    private TransactionTemplate m_transactionTemplate;
+
+    private long m_flushInterval = Long.getLong("org.opennms.alarmd.flushInterval", 0L);
+    private int m_flushBatchSize = Integer.getInteger("org.opennms.alarmd.flushBatchSize", 1000);
+    private long m_cacheMaxAge = Long.getLong("org.opennms.alarmd.cacheMaxAge", 3600000L);
+    private int m_cacheMaxSize = Integer.getInteger("org.opennms.alarmd.cacheMaxSize", 50000);
+
+    private final ConcurrentMap<String, CachedAlarm> m_alarms = new ConcurrentHashMap<String, CachedAlarm>();
+    private final ConcurrentMap<String, OnmsServiceType> m_serviceTypes = new ConcurrentHashMap<String, OnmsServiceType>();
+    private final Queue<CachedAlarm> m_dirtyAlarms = new ConcurrentLinkedQueue<CachedAlarm>();
+    private final AtomicInteger m_pendingReductions = new AtomicInteger();
+    private final AtomicBoolean m_flushRequested = new AtomicBoolean();
+    private final AtomicBoolean m_evictionRequested = new AtomicBoolean();
+    private volatile ScheduledExecutorService m_flusher;
+
+    /**
+     * <p>afterPropertiesSet</p>
+     *
+     * @throws java.lang.Exception if any.
+     */
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(m_alarmDao, "alarmDao must be set");
+        Assert.notNull(m_eventDao, "eventDao must be set");
+        Assert.notNull(m_nodeDao, "nodeDao must be set");
+        Assert.notNull(m_distPollerDao, "distPollerDao must be set");
+        Assert.notNull(m_serviceTypeDao, "serviceTypeDao must be set");
+        Assert.notNull(m_transactionTemplate, "transactionTemplate must be set");
+
+        m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                for (OnmsAlarm alarm : m_alarmDao.findAll()) {
+                    if (m_alarms.size() >= m_cacheMaxSize) {
+                        break;
+                    }
+                    if (alarm.getReductionKey() != null) {
+                        getCachedAlarm(alarm.getReductionKey()).m_alarm = alarm;
+                    }
+                }
+            }
+        });
+        log().info("afterPropertiesSet: loaded " + m_alarms.size() + " alarms by reduction key");
+
+        final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new LogPreservingThreadFactory("AlarmdFlusher", 1, false));
+        if (m_flushInterval > 0) {
+            log().info("afterPropertiesSet: writing alarm reductions every " + m_flushInterval + "ms or every " + m_flushBatchSize + " events");
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    flushAll();
+                }
+            }, m_flushInterval, m_flushInterval, TimeUnit.MILLISECONDS);
+        }
+        final long evictionInterval = Math.max(1000L, Math.min(m_cacheMaxAge, 60000L));
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdleAlarms();
+            }
+        }, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+        m_flusher = flusher;
+    }
+
+    /**
+     * Writes any pending reductions and stops the flushing thread.
+     *
+     * @throws java.lang.Exception if any.
+     */
+    public void destroy() throws Exception {
+        final ScheduledExecutorService flusher = m_flusher;
+        if (flusher != null) {
+            // from here on every event is written through
+            m_flusher = null;
+            flusher.shutdown();
+            flusher.awaitTermination(Math.max(m_flushInterval, 1000L), TimeUnit.MILLISECONDS);
+        }
+        flushAll();
+    }
 
     /** {@inheritDoc} 
      * @return */
@@ -60,39 +231,315 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return addOrReduceEventAsAlarm(event);
     }
 
-    private OnmsAlarm addOrReduceEventAsAlarm(Event event) {
+    private OnmsAlarm addOrReduceEventAsAlarm(final Event event) {
         //TODO: Understand why we use Assert
         Assert.notNull(event, "Incoming event was null, aborting"); 
         Assert.isTrue(event.getDbid() > 0, "Incoming event has an illegal dbid (" + event.getDbid() + "), aborting");
-        
-        
-        //for some reason when we get here the event from the DB doesn't have the LogMsg (in my tests anyway)
-        OnmsEvent e = m_eventDao.get(event.getDbid());
-        Assert.notNull(e, "Event was deleted before we could retrieve it and create an alarm.");
-    
+
+        final OnmsEvent e = createEvent(event);
+
         String reductionKey = event.getAlarmData().getReductionKey();
         log().debug("addOrReduceEventAsAlarm: looking for existing reduction key: "+reductionKey);
-        OnmsAlarm alarm = m_alarmDao.findByReductionKey(reductionKey);
-    
+        OnmsAlarm alarm;
+        while (true) {
+            final CachedAlarm cached = getCachedAlarm(reductionKey);
+
+            synchronized (cached) {
+                if (cached.m_evicted) {
+                    // dropped from the cache while we waited for it
+                    continue;
+                }
+                cached.m_lastUsed = System.currentTimeMillis();
+                cached.m_pending.add(new Reduction(e, event));
+
+                if (!isWriteBehind() || cached.m_alarm == null) {
+                    m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                        @Override
+                        protected void doInTransactionWithoutResult(TransactionStatus status) {
+                            flush(cached);
+                        }
+                    });
+                    return cached.m_alarm;
+                }
+
+                log().debug("addOrReduceEventAsAlarm: reductionKey:"+reductionKey+" found, reducing event to cached alarm: "+cached.m_alarm.getIpAddr());
+                reduceEvent(e, cached.m_alarm, event);
+                if (!cached.m_queued) {
+                    cached.m_queued = true;
+                    m_dirtyAlarms.offer(cached);
+                }
+                alarm = cached.m_alarm;
+            }
+            break;
+        }
+
+        if (m_pendingReductions.incrementAndGet() >= m_flushBatchSize && m_flushRequested.compareAndSet(false, true)) {
+            if (!submit(new Runnable() {
+                public void run() {
+                    m_flushRequested.set(false);
+                    flushAll();
+                }
+            })) {
+                m_flushRequested.set(false);
+            }
+        }
+
+        return alarm;
+    }
+
+    private boolean isWriteBehind() {
+        return m_flushInterval > 0 && m_flusher != null;
+    }
+
+    /**
+     * Runs a task on the flushing thread.
+     *
+     * @return false if the persister is being destroyed
+     */
+    private boolean submit(Runnable task) {
+        final ScheduledExecutorService flusher = m_flusher;
+        if (flusher == null) {
+            return false;
+        }
+        try {
+            flusher.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private CachedAlarm getCachedAlarm(String reductionKey) {
+        CachedAlarm cached = m_alarms.get(reductionKey);
+        if (cached == null) {
+            final CachedAlarm created = new CachedAlarm(reductionKey);
+            cached = m_alarms.putIfAbsent(reductionKey, created);
+            if (cached == null) {
+                cached = created;
+                if (m_alarms.size() > m_cacheMaxSize && m_evictionRequested.compareAndSet(false, true)) {
+                    if (!submit(new Runnable() {
+                        public void run() {
+                            m_evictionRequested.set(false);
+                            evictIdleAlarms();
+                        }
+                    })) {
+                        m_evictionRequested.set(false);
+                    }
+                }
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Drops the cached alarms that have nothing pending and have not been
+     * used for cacheMaxAge, then the least recently used of the rest until
+     * the cache is no bigger than cacheMaxSize.
+     */
+    void evictIdleAlarms() {
+        final long oldest = System.currentTimeMillis() - m_cacheMaxAge;
+        final List<IdleAlarm> idle = new ArrayList<IdleAlarm>();
+        int evicted = 0;
+
+        for (final CachedAlarm cached : m_alarms.values()) {
+            synchronized (cached) {
+                if (cached.m_queued || !cached.m_pending.isEmpty()) {
+                    continue;
+                }
+                if (cached.m_lastUsed < oldest) {
+                    evict(cached);
+                    evicted++;
+                } else {
+                    idle.add(new IdleAlarm(cached, cached.m_lastUsed));
+                }
+            }
+        }
+
+        final int excess = m_alarms.size() - m_cacheMaxSize;
+        if (excess > 0) {
+            Collections.sort(idle, new Comparator<IdleAlarm>() {
+                public int compare(IdleAlarm a, IdleAlarm b) {
+                    return a.m_lastUsed < b.m_lastUsed ? -1 : (a.m_lastUsed == b.m_lastUsed ? 0 : 1);
+                }
+            });
+            for (int i = 0; i < excess && i < idle.size(); i++) {
+                final IdleAlarm candidate = idle.get(i);
+                synchronized (candidate.m_cached) {
+                    // skip it if it was used since we looked
+                    if (candidate.m_cached.m_lastUsed == candidate.m_lastUsed && !candidate.m_cached.m_queued && candidate.m_cached.m_pending.isEmpty()) {
+                        evict(candidate.m_cached);
+                        evicted++;
+                    }
+                }
+            }
+        }
+
+        if (evicted > 0) {
+            log().debug("evictIdleAlarms: dropped " + evicted + " alarms, " + m_alarms.size() + " remain cached");
+        }
+    }
+
+    /**
+     * Must be called while holding the lock on <code>cached</code>.
+     */
+    private void evict(CachedAlarm cached) {
+        cached.m_evicted = true;
+        m_alarms.remove(cached.m_reductionKey, cached);
+    }
+
+    /**
+     * <p>getCacheSize</p>
+     *
+     * @return the number of alarms currently cached
+     */
+    int getCacheSize() {
+        return m_alarms.size();
+    }
+
+    /**
+     * Writes the pending reductions of every alarm that has any, one
+     * transaction per alarm.
+     */
+    void flushAll() {
+        CachedAlarm cached;
+        while ((cached = m_dirtyAlarms.poll()) != null) {
+            final CachedAlarm toFlush = cached;
+            try {
+                synchronized (toFlush) {
+                    toFlush.m_queued = false;
+                    m_pendingReductions.addAndGet(-toFlush.m_pending.size());
+                    m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                        @Override
+                        protected void doInTransactionWithoutResult(TransactionStatus status) {
+                            flush(toFlush);
+                        }
+                    });
+                }
+            } catch (Throwable t) {
+                log().error("flushAll: unable to write reductions for reductionKey:" + toFlush.m_reductionKey + ": " + t, t);
+            }
+        }
+    }
+
+    /**
+     * Applies the pending reductions to the current database copy of the
+     * alarm, creating it if it does not exist, and points their events at
+     * it. Must be called in a transaction while holding the lock on
+     * <code>cached</code>.
+     */
+    private void flush(CachedAlarm cached) {
+        if (cached.m_pending.isEmpty()) {
+            return;
+        }
+        final List<Reduction> pending = new ArrayList<Reduction>(cached.m_pending);
+        cached.m_pending.clear();
+
+        final String reductionKey = cached.m_reductionKey;
+        OnmsAlarm alarm;
+        if (cached.m_alarm == null) {
+            // not created by us since we started; make sure nobody else did
+            alarm = m_alarmDao.findByReductionKey(reductionKey);
+        } else {
+            alarm = m_alarmDao.get(cached.m_alarm.getId());
+            if (alarm == null) {
+                // deleted since we cached it (by vacuumd or a user); drop the stale copy
+                log().debug("addOrReduceEventAsAlarm: cached alarm " + cached.m_alarm.getId() + " for reductionKey:" + reductionKey + " no longer exists");
+                cached.m_alarm = null;
+                alarm = m_alarmDao.findByReductionKey(reductionKey);
+            }
+        }
+
+        int first = 0;
         if (alarm == null) {
             log().debug("addOrReduceEventAsAlarm: reductionKey:"+reductionKey+" not found, instantiating new alarm");
-            alarm = createNewAlarm(e, event);
-            
+            final Reduction reduction = pending.get(first++);
+            alarm = createNewAlarm(reduction.m_onmsEvent, reduction.m_event);
+
             //FIXME: this should be a cascaded save
             m_alarmDao.save(alarm);
-            m_eventDao.saveOrUpdate(e);
-        } else {
+        }
+        for (int i = first; i < pending.size(); i++) {
+            final Reduction reduction = pending.get(i);
             log().debug("addOrReduceEventAsAlarm: reductionKey:"+reductionKey+" found, reducing event to existing alarm: "+alarm.getIpAddr());
-            reduceEvent(e, alarm, event);
-            m_alarmDao.update(alarm);
-            m_eventDao.update(e);
-    
-            if (event.getAlarmData().isAutoClean()) {
-                m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), e);
+            reduceEvent(reduction.m_onmsEvent, alarm, reduction.m_event);
+        }
+        m_alarmDao.update(alarm);
+        // the alarm row has to exist before the events can refer to it
+        m_alarmDao.flush();
+
+        final List<Integer> eventIds = new ArrayList<Integer>(pending.size());
+        for (final Reduction reduction : pending) {
+            eventIds.add(reduction.m_onmsEvent.getId());
+        }
+        m_eventDao.updateAlarmForEvents(alarm, eventIds);
+
+        final Reduction last = pending.get(pending.size() - 1);
+        if (first < pending.size() && last.m_event.getAlarmData().isAutoClean()) {
+            m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), last.m_onmsEvent);
+        }
+
+        cached.m_alarm = alarm;
+    }
+
+    /**
+     * Builds the OnmsEvent for an event that eventd has already stored,
+     * without reading it back. Only the properties that alarms are built
+     * from are set; it must never be saved.
+     */
+    private OnmsEvent createEvent(final Event event) {
+        final OnmsEvent e = new OnmsEvent();
+        e.setId(event.getDbid());
+        e.setEventUei(event.getUei());
+        e.setEventTime(getEventTime(event));
+        e.setEventHost(event.getHost());
+        e.setEventSource(event.getSource());
+        if (event.getInterface() != null) {
+            e.setIpAddr(InetAddressUtils.getInetAddress(event.getInterface()));
+        }
+        e.setDistPoller(m_distPollerDao.load(event.getDistPoller() == null ? "localhost" : event.getDistPoller()));
+        e.setEventSnmpHost(event.getSnmphost());
+        e.setServiceType(getServiceType(event.getService()));
+        e.setEventParms(Parameter.format(event));
+        e.setEventCreateTime(new Date());
+        e.setEventDescr(event.getDescr());
+        if (event.getLogmsg() != null) {
+            e.setEventLogMsg(event.getLogmsg().getContent());
+        }
+        e.setEventSeverity(OnmsSeverity.get(event.getSeverity()).getId());
+        e.setEventOperInstruct(event.getOperinstruct());
+        e.setEventMouseOverText(event.getMouseovertext());
+        e.setIfIndex(event.getIfIndex());
+        if (event.hasNodeid() && event.getNodeid() > 0) {
+            e.setNode(m_nodeDao.load(event.getNodeid().intValue()));
+        }
+        return e;
+    }
+
+    private OnmsServiceType getServiceType(final String name) {
+        if (name == null) {
+            return null;
+        }
+        OnmsServiceType serviceType = m_serviceTypes.get(name);
+        if (serviceType == null) {
+            serviceType = m_transactionTemplate.execute(new TransactionCallback<OnmsServiceType>() {
+                public OnmsServiceType doInTransaction(TransactionStatus status) {
+                    return m_serviceTypeDao.findByName(name);
+                }
+            });
+            if (serviceType != null) {
+                m_serviceTypes.put(name, serviceType);
             }
         }
-        
-        return alarm;
+        return serviceType;
+    }
+
+    private static Date getEventTime(final Event event) {
+        try {
+            return EventConstants.parseToDate(event.getTime());
+        } catch (final ParseException pe) {
+            log().warn("getEventTime: failed to convert time " + event.getTime() + ", using the current time instead", pe);
+            return new Date();
+        }
     }
 
     private static void reduceEvent(OnmsEvent e, OnmsAlarm alarm, Event event) {
@@ -253,4 +700,79 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return m_eventDao;
     }
 
+    /**
+     * <p>setNodeDao</p>
+     *
+     * @param nodeDao a {@link org.opennms.netmgt.dao.NodeDao} object.
+     */
+    public void setNodeDao(NodeDao nodeDao) {
+        m_nodeDao = nodeDao;
+    }
+
+    /**
+     * <p>setDistPollerDao</p>
+     *
+     * @param distPollerDao a {@link org.opennms.netmgt.dao.DistPollerDao} object.
+     */
+    public void setDistPollerDao(DistPollerDao distPollerDao) {
+        m_distPollerDao = distPollerDao;
+    }
+
+    /**
+     * <p>setServiceTypeDao</p>
+     *
+     * @param serviceTypeDao a {@link org.opennms.netmgt.dao.ServiceTypeDao} object.
+     */
+    public void setServiceTypeDao(ServiceTypeDao serviceTypeDao) {
+        m_serviceTypeDao = serviceTypeDao;
+    }
+
+    /**
+     * <p>setTransactionTemplate</p>
+     *
+     * @param transactionTemplate a {@link org.springframework.transaction.support.TransactionTemplate} object.
+     */
+    public void setTransactionTemplate(TransactionTemplate transactionTemplate) {
+        m_transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * <p>setFlushInterval</p>
+     *
+     * @param flushInterval how long reductions may be held before they are
+     *            written, in milliseconds; 0 writes every event through
+     */
+    public void setFlushInterval(long flushInterval) {
+        m_flushInterval = flushInterval;
+    }
+
+    /**
+     * <p>setFlushBatchSize</p>
+     *
+     * @param flushBatchSize the number of pending reductions that triggers
+     *            a write before the flush interval has elapsed
+     */
+    public void setFlushBatchSize(int flushBatchSize) {
+        m_flushBatchSize = flushBatchSize;
+    }
+
+    /**
+     * <p>setCacheMaxAge</p>
+     *
+     * @param cacheMaxAge how long an unused alarm stays cached, in milliseconds
+     */
+    public void setCacheMaxAge(long cacheMaxAge) {
+        m_cacheMaxAge = cacheMaxAge;
+    }
+
+    /**
+     * <p>setCacheMaxSize</p>
+     *
+     * @param cacheMaxSize the number of alarms above which the least recently
+     *            used ones are dropped from the cache
+     */
+    public void setCacheMaxSize(int cacheMaxSize) {
+        m_cacheMaxSize = cacheMaxSize;
+    }
+
 }
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.MockDatabase;
+import org.opennms.core.test.db.TemporaryDatabaseAware;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.core.utils.BeanUtils;
+import org.opennms.netmgt.dao.AlarmDao;
+import org.opennms.netmgt.dao.DistPollerDao;
+import org.opennms.netmgt.dao.EventDao;
+import org.opennms.netmgt.dao.NodeDao;
+import org.opennms.netmgt.dao.ServiceTypeDao;
+import org.opennms.netmgt.mock.MockEventUtil;
+import org.opennms.netmgt.mock.MockNetwork;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Tests the write-behind mode and the cache eviction of
+ * {@link AlarmPersisterImpl}, driving a persister of its own so the flush
+ * interval and cache bounds can be set per test.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-daemon.xml",
+        "classpath:/META-INF/opennms/mockEventIpcManager.xml",
+        "classpath:/META-INF/opennms/applicationContext-alarmd.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase(dirtiesContext=false,tempDbClass=MockDatabase.class)
+public class AlarmPersisterImplTest implements TemporaryDatabaseAware<MockDatabase>, InitializingBean {
+
+    private MockNetwork m_mockNetwork = new MockNetwork();
+
+    @Autowired
+    private AlarmDao m_alarmDao;
+
+    @Autowired
+    private EventDao m_eventDao;
+
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private DistPollerDao m_distPollerDao;
+
+    @Autowired
+    private ServiceTypeDao m_serviceTypeDao;
+
+    @Autowired
+    private TransactionTemplate m_transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    private MockDatabase m_database;
+
+    @Override
+    public void setTemporaryDatabase(final MockDatabase database) {
+        m_database = database;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        m_mockNetwork.createStandardNetwork();
+
+        // Insert an empty node to avoid foreign-key violations on the events/alarms
+        final OnmsNode node = new OnmsNode();
+        node.setId(1);
+        node.setLabel("node1");
+        m_nodeDao.save(node);
+        m_nodeDao.flush();
+    }
+
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testWriteBehindReducesDuplicates() throws Exception {
+        final AlarmPersisterImpl persister = createPersister(60000L, 1000);
+        try {
+            persistNodeDownEvent(persister, "writeBehind");
+            assertEquals("new alarms are written immediately", 1, getCounter("writeBehind"));
+
+            Event last = null;
+            for (int i = 0; i < 4; i++) {
+                last = persistNodeDownEvent(persister, "writeBehind");
+            }
+            assertEquals("reductions are held until the next flush", 1, getCounter("writeBehind"));
+
+            persister.flushAll();
+
+            assertEquals(1, m_jdbcTemplate.queryForInt("select count(*) from alarms where reductionKey = ?", "writeBehind"));
+            assertEquals(5, getCounter("writeBehind"));
+            assertEquals(last.getDbid().intValue(), getLastEventId("writeBehind"));
+            assertEquals(5, m_jdbcTemplate.queryForInt("select count(*) from events where alarmId = (select alarmId from alarms where reductionKey = ?)", "writeBehind"));
+        } finally {
+            persister.destroy();
+        }
+    }
+
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testWriteBehindFlushesOnDestroy() throws Exception {
+        final AlarmPersisterImpl persister = createPersister(60000L, 1000);
+
+        persistNodeDownEvent(persister, "destroyMe");
+        persistNodeDownEvent(persister, "destroyMe");
+        final Event last = persistNodeDownEvent(persister, "destroyMe");
+        assertEquals(1, getCounter("destroyMe"));
+
+        persister.destroy();
+
+        assertEquals(3, getCounter("destroyMe"));
+        assertEquals(last.getDbid().intValue(), getLastEventId("destroyMe"));
+
+        // once destroyed every event is written through
+        persistNodeDownEvent(persister, "destroyMe");
+        assertEquals(4, getCounter("destroyMe"));
+    }
+
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testWriteBehindFlushesWhenBatchIsFull() throws Exception {
+        final AlarmPersisterImpl persister = createPersister(60000L, 3);
+        try {
+            persistNodeDownEvent(persister, "fullBatch");
+            persistNodeDownEvent(persister, "fullBatch");
+            persistNodeDownEvent(persister, "fullBatch");
+            final Event last = persistNodeDownEvent(persister, "fullBatch");
+
+            // the flush runs on the flushing thread, long before the interval elapses
+            final long deadline = System.currentTimeMillis() + 10000L;
+            while (getCounter("fullBatch") < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(4, getCounter("fullBatch"));
+            assertEquals(last.getDbid().intValue(), getLastEventId("fullBatch"));
+        } finally {
+            persister.destroy();
+        }
+    }
+
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testWriteBehindAfterAlarmDeleted() throws Exception {
+        final AlarmPersisterImpl persister = createPersister(60000L, 1000);
+        try {
+            persistNodeDownEvent(persister, "deleteMe");
+            m_jdbcTemplate.update("delete from alarms where reductionKey = ?", "deleteMe");
+
+            persistNodeDownEvent(persister, "deleteMe");
+            final Event last = persistNodeDownEvent(persister, "deleteMe");
+            persister.flushAll();
+
+            assertEquals(1, m_jdbcTemplate.queryForInt("select count(*) from alarms where reductionKey = ?", "deleteMe"));
+            assertEquals("the reductions start a new alarm", 2, getCounter("deleteMe"));
+            assertEquals(last.getDbid().intValue(), getLastEventId("deleteMe"));
+        } finally {
+            persister.destroy();
+        }
+    }
+
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testEvictIdleAlarms() throws Exception {
+        final AlarmPersisterImpl persister = createPersister(0L, 1000);
+        try {
+            persister.setCacheMaxSize(2);
+            persistNodeDownEvent(persister, "first");
+            persistNodeDownEvent(persister, "second");
+            persistNodeDownEvent(persister, "third");
+
+            persister.evictIdleAlarms();
+            assertTrue("the cache should be bounded, but holds " + persister.getCacheSize(), persister.getCacheSize() <= 2);
+
+            persister.setCacheMaxAge(1L);
+            Thread.sleep(10);
+            persister.evictIdleAlarms();
+            assertEquals(0, persister.getCacheSize());
+
+            // an evicted alarm is read back and reduced as usual
+            persistNodeDownEvent(persister, "first");
+            assertEquals(1, m_jdbcTemplate.queryForInt("select count(*) from alarms where reductionKey = ?", "first"));
+            assertEquals(2, getCounter("first"));
+        } finally {
+            persister.destroy();
+        }
+    }
+
+    private AlarmPersisterImpl createPersister(final long flushInterval, final int flushBatchSize) throws Exception {
+        final AlarmPersisterImpl persister = new AlarmPersisterImpl();
+        persister.setAlarmDao(m_alarmDao);
+        persister.setEventDao(m_eventDao);
+        persister.setNodeDao(m_nodeDao);
+        persister.setDistPollerDao(m_distPollerDao);
+        persister.setServiceTypeDao(m_serviceTypeDao);
+        persister.setTransactionTemplate(m_transactionTemplate);
+        persister.setFlushInterval(flushInterval);
+        persister.setFlushBatchSize(flushBatchSize);
+        persister.afterPropertiesSet();
+        return persister;
+    }
+
+    private Event persistNodeDownEvent(final AlarmPersisterImpl persister, final String reductionKey) {
+        final EventBuilder bldr = MockEventUtil.createNodeDownEventBuilder("Test", m_mockNetwork.getNode(1));
+
+        final AlarmData data = new AlarmData();
+        data.setAlarmType(1);
+        data.setReductionKey(reductionKey);
+        bldr.setAlarmData(data);
+        bldr.setLogDest("logndisplay");
+        bldr.setLogMessage("testing");
+
+        final Event event = bldr.getEvent();
+        m_database.writeEvent(event);
+        persister.persist(event);
+        return event;
+    }
+
+    private int getCounter(final String reductionKey) {
+        return m_jdbcTemplate.queryForInt("select counter from alarms where reductionKey = ?", reductionKey);
+    }
+
+    private int getLastEventId(final String reductionKey) {
+        return m_jdbcTemplate.queryForInt("select lastEventId from alarms where reductionKey = ?", reductionKey);
+    }
+}
@@ -457,6 +457,26 @@ public class AlarmdTest implements TemporaryDatabaseAware<MockDatabase>, Initial
         
     }
 
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testReduceAfterAlarmDeleted() throws Exception {
+        final String reductionKey = "deleteMe";
+        final MockNode node = m_mockNetwork.getNode(1);
+
+        sendNodeDownEvent(reductionKey, node);
+        sendNodeDownEvent(reductionKey, node);
+        assertEquals(2, m_jdbcTemplate.queryForInt("select counter from alarms where reductionKey = ?", reductionKey));
+
+        // the cached alarm is gone, so the next event has to create a new one
+        m_jdbcTemplate.update("delete from alarms where reductionKey = ?", reductionKey);
+        sendNodeDownEvent(reductionKey, node);
+
+        assertEquals(1, m_jdbcTemplate.queryForInt("select count(*) from alarms where reductionKey = ?", reductionKey));
+        assertEquals(1, m_jdbcTemplate.queryForInt("select counter from alarms where reductionKey = ?", reductionKey));
+        final int alarmId = m_jdbcTemplate.queryForInt("select alarmId from alarms where reductionKey = ?", reductionKey);
+        assertEquals(alarmId, m_jdbcTemplate.queryForInt("select alarmId from events where eventId = (select max(eventId) from events)"));
+    }
+
     //Supporting method for test
     private void sendNodeDownEventDontChangeLogMsg(String reductionKey, MockNode node, String logMsg) {
         
@@ -447,6 +447,35 @@ public class VacuumdTest implements TemporaryDatabaseAware<MockDatabase>, Initia
         assertEquals("Parameter list sent from action event doesn't match", "alarmId=1(string,text);alarmEventUei=uei.opennms.org/nodes/nodeDown(string,text)", queryResult.get("eventParms"));
     }
     
+    /**
+     * Runs an automation with a batch-size of 1 so that each alarm is
+     * escalated and committed in a batch of its own.
+     * @throws InterruptedException 
+     * @throws SQLException 
+     */
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class) // Relies on records created in @Before so we need a fresh database
+    public final void testRunAutomationInBatches() throws InterruptedException, SQLException {
+        final int major = OnmsSeverity.MAJOR.getId();
+        
+        bringNodeDownCreatingEvent(1);
+        bringNodeDownCreatingEvent(2);
+        Thread.sleep(1000);
+        assertEquals(2, countAlarms());
+        
+        AutomationProcessor ap = new AutomationProcessor(VacuumdConfigFactory.getInstance().getAutomation("escalateInBatches"));
+        assertTrue(ap.runAutomation());
+        Thread.sleep(1000);
+        
+        assertEquals("escalated alarms", 2, m_jdbcTemplate.queryForInt("select count(*) from alarms where severity = ?", major+1));
+        assertEquals("escalated events", 2, m_jdbcTemplate.queryForInt("select count(*) from events where eventuei = 'uei.opennms.org/vacuumd/alarmEscalated'"));
+        
+        AutomationStatistics stats = m_vacuumd.getAutomationStatistics("escalateInBatches");
+        assertEquals(1, stats.getRuns());
+        assertEquals(2, stats.getLastRowCount());
+        assertEquals(2, stats.getLastBatchCount());
+    }
+    
     /**
      * Test the ability to find tokens in a statement.
      */
@@ -32,7 +32,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map.Entry;
 
 import org.opennms.core.utils.ThreadCategory;
 
@@ -52,6 +51,11 @@ import org.opennms.core.utils.ThreadCategory;
  *  - if there is still no match at this point, all keys in the eventconf are iterated through to
  *    find a match
  *
+ *  Lookups go through an immutable {@link EventKeyIndex} built from the event
+ *  map.  Any change to the map discards the index and the next lookup builds
+ *  a new one, so readers never take a lock and always see a consistent
+ *  snapshot; the first match in map order is still what gets returned.
+ *
  * </pre>
  *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
@@ -74,31 +78,10 @@ public class EventConfData extends Object {
     private LinkedHashMap<String, List<EventKey>> m_ueiToKeyListMap;
 
     /**
-     * Check whether the event matches the passed key
-     * 
-     * @return true if the event matches the passed key
+     * The precompiled index over m_eventMap, or null if the map has changed
+     * since the index was last built.
      */
-    private boolean eventMatchesKey(EventKey eventKey, org.opennms.netmgt.xml.event.Event event) {
-        // go through the key elements and see if this event will match
-        boolean maskMatch = true;
-
-        Iterator<String> keysetIter = eventKey.keySet().iterator();
-        while (keysetIter.hasNext() && maskMatch) {
-            String key = keysetIter.next();
-
-            @SuppressWarnings("unchecked")
-            List<String> maskValues = (List<String>) eventKey.get(key);
-
-            // get the event value for this key
-            String eventvalue = EventKey.getMaskElementValue(event, key);
-            maskMatch = eventValuePassesMaskValue(eventvalue, maskValues);
-            if (!maskMatch) {
-                return maskMatch;
-            }
-        }
-
-        return maskMatch;
-    }
+    private volatile EventKeyIndex m_index;
 
     /**
      * Check whether the eventvalue passes any of the mask values Mask values
@@ -177,6 +160,7 @@ public class EventConfData extends Object {
 
         // add to the configevent map first
         m_eventMap.put(eventKey, event);
+        m_index = null;
 
         // add to the uei to key list map
         updateUeiToKeyListMap(eventKey, event);
@@ -207,6 +191,7 @@ public class EventConfData extends Object {
      */
     public synchronized void put(EventKey key, org.opennms.netmgt.xml.eventconf.Event event) {
         m_eventMap.put(key, event);
+        m_index = null;
 
         // add to the uei to key list map
         updateUeiToKeyListMap(key, event);
@@ -231,66 +216,34 @@ public class EventConfData extends Object {
      *            the event which is to be looked up
      * @return a {@link org.opennms.netmgt.xml.eventconf.Event} object.
      */
-    public synchronized org.opennms.netmgt.xml.eventconf.Event getEvent(org.opennms.netmgt.xml.event.Event event) {
-        org.opennms.netmgt.xml.eventconf.Event matchedEvent = null;
-
-        //
-        // use the eventkey and see if there is a match
-        //
-	/*
-        EventKey key = new EventKey(event);
-        matchedEvent = m_eventMap.get(key);
-        if (matchedEvent != null) {
-            if (log().isDebugEnabled()) {
-                log().debug("Match found using key: " + key.toString());
-            }
-
-            return matchedEvent;
-        }
-        */
-
-        //
-        // get the UEI and see if the UEI keys get a match - this step is here
-        // to make the matching process faster in case of usual internal events
-        // of OpenNMS, using the UEI shortens the search as against going
-        // through
-        // the entire eventconf for each event
-        //
-	/*
-        String uei = event.getUei();
-        if (uei != null) {
-            // Go through the uei to keylist map
-            List<EventKey> keylist = m_ueiToKeyListMap.get(uei);
-            if (keylist != null) {
-                // check the event keys known for this uei
-                matchedEvent = getMatchInKeyList(keylist, event);
-            }
-        }
-        */
-
-        //
-        // if still no match, no option but to go through all known keys
-        //
-        if (matchedEvent == null) {
-            Iterator<Entry<EventKey, org.opennms.netmgt.xml.eventconf.Event>> entryIterator = m_eventMap.entrySet().iterator();
-            while (entryIterator.hasNext() && (matchedEvent == null)) {
-                Entry<EventKey, org.opennms.netmgt.xml.eventconf.Event> entry = entryIterator.next();
-                EventKey iterKey = entry.getKey();
+    public org.opennms.netmgt.xml.eventconf.Event getEvent(org.opennms.netmgt.xml.event.Event event) {
+        return getIndex().getEvent(event);
+    }
 
-                boolean keyMatchFound = eventMatchesKey(iterKey, event);
+    /**
+     * Build the lookup index now rather than on the first lookup.  Called once
+     * the configuration has been loaded so that the first event does not pay
+     * for compiling the masks.
+     */
+    public void rebuildIndex() {
+        getIndex();
+    }
 
-                // if a match was found, return the config
-                if (keyMatchFound) {
+    private EventKeyIndex getIndex() {
+        EventKeyIndex index = m_index;
+        if (index == null) {
+            synchronized (this) {
+                index = m_index;
+                if (index == null) {
+                    index = new EventKeyIndex(m_eventMap);
+                    m_index = index;
                     if (log().isDebugEnabled()) {
-                        log().debug("Match found using key: " + iterKey.toString());
+                        log().debug("Built event configuration index over " + index.size() + " event keys");
                     }
-
-                    matchedEvent = entry.getValue();
                 }
             }
         }
-
-        return matchedEvent;
+        return index;
     }
 
     /**
@@ -313,6 +266,7 @@ public class EventConfData extends Object {
     public synchronized void clear() {
         m_eventMap.clear();
         m_ueiToKeyListMap.clear();
+        m_index = null;
     }
 
     private ThreadCategory log() {
@@ -0,0 +1,453 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.datablock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.core.utils.LogUtils;
+
+/**
+ * <pre>
+ * An immutable, precompiled index over the 'EventKey's of an
+ * {@link EventConfData}, used to find the first configured event matching an
+ * incoming event without walking every key.
+ *
+ *  Each key is compiled once: exact mask values are kept as strings, '%'
+ *  masks as prefixes and '~' masks as precompiled {@link Pattern}s.  The key
+ *  is then filed under a single dispatch field (uei, SNMP id, specific,
+ *  generic or source, in that order of preference) when all of its values
+ *  for that field are exact or prefix masks - exact values go into a hash
+ *  map, prefixes into a prefix tree.  Keys with no such field are kept in a
+ *  residual list that is checked for every event.
+ *
+ *  Every key keeps the position it had in the event map, and a lookup
+ *  returns the matching key with the lowest position, so the result is the
+ *  same as the first match of a linear scan over the map.
+ *
+ *  Instances are never modified after construction and can be shared
+ *  between threads without locking.
+ * </pre>
+ *
+ * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
+ */
+final class EventKeyIndex {
+    /**
+     * The mask elements that can be used to dispatch on, in order of
+     * preference.
+     */
+    private static final String[] DISPATCH_FIELDS = {
+        EventKey.TAG_UEI,
+        EventKey.TAG_SNMP_EID,
+        EventKey.TAG_SNMP_SPECIFIC,
+        EventKey.TAG_SNMP_GENERIC,
+        EventKey.TAG_SOURCE
+    };
+
+    private final Map<String, FieldIndex> m_fieldIndexes = new HashMap<String, FieldIndex>();
+
+    private final List<CompiledKey> m_residualKeys = new ArrayList<CompiledKey>();
+
+    private final int m_keyCount;
+
+    /**
+     * Build an index over the given map, preserving its iteration order.
+     *
+     * @param eventMap the 'EventKey' to config event map of an {@link EventConfData}
+     */
+    EventKeyIndex(final Map<EventKey, org.opennms.netmgt.xml.eventconf.Event> eventMap) {
+        int position = 0;
+        for (final Entry<EventKey, org.opennms.netmgt.xml.eventconf.Event> entry : eventMap.entrySet()) {
+            final CompiledKey compiledKey = new CompiledKey(position++, entry.getKey(), entry.getValue());
+
+            final String dispatchField = compiledKey.getDispatchField();
+            if (dispatchField == null) {
+                m_residualKeys.add(compiledKey);
+            } else {
+                FieldIndex fieldIndex = m_fieldIndexes.get(dispatchField);
+                if (fieldIndex == null) {
+                    fieldIndex = new FieldIndex(dispatchField);
+                    m_fieldIndexes.put(dispatchField, fieldIndex);
+                }
+                fieldIndex.add(compiledKey);
+            }
+        }
+        m_keyCount = position;
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of keys in this index
+     */
+    int size() {
+        return m_keyCount;
+    }
+
+    /**
+     * Find the first (in event map order) key that the event matches.
+     *
+     * @param event the event to look up
+     * @return the matching config event, or null if no key matches
+     */
+    org.opennms.netmgt.xml.eventconf.Event getEvent(final org.opennms.netmgt.xml.event.Event event) {
+        final EventValues values = new EventValues(event);
+
+        CompiledKey best = null;
+        for (final FieldIndex fieldIndex : m_fieldIndexes.values()) {
+            final String value = values.get(fieldIndex.getField());
+            if (value == null) {
+                continue;
+            }
+            best = findFirstMatch(fieldIndex.getExactCandidates(value), values, best);
+            for (final List<CompiledKey> candidates : fieldIndex.getPrefixCandidates(value)) {
+                best = findFirstMatch(candidates, values, best);
+            }
+        }
+        // checked last so that only residual keys ahead of any indexed match are evaluated
+        best = findFirstMatch(m_residualKeys, values, best);
+
+        if (best == null) {
+            return null;
+        }
+
+        if (LogUtils.isDebugEnabled(this)) {
+            LogUtils.debugf(this, "Match found using key: %s", best.getKey());
+        }
+        return best.getEvent();
+    }
+
+    /**
+     * Walk a position-ordered candidate list and return the first match if it
+     * comes before the best match found so far.
+     */
+    private static CompiledKey findFirstMatch(final List<CompiledKey> candidates, final EventValues values, final CompiledKey best) {
+        for (final CompiledKey candidate : candidates) {
+            if (best != null && candidate.getPosition() >= best.getPosition()) {
+                return best;
+            }
+            if (candidate.matches(values)) {
+                return candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Per-lookup cache of the event's mask element values so that each
+     * element (varbinds in particular) is only extracted once per event.
+     */
+    private static final class EventValues {
+        private static final String NULL_VALUE = new String("<null>");
+
+        private final org.opennms.netmgt.xml.event.Event m_event;
+        private final Map<String, String> m_values = new HashMap<String, String>();
+
+        public EventValues(final org.opennms.netmgt.xml.event.Event event) {
+            m_event = event;
+        }
+
+        public String get(final String name) {
+            String value = m_values.get(name);
+            if (value == null) {
+                value = EventKey.getMaskElementValue(m_event, name);
+                m_values.put(name, value == null ? NULL_VALUE : value);
+                return value;
+            }
+            return value == NULL_VALUE ? null : value;
+        }
+    }
+
+    /**
+     * The dispatch index for a single mask element.  Candidate lists are
+     * kept in position order.
+     */
+    private static final class FieldIndex {
+        private final String m_field;
+        private final Map<String, List<CompiledKey>> m_exact = new HashMap<String, List<CompiledKey>>();
+        private final PrefixNode m_prefixRoot = new PrefixNode();
+
+        public FieldIndex(final String field) {
+            m_field = field;
+        }
+
+        public String getField() {
+            return m_field;
+        }
+
+        public void add(final CompiledKey key) {
+            for (final MaskValue maskValue : key.getMaskValues(m_field)) {
+                if (maskValue.isPrefix()) {
+                    m_prefixRoot.add(maskValue.getPrefix(), key);
+                }
+                // a '%' mask also matches its own literal text
+                List<CompiledKey> keys = m_exact.get(maskValue.getValue());
+                if (keys == null) {
+                    keys = new ArrayList<CompiledKey>(1);
+                    m_exact.put(maskValue.getValue(), keys);
+                }
+                addOnce(keys, key);
+            }
+        }
+
+        public List<CompiledKey> getExactCandidates(final String value) {
+            final List<CompiledKey> keys = m_exact.get(value);
+            return keys == null ? Collections.<CompiledKey>emptyList() : keys;
+        }
+
+        public List<List<CompiledKey>> getPrefixCandidates(final String value) {
+            return m_prefixRoot.collect(value);
+        }
+    }
+
+    /**
+     * A node in the prefix tree of '%' masks.
+     */
+    private static final class PrefixNode {
+        private final Map<Character, PrefixNode> m_children = new HashMap<Character, PrefixNode>(2);
+        private List<CompiledKey> m_keys;
+
+        public void add(final String prefix, final CompiledKey key) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                final Character c = Character.valueOf(prefix.charAt(i));
+                PrefixNode child = node.m_children.get(c);
+                if (child == null) {
+                    child = new PrefixNode();
+                    node.m_children.put(c, child);
+                }
+                node = child;
+            }
+            if (node.m_keys == null) {
+                node.m_keys = new ArrayList<CompiledKey>(1);
+            }
+            addOnce(node.m_keys, key);
+        }
+
+        /**
+         * Collect the key lists of every prefix of the given value.
+         */
+        public List<List<CompiledKey>> collect(final String value) {
+            List<List<CompiledKey>> found = Collections.emptyList();
+            PrefixNode node = this;
+            int i = 0;
+            while (node != null) {
+                if (node.m_keys != null) {
+                    if (found.isEmpty()) {
+                        found = new ArrayList<List<CompiledKey>>(2);
+                    }
+                    found.add(node.m_keys);
+                }
+                if (i >= value.length()) {
+                    break;
+                }
+                node = node.m_children.get(Character.valueOf(value.charAt(i++)));
+            }
+            return found;
+        }
+    }
+
+    private static void addOnce(final List<CompiledKey> keys, final CompiledKey key) {
+        // keys are added in position order, so a duplicate can only be the last one
+        if (keys.isEmpty() || keys.get(keys.size() - 1) != key) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * An 'EventKey' with its mask values compiled.
+     */
+    private static final class CompiledKey {
+        private final int m_position;
+        private final EventKey m_key;
+        private final org.opennms.netmgt.xml.eventconf.Event m_event;
+        private final String[] m_names;
+        private final MaskValue[][] m_maskValues;
+
+        public CompiledKey(final int position, final EventKey key, final org.opennms.netmgt.xml.eventconf.Event event) {
+            m_position = position;
+            m_key = key;
+            m_event = event;
+            m_names = new String[key.size()];
+            m_maskValues = new MaskValue[key.size()][];
+
+            int i = 0;
+            for (final Entry<String, Object> entry : key.entrySet()) {
+                m_names[i] = entry.getKey();
+
+                @SuppressWarnings("unchecked")
+                final List<String> values = (List<String>) entry.getValue();
+                final List<MaskValue> compiled = new ArrayList<MaskValue>(values.size());
+                for (final String value : values) {
+                    if (value != null) {
+                        compiled.add(new MaskValue(value));
+                    }
+                }
+                m_maskValues[i] = compiled.toArray(new MaskValue[compiled.size()]);
+                i++;
+            }
+        }
+
+        public int getPosition() {
+            return m_position;
+        }
+
+        public EventKey getKey() {
+            return m_key;
+        }
+
+        public org.opennms.netmgt.xml.eventconf.Event getEvent() {
+            return m_event;
+        }
+
+        public MaskValue[] getMaskValues(final String name) {
+            for (int i = 0; i < m_names.length; i++) {
+                if (m_names[i].equals(name)) {
+                    return m_maskValues[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * The most selective field whose mask values are all exact or prefix
+         * masks, or null if there is none.
+         */
+        public String getDispatchField() {
+            for (final String field : DISPATCH_FIELDS) {
+                final MaskValue[] maskValues = getMaskValues(field);
+                if (maskValues == null || maskValues.length == 0) {
+                    continue;
+                }
+                boolean indexable = true;
+                for (final MaskValue maskValue : maskValues) {
+                    if (maskValue.isRegex()) {
+                        indexable = false;
+                        break;
+                    }
+                }
+                if (indexable) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        public boolean matches(final EventValues values) {
+            for (int i = 0; i < m_names.length; i++) {
+                if (!passes(values.get(m_names[i]), m_maskValues[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean passes(final String eventValue, final MaskValue[] maskValues) {
+            if (eventValue == null) {
+                return false;
+            }
+            for (final MaskValue maskValue : maskValues) {
+                if (maskValue.passes(eventValue)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A single compiled mask value, with the same semantics as
+     * {@link EventConfData#eventValuePassesMaskValue(String, List)}.
+     */
+    private static final class MaskValue {
+        private final String m_value;
+        private final String m_prefix;
+        private final Pattern m_pattern;
+        private final boolean m_regex;
+
+        public MaskValue(final String value) {
+            m_value = value;
+            if (value.length() > 0 && value.charAt(0) == '~') {
+                m_regex = true;
+                m_prefix = null;
+                m_pattern = compile(value.substring(1));
+            } else if (value.length() > 0 && value.charAt(value.length() - 1) == '%') {
+                m_regex = false;
+                m_prefix = value.substring(0, value.length() - 1);
+                m_pattern = null;
+            } else {
+                m_regex = false;
+                m_prefix = null;
+                m_pattern = null;
+            }
+        }
+
+        private static Pattern compile(final String regex) {
+            try {
+                return Pattern.compile(regex);
+            } catch (final PatternSyntaxException e) {
+                LogUtils.warnf(EventKeyIndex.class, e, "Invalid regular expression '%s' in event mask; it will never match.", regex);
+                return null;
+            }
+        }
+
+        public String getValue() {
+            return m_value;
+        }
+
+        public boolean isRegex() {
+            return m_regex;
+        }
+
+        public boolean isPrefix() {
+            return m_prefix != null;
+        }
+
+        public String getPrefix() {
+            return m_prefix;
+        }
+
+        public boolean passes(final String eventValue) {
+            if (m_value.equals(eventValue)) {
+                return true;
+            } else if (m_regex) {
+                return m_pattern != null && m_pattern.matcher(eventValue).matches();
+            } else if (m_prefix != null) {
+                return eventValue.startsWith(m_prefix);
+            }
+            return false;
+        }
+    }
+}
@@ -141,7 +141,9 @@ public class DefaultEventConfDao extends AbstractJaxbConfigDao<Events, EventConf
         for (final String eventFilePath : events.getEventFileCollection()) {
             loadAndProcessEvents(m_resourceLoader.getResource(eventFilePath), eventConfiguration, "included", true);
         }
-        
+
+        eventConfiguration.getEventConfData().rebuildIndex();
+
         return eventConfiguration;
     }
 
@@ -182,6 +182,34 @@ public class EventdConfigManager {
         }
     }
 
+    /**
+     * Return the maximum number of events written in a single transaction.
+     *
+     * @return the maximum number of events written in a single transaction
+     */
+    public int getBatchSize() {
+        getReadLock().lock();
+        try {
+            return m_config.hasBatchSize() ? m_config.getBatchSize() : 1;
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
+    /**
+     * Return the maximum time a batch of events waits for more events.
+     *
+     * @return the batch timeout in milliseconds
+     */
+    public long getBatchTimeout() {
+        getReadLock().lock();
+        try {
+            return m_config.hasBatchTimeout() ? m_config.getBatchTimeout() : 0L;
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
     /**
      * Return string indicating if timeout is to be set on the socket.
      *
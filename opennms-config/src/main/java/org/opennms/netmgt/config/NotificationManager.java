@@ -47,6 +47,8 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.sql.DataSource;
 
@@ -70,6 +72,8 @@ import org.opennms.netmgt.config.notifications.Parameter;
 import org.opennms.netmgt.eventd.datablock.EventUtil;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.filter.FilterParseException;
+import org.opennms.netmgt.filter.InMemoryFilter;
+import org.opennms.netmgt.model.events.EventUtils;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Tticket;
 import org.springframework.util.Assert;
@@ -133,6 +137,23 @@ public abstract class NotificationManager {
     
     NotifdConfigManager m_configManager;
     private DataSource m_dataSource;
+
+    /**
+     * Set to false to send every notification rule to the database.
+     */
+    public static final String IN_MEMORY_RULES_PROPERTY = "org.opennms.notifd.inMemoryRules";
+
+    /**
+     * Evaluates notification rules without a database query, or null if
+     * disabled
+     */
+    private final InMemoryFilter m_inMemoryFilter;
+
+    /**
+     * The notifications that can match each UEI seen so far, together with
+     * the configuration they were taken from
+     */
+    private volatile UeiIndex m_ueiIndex;
     
     /**
      * A regular expression for matching an expansion parameter delimited by
@@ -200,6 +221,11 @@ public abstract class NotificationManager {
     protected NotificationManager(final NotifdConfigManager configManager, final DataSource dcf) {
         m_configManager = configManager;
         m_dataSource = dcf;
+        if (dcf != null && Boolean.parseBoolean(System.getProperty(IN_MEMORY_RULES_PROPERTY, "true"))) {
+            m_inMemoryFilter = new InMemoryFilter(dcf);
+        } else {
+            m_inMemoryFilter = null;
+        }
     }
 
     /**
@@ -239,18 +265,61 @@ public abstract class NotificationManager {
     public boolean hasUei(final String uei) throws IOException, MarshalException, ValidationException {
         update();
     
-        for (Notification notif : m_notifications.getNotificationCollection()) {
-            if (uei.equals(notif.getUei()) || "MATCH-ANY-UEI".equals(notif.getUei())) {
-                 return true;
-            } else if (notif.getUei().charAt(0) == '~') {
-               if (uei.matches(notif.getUei().substring(1))) {
-                       return true;
-               }
-    
+        return !getNotificationsForUei(uei).isEmpty();
+    }
+
+    /**
+     * Get the notifications whose UEI, UEI regex or MATCH-ANY-UEI matches a
+     * UEI, in configuration order. The list for each UEI is only built once
+     * per configuration, so regexes are not re-evaluated for every event.
+     */
+    private List<Notification> getNotificationsForUei(final String uei) {
+        final Notifications notifications = m_notifications;
+        UeiIndex index = m_ueiIndex;
+        if (index == null || index.getNotifications() != notifications) {
+            // a new configuration gets a new index; the index and the configuration are always swapped together
+            index = new UeiIndex(notifications);
+            m_ueiIndex = index;
+        }
+        return index.getNotificationsForUei(uei);
+    }
+
+    /**
+     * The notifications of one configuration that can match each UEI, built
+     * lazily as UEIs are seen.
+     */
+    private final class UeiIndex {
+        private final Notifications m_indexed;
+        private final ConcurrentMap<String, List<Notification>> m_notificationsByUei = new ConcurrentHashMap<String, List<Notification>>();
+
+        UeiIndex(final Notifications indexed) {
+            m_indexed = indexed;
+        }
+
+        Notifications getNotifications() {
+            return m_indexed;
+        }
+
+        List<Notification> getNotificationsForUei(final String uei) {
+            List<Notification> notifs = m_notificationsByUei.get(uei);
+            if (notifs == null) {
+                notifs = new ArrayList<Notification>();
+                for (Notification notif : m_indexed.getNotificationCollection()) {
+                    if (uei.equals(notif.getUei()) || "MATCH-ANY-UEI".equals(notif.getUei())) {
+                        notifs.add(notif);
+                    } else if (notif.getUei().charAt(0) == '~') {
+                        if (uei.matches(notif.getUei().substring(1))) {
+                            notifs.add(notif);
+                        } else if (log().isDebugEnabled()) {
+                            log().debug("Notification regex " + notif.getUei() + " failed to match event UEI: " + uei);
+                        }
+                    }
+                }
+                notifs = Collections.unmodifiableList(notifs);
+                m_notificationsByUei.put(uei, notifs);
             }
+            return notifs;
         }
-    
-        return false;
     }
     
     /**
@@ -279,25 +348,9 @@ public abstract class NotificationManager {
             return null;
         }
     
-        for (Notification curNotif : m_notifications.getNotificationCollection()) {
+        for (Notification curNotif : getNotificationsForUei(event.getUei())) {
             if (log.isDebugEnabled())
-                log.debug("Checking " + event.getUei() + " against " + curNotif.getUei());
- 
-            if (event.getUei().equals(curNotif.getUei()) || "MATCH-ANY-UEI".equals(curNotif.getUei())) {
-               // Match!
-            } else if (curNotif.getUei().charAt(0) == '~') {
-               if (event.getUei().matches(curNotif.getUei().substring(1))) {
-                    // Match!
-               } else {
-                   if (log.isDebugEnabled())
-                       log.debug("Notification regex " + curNotif.getUei() + " failed to match event UEI: " + event.getUei());
-                   continue;
-               }
-            } else {
-                if (log.isDebugEnabled())
-                    log.debug("Event UEI " + event.getUei() + " did not match " + curNotif.getUei());
-                continue;
-            }
+                log.debug("Event UEI " + event.getUei() + " matched " + curNotif.getUei());
 
             /**
              * Check if event severity matches pattern in notification
@@ -394,6 +447,16 @@ public abstract class NotificationManager {
             return true;
         }
 
+        if (m_inMemoryFilter != null && m_inMemoryFilter.isSupported(notif.getRule())) {
+            String ipAddr = null;
+            String service = null;
+            if (event.getInterface() != null && !"0.0.0.0".equals(event.getInterface())) {
+                ipAddr = event.getInterface();
+                service = event.getService();
+            }
+            return m_inMemoryFilter.isRuleMatching(notif.getRule(), (int) event.getNodeid(), ipAddr, service);
+        }
+
         StringBuffer constraints = new StringBuffer();
         if (event.getNodeid() != 0) {
             constraints.append(" & (nodeId == " + event.getNodeid() + ")");
@@ -412,6 +475,47 @@ public abstract class NotificationManager {
         return isRuleMatchingFilter(notif, rule);
     }
     
+    /**
+     * Keep the inventory used to evaluate notification rules in memory up
+     * to date. This should be given every event before notifications are
+     * looked up for it.
+     *
+     * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+     */
+    public void updateFilterCache(final Event event) {
+        if (m_inMemoryFilter == null || event.getUei() == null || event.getNodeid() == 0) {
+            return;
+        }
+
+        final String uei = event.getUei();
+        final int nodeId = (int) event.getNodeid();
+        if (EventConstants.NODE_DELETED_EVENT_UEI.equals(uei) || EventConstants.DUP_NODE_DELETED_EVENT_UEI.equals(uei)) {
+            m_inMemoryFilter.getNodeCache().removeNode(nodeId);
+        } else if (EventConstants.NODE_ADDED_EVENT_UEI.equals(uei)
+                || EventConstants.NODE_UPDATED_EVENT_UEI.equals(uei)
+                || EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI.equals(uei)
+                || EventConstants.NODE_GAINED_SERVICE_EVENT_UEI.equals(uei)
+                || EventConstants.INTERFACE_DELETED_EVENT_UEI.equals(uei)
+                || EventConstants.SERVICE_DELETED_EVENT_UEI.equals(uei)
+                || EventConstants.NODE_LABEL_CHANGED_EVENT_UEI.equals(uei)
+                || EventConstants.NODE_INFO_CHANGED_EVENT_UEI.equals(uei)
+                || EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI.equals(uei)
+                || EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI.equals(uei)
+                || EventConstants.INTERFACE_SUPPORTS_SNMP_EVENT_UEI.equals(uei)) {
+            m_inMemoryFilter.getNodeCache().refreshNode(nodeId);
+        } else if (EventConstants.INTERFACE_REPARENTED_EVENT_UEI.equals(uei)) {
+            m_inMemoryFilter.getNodeCache().refreshNode(nodeId);
+            final String oldNodeId = EventUtils.getParm(event, EventConstants.PARM_OLD_NODEID);
+            if (oldNodeId != null) {
+                try {
+                    m_inMemoryFilter.getNodeCache().refreshNode(Integer.parseInt(oldNodeId));
+                } catch (final NumberFormatException e) {
+                    log().warn("Invalid " + EventConstants.PARM_OLD_NODEID + " parameter on " + uei + " event: " + oldNodeId);
+                }
+            }
+        }
+    }
+
     private boolean isRuleMatchingFilter(final Notification notif, final String rule) {
         try {
             return FilterDaoFactory.getInstance().isRuleMatching(rule);
@@ -1056,6 +1160,9 @@ public abstract class NotificationManager {
      */
     public synchronized void saveCurrent() throws MarshalException, ValidationException, IOException, ClassNotFoundException {
         m_notifications.setHeader(rebuildHeader());
+
+        // notifications are edited in place, so the UEI index is stale
+        m_ueiIndex = null;
     
         // Marshal to a string first, then write the string to the file. This
         // way the original configuration
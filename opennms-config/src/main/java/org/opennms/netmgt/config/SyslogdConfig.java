@@ -108,5 +108,32 @@ public interface SyslogdConfig {
      * @return a {@link java.lang.String} object.
      */
     public abstract String getDiscardUei();
-}
 
+    /**
+     * <p>getReceiverThreads</p>
+     *
+     * @return the number of threads reading from the syslog socket
+     */
+    public abstract int getReceiverThreads();
+
+    /**
+     * <p>getProcessingThreads</p>
+     *
+     * @return the number of threads converting syslog messages to events
+     */
+    public abstract int getProcessingThreads();
+
+    /**
+     * <p>getQueueSize</p>
+     *
+     * @return the maximum number of messages waiting to be processed
+     */
+    public abstract int getQueueSize();
+
+    /**
+     * <p>getOverflowPolicy</p>
+     *
+     * @return "drop" or "block"
+     */
+    public abstract String getOverflowPolicy();
+}
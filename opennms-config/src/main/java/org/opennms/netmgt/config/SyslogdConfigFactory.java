@@ -259,6 +259,43 @@ public final class SyslogdConfigFactory implements SyslogdConfig {
         return m_config.getConfiguration().getDiscardUei();
     }
 
+    /**
+     * <p>getReceiverThreads</p>
+     *
+     * @return the number of threads reading from the syslog socket
+     */
+    public synchronized int getReceiverThreads() {
+        return m_config.getConfiguration().hasReceiverThreads() ? m_config.getConfiguration().getReceiverThreads() : 1;
+    }
+
+    /**
+     * <p>getProcessingThreads</p>
+     *
+     * @return the number of threads converting syslog messages to events
+     */
+    public synchronized int getProcessingThreads() {
+        return m_config.getConfiguration().hasProcessingThreads() ? m_config.getConfiguration().getProcessingThreads() : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * <p>getQueueSize</p>
+     *
+     * @return the maximum number of messages waiting to be processed
+     */
+    public synchronized int getQueueSize() {
+        return m_config.getConfiguration().hasQueueSize() ? m_config.getConfiguration().getQueueSize() : 10000;
+    }
+
+    /**
+     * <p>getOverflowPolicy</p>
+     *
+     * @return "drop" or "block"
+     */
+    public synchronized String getOverflowPolicy() {
+        final String policy = m_config.getConfiguration().getOverflowPolicy();
+        return policy == null ? "drop" : policy;
+    }
+
     /**
      * Parse import-file tags and add all uei-matchs and hide-messages.
      * 
@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import org.opennms.core.utils.LogUtils;
+import org.opennms.core.utils.Querier;
+import org.opennms.core.utils.RowProcessor;
+
+/**
+ * An in-memory copy of the node, interface, service and category data that
+ * filter rules are evaluated against.
+ *
+ * <p>The whole inventory is read once, the first time it is needed. After
+ * that the owner is expected to call {@link #refreshNode(int)} or
+ * {@link #removeNode(int)} as it learns about changes, so only the nodes
+ * that change are read again. Nodes are replaced as a whole, so readers
+ * never see a half-updated node.</p>
+ *
+ * @author <a href="mailto:opennms@opennms.org">OpenNMS</a>
+ */
+public class FilterNodeCache {
+    private static final String NODE_QUERY =
+            "SELECT node.nodeID, node.nodeLabel, node.nodeSysName, node.nodeSysOID, node.nodeType, " +
+            "       node.foreignSource, node.foreignID, ipInterface.ipAddr, ipInterface.ipHostname, " +
+            "       ipInterface.isManaged, ipInterface.isSnmpPrimary, service.serviceName " +
+            "  FROM node " +
+            "  JOIN ipInterface ON (node.nodeID = ipInterface.nodeID) " +
+            "  LEFT OUTER JOIN ifServices ON (ipInterface.id = ifServices.ipInterfaceId) " +
+            "  LEFT OUTER JOIN service ON (ifServices.serviceID = service.serviceID) ";
+
+    private static final String CATEGORY_QUERY =
+            "SELECT category_node.nodeID, categories.categoryName " +
+            "  FROM category_node " +
+            "  JOIN categories ON (category_node.categoryID = categories.categoryID) ";
+
+    private final DataSource m_dataSource;
+
+    private final ConcurrentMap<Integer, CachedNode> m_nodes = new ConcurrentHashMap<Integer, CachedNode>();
+
+    private final ConcurrentMap<String, Set<Integer>> m_nodeIdsByIpAddr = new ConcurrentHashMap<String, Set<Integer>>();
+
+    private volatile boolean m_loaded = false;
+
+    /**
+     * <p>Constructor for FilterNodeCache.</p>
+     *
+     * @param dataSource a {@link javax.sql.DataSource} object.
+     */
+    public FilterNodeCache(final DataSource dataSource) {
+        m_dataSource = dataSource;
+    }
+
+    /**
+     * Read the whole inventory if it has not been read yet.
+     */
+    public void load() {
+        if (m_loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (m_loaded) {
+                return;
+            }
+            final Map<Integer, CachedNode> nodes = readNodes(null);
+            for (final CachedNode node : nodes.values()) {
+                putNode(node);
+            }
+            m_loaded = true;
+            LogUtils.infof(this, "Loaded %d nodes for in-memory filter evaluation", nodes.size());
+        }
+    }
+
+    /**
+     * Throw away everything that has been read so that it is read again the
+     * next time it is needed.
+     */
+    public synchronized void clear() {
+        m_loaded = false;
+        m_nodes.clear();
+        m_nodeIdsByIpAddr.clear();
+    }
+
+    /**
+     * Read a single node again, replacing what is cached for it. Nothing
+     * is read if the inventory has not been loaded yet.
+     *
+     * @param nodeId the node to read
+     */
+    public synchronized void refreshNode(final int nodeId) {
+        if (!m_loaded) {
+            return;
+        }
+        final CachedNode node = readNodes(nodeId).get(nodeId);
+        removeNode(nodeId);
+        putNode(node == null ? new CachedNode(nodeId) : node);
+    }
+
+    /**
+     * Forget a node.
+     *
+     * @param nodeId the node that was deleted
+     */
+    public synchronized void removeNode(final int nodeId) {
+        final CachedNode node = m_nodes.remove(nodeId);
+        if (node == null) {
+            return;
+        }
+        for (final CachedInterface iface : node.getInterfaces()) {
+            final Set<Integer> nodeIds = m_nodeIdsByIpAddr.get(iface.getIpAddr());
+            if (nodeIds != null) {
+                nodeIds.remove(nodeId);
+                if (nodeIds.isEmpty()) {
+                    m_nodeIdsByIpAddr.remove(iface.getIpAddr());
+                }
+            }
+        }
+    }
+
+    private void putNode(final CachedNode node) {
+        m_nodes.put(node.getNodeId(), node);
+        for (final CachedInterface iface : node.getInterfaces()) {
+            Set<Integer> nodeIds = m_nodeIdsByIpAddr.get(iface.getIpAddr());
+            if (nodeIds == null) {
+                nodeIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+                m_nodeIdsByIpAddr.put(iface.getIpAddr(), nodeIds);
+            }
+            nodeIds.add(node.getNodeId());
+        }
+    }
+
+    /**
+     * Get a node, reading it if it is not known yet. A node that has been
+     * read but has no interfaces is returned with no interfaces.
+     */
+    CachedNode getNode(final int nodeId) {
+        load();
+        CachedNode node = m_nodes.get(nodeId);
+        if (node == null) {
+            refreshNode(nodeId);
+            node = m_nodes.get(nodeId);
+        }
+        return node;
+    }
+
+    Collection<CachedNode> getNodes() {
+        load();
+        return m_nodes.values();
+    }
+
+    Collection<CachedNode> getNodesWithIpAddr(final String ipAddr) {
+        load();
+        final Set<Integer> nodeIds = m_nodeIdsByIpAddr.get(ipAddr);
+        if (nodeIds == null) {
+            return Collections.emptyList();
+        }
+        final List<CachedNode> nodes = new ArrayList<CachedNode>(nodeIds.size());
+        for (final Integer nodeId : nodeIds) {
+            final CachedNode node = m_nodes.get(nodeId);
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Whether the service is on an interface with this address on any node.
+     */
+    boolean isServiceOnIpAddr(final String ipAddr, final String serviceName) {
+        for (final CachedNode node : getNodesWithIpAddr(ipAddr)) {
+            for (final CachedInterface iface : node.getInterfaces()) {
+                if (iface.getIpAddr().equals(ipAddr) && iface.getServices().contains(serviceName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Map<Integer, CachedNode> readNodes(final Integer nodeId) {
+        final Map<Integer, NodeBuilder> builders = new LinkedHashMap<Integer, NodeBuilder>();
+
+        final Querier nodeQuerier = new Querier(m_dataSource, NODE_QUERY + (nodeId == null ? "" : " WHERE node.nodeID = ?"), new RowProcessor() {
+            public void processRow(final ResultSet rs) throws SQLException {
+                final int id = rs.getInt("nodeID");
+                NodeBuilder builder = builders.get(id);
+                if (builder == null) {
+                    builder = new NodeBuilder(id, rs);
+                    builders.put(id, builder);
+                }
+                builder.addService(rs);
+            }
+        });
+
+        final Map<Integer, Set<String>> categories = new HashMap<Integer, Set<String>>();
+        final Querier categoryQuerier = new Querier(m_dataSource, CATEGORY_QUERY + (nodeId == null ? "" : " WHERE category_node.nodeID = ?"), new RowProcessor() {
+            public void processRow(final ResultSet rs) throws SQLException {
+                final int id = rs.getInt("nodeID");
+                Set<String> names = categories.get(id);
+                if (names == null) {
+                    names = new HashSet<String>();
+                    categories.put(id, names);
+                }
+                names.add(rs.getString("categoryName"));
+            }
+        });
+
+        if (nodeId == null) {
+            nodeQuerier.execute();
+            categoryQuerier.execute();
+        } else {
+            nodeQuerier.execute(nodeId);
+            categoryQuerier.execute(nodeId);
+        }
+
+        final Map<Integer, CachedNode> nodes = new HashMap<Integer, CachedNode>();
+        for (final NodeBuilder builder : builders.values()) {
+            final Set<String> names = categories.get(builder.m_nodeId);
+            nodes.put(builder.m_nodeId, builder.build(names == null ? Collections.<String>emptySet() : names));
+        }
+        return nodes;
+    }
+
+    private static class NodeBuilder {
+        private final int m_nodeId;
+        private final Map<String, String> m_columns = new HashMap<String, String>();
+        private final Map<String, CachedInterface> m_interfaces = new LinkedHashMap<String, CachedInterface>();
+
+        public NodeBuilder(final int nodeId, final ResultSet rs) throws SQLException {
+            m_nodeId = nodeId;
+            m_columns.put("nodelabel", rs.getString("nodeLabel"));
+            m_columns.put("nodesysname", rs.getString("nodeSysName"));
+            m_columns.put("nodesysoid", rs.getString("nodeSysOID"));
+            m_columns.put("nodetype", rs.getString("nodeType"));
+            m_columns.put("foreignsource", rs.getString("foreignSource"));
+            m_columns.put("foreignid", rs.getString("foreignID"));
+        }
+
+        public void addService(final ResultSet rs) throws SQLException {
+            final String ipAddr = rs.getString("ipAddr");
+            CachedInterface iface = m_interfaces.get(ipAddr);
+            if (iface == null) {
+                iface = new CachedInterface(ipAddr, rs.getString("ipHostname"), rs.getString("isManaged"), rs.getString("isSnmpPrimary"));
+                m_interfaces.put(ipAddr, iface);
+            }
+            final String serviceName = rs.getString("serviceName");
+            if (serviceName != null) {
+                iface.m_services.add(serviceName);
+            }
+        }
+
+        public CachedNode build(final Set<String> categories) {
+            return new CachedNode(m_nodeId, m_columns, categories, new ArrayList<CachedInterface>(m_interfaces.values()));
+        }
+    }
+
+    /**
+     * A node and its interfaces as seen by filter rules.
+     */
+    static class CachedNode {
+        private final int m_nodeId;
+        private final Map<String, String> m_columns;
+        private final Set<String> m_categories;
+        private final List<CachedInterface> m_interfaces;
+
+        CachedNode(final int nodeId) {
+            this(nodeId, Collections.<String, String>emptyMap(), Collections.<String>emptySet(), Collections.<CachedInterface>emptyList());
+        }
+
+        CachedNode(final int nodeId, final Map<String, String> columns, final Set<String> categories, final List<CachedInterface> interfaces) {
+            m_nodeId = nodeId;
+            m_columns = columns;
+            m_categories = categories;
+            m_interfaces = interfaces;
+        }
+
+        int getNodeId() {
+            return m_nodeId;
+        }
+
+        /**
+         * Get a node column by its lower-case name.
+         */
+        String getColumn(final String name) {
+            return m_columns.get(name);
+        }
+
+        boolean isInCategory(final String categoryName) {
+            return m_categories.contains(categoryName);
+        }
+
+        List<CachedInterface> getInterfaces() {
+            return m_interfaces;
+        }
+    }
+
+    /**
+     * An IP interface and the names of the services on it.
+     */
+    static class CachedInterface {
+        private final String m_ipAddr;
+        private final String m_ipHostname;
+        private final String m_isManaged;
+        private final String m_isSnmpPrimary;
+        private final Set<String> m_services = new HashSet<String>();
+
+        CachedInterface(final String ipAddr, final String ipHostname, final String isManaged, final String isSnmpPrimary) {
+            m_ipAddr = ipAddr;
+            m_ipHostname = ipHostname;
+            m_isManaged = isManaged;
+            m_isSnmpPrimary = isSnmpPrimary;
+        }
+
+        String getIpAddr() {
+            return m_ipAddr;
+        }
+
+        /**
+         * Get an interface column by its lower-case name.
+         */
+        String getColumn(final String name) {
+            if ("ipaddr".equals(name)) {
+                return m_ipAddr;
+            } else if ("iphostname".equals(name)) {
+                return m_ipHostname;
+            } else if ("ismanaged".equals(name)) {
+                return m_isManaged;
+            } else if ("issnmpprimary".equals(name)) {
+                return m_isSnmpPrimary;
+            }
+            return null;
+        }
+
+        Set<String> getServices() {
+            return m_services;
+        }
+    }
+}
@@ -0,0 +1,533 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.opennms.core.utils.IPLike;
+import org.opennms.netmgt.filter.FilterNodeCache.CachedInterface;
+import org.opennms.netmgt.filter.FilterNodeCache.CachedNode;
+
+/**
+ * Compiles filter rules into expressions that are evaluated against a
+ * {@link FilterNodeCache} instead of being turned into SQL.
+ *
+ * <p>Only the common subset of the filter language is understood: the
+ * node, interface and service columns kept by the cache compared with
+ * <code>==</code>, <code>!=</code>, <code>LIKE</code> or
+ * <code>IPLIKE</code>, the <code>is</code>, <code>notis</code> and
+ * <code>catinc</code> prefixes, and <code>&amp;</code>, <code>|</code>,
+ * <code>!</code> and parentheses. For anything else {@link #parse(String)}
+ * returns null and the rule has to go to the database. Comparisons follow
+ * SQL's three-valued logic so that a rule gives the same answer either
+ * way.</p>
+ *
+ * @author <a href="mailto:opennms@opennms.org">OpenNMS</a>
+ */
+class FilterRuleParser {
+    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("[a-zA-Z0-9_\\-]*[a-zA-Z][a-zA-Z0-9_\\-]*");
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("-?\\d+");
+
+    private static final Map<String, Column> COLUMNS = new HashMap<String, Column>();
+    static {
+        for (final String name : new String[] { "nodelabel", "nodesysname", "nodesysoid", "nodetype", "foreignsource", "foreignid" }) {
+            COLUMNS.put(name, new Column(name, Column.NODE));
+        }
+        for (final String name : new String[] { "ipaddr", "iphostname", "ismanaged", "issnmpprimary" }) {
+            COLUMNS.put(name, new Column(name, Column.INTERFACE));
+        }
+        COLUMNS.put("nodeid", new Column("nodeid", Column.NODE_ID));
+        COLUMNS.put("servicename", new Column("servicename", Column.SERVICE));
+    }
+
+    private enum TokenType { LPAREN, RPAREN, AND, OR, NOT, OPERATOR, LIKE, IPLIKE, STRING, WORD }
+
+    private static class Token {
+        final TokenType m_type;
+        final String m_text;
+
+        Token(final TokenType type, final String text) {
+            m_type = type;
+            m_text = text;
+        }
+    }
+
+    /**
+     * Thrown internally when the rule uses something we cannot evaluate.
+     */
+    private static class UnsupportedRuleException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final List<Token> m_tokens;
+    private int m_position = 0;
+
+    private FilterRuleParser(final List<Token> tokens) {
+        m_tokens = tokens;
+    }
+
+    /**
+     * Compile a rule.
+     *
+     * @param rule the filter rule
+     * @return the compiled rule, or null if it cannot be evaluated in memory
+     */
+    static Expression parse(final String rule) {
+        try {
+            final FilterRuleParser parser = new FilterRuleParser(tokenize(rule));
+            final Expression expression = parser.parseOr();
+            if (parser.m_position != parser.m_tokens.size()) {
+                return null;
+            }
+            return expression;
+        } catch (final UnsupportedRuleException e) {
+            return null;
+        }
+    }
+
+    private static List<Token> tokenize(final String rule) throws UnsupportedRuleException {
+        final List<Token> tokens = new ArrayList<Token>();
+        final int length = rule.length();
+        int i = 0;
+        while (i < length) {
+            final char c = rule.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                // as in SQL, a doubled quote inside a string is a quote
+                final StringBuilder value = new StringBuilder();
+                int j = i + 1;
+                while (true) {
+                    if (j >= length) {
+                        throw new UnsupportedRuleException();
+                    } else if (rule.charAt(j) != c) {
+                        value.append(rule.charAt(j++));
+                    } else if (j + 1 < length && rule.charAt(j + 1) == c) {
+                        value.append(c);
+                        j += 2;
+                    } else {
+                        break;
+                    }
+                }
+                tokens.add(new Token(TokenType.STRING, value.toString()));
+                i = j + 1;
+            } else if (c == '(') {
+                tokens.add(new Token(TokenType.LPAREN, "("));
+                i++;
+            } else if (c == ')') {
+                tokens.add(new Token(TokenType.RPAREN, ")"));
+                i++;
+            } else if (c == '&' || c == '|') {
+                tokens.add(new Token(c == '&' ? TokenType.AND : TokenType.OR, String.valueOf(c)));
+                i += (i + 1 < length && rule.charAt(i + 1) == c) ? 2 : 1;
+            } else if (rule.startsWith("!=", i) || rule.startsWith("==", i) || rule.startsWith("<>", i) || rule.startsWith("<=", i) || rule.startsWith(">=", i)) {
+                tokens.add(new Token(TokenType.OPERATOR, rule.substring(i, i + 2)));
+                i += 2;
+            } else if (c == '!') {
+                tokens.add(new Token(TokenType.NOT, "!"));
+                i++;
+            } else if (c == '=' || c == '<' || c == '>') {
+                tokens.add(new Token(TokenType.OPERATOR, String.valueOf(c)));
+                i++;
+            } else if (Character.isLetterOrDigit(c) || "_-.*,".indexOf(c) >= 0) {
+                int j = i;
+                while (j < length && (Character.isLetterOrDigit(rule.charAt(j)) || "_-.*,".indexOf(rule.charAt(j)) >= 0)) {
+                    j++;
+                }
+                final String word = rule.substring(i, j);
+                if ("and".equalsIgnoreCase(word)) {
+                    tokens.add(new Token(TokenType.AND, word));
+                } else if ("or".equalsIgnoreCase(word)) {
+                    tokens.add(new Token(TokenType.OR, word));
+                } else if ("not".equalsIgnoreCase(word)) {
+                    tokens.add(new Token(TokenType.NOT, word));
+                } else if ("like".equalsIgnoreCase(word)) {
+                    tokens.add(new Token(TokenType.LIKE, word));
+                } else if ("iplike".equalsIgnoreCase(word)) {
+                    tokens.add(new Token(TokenType.IPLIKE, word));
+                } else {
+                    tokens.add(new Token(TokenType.WORD, word));
+                }
+                i = j;
+            } else {
+                throw new UnsupportedRuleException();
+            }
+        }
+        return tokens;
+    }
+
+    private Token peek() {
+        return m_position < m_tokens.size() ? m_tokens.get(m_position) : null;
+    }
+
+    private boolean peekIs(final TokenType type) {
+        final Token token = peek();
+        return token != null && token.m_type == type;
+    }
+
+    private Token next() throws UnsupportedRuleException {
+        final Token token = peek();
+        if (token == null) {
+            throw new UnsupportedRuleException();
+        }
+        m_position++;
+        return token;
+    }
+
+    private Token expect(final TokenType type) throws UnsupportedRuleException {
+        final Token token = next();
+        if (token.m_type != type) {
+            throw new UnsupportedRuleException();
+        }
+        return token;
+    }
+
+    private Expression parseOr() throws UnsupportedRuleException {
+        Expression left = parseAnd();
+        while (peekIs(TokenType.OR)) {
+            next();
+            left = new Or(left, parseAnd());
+        }
+        return left;
+    }
+
+    private Expression parseAnd() throws UnsupportedRuleException {
+        Expression left = parseNot();
+        while (peekIs(TokenType.AND)) {
+            next();
+            left = new And(left, parseNot());
+        }
+        return left;
+    }
+
+    private Expression parseNot() throws UnsupportedRuleException {
+        if (peekIs(TokenType.NOT)) {
+            next();
+            return new Not(parseNot());
+        }
+        return parsePrimary();
+    }
+
+    private Expression parsePrimary() throws UnsupportedRuleException {
+        final Token token = next();
+        if (token.m_type == TokenType.LPAREN) {
+            final Expression expression = parseOr();
+            expect(TokenType.RPAREN);
+            return expression;
+        } else if (token.m_type != TokenType.WORD || !IDENTIFIER_PATTERN.matcher(token.m_text).matches()) {
+            throw new UnsupportedRuleException();
+        }
+
+        // the same prefixes, checked in the same order, as JdbcFilterDao
+        final String word = token.m_text;
+        if (word.startsWith("is")) {
+            return new Compare(COLUMNS.get("servicename"), "=", word.substring(2));
+        } else if (word.startsWith("notis")) {
+            return new NotIs(word.substring(5));
+        } else if (word.startsWith("catinc")) {
+            return new CatInc(word.substring(6));
+        }
+
+        final Column column = COLUMNS.get(word.toLowerCase());
+        if (column == null) {
+            throw new UnsupportedRuleException();
+        }
+
+        final Token operator = next();
+        if (operator.m_type == TokenType.IPLIKE) {
+            final Token pattern = next();
+            if (!"ipaddr".equals(column.m_name) || (pattern.m_type != TokenType.STRING && pattern.m_type != TokenType.WORD)) {
+                throw new UnsupportedRuleException();
+            }
+            return new IpLike(pattern.m_text);
+        } else if (operator.m_type == TokenType.NOT && peekIs(TokenType.LIKE)) {
+            next();
+            return new Not(parseLike(column));
+        } else if (operator.m_type == TokenType.LIKE) {
+            return parseLike(column);
+        } else if (operator.m_type == TokenType.OPERATOR) {
+            final Token value = next();
+            if (column.m_type == Column.NODE_ID) {
+                if (!NUMBER_PATTERN.matcher(value.m_text).matches() || (value.m_type != TokenType.WORD && value.m_type != TokenType.STRING)) {
+                    throw new UnsupportedRuleException();
+                }
+            } else if (value.m_type != TokenType.STRING || !("==".equals(operator.m_text) || "=".equals(operator.m_text) || "!=".equals(operator.m_text) || "<>".equals(operator.m_text))) {
+                // ordering of strings depends on the database's collation
+                throw new UnsupportedRuleException();
+            }
+            return new Compare(column, operator.m_text, value.m_text);
+        }
+        throw new UnsupportedRuleException();
+    }
+
+    private Expression parseLike(final Column column) throws UnsupportedRuleException {
+        final Token pattern = expect(TokenType.STRING);
+        if (column.m_type == Column.NODE_ID || pattern.m_text.indexOf('\\') >= 0) {
+            throw new UnsupportedRuleException();
+        }
+        final StringBuilder regex = new StringBuilder();
+        for (final char c : pattern.m_text.toCharArray()) {
+            if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return new Like(column, Pattern.compile(regex.toString(), Pattern.DOTALL));
+    }
+
+    private static class Column {
+        static final int NODE_ID = 0;
+        static final int NODE = 1;
+        static final int INTERFACE = 2;
+        static final int SERVICE = 3;
+
+        final String m_name;
+        final int m_type;
+
+        Column(final String name, final int type) {
+            m_name = name;
+            m_type = type;
+        }
+
+        String getValue(final CachedNode node, final CachedInterface iface, final String service) {
+            switch (m_type) {
+            case NODE_ID:
+                return String.valueOf(node.getNodeId());
+            case NODE:
+                return node.getColumn(m_name);
+            case INTERFACE:
+                return iface.getColumn(m_name);
+            default:
+                return service;
+            }
+        }
+    }
+
+    /**
+     * A compiled rule, evaluated for one node/interface/service row. As in
+     * SQL, null means the answer is unknown.
+     */
+    abstract static class Expression {
+        abstract Boolean evaluate(FilterNodeCache cache, CachedNode node, CachedInterface iface, String service);
+
+        /**
+         * Whether the rule needs one row per service rather than one row
+         * per interface, as when SQL joins in the ifServices table.
+         */
+        abstract boolean usesServices();
+    }
+
+    private static class And extends Expression {
+        private final Expression m_left;
+        private final Expression m_right;
+
+        And(final Expression left, final Expression right) {
+            m_left = left;
+            m_right = right;
+        }
+
+        Boolean evaluate(final FilterNodeCache cache, final CachedNode node, final CachedInterface iface, final String service) {
+            final Boolean left = m_left.evaluate(cache, node, iface, service);
+            if (Boolean.FALSE.equals(left)) {
+                return Boolean.FALSE;
+            }
+            final Boolean right = m_right.evaluate(cache, node, iface, service);
+            if (Boolean.FALSE.equals(right)) {
+                return Boolean.FALSE;
+            }
+            return left == null || right == null ? null : Boolean.TRUE;
+        }
+
+        boolean usesServices() {
+            return m_left.usesServices() || m_right.usesServices();
+        }
+    }
+
+    private static class Or extends Expression {
+        private final Expression m_left;
+        private final Expression m_right;
+
+        Or(final Expression left, final Expression right) {
+            m_left = left;
+            m_right = right;
+        }
+
+        Boolean evaluate(final FilterNodeCache cache, final CachedNode node, final CachedInterface iface, final String service) {
+            final Boolean left = m_left.evaluate(cache, node, iface, service);
+            if (Boolean.TRUE.equals(left)) {
+                return Boolean.TRUE;
+            }
+            final Boolean right = m_right.evaluate(cache, node, iface, service);
+            if (Boolean.TRUE.equals(right)) {
+                return Boolean.TRUE;
+            }
+            return left == null || right == null ? null : Boolean.FALSE;
+        }
+
+        boolean usesServices() {
+            return m_left.usesServices() || m_right.usesServices();
+        }
+    }
+
+    private static class Not extends Expression {
+        private final Expression m_expression;
+
+        Not(final Expression expression) {
+            m_expression = expression;
+        }
+
+        Boolean evaluate(final FilterNodeCache cache, final CachedNode node, final CachedInterface iface, final String service) {
+            final Boolean value = m_expression.evaluate(cache, node, iface, service);
+            return value == null ? null : Boolean.valueOf(!value.booleanValue());
+        }
+
+        boolean usesServices() {
+            return m_expression.usesServices();
+        }
+    }
+
+    private static class Compare extends Expression {
+        private final Column m_column;
+        private final String m_operator;
+        private final String m_value;
+
+        Compare(final Column column, final String operator, final String value) {
+            m_column = column;
+            m_operator = operator;
+            m_value = value;
+        }
+
+        Boolean evaluate(final FilterNodeCache cache, final CachedNode node, final CachedInterface iface, final String service) {
+            final String value = m_column.getValue(node, iface, service);
+            if (value == null) {
+                return null;
+            }
+            final int comparison;
+            if (m_column.m_type == Column.NODE_ID) {
+                final long left = Long.parseLong(value);
+                final long right = Long.parseLong(m_value);
+                comparison = left < right ? -1 : (left == right ? 0 : 1);
+            } else {
+                comparison = value.equals(m_value) ? 0 : 1;
+            }
+
+            if ("=".equals(m_operator) || "==".equals(m_operator)) {
+                return comparison == 0;
+            } else if ("!=".equals(m_operator) || "<>".equals(m_operator)) {
+                return comparison != 0;
+            } else if ("<".equals(m_operator)) {
+                return comparison < 0;
+            } else if ("<=".equals(m_operator)) {
+                return comparison <= 0;
+            } else if (">".equals(m_operator)) {
+                return comparison > 0;
+            } else {
+                return comparison >= 0;
+            }
+        }
+
+        boolean usesServices() {
+            return m_column.m_type == Column.SERVICE;
+        }
+    }
+
+    private static class Like extends Expression {
+        private final Column m_column;
+        private final Pattern m_pattern;
+
+        Like(final Column column, final Pattern pattern) {
+            m_column = column;
+            m_pattern = pattern;
+        }
+
+        Boolean evaluate(final FilterNodeCache cache, final CachedNode node, final CachedInterface iface, final String service) {
+            final String value = m_column.getValue(node, iface, service);
+            return value == null ? null : Boolean.valueOf(m_pattern.matcher(value).matches());
+        }
+
+        boolean usesServices() {
+            return m_column.m_type == Column.SERVICE;
+        }
+    }
+
+    private static class IpLike extends Expression {
+        private final String m_pattern;
+
+        IpLike(final String pattern) {
+            m_pattern = pattern;
+        }
+
+        Boolean evaluate(final FilterNodeCache cache, final CachedNode node, final CachedInterface iface, final String service) {
+            return IPLike.matches(iface.getIpAddr(), m_pattern);
+        }
+
+        boolean usesServices() {
+            return false;
+        }
+    }
+
+    private static class NotIs extends Expression {
+        private final String m_serviceName;
+
+        NotIs(final String serviceName) {
+            m_serviceName = serviceName;
+        }
+
+        Boolean evaluate(final FilterNodeCache cache, final CachedNode node, final CachedInterface iface, final String service) {
+            return !cache.isServiceOnIpAddr(iface.getIpAddr(), m_serviceName);
+        }
+
+        boolean usesServices() {
+            return false;
+        }
+    }
+
+    private static class CatInc extends Expression {
+        private final String m_categoryName;
+
+        CatInc(final String categoryName) {
+            m_categoryName = categoryName;
+        }
+
+        Boolean evaluate(final FilterNodeCache cache, final CachedNode node, final CachedInterface iface, final String service) {
+            return node.isInCategory(m_categoryName);
+        }
+
+        boolean usesServices() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import org.opennms.core.utils.LogUtils;
+import org.opennms.netmgt.filter.FilterNodeCache.CachedInterface;
+import org.opennms.netmgt.filter.FilterNodeCache.CachedNode;
+import org.opennms.netmgt.filter.FilterRuleParser.Expression;
+
+/**
+ * Evaluates filter rules against an in-memory copy of the inventory, for
+ * callers such as notifd that test the same few rules against every event.
+ *
+ * <p>Rules are compiled once and cached. A rule that uses something the
+ * compiler does not understand is reported by {@link #isSupported(String)}
+ * so that the caller can fall back to {@link FilterDao#isRuleMatching(String)}.
+ * The caller is responsible for telling the filter about inventory changes
+ * through {@link #getNodeCache()}.</p>
+ *
+ * @author <a href="mailto:opennms@opennms.org">OpenNMS</a>
+ */
+public class InMemoryFilter {
+    /**
+     * Marks rules that cannot be compiled, since the map cannot hold null.
+     */
+    private static final Expression UNSUPPORTED = new Expression() {
+        Boolean evaluate(final FilterNodeCache cache, final CachedNode node, final CachedInterface iface, final String service) {
+            throw new IllegalStateException("rule cannot be evaluated in memory");
+        }
+
+        boolean usesServices() {
+            return false;
+        }
+    };
+
+    private final FilterNodeCache m_nodeCache;
+
+    private final ConcurrentMap<String, Expression> m_rules = new ConcurrentHashMap<String, Expression>();
+
+    /**
+     * <p>Constructor for InMemoryFilter.</p>
+     *
+     * @param dataSource a {@link javax.sql.DataSource} object.
+     */
+    public InMemoryFilter(final DataSource dataSource) {
+        m_nodeCache = new FilterNodeCache(dataSource);
+    }
+
+    /**
+     * <p>getNodeCache</p>
+     *
+     * @return a {@link org.opennms.netmgt.filter.FilterNodeCache} object.
+     */
+    public FilterNodeCache getNodeCache() {
+        return m_nodeCache;
+    }
+
+    private Expression compile(final String rule) {
+        Expression expression = m_rules.get(rule);
+        if (expression == null) {
+            expression = FilterRuleParser.parse(rule);
+            if (expression == null) {
+                LogUtils.debugf(this, "Rule \"%s\" cannot be evaluated in memory, it will be sent to the database", rule);
+                expression = UNSUPPORTED;
+            }
+            m_rules.put(rule, expression);
+        }
+        return expression;
+    }
+
+    /**
+     * Whether a rule can be evaluated in memory.
+     *
+     * @param rule a {@link java.lang.String} object.
+     * @return a boolean.
+     */
+    public boolean isSupported(final String rule) {
+        return compile(rule) != UNSUPPORTED;
+    }
+
+    /**
+     * Whether any row in the inventory matches the rule, optionally
+     * constrained to a node, interface and service. This gives the same
+     * answer as <code>FilterDao.isRuleMatching()</code> for the rule with
+     * the constraints ANDed on.
+     *
+     * @param rule the filter rule, which must be supported
+     * @param nodeId the node to constrain to, or 0
+     * @param ipAddr the interface to constrain to, or null
+     * @param service the service to constrain to, or null
+     * @return a boolean.
+     */
+    public boolean isRuleMatching(final String rule, final int nodeId, final String ipAddr, final String service) {
+        final Expression expression = compile(rule);
+        if (expression == UNSUPPORTED) {
+            throw new IllegalArgumentException("Rule \"" + rule + "\" cannot be evaluated in memory");
+        }
+
+        final boolean perService = expression.usesServices() || service != null;
+
+        final Collection<CachedNode> nodes;
+        if (nodeId != 0) {
+            nodes = Collections.singleton(m_nodeCache.getNode(nodeId));
+        } else if (ipAddr != null) {
+            nodes = m_nodeCache.getNodesWithIpAddr(ipAddr);
+        } else {
+            nodes = m_nodeCache.getNodes();
+        }
+
+        for (final CachedNode node : nodes) {
+            for (final CachedInterface iface : node.getInterfaces()) {
+                if (ipAddr != null && !ipAddr.equals(iface.getIpAddr())) {
+                    continue;
+                }
+                if (!perService) {
+                    if (Boolean.TRUE.equals(expression.evaluate(m_nodeCache, node, iface, null))) {
+                        return true;
+                    }
+                    continue;
+                }
+                for (final String serviceName : iface.getServices()) {
+                    if (service != null && !service.equals(serviceName)) {
+                        continue;
+                    }
+                    if (Boolean.TRUE.equals(expression.evaluate(m_nodeCache, node, iface, serviceName))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
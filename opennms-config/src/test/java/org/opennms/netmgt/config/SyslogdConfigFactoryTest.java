@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.config;
 
+import java.io.ByteArrayInputStream;
 import java.util.List;
 
 import org.junit.Assert;
@@ -134,4 +135,25 @@ public class SyslogdConfigFactoryTest {
         }
         Assert.assertEquals(8, countMatch);
     }
+
+    @Test
+    public void testReceivePipelineDefaults() {
+        Assert.assertEquals(1, m_factory.getReceiverThreads());
+        Assert.assertEquals(Runtime.getRuntime().availableProcessors(), m_factory.getProcessingThreads());
+        Assert.assertEquals(10000, m_factory.getQueueSize());
+        Assert.assertEquals("drop", m_factory.getOverflowPolicy());
+    }
+
+    @Test
+    public void testReceivePipelineSettings() throws Exception {
+        final String xml = "<syslogd-configuration>\n" +
+                "    <configuration syslog-port=\"10514\" new-suspect-on-message=\"false\"\n" +
+                "        receiver-threads=\"4\" processing-threads=\"2\" queue-size=\"500\" overflow-policy=\"block\"/>\n" +
+                "</syslogd-configuration>\n";
+        SyslogdConfigFactory factory = new SyslogdConfigFactory(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        Assert.assertEquals(4, factory.getReceiverThreads());
+        Assert.assertEquals(2, factory.getProcessingThreads());
+        Assert.assertEquals(500, factory.getQueueSize());
+        Assert.assertEquals("block", factory.getOverflowPolicy());
+    }
 }
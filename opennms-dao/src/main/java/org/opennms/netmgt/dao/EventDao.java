@@ -28,6 +28,9 @@
 
 package org.opennms.netmgt.dao;
 
+import java.util.Collection;
+
+import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.OnmsEvent;
 
 /**
@@ -43,4 +46,14 @@ public interface EventDao extends OnmsDao<OnmsEvent, Integer> {
      * @return a int.
      */
     int deletePreviousEventsForAlarm(final Integer id, final OnmsEvent e);
+
+    /**
+     * Associates the events with the given ids with an alarm without
+     * loading them.
+     *
+     * @param alarm a {@link org.opennms.netmgt.model.OnmsAlarm} object.
+     * @param eventIds the ids of the events to update
+     * @return the number of events that were updated
+     */
+    int updateAlarmForEvents(final OnmsAlarm alarm, final Collection<Integer> eventIds);
 }
@@ -29,6 +29,8 @@
 package org.opennms.netmgt.dao;
 
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -114,4 +116,16 @@ public interface IpInterfaceDao extends OnmsDao<OnmsIpInterface, Integer> {
 
 	OnmsIpInterface findPrimaryInterfaceByNodeId(Integer nodeId);
 
+    /**
+     * Set the ipLastCapsdPoll of several interfaces on a node with a single
+     * statement.  Used to stamp interfaces that a scan found unchanged
+     * without loading and writing each of them.
+     *
+     * @param nodeId a {@link java.lang.Integer} object.
+     * @param ipInterfaceIds the database IDs of the interfaces to stamp
+     * @param ipLastCapsdPoll a {@link java.util.Date} object.
+     * @return the number of interfaces updated
+     */
+    int updateLastCapsdPoll(Integer nodeId, Collection<Integer> ipInterfaceIds, Date ipLastCapsdPoll);
+
 }
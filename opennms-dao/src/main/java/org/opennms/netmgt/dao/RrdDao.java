@@ -29,9 +29,12 @@
 package org.opennms.netmgt.dao;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 import org.opennms.netmgt.model.OnmsAttribute;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
 import org.springframework.dao.DataAccessException;
 
 /**
@@ -66,6 +69,36 @@ public interface RrdDao {
     public double[] getPrintValues(OnmsAttribute attribute,String rraConsolidationFunction, 
 			long startTimeInMillis, long endTimeInMillis, String... printFunctions);
 
+    /**
+     * Get the values for several attributes over a period of time with as
+     * few RRD reads as possible.  Attributes that live in the same RRD file
+     * are read together.
+     *
+     * @param attributes the attributes, each must be a RrdGraphAttribute
+     * @param rraConsolidationFunction consolidation function (usually "AVERAGE")
+     * @param startTimeInMillis start time in milliseconds
+     * @param endTimeInMillis end time in milliseconds
+     * @param printFunctions the print functions to evaluate for each
+     *            attribute, defaults to the rraConsolidationFunction
+     * @return one row of values for each attribute, in the order given
+     */
+    public double[][] getPrintValuesForAttributes(List<? extends OnmsAttribute> attributes, String rraConsolidationFunction,
+            long startTimeInMillis, long endTimeInMillis, String... printFunctions);
+
+    /**
+     * Fetch the rows of an attribute over a period of time and pass them to
+     * a handler one at a time, without collecting them first.
+     *
+     * @param attribute the attribute, must be a RrdGraphAttribute
+     * @param rraConsolidationFunction consolidation function (usually "AVERAGE")
+     * @param startTimeInMillis start time in milliseconds
+     * @param endTimeInMillis end time in milliseconds
+     * @param handler receives each row with a single value
+     * @throws java.io.IOException if the handler fails to take a row
+     * @throws org.springframework.dao.DataAccessException if the rows cannot be read
+     */
+    public void fetch(OnmsAttribute attribute, String rraConsolidationFunction, long startTimeInMillis, long endTimeInMillis, RrdFetchHandler handler) throws IOException, DataAccessException;
+
     /**
      * Create an RRD graph with the given command where RRD files are relative to the workDir.
      *
@@ -28,6 +28,10 @@
 
 package org.opennms.netmgt.dao;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
 import org.opennms.netmgt.model.OnmsSnmpInterface;
 
 
@@ -56,5 +60,25 @@ public interface SnmpInterfaceDao extends OnmsDao<OnmsSnmpInterface, Integer> {
      * @return a {@link org.opennms.netmgt.model.OnmsSnmpInterface} object.
      */
     OnmsSnmpInterface findByForeignKeyAndIfIndex(String foreignSource, String foreignId, Integer ifIndex);
-    
+
+    /**
+     * <p>findByNodeId</p>
+     *
+     * @param nodeId a {@link java.lang.Integer} object.
+     * @return a {@link java.util.List} object.
+     */
+    List<OnmsSnmpInterface> findByNodeId(Integer nodeId);
+
+    /**
+     * Set the lastCapsdPoll of several interfaces on a node with a single
+     * statement.  Used to stamp interfaces that a scan found unchanged
+     * without loading and writing each of them.
+     *
+     * @param nodeId a {@link java.lang.Integer} object.
+     * @param ifIndexes the ifIndexes of the interfaces to stamp
+     * @param lastCapsdPoll a {@link java.util.Date} object.
+     * @return the number of interfaces updated
+     */
+    int updateLastCapsdPoll(Integer nodeId, Collection<Integer> ifIndexes, Date lastCapsdPoll);
+
 }
@@ -28,9 +28,16 @@
 
 package org.opennms.netmgt.dao.hibernate;
 
+import java.sql.SQLException;
+import java.util.Collection;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
 import org.opennms.netmgt.dao.EventDao;
+import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.OnmsEvent;
 import org.springframework.dao.DataAccessException;
+import org.springframework.orm.hibernate3.HibernateCallback;
 
 public class EventDaoHibernate extends AbstractDaoHibernate<OnmsEvent, Integer>
 		implements EventDao {
@@ -49,4 +56,19 @@ public class EventDaoHibernate extends AbstractDaoHibernate<OnmsEvent, Integer>
         return bulkDelete(hql, values);
     }
 
+    /** {@inheritDoc} */
+    public int updateAlarmForEvents(final OnmsAlarm alarm, final Collection<Integer> eventIds) throws DataAccessException {
+        if (eventIds.isEmpty()) {
+            return 0;
+        }
+        return getHibernateTemplate().execute(new HibernateCallback<Integer>() {
+            public Integer doInHibernate(final Session session) throws HibernateException, SQLException {
+                return session.createQuery("update OnmsEvent set alarm = :alarm where id in (:eventIds)")
+                    .setEntity("alarm", alarm)
+                    .setParameterList("eventIds", eventIds)
+                    .executeUpdate();
+            }
+        });
+    }
+
 }
@@ -29,13 +29,19 @@
 package org.opennms.netmgt.dao.hibernate;
 
 import java.net.InetAddress;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
 import org.opennms.netmgt.dao.IpInterfaceDao;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsNode;
+import org.springframework.orm.hibernate3.HibernateCallback;
 import org.springframework.util.Assert;
 /**
  * <p>IpInterfaceDaoHibernate class.</p>
@@ -177,4 +183,22 @@ public class IpInterfaceDaoHibernate extends AbstractDaoHibernate<OnmsIpInterfac
             return retval;
         }
     }
+
+    /** {@inheritDoc} */
+    public int updateLastCapsdPoll(final Integer nodeId, final Collection<Integer> ipInterfaceIds, final Date ipLastCapsdPoll) {
+        Assert.notNull(nodeId, "nodeId may not be null");
+        Assert.notNull(ipLastCapsdPoll, "ipLastCapsdPoll may not be null");
+        if (ipInterfaceIds == null || ipInterfaceIds.isEmpty()) {
+            return 0;
+        }
+        return getHibernateTemplate().execute(new HibernateCallback<Integer>() {
+            public Integer doInHibernate(final Session session) throws HibernateException, SQLException {
+                return session.createQuery("update OnmsIpInterface ipInterface set ipInterface.ipLastCapsdPoll = :ipLastCapsdPoll where ipInterface.node.id = :nodeId and ipInterface.id in (:ipInterfaceIds)")
+                    .setTimestamp("ipLastCapsdPoll", ipLastCapsdPoll)
+                    .setInteger("nodeId", nodeId)
+                    .setParameterList("ipInterfaceIds", ipInterfaceIds)
+                    .executeUpdate();
+            }
+        });
+    }
 }
@@ -28,8 +28,16 @@
 
 package org.opennms.netmgt.dao.hibernate;
 
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
 import org.opennms.netmgt.dao.SnmpInterfaceDao;
 import org.opennms.netmgt.model.OnmsSnmpInterface;
+import org.springframework.orm.hibernate3.HibernateCallback;
 import org.springframework.util.Assert;
 
 public class SnmpInterfaceDaoHibernate extends
@@ -68,6 +76,28 @@ public class SnmpInterfaceDaoHibernate extends
                           ifIndex);
     }
 
-	
+    /** {@inheritDoc} */
+    public List<OnmsSnmpInterface> findByNodeId(Integer nodeId) {
+        Assert.notNull(nodeId, "nodeId may not be null");
+        return find("from OnmsSnmpInterface snmpIf where snmpIf.node.id = ?", nodeId);
+    }
+
+    /** {@inheritDoc} */
+    public int updateLastCapsdPoll(final Integer nodeId, final Collection<Integer> ifIndexes, final Date lastCapsdPoll) {
+        Assert.notNull(nodeId, "nodeId may not be null");
+        Assert.notNull(lastCapsdPoll, "lastCapsdPoll may not be null");
+        if (ifIndexes == null || ifIndexes.isEmpty()) {
+            return 0;
+        }
+        return getHibernateTemplate().execute(new HibernateCallback<Integer>() {
+            public Integer doInHibernate(final Session session) throws HibernateException, SQLException {
+                return session.createQuery("update OnmsSnmpInterface snmpIf set snmpIf.lastCapsdPoll = :lastCapsdPoll where snmpIf.node.id = :nodeId and snmpIf.ifIndex in (:ifIndexes)")
+                    .setTimestamp("lastCapsdPoll", lastCapsdPoll)
+                    .setInteger("nodeId", nodeId)
+                    .setParameterList("ifIndexes", ifIndexes)
+                    .executeUpdate();
+            }
+        });
+    }
 
 }
@@ -57,11 +57,22 @@ public class BottomNAttributeStatisticVisitor implements AttributeStatisticVisit
         super();
     }
 
-    /** {@inheritDoc} */
-    public void visit(OnmsAttribute attribute, double statistic) {
+    /**
+     * {@inheritDoc}
+     *
+     * Only the best getCount() statistics can ever be returned, so once the
+     * count is known the results are kept as a bounded heap and the worst
+     * entry is evicted on every overflow.  This method is synchronized so
+     * that several threads can merge their statistics into one visitor.
+     */
+    public synchronized void visit(OnmsAttribute attribute, double statistic) {
         Assert.notNull(attribute, "attribute argument must not be null");
         
         m_results.add(new AttributeStatistic(attribute, statistic));
+
+        if (m_count != null && m_results.size() > m_count) {
+            m_results.remove(m_results.last());
+        }
     }
 
     /**
@@ -93,7 +104,7 @@ public class BottomNAttributeStatisticVisitor implements AttributeStatisticVisit
      *
      * @return top attribute statistics (up to getCount() number)
      */
-    public SortedSet<AttributeStatistic> getResults() {
+    public synchronized SortedSet<AttributeStatistic> getResults() {
         SortedSet<AttributeStatistic> top = new TreeSet<AttributeStatistic>(new AttributeStatisticComparator());
         
         for (AttributeStatistic stat : m_results) {
@@ -92,6 +92,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private NodeDao m_nodeDao;
     private LocationMonitorDao m_locationMonitorDao;
     private File m_rrdDirectory;
+    private RrdResourceIndex m_resourceIndex;
     private CollectdConfigFactory m_collectdConfig;
     private DataCollectionConfigDao m_dataCollectionConfigDao;
 
@@ -116,12 +117,18 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     }
 
     /**
-     * <p>getRrdDirectory</p>
+     * Returns the RRD directory.  When the RRD resource index is enabled,
+     * directory queries on the returned file and on files resolved below it
+     * with {@link ResourceTypeUtils#resolve(File, String)} are answered from
+     * the index.
      *
      * @return a {@link java.io.File} object.
      */
     @Override
     public File getRrdDirectory() {
+        if (m_resourceIndex != null) {
+            return m_resourceIndex.getRootDirectory();
+        }
         return m_rrdDirectory;
     }
     
@@ -234,6 +241,11 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
             throw new IllegalStateException("locationMonitorDao property has not been set");
         }
 
+        if (RrdResourceIndex.isEnabled()) {
+            m_resourceIndex = RrdResourceIndex.getInstance(m_rrdDirectory);
+            m_resourceIndex.startReconciler();
+        }
+
         initResourceTypes();
     }
     
@@ -476,8 +488,8 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         List<OnmsResource> resources = new LinkedList<OnmsResource>();
 
         IntSet snmpNodes = findSnmpNodeDirectories(); 
-        Set<String> responseTimeInterfaces = findChildrenMatchingFilter(new File(getRrdDirectory(), RESPONSE_DIRECTORY), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
-        Set<String> distributedResponseTimeInterfaces = findChildrenChildrenMatchingFilter(new File(new File(getRrdDirectory(), RESPONSE_DIRECTORY), "distributed"), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+        Set<String> responseTimeInterfaces = findChildrenMatchingFilter(ResourceTypeUtils.resolve(getRrdDirectory(), RESPONSE_DIRECTORY), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+        Set<String> distributedResponseTimeInterfaces = findChildrenChildrenMatchingFilter(ResourceTypeUtils.resolve(getRrdDirectory(), RESPONSE_DIRECTORY + File.separator + "distributed"), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         // Only returns non-deleted nodes to fix NMS-2977
         // http://issues.opennms.org/browse/NMS-2977
@@ -523,8 +535,8 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         List<OnmsResource> resources = new LinkedList<OnmsResource>();
 
         Set<String> nodeSources = findNodeSourceDirectories();
-        Set<String> responseTimeInterfaces = findChildrenMatchingFilter(new File(getRrdDirectory(), RESPONSE_DIRECTORY), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
-        Set<String> distributedResponseTimeInterfaces = findChildrenChildrenMatchingFilter(new File(new File(getRrdDirectory(), RESPONSE_DIRECTORY), "distributed"), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+        Set<String> responseTimeInterfaces = findChildrenMatchingFilter(ResourceTypeUtils.resolve(getRrdDirectory(), RESPONSE_DIRECTORY), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+        Set<String> distributedResponseTimeInterfaces = findChildrenChildrenMatchingFilter(ResourceTypeUtils.resolve(getRrdDirectory(), RESPONSE_DIRECTORY + File.separator + "distributed"), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         List<OnmsNode> nodes = m_nodeDao.findAll();
         IntSet nodesFound = new IntSet();
@@ -567,7 +579,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     public List<OnmsResource> findDomainResources() {
         List<OnmsResource> resources = new LinkedList<OnmsResource>();
         
-        File snmp = new File(getRrdDirectory(), SNMP_DIRECTORY);
+        File snmp = ResourceTypeUtils.resolve(getRrdDirectory(), SNMP_DIRECTORY);
 
         // Get all of the non-numeric directory names in the RRD directory; these
         // are the names of the domains that have performance data
@@ -614,7 +626,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
      */
     protected OnmsResource getForeignSourceNodeEntityResource(String resource) {
         
-        File idDir = new File(getRrdDirectory(), SNMP_DIRECTORY + File.separator + ResourceTypeUtils.getRelativeNodeSourceDirectory(resource).toString());
+        File idDir = ResourceTypeUtils.resolve(getRrdDirectory(), SNMP_DIRECTORY + File.separator + ResourceTypeUtils.getRelativeNodeSourceDirectory(resource).toString());
         if (idDir.isDirectory() && RrdFileConstants.NODESOURCE_DIRECTORY_FILTER.accept(idDir)) {
             return m_nodeSourceResourceType.createChildResource(resource);
         } else {
@@ -639,8 +651,8 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
      */
     protected OnmsResource getDomainEntityResource(String domain) {
         
-        File directory = new File(getRrdDirectory(), SNMP_DIRECTORY);
-        File domainDir = new File(directory, domain);
+        File directory = ResourceTypeUtils.resolve(getRrdDirectory(), SNMP_DIRECTORY);
+        File domainDir = ResourceTypeUtils.resolve(directory, domain);
         if (!domainDir.isDirectory()) {
             throw new ObjectRetrievalFailureException(OnmsResource.class, domain, "Domain not found due to domain RRD directory not existing or not a directory: " + domainDir.getAbsolutePath(), null);
         }
@@ -655,7 +667,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private IntSet findSnmpNodeDirectories() {
         IntSet nodes = new IntSet();
         
-        File directory = new File(getRrdDirectory(), SNMP_DIRECTORY);
+        File directory = ResourceTypeUtils.resolve(getRrdDirectory(), SNMP_DIRECTORY);
         File[] nodeDirs = directory.listFiles(RrdFileConstants.NODE_DIRECTORY_FILTER);
 
         if (nodeDirs == null || nodeDirs.length == 0) {
@@ -681,8 +693,8 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
      */
     public Set<String> findNodeSourceDirectories() {
        Set<String> nodeSourceDirectories = new HashSet<String>();
-       File snmpDir = new File(getRrdDirectory(), SNMP_DIRECTORY);
-       File forSrcDir = new File(snmpDir, FOREIGN_SOURCE_DIRECTORY);
+       File snmpDir = ResourceTypeUtils.resolve(getRrdDirectory(), SNMP_DIRECTORY);
+       File forSrcDir = ResourceTypeUtils.resolve(snmpDir, FOREIGN_SOURCE_DIRECTORY);
        File[] sourceDirs = forSrcDir.listFiles(RrdFileConstants.SOURCE_DIRECTORY_FILTER);
        if (sourceDirs != null) {
            for (File sourceDir : sourceDirs) {
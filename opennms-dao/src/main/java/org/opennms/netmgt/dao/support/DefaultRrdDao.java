@@ -29,12 +29,18 @@
 package org.opennms.netmgt.dao.support;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import org.opennms.core.utils.LogUtils;
 import org.opennms.netmgt.dao.RrdDao;
 import org.opennms.netmgt.model.OnmsAttribute;
 import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
 import org.springframework.beans.factory.InitializingBean;
@@ -50,6 +56,12 @@ import org.springframework.util.StringUtils;
  * @version $Id: $
  */
 public class DefaultRrdDao implements RrdDao, InitializingBean {
+    /**
+     * Upper bound on the number of data sources defined in a single graph
+     * command by {@link #getPrintValuesForAttributes}.
+     */
+    public static final int MAX_DEFS_PER_COMMAND = 64;
+
     private RrdStrategy<?, ?> m_rrdStrategy;
     private File m_rrdBaseDirectory;
     private String m_rrdBinaryPath;
@@ -99,6 +111,74 @@ public class DefaultRrdDao implements RrdDao, InitializingBean {
         String commandString = StringUtils.arrayToDelimitedString(command, " ") + ' ' + StringUtils.arrayToDelimitedString(printDefs, " ");
 
         LogUtils.debugf(this, "commandString: %s", commandString);
+        return getPrintLineValues(commandString, printFunctions.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Attributes are sorted by RRD file so that all of the data sources of
+     * one file are defined next to each other in the same graph command and
+     * the strategy only has to fetch each file once.  Large requests are
+     * split into several commands of at most MAX_DEFS_PER_COMMAND data
+     * sources each.
+     */
+    public double[][] getPrintValuesForAttributes(List<? extends OnmsAttribute> attributes, String rraConsolidationFunction, long startTimeInMillis, long endTimeInMillis, String... printFunctions) {
+        Assert.notNull(attributes, "attributes argument must not be null");
+        Assert.notNull(rraConsolidationFunction, "rraConsolicationFunction argument must not be null");
+        Assert.isTrue(endTimeInMillis > startTimeInMillis, "end argument must be after start argument");
+
+        if (printFunctions.length < 1) {
+            printFunctions = new String[] { rraConsolidationFunction };
+        }
+
+        final List<Integer> order = new ArrayList<Integer>(attributes.size());
+        for (int i = 0; i < attributes.size(); i++) {
+            OnmsAttribute attribute = attributes.get(i);
+            Assert.notNull(attribute, "attributes argument must not contain null elements");
+            Assert.isAssignable(attribute.getClass(), RrdGraphAttribute.class, "attributes must be assignable to RrdGraphAttribute");
+            order.add(i);
+        }
+
+        final List<? extends OnmsAttribute> attrs = attributes;
+        Collections.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return ((RrdGraphAttribute) attrs.get(o1)).getRrdRelativePath().compareTo(((RrdGraphAttribute) attrs.get(o2)).getRrdRelativePath());
+            }
+        });
+
+        double[][] values = new double[attributes.size()][];
+        for (int from = 0; from < order.size(); from += MAX_DEFS_PER_COMMAND) {
+            List<Integer> chunk = order.subList(from, Math.min(order.size(), from + MAX_DEFS_PER_COMMAND));
+
+            StringBuilder commandString = new StringBuilder();
+            commandString.append(m_rrdBinaryPath).append(" graph - --start=").append(startTimeInMillis / 1000).append(" --end=").append(endTimeInMillis / 1000);
+
+            for (int i = 0; i < chunk.size(); i++) {
+                RrdGraphAttribute rrdAttribute = (RrdGraphAttribute) attributes.get(chunk.get(i));
+                commandString.append(" DEF:ds").append(i).append('=').append(RrdFileConstants.escapeForGraphing(rrdAttribute.getRrdRelativePath()))
+                    .append(':').append(rrdAttribute.getName()).append(':').append(rraConsolidationFunction);
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                for (String printFunction : printFunctions) {
+                    commandString.append(" PRINT:ds").append(i).append(':').append(printFunction).append(":\"%le\"");
+                }
+            }
+
+            LogUtils.debugf(this, "commandString: %s", commandString);
+            double[] chunkValues = getPrintLineValues(commandString.toString(), chunk.size() * printFunctions.length);
+
+            for (int i = 0; i < chunk.size(); i++) {
+                double[] row = new double[printFunctions.length];
+                System.arraycopy(chunkValues, i * printFunctions.length, row, 0, printFunctions.length);
+                values[chunk.get(i)] = row;
+            }
+        }
+
+        return values;
+    }
+
+    private double[] getPrintLineValues(String commandString, int expectedLines) {
         RrdGraphDetails graphDetails;
         try {
             graphDetails = m_rrdStrategy.createGraphReturnDetails(commandString, m_rrdBaseDirectory);
@@ -113,8 +193,8 @@ public class DefaultRrdDao implements RrdDao, InitializingBean {
             throw new DataAccessResourceFailureException("Failure to get print lines from graph after graphing with command '" + commandString + "'", e);
         }
       
-        if (printLines.length != printFunctions.length) {
-            throw new DataAccessResourceFailureException("Returned number of print lines should be "+printFunctions.length+", but was " + printLines.length + " from command: " + commandString);
+        if (printLines.length != expectedLines) {
+            throw new DataAccessResourceFailureException("Returned number of print lines should be "+expectedLines+", but was " + printLines.length + " from command: " + commandString);
         }
 
         double[] values = new double[printLines.length];
@@ -244,6 +324,26 @@ public class DefaultRrdDao implements RrdDao, InitializingBean {
         return m_rrdStrategy.getGraphRightOffset();
     }
 
+    /** {@inheritDoc} */
+    public void fetch(OnmsAttribute attribute, String rraConsolidationFunction, long startTimeInMillis, long endTimeInMillis, RrdFetchHandler handler) throws IOException, DataAccessResourceFailureException {
+        Assert.notNull(attribute, "attribute argument must not be null");
+        Assert.notNull(rraConsolidationFunction, "rraConsolidationFunction argument must not be null");
+        Assert.isTrue(endTimeInMillis > startTimeInMillis, "end argument must be after start argument");
+        Assert.notNull(handler, "handler argument must not be null");
+        Assert.isAssignable(attribute.getClass(), RrdGraphAttribute.class, "attribute argument must be assignable to RrdGraphAttribute");
+
+        RrdGraphAttribute rrdAttribute = (RrdGraphAttribute) attribute;
+
+        File rrdFile = new File(m_rrdBaseDirectory, rrdAttribute.getRrdRelativePath());
+        try {
+            m_rrdStrategy.fetch(rrdFile.getAbsolutePath(), new String[] { attribute.getName() }, rraConsolidationFunction, startTimeInMillis, endTimeInMillis, handler);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new DataAccessResourceFailureException("Failure to fetch rows from file '" + rrdFile + "' from " + startTimeInMillis + " to " + endTimeInMillis, e);
+        }
+    }
+
     /** {@inheritDoc} */
     public Double getLastFetchValue(OnmsAttribute attribute, int interval) throws DataAccessResourceFailureException {
         Assert.notNull(attribute, "attribute argument must not be null");
@@ -244,7 +244,7 @@ public class DistributedStatusResourceType implements OnmsResourceType {
      * @return a {@link java.io.File} object.
      */
     public File getInterfaceDirectory(int id, String ipAddr) {
-        return new File(m_resourceDao.getRrdDirectory(), getRelativeInterfacePath(id, ipAddr));
+        return ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(), getRelativeInterfacePath(id, ipAddr));
     }
     
     /**
@@ -267,7 +267,7 @@ public class DistributedStatusResourceType implements OnmsResourceType {
     }
     
     private File getLocationMonitorDirectory(String locationMonitorId, boolean verify) throws ObjectRetrievalFailureException {
-        File locationMonitorDirectory = new File(m_resourceDao.getRrdDirectory(verify), locationMonitorId);
+        File locationMonitorDirectory = ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(verify), locationMonitorId);
 
         if (verify && !locationMonitorDirectory.isDirectory()) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for node " + locationMonitorId + ": " + locationMonitorDirectory);
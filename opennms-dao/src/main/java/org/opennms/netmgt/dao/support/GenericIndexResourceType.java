@@ -115,14 +115,14 @@ public class GenericIndexResourceType implements OnmsResourceType {
     }
     
     private File getResourceTypeDirectory(int nodeId, boolean verify) {
-        File snmp = new File(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.SNMP_DIRECTORY);
+        File snmp = ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.SNMP_DIRECTORY);
         
-        File node = new File(snmp, Integer.toString(nodeId));
+        File node = ResourceTypeUtils.resolve(snmp, Integer.toString(nodeId));
         if (verify && !node.isDirectory()) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for node " + nodeId + ": " + node);
         }
 
-        File generic = new File(node, getName());
+        File generic = ResourceTypeUtils.resolve(node, getName());
         if (verify && !generic.isDirectory()) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for generic index " + getName() + ": " + generic);
         }
@@ -131,14 +131,14 @@ public class GenericIndexResourceType implements OnmsResourceType {
     }
     
     private File getResourceTypeDirectory(String nodeSource, boolean verify) {
-        File snmp = new File(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.SNMP_DIRECTORY);
+        File snmp = ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.SNMP_DIRECTORY);
 
-        File dir = new File(snmp, ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
+        File dir = ResourceTypeUtils.resolve(snmp, ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
         if (verify && !dir.isDirectory()) {
             throw new ObjectRetrievalFailureException(File.class, "No directory exists for nodeSource " + nodeSource);
         }
 
-        File generic = new File(dir, getName());
+        File generic = ResourceTypeUtils.resolve(dir, getName());
         if (verify && !generic.isDirectory()) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for generic index " + getName() + ": " + generic);
         }
@@ -466,10 +466,10 @@ public class GenericIndexResourceType implements OnmsResourceType {
     
     /** {@inheritDoc} */
     public boolean isResourceTypeOnNodeSource(String nodeSource, int nodeId) {
-        File forSrc = new File(m_resourceDao.getRrdDirectory(), DefaultResourceDao.SNMP_DIRECTORY);
+        File forSrc = ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(), DefaultResourceDao.SNMP_DIRECTORY);
 
-        File node = new File(forSrc, ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
-        File generic = new File(node, getName());
+        File node = ResourceTypeUtils.resolve(forSrc, ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
+        File generic = ResourceTypeUtils.resolve(node, getName());
         return generic.isDirectory();
     }
 
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file below the RRD directory whose existence checks and directory
+ * listings are answered from an {@link RrdResourceIndex}, falling back to
+ * the filesystem for paths the index knows nothing about.  Files listed
+ * from it, or resolved below it with
+ * {@link ResourceTypeUtils#resolve(File, String)}, are indexed as well, so
+ * the existing {@link RrdFileConstants} filters work unchanged.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+class IndexedRrdFile extends File {
+    private static final long serialVersionUID = 1L;
+
+    private final transient RrdResourceIndex m_index;
+    private final String m_indexPath;
+
+    IndexedRrdFile(RrdResourceIndex index, File rrdDirectory) {
+        super(rrdDirectory.getPath());
+        m_index = index;
+        m_indexPath = "";
+    }
+
+    IndexedRrdFile(IndexedRrdFile parent, String name) {
+        super(parent, name);
+        m_index = parent.m_index;
+        m_indexPath = parent.m_indexPath.length() == 0 ? name : parent.m_indexPath + '/' + name;
+    }
+
+    /**
+     * Resolves a relative path that may contain several path elements.
+     */
+    static File resolve(IndexedRrdFile parent, String child) {
+        File file = parent;
+        for (String name : child.split(File.separatorChar == '/' ? "/" : "[/\\\\]")) {
+            if (name.length() == 0) {
+                continue;
+            }
+            if (".".equals(name) || "..".equals(name)) {
+                return new File(parent, child);
+            }
+            file = new IndexedRrdFile((IndexedRrdFile) file, name);
+        }
+        return file;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean exists() {
+        switch (m_index.getType(m_indexPath)) {
+        case RrdResourceIndex.FILE:
+        case RrdResourceIndex.DIRECTORY:
+            return true;
+        case RrdResourceIndex.MISSING:
+            return false;
+        default:
+            return super.exists();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isDirectory() {
+        switch (m_index.getType(m_indexPath)) {
+        case RrdResourceIndex.DIRECTORY:
+            return true;
+        case RrdResourceIndex.FILE:
+        case RrdResourceIndex.MISSING:
+            return false;
+        default:
+            return super.isDirectory();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isFile() {
+        switch (m_index.getType(m_indexPath)) {
+        case RrdResourceIndex.FILE:
+            return true;
+        case RrdResourceIndex.DIRECTORY:
+        case RrdResourceIndex.MISSING:
+            return false;
+        default:
+            return super.isFile();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] list() {
+        switch (m_index.getType(m_indexPath)) {
+        case RrdResourceIndex.DIRECTORY:
+            return m_index.list(m_indexPath);
+        case RrdResourceIndex.FILE:
+        case RrdResourceIndex.MISSING:
+            return null;
+        default:
+            return super.list();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] list(FilenameFilter filter) {
+        String[] names = list();
+        if (names == null || filter == null) {
+            return names;
+        }
+        List<String> accepted = new ArrayList<String>(names.length);
+        for (String name : names) {
+            if (filter.accept(this, name)) {
+                accepted.add(name);
+            }
+        }
+        return accepted.toArray(new String[accepted.size()]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public File[] listFiles() {
+        return listFiles((FileFilter) null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public File[] listFiles(FilenameFilter filter) {
+        String[] names = list(filter);
+        if (names == null) {
+            return null;
+        }
+        File[] files = new File[names.length];
+        for (int i = 0; i < names.length; i++) {
+            files[i] = new IndexedRrdFile(this, names[i]);
+        }
+        return files;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public File[] listFiles(FileFilter filter) {
+        String[] names = list();
+        if (names == null) {
+            return null;
+        }
+        List<File> files = new ArrayList<File>(names.length);
+        for (String name : names) {
+            File file = new IndexedRrdFile(this, name);
+            if (filter == null || filter.accept(file)) {
+                files.add(file);
+            }
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    /**
+     * Serialize as a plain {@link File}; the index only lives in this JVM.
+     */
+    private Object writeReplace() {
+        return new File(getPath());
+    }
+}
@@ -109,9 +109,9 @@ public class InterfaceSnmpResourceType implements OnmsResourceType {
     }
     
     private File getParentResourceDirectory(String parentResource, boolean verify) {
-        File snmp = new File(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.SNMP_DIRECTORY);
+        File snmp = ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.SNMP_DIRECTORY);
         
-        File parent = new File(snmp, parentResource);
+        File parent = ResourceTypeUtils.resolve(snmp, parentResource);
         if (verify && !parent.isDirectory()) {
             throw new ObjectRetrievalFailureException(File.class, "No parent resource directory exists for " + parentResource + ": " + parent);
         }
@@ -349,8 +349,8 @@ public class InterfaceSnmpResourceType implements OnmsResourceType {
         }
 
         ArrayList<String> intfs = new ArrayList<String>();
-        File snmp = new File(m_resourceDao.getRrdDirectory(), DefaultResourceDao.SNMP_DIRECTORY);
-        File domainDir = new File(snmp, domain);
+        File snmp = ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(), DefaultResourceDao.SNMP_DIRECTORY);
+        File domainDir = ResourceTypeUtils.resolve(snmp, domain);
 
         if (!domainDir.exists() || !domainDir.isDirectory()) {
             throw new IllegalArgumentException("No such directory: " + domainDir);
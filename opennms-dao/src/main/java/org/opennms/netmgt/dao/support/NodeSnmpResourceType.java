@@ -85,9 +85,9 @@ public class NodeSnmpResourceType implements OnmsResourceType {
      * @return a {@link java.io.File} object.
      */
     public File getResourceDirectory(int nodeId, boolean verify) {
-        File snmp = new File(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.SNMP_DIRECTORY);
+        File snmp = ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.SNMP_DIRECTORY);
         
-        File node = new File(snmp, Integer.toString(nodeId));
+        File node = ResourceTypeUtils.resolve(snmp, Integer.toString(nodeId));
         if (verify && !node.isDirectory()) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for node " + nodeId + ": " + node);
         }
@@ -133,7 +133,7 @@ public class NodeSnmpResourceType implements OnmsResourceType {
     
     /** {@inheritDoc} */
     public boolean isResourceTypeOnNodeSource(String nodeSource, int nodeId) {
-        File nodeSnmpDir = new File(m_resourceDao.getRrdDirectory(), DefaultResourceDao.SNMP_DIRECTORY + File.separator
+        File nodeSnmpDir = ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(), DefaultResourceDao.SNMP_DIRECTORY + File.separator
                        + ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
         if (!nodeSnmpDir.isDirectory()) {
             throw new ObjectRetrievalFailureException(File.class, "No directory exists for nodeSource " + nodeSource);
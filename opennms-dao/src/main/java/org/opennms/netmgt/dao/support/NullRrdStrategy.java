@@ -38,6 +38,7 @@ import java.util.Properties;
 
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
 
@@ -82,6 +83,10 @@ public class NullRrdStrategy implements RrdStrategy<Object,Object> {
 		return null;
 	}
 
+	public void fetch(String rrdFile, String[] dsNames, String consolidationFunction, long start, long end, RrdFetchHandler handler)
+			throws IOException, RrdException {
+	}
+
 	public String getStats() {
 		return null;
 	}
@@ -100,6 +105,10 @@ public class NullRrdStrategy implements RrdStrategy<Object,Object> {
 			throws Exception {
 	}
 
+	public void updateFile(Object rrd, String owner, long timestamp,
+			double[] values) throws Exception {
+	}
+
     public int getGraphLeftOffset() {
         return 0;
     }
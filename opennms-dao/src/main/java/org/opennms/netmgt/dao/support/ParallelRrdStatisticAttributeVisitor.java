@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.utils.LogUtils;
+import org.opennms.netmgt.model.AttributeStatisticVisitor;
+import org.opennms.netmgt.model.OnmsAttribute;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.util.Assert;
+
+/**
+ * <p>An {@link RrdStatisticAttributeVisitor} that does not read each
+ * attribute as it is visited.  Attributes are collected into batches that
+ * are read with a single {@link org.opennms.netmgt.dao.RrdDao#getPrintValuesForAttributes}
+ * call each, and the batches are spread over a pool of worker threads.
+ * The statistics are merged into the statistic visitor while holding its
+ * monitor, so a {@link BottomNAttributeStatisticVisitor} stays a bounded
+ * heap no matter how many threads feed it.</p>
+ *
+ * <p>The resource tree itself is still walked on the caller's thread since
+ * loading child resources may need the caller's Hibernate session; only the
+ * RRD reads, which dominate the cost of a report, run in parallel.</p>
+ *
+ * <p>Callers must wrap the walk in {@link #start()} and {@link #finish()},
+ * and should call {@link #cancel()} in a finally block.</p>
+ */
+public class ParallelRrdStatisticAttributeVisitor extends RrdStatisticAttributeVisitor {
+    /** System property holding the number of threads reading RRD files. */
+    public static final String THREADS_PROPERTY = "org.opennms.rrd.statistics.threads";
+
+    /** System property holding the number of attributes read in one batch. */
+    public static final String BATCH_SIZE_PROPERTY = "org.opennms.rrd.statistics.batchSize";
+
+    private static final long PROGRESS_INTERVAL = 30000L;
+
+    private int m_threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+    private int m_batchSize = Integer.getInteger(BATCH_SIZE_PROPERTY, 32);
+
+    private ExecutorService m_executor;
+    private List<RrdGraphAttribute> m_batch;
+    private final LinkedList<Future<?>> m_pending = new LinkedList<Future<?>>();
+
+    private final AtomicLong m_attributeCount = new AtomicLong();
+    private final AtomicLong m_fetchCount = new AtomicLong();
+    private final AtomicLong m_statisticCount = new AtomicLong();
+    private final AtomicLong m_fetchNanos = new AtomicLong();
+    private long m_startedNanos;
+    private long m_lastProgress;
+
+    /**
+     * Prepares a new walk.  Counters are reset and, when more than one
+     * thread is configured, the worker pool is started.
+     */
+    public synchronized void start() {
+        Assert.state(m_batch == null, "start has already been called");
+
+        m_attributeCount.set(0);
+        m_fetchCount.set(0);
+        m_statisticCount.set(0);
+        m_fetchNanos.set(0);
+        m_startedNanos = System.nanoTime();
+        m_lastProgress = System.currentTimeMillis();
+
+        m_batch = new ArrayList<RrdGraphAttribute>(m_batchSize);
+
+        if (m_threads > 1) {
+            // a bounded queue with caller-runs keeps the walker from running far ahead of the readers
+            m_executor = new ThreadPoolExecutor(m_threads, m_threads, 0L, TimeUnit.MILLISECONDS,
+                                                new ArrayBlockingQueue<Runnable>(m_threads * 4),
+                                                new LogPreservingThreadFactory(getClass().getSimpleName(), m_threads, true),
+                                                new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void visit(OnmsAttribute attribute) {
+        if (!RrdGraphAttribute.class.isAssignableFrom(attribute.getClass())) {
+            // Nothing to do if we can't cast to an RrdGraphAttribute
+            return;
+        }
+        Assert.state(m_batch != null, "start must be called before visiting attributes");
+
+        m_attributeCount.incrementAndGet();
+        m_batch.add((RrdGraphAttribute) attribute);
+        if (m_batch.size() >= m_batchSize) {
+            submitBatch();
+            logProgress();
+        }
+    }
+
+    /**
+     * Reads whatever is left in the current batch and waits for all
+     * outstanding reads.  The first failure of any read is rethrown here.
+     */
+    public synchronized void finish() {
+        Assert.state(m_batch != null, "start must be called before finish");
+
+        if (!m_batch.isEmpty()) {
+            submitBatch();
+        }
+        while (!m_pending.isEmpty()) {
+            waitFor(m_pending.removeFirst());
+        }
+
+        long elapsed = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_startedNanos));
+        long fetches = m_fetchCount.get();
+        LogUtils.infof(this, "Read %d statistics for %d attributes with %d RRD reads on %d threads in %dms (%.1f attributes/s, %.1fms per read)",
+                       m_statisticCount.get(), m_attributeCount.get(), fetches, Math.max(1, m_threads), elapsed,
+                       m_attributeCount.get() * 1000.0 / elapsed,
+                       fetches == 0 ? 0.0 : TimeUnit.NANOSECONDS.toMicros(m_fetchNanos.get()) / 1000.0 / fetches);
+
+        cancel();
+    }
+
+    /**
+     * Stops the worker pool and drops any outstanding reads.  Does nothing
+     * if the walk has already finished.
+     */
+    public synchronized void cancel() {
+        if (m_executor != null) {
+            m_executor.shutdownNow();
+            m_executor = null;
+        }
+        m_pending.clear();
+        m_batch = null;
+    }
+
+    private void submitBatch() {
+        final List<RrdGraphAttribute> batch = m_batch;
+        m_batch = new ArrayList<RrdGraphAttribute>(m_batchSize);
+
+        if (m_executor == null) {
+            fetch(batch);
+            return;
+        }
+
+        m_pending.add(m_executor.submit(new Runnable() {
+            public void run() {
+                fetch(batch);
+            }
+        }));
+
+        // reap finished reads so failures surface early and the list stays short
+        while (!m_pending.isEmpty() && m_pending.getFirst().isDone()) {
+            waitFor(m_pending.removeFirst());
+        }
+    }
+
+    private void waitFor(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new DataRetrievalFailureException("Interrupted while waiting for RRD statistics", e);
+        } catch (ExecutionException e) {
+            cancel();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new DataRetrievalFailureException("Failure reading RRD statistics", e.getCause());
+        }
+    }
+
+    private void fetch(List<RrdGraphAttribute> batch) {
+        long started = System.nanoTime();
+
+        double[] values = new double[batch.size()];
+        if (batch.size() == 1) {
+            values[0] = getRrdDao().getPrintValue(batch.get(0), getConsolidationFunction(), getStartTime(), getEndTime());
+        } else {
+            double[][] rows = getRrdDao().getPrintValuesForAttributes(batch, getConsolidationFunction(), getStartTime(), getEndTime());
+            for (int i = 0; i < rows.length; i++) {
+                values[i] = rows[i][0];
+            }
+        }
+
+        m_fetchNanos.addAndGet(System.nanoTime() - started);
+        m_fetchCount.incrementAndGet();
+
+        AttributeStatisticVisitor statisticVisitor = getStatisticVisitor();
+        synchronized (statisticVisitor) {
+            for (int i = 0; i < values.length; i++) {
+                // NaN means there is no data, see RrdStatisticAttributeVisitor
+                if (!Double.isNaN(values[i])) {
+                    statisticVisitor.visit(batch.get(i), values[i]);
+                    m_statisticCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void logProgress() {
+        long now = System.currentTimeMillis();
+        if (now - m_lastProgress < PROGRESS_INTERVAL) {
+            return;
+        }
+        m_lastProgress = now;
+
+        long elapsed = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_startedNanos));
+        LogUtils.infof(this, "Progress: %d attributes visited, %d RRD reads done, %d statistics kept so far (%.1f attributes/s)",
+                       m_attributeCount.get(), m_fetchCount.get(), m_statisticCount.get(), m_attributeCount.get() * 1000.0 / elapsed);
+    }
+
+    /**
+     * <p>getAttributeCount</p>
+     *
+     * @return the number of RRD attributes visited during the current or last walk
+     */
+    public long getAttributeCount() {
+        return m_attributeCount.get();
+    }
+
+    /**
+     * <p>getFetchCount</p>
+     *
+     * @return the number of RRD reads issued during the current or last walk
+     */
+    public long getFetchCount() {
+        return m_fetchCount.get();
+    }
+
+    /**
+     * <p>getStatisticCount</p>
+     *
+     * @return the number of non-NaN statistics handed to the statistic visitor
+     */
+    public long getStatisticCount() {
+        return m_statisticCount.get();
+    }
+
+    /**
+     * <p>getThreads</p>
+     *
+     * @return a int.
+     */
+    public int getThreads() {
+        return m_threads;
+    }
+
+    /**
+     * <p>setThreads</p>
+     *
+     * @param threads the number of threads reading RRD files, 1 reads on
+     *            the caller's thread
+     */
+    public void setThreads(int threads) {
+        m_threads = threads;
+    }
+
+    /**
+     * <p>getBatchSize</p>
+     *
+     * @return a int.
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * <p>setBatchSize</p>
+     *
+     * @param batchSize the number of attributes read with one RRD call
+     */
+    public void setBatchSize(int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     */
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        Assert.state(m_threads > 0, "property threads must be greater than zero");
+        Assert.state(m_batchSize > 0, "property batchSize must be greater than zero");
+    }
+}
@@ -87,7 +87,7 @@ public abstract class ResourceTypeUtils {
 
     private static void loadRrdAttributes(File rrdDirectory, String relativePath, Set<OnmsAttribute> attributes) {
         int suffixLength = RrdFileConstants.getRrdSuffix().length();
-        File resourceDir = new File(rrdDirectory, relativePath);
+        File resourceDir = resolve(rrdDirectory, relativePath);
         File[] files = resourceDir.listFiles(RrdFileConstants.RRD_FILENAME_FILTER);
         
         if (files == null) {
@@ -178,14 +178,18 @@ public abstract class ResourceTypeUtils {
         Assert.notNull(rrdDirectory, "rrdDirectory argument must not be null");
         Assert.notNull(relativePath, "relativePath argument must not be null");
         
-        File resourceDir = new File(rrdDirectory, relativePath);
+        File resourceDir = resolve(rrdDirectory, relativePath);
         
         return getStringProperties(resourceDir);
     }
 
     private static Properties getStringProperties(File resourceDir) {
         Assert.notNull(resourceDir, "resourceDir argumnet must not be null");
-        return getProperties(new File(resourceDir, DefaultResourceDao.STRINGS_PROPERTIES_FILE_NAME));
+        File propertiesFile = resolve(resourceDir, DefaultResourceDao.STRINGS_PROPERTIES_FILE_NAME);
+        if (!propertiesFile.exists()) {
+            return null;
+        }
+        return getProperties(propertiesFile);
     }
 
     /**
@@ -233,7 +237,10 @@ public abstract class ResourceTypeUtils {
      */
     public static void updateDsProperties(File resourceDir, Map<String, String> dsNamesToRrdNames) {
         try {
-            s_cache.updateProperties(new File(resourceDir, DS_PROPERTIES_FILE), dsNamesToRrdNames);
+            File propertiesFile = new File(resourceDir, DS_PROPERTIES_FILE);
+            if (s_cache.updateProperties(propertiesFile, dsNamesToRrdNames)) {
+                RrdResourceIndex.notifyFileCreated(propertiesFile);
+            }
         } catch (IOException e) {
             log().error("Unable to save DataSource Properties file" + e, e);
         }
@@ -250,7 +257,9 @@ public abstract class ResourceTypeUtils {
      */
     public static void updateStringProperty(File resourceDir, String attrVal, String attrName) throws FileNotFoundException, IOException {
         File propertiesFile = new File(resourceDir, DefaultResourceDao.STRINGS_PROPERTIES_FILE_NAME);
-        s_cache.setProperty(propertiesFile, attrName, attrVal);
+        if (s_cache.setProperty(propertiesFile, attrName, attrVal)) {
+            RrdResourceIndex.notifyFileCreated(propertiesFile);
+        }
     }
 
     /**
@@ -271,6 +280,23 @@ public abstract class ResourceTypeUtils {
         }
     }
     
+    /**
+     * Returns the file at the relative path <code>child</code> below
+     * <code>parent</code>.  Unlike <code>new File(parent, child)</code>, the
+     * result keeps answering directory queries from the
+     * {@link RrdResourceIndex} when <code>parent</code> came from it.
+     *
+     * @param parent a {@link java.io.File} object.
+     * @param child a {@link java.lang.String} object.
+     * @return a {@link java.io.File} object.
+     */
+    public static File resolve(File parent, String child) {
+        if (parent instanceof IndexedRrdFile) {
+            return IndexedRrdFile.resolve((IndexedRrdFile) parent, child);
+        }
+        return new File(parent, child);
+    }
+
     /**
      * 
      * @param nodeSource a {@link java.lang.String} object.
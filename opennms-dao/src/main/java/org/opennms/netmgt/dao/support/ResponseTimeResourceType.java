@@ -111,9 +111,9 @@ public class ResponseTimeResourceType implements OnmsResourceType {
     }
 
     private File getInterfaceDirectory(final String ipAddr, final boolean verify) {
-    	final File response = new File(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.RESPONSE_DIRECTORY);
+    	final File response = ResourceTypeUtils.resolve(m_resourceDao.getRrdDirectory(verify), DefaultResourceDao.RESPONSE_DIRECTORY);
         
-    	final File intfDir = new File(response, ipAddr);
+    	final File intfDir = ResourceTypeUtils.resolve(response, ipAddr);
         if (verify && !intfDir.isDirectory()) {
             throw new ObjectRetrievalFailureException(File.class, "No interface directory exists for " + ipAddr + ": " + intfDir);
         }
@@ -0,0 +1,847 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.opennms.core.utils.ThreadCategory;
+
+/**
+ * Persistent index of the files below the RRD directory.
+ *
+ * <p>Finding resources used to mean listing and stat'ing directories under
+ * the RRD directory for every graph page, KSC report and REST request, which
+ * is very slow on large trees kept on network storage.  This index keeps the
+ * tree in memory, backed by an append-only journal
+ * (<code>.resource-index</code> in the RRD directory) that is shared by every
+ * process that writes or reads RRD data:</p>
+ * <ul>
+ * <li>writers such as the collectd persisters call
+ * {@link #notifyFileCreated(File)} when they create a file, which appends a
+ * record to the journal;</li>
+ * <li>a background reconciler periodically rebuilds the journal from a full
+ * scan so that files created or removed by anything else are picked up;</li>
+ * <li>readers tail the journal and answer directory queries for the files
+ * returned by {@link #getRootDirectory()}.</li>
+ * </ul>
+ *
+ * <p>The journal is a UTF-8 text file.  The first line is a header
+ * identifying the scan it was built from.  It is followed by one record per
+ * line: <code>+snmp/1/ifInOctets.jrb</code> adds a file,
+ * <code>+snmp/1/</code> adds a directory and <code>-snmp/1</code> removes a
+ * path and everything below it.</p>
+ *
+ * <p>Until a journal has been built, or for directories the index does not
+ * know about, lookups fall back to the filesystem.</p>
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+public class RrdResourceIndex {
+    /** Set this system property to <code>true</code> to maintain and use the index. */
+    public static final String ENABLED_PROPERTY = "org.opennms.rrd.resourceIndex";
+
+    /** How often, in milliseconds, the index is rebuilt from a full scan. */
+    public static final String RECONCILE_INTERVAL_PROPERTY = "org.opennms.rrd.resourceIndex.reconcileInterval";
+
+    /** Constant <code>DEFAULT_RECONCILE_INTERVAL=21600000</code> (6 hours) */
+    public static final long DEFAULT_RECONCILE_INTERVAL = 6L * 60L * 60L * 1000L;
+
+    /** Constant <code>INDEX_FILE_NAME=".resource-index"</code> */
+    public static final String INDEX_FILE_NAME = ".resource-index";
+
+    static final int UNKNOWN = 0;
+    static final int MISSING = 1;
+    static final int FILE = 2;
+    static final int DIRECTORY = 3;
+
+    private static final String LOCK_FILE_NAME = INDEX_FILE_NAME + ".lock";
+    private static final String TEMP_FILE_NAME = INDEX_FILE_NAME + ".tmp";
+    private static final String HEADER_PREFIX = "#RRDINDEX ";
+    private static final int MAX_HEADER_LENGTH = 256;
+    private static final int MAX_DEPTH = 32;
+    private static final long REFRESH_INTERVAL = 1000L;
+    private static final long RECONCILE_CHECK_INTERVAL = 5L * 60L * 1000L;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // regions of the lock file: appends and the final swap of a rebuild hold
+    // the first byte, a running rebuild holds the second
+    private static final long APPEND_LOCK_REGION = 0L;
+    private static final long REBUILD_LOCK_REGION = 1L;
+
+    private static final Map<String, RrdResourceIndex> s_indexes = new HashMap<String, RrdResourceIndex>();
+
+    private final File m_rrdDirectory;
+    private final File m_indexFile;
+    private final File m_lockFile;
+    private final File m_tempFile;
+    private final IndexedRrdFile m_rootDirectory;
+
+    private final Object m_writeLock = new Object();
+    private final ReentrantLock m_refreshLock = new ReentrantLock();
+    private volatile Snapshot m_snapshot = new Snapshot(null);
+    private volatile long m_lastRefresh = 0L;
+    private FileChannel m_lockChannel;
+    private Timer m_reconciler;
+
+    /**
+     * <p>Constructor for RrdResourceIndex.</p>
+     *
+     * @param rrdDirectory a {@link java.io.File} object.
+     */
+    public RrdResourceIndex(File rrdDirectory) {
+        m_rrdDirectory = rrdDirectory.getAbsoluteFile();
+        m_indexFile = new File(m_rrdDirectory, INDEX_FILE_NAME);
+        m_lockFile = new File(m_rrdDirectory, LOCK_FILE_NAME);
+        m_tempFile = new File(m_rrdDirectory, TEMP_FILE_NAME);
+        m_rootDirectory = new IndexedRrdFile(this, m_rrdDirectory);
+    }
+
+    /**
+     * <p>isEnabled</p>
+     *
+     * @return true if the {@link #ENABLED_PROPERTY} system property is set
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Returns the index shared by everything in this JVM that works with
+     * the given RRD directory.
+     *
+     * @param rrdDirectory a {@link java.io.File} object.
+     * @return a {@link org.opennms.netmgt.dao.support.RrdResourceIndex} object.
+     */
+    public static RrdResourceIndex getInstance(File rrdDirectory) {
+        String key = rrdDirectory.getAbsolutePath();
+        synchronized (s_indexes) {
+            RrdResourceIndex index = s_indexes.get(key);
+            if (index == null) {
+                index = new RrdResourceIndex(rrdDirectory);
+                s_indexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Records a newly created file in the index for the
+     * <code>rrd.base.dir</code> directory.  Does nothing if the index is
+     * disabled or the file is not below that directory.
+     *
+     * @param file a {@link java.io.File} object.
+     */
+    public static void notifyFileCreated(File file) {
+        RrdResourceIndex index = getDefaultInstance();
+        if (index != null) {
+            index.fileCreated(file);
+        }
+    }
+
+    /**
+     * Records the removal of a file or directory tree in the index for the
+     * <code>rrd.base.dir</code> directory.  Does nothing if the index is
+     * disabled or the path is not below that directory.
+     *
+     * @param file a {@link java.io.File} object.
+     */
+    public static void notifyPathRemoved(File file) {
+        RrdResourceIndex index = getDefaultInstance();
+        if (index != null) {
+            index.pathRemoved(file);
+        }
+    }
+
+    private static RrdResourceIndex getDefaultInstance() {
+        String rrdDirectory = System.getProperty("rrd.base.dir");
+        if (!isEnabled() || rrdDirectory == null) {
+            return null;
+        }
+        return getInstance(new File(rrdDirectory));
+    }
+
+    /**
+     * Returns the RRD directory as a file whose directory queries, and those
+     * of the files below it, are answered from this index.
+     *
+     * @return a {@link java.io.File} object.
+     */
+    public File getRootDirectory() {
+        return m_rootDirectory;
+    }
+
+    /**
+     * <p>isReady</p>
+     *
+     * @return true once a journal built from a full scan has been loaded
+     */
+    public boolean isReady() {
+        refreshIfStale();
+        return m_snapshot.isComplete();
+    }
+
+    /**
+     * <p>getLastRebuildTime</p>
+     *
+     * @return the time in milliseconds of the full scan the loaded journal
+     * was built from, or 0 if there is none
+     */
+    public long getLastRebuildTime() {
+        return m_snapshot.getBuiltAt();
+    }
+
+    /**
+     * Records a newly created file.
+     *
+     * @param file a {@link java.io.File} object.
+     */
+    public void fileCreated(File file) {
+        String path = getIndexPath(file);
+        if (path == null || path.length() == 0) {
+            return;
+        }
+
+        refreshIfStale();
+        Snapshot snapshot = m_snapshot;
+        if (!snapshot.isComplete()) {
+            // the first full scan will find it
+            return;
+        }
+        if (snapshot.getType(path) == FILE) {
+            return;
+        }
+
+        snapshot.addFile(path);
+        append("+" + path);
+    }
+
+    /**
+     * Records the removal of a file or of a directory and everything below it.
+     *
+     * @param file a {@link java.io.File} object.
+     */
+    public void pathRemoved(File file) {
+        String path = getIndexPath(file);
+        if (path == null || path.length() == 0) {
+            return;
+        }
+
+        refreshIfStale();
+        Snapshot snapshot = m_snapshot;
+        if (!snapshot.isComplete()) {
+            return;
+        }
+
+        snapshot.remove(path);
+        append("-" + path);
+    }
+
+    int getType(String path) {
+        refreshIfStale();
+        return m_snapshot.getType(path);
+    }
+
+    String[] list(String path) {
+        refreshIfStale();
+        return m_snapshot.list(path);
+    }
+
+    private String getIndexPath(File file) {
+        String root = m_rrdDirectory.getPath();
+        String path = file.getAbsolutePath();
+        if (path.equals(root)) {
+            return "";
+        }
+        if (!path.startsWith(root) || path.charAt(root.length()) != File.separatorChar) {
+            return null;
+        }
+
+        path = path.substring(root.length() + 1);
+        if (File.separatorChar != '/') {
+            path = path.replace(File.separatorChar, '/');
+        }
+        for (String name : path.split("/")) {
+            if (name.length() == 0 || ".".equals(name) || "..".equals(name) || name.indexOf('\n') >= 0) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    private void refreshIfStale() {
+        long now = System.currentTimeMillis();
+        if (now - m_lastRefresh < REFRESH_INTERVAL) {
+            return;
+        }
+
+        // if another thread is already reading the journal, use what we have
+        if (!m_refreshLock.tryLock()) {
+            return;
+        }
+        try {
+            m_lastRefresh = now;
+            refresh();
+        } finally {
+            m_refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Reads any records appended to the journal since it was last read, or
+     * the whole journal if it has been rebuilt.
+     */
+    public void refresh() {
+        m_refreshLock.lock();
+        try {
+            Snapshot snapshot = m_snapshot;
+            if (!m_indexFile.exists()) {
+                if (snapshot.isComplete()) {
+                    m_snapshot = new Snapshot(null);
+                }
+                return;
+            }
+
+            InputStream in = new FileInputStream(m_indexFile);
+            try {
+                String header = readHeader(in);
+                if (header == null) {
+                    log().warn("Ignoring RRD resource index " + m_indexFile + " without a valid header");
+                    return;
+                }
+
+                long headerLength = header.getBytes(UTF8).length + 1;
+                if (!header.equals(snapshot.getHeader())) {
+                    // the journal has been rebuilt; load it into a fresh snapshot
+                    // so that lookups keep using the old one in the meantime
+                    snapshot = new Snapshot(header);
+                    snapshot.setOffset(headerLength);
+                } else {
+                    skipFully(in, snapshot.getOffset() - headerLength);
+                }
+
+                snapshot.setOffset(snapshot.getOffset() + readRecords(in, snapshot));
+                m_snapshot = snapshot;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            log().warn("Unable to read RRD resource index " + m_indexFile + ": " + e, e);
+        } finally {
+            m_refreshLock.unlock();
+        }
+    }
+
+    private static String readHeader(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(64);
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (header.size() >= MAX_HEADER_LENGTH) {
+                return null;
+            }
+            header.write(c);
+        }
+        if (c != '\n') {
+            return null;
+        }
+
+        String line = header.toString("UTF-8");
+        return line.startsWith(HEADER_PREFIX) ? line : null;
+    }
+
+    private static String readHeader(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            return readHeader(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new IOException("RRD resource index is shorter than expected");
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Applies every complete line and returns the number of bytes consumed.
+     * A trailing partial line is left for the next read.
+     */
+    private static long readRecords(InputStream in, Snapshot snapshot) throws IOException {
+        byte[] buffer = new byte[65536];
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        long consumed = 0L;
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                if (buffer[i] == '\n') {
+                    line.write(buffer, start, i - start);
+                    snapshot.apply(line.toString("UTF-8"));
+                    consumed += line.size() + 1;
+                    line.reset();
+                    start = i + 1;
+                }
+            }
+            line.write(buffer, start, count - start);
+        }
+        return consumed;
+    }
+
+    private void append(String record) {
+        synchronized (m_writeLock) {
+            FileLock lock = null;
+            OutputStream out = null;
+            try {
+                lock = getLockChannel().lock(APPEND_LOCK_REGION, 1L, false);
+                if (!m_indexFile.exists()) {
+                    return;
+                }
+                out = new FileOutputStream(m_indexFile, true);
+                out.write((record + "\n").getBytes(UTF8));
+            } catch (IOException e) {
+                log().warn("Unable to update RRD resource index " + m_indexFile + ": " + e, e);
+            } finally {
+                closeQuietly(out);
+                release(lock);
+            }
+        }
+    }
+
+    private synchronized FileChannel getLockChannel() throws IOException {
+        // keep a single channel open: on POSIX systems closing any descriptor
+        // for the lock file would drop every lock this process holds on it
+        if (m_lockChannel == null) {
+            m_lockChannel = new RandomAccessFile(m_lockFile, "rw").getChannel();
+        }
+        return m_lockChannel;
+    }
+
+    /**
+     * Replaces the journal with one built from a full scan of the RRD
+     * directory.  Records appended by other writers while the scan runs are
+     * carried over to the new journal.
+     *
+     * @return false if a rebuild was already running, in this or another
+     * process
+     * @throws java.io.IOException if any.
+     */
+    public boolean rebuild() throws IOException {
+        if (!m_rrdDirectory.isDirectory()) {
+            return false;
+        }
+
+        FileLock rebuildLock;
+        try {
+            rebuildLock = getLockChannel().tryLock(REBUILD_LOCK_REGION, 1L, false);
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+        if (rebuildLock == null) {
+            return false;
+        }
+
+        try {
+            doRebuild();
+            return true;
+        } finally {
+            release(rebuildLock);
+        }
+    }
+
+    private void doRebuild() throws IOException {
+        long start = System.currentTimeMillis();
+        String header = HEADER_PREFIX + start + " " + Long.toHexString(System.nanoTime());
+
+        String previousHeader;
+        long previousLength;
+        synchronized (m_writeLock) {
+            FileLock lock = getLockChannel().lock(APPEND_LOCK_REGION, 1L, false);
+            try {
+                previousHeader = readHeader(m_indexFile);
+                previousLength = m_indexFile.length();
+            } finally {
+                release(lock);
+            }
+        }
+
+        int files;
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_tempFile), UTF8), 65536);
+        try {
+            out.write(header);
+            out.write('\n');
+            files = scan(m_rrdDirectory, "", 0, out);
+        } finally {
+            out.close();
+        }
+
+        synchronized (m_writeLock) {
+            FileLock lock = getLockChannel().lock(APPEND_LOCK_REGION, 1L, false);
+            try {
+                if (previousHeader != null && previousHeader.equals(readHeader(m_indexFile))) {
+                    copyTail(m_indexFile, previousLength, m_tempFile);
+                }
+                if (!m_tempFile.renameTo(m_indexFile)) {
+                    // renameTo does not replace an existing file on every platform
+                    if (!m_indexFile.delete() || !m_tempFile.renameTo(m_indexFile)) {
+                        throw new IOException("Unable to replace RRD resource index " + m_indexFile);
+                    }
+                }
+            } finally {
+                release(lock);
+            }
+        }
+
+        log().info("Rebuilt RRD resource index " + m_indexFile + " with " + files + " files in " + (System.currentTimeMillis() - start) + "ms");
+        refresh();
+    }
+
+    private static int scan(File directory, String path, int depth, Writer out) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return 0;
+        }
+
+        int files = 0;
+        for (File child : children) {
+            String name = child.getName();
+            if (name.indexOf('\n') >= 0 || (depth == 0 && name.startsWith(INDEX_FILE_NAME))) {
+                continue;
+            }
+
+            String childPath = depth == 0 ? name : path + '/' + name;
+            if (child.isDirectory()) {
+                if (depth < MAX_DEPTH) {
+                    files += scan(child, childPath, depth + 1, out);
+                }
+            } else {
+                out.write('+');
+                out.write(childPath);
+                out.write('\n');
+                files++;
+            }
+        }
+
+        // directories that contain files or other directories are implied
+        if (depth > 0 && children.length == 0) {
+            out.write('+');
+            out.write(path);
+            out.write("/\n");
+        }
+        return files;
+    }
+
+    private static void copyTail(File from, long offset, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            skipFully(in, offset);
+            OutputStream out = new FileOutputStream(to, true);
+            try {
+                byte[] buffer = new byte[65536];
+                int count;
+                while ((count = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Starts a daemon thread that rebuilds the journal whenever it is missing
+     * or older than the interval given by {@link #RECONCILE_INTERVAL_PROPERTY}.
+     * Every process using the index may run one; only the first to notice an
+     * outdated journal rebuilds it.
+     */
+    public synchronized void startReconciler() {
+        if (m_reconciler != null) {
+            return;
+        }
+
+        final long interval = Long.getLong(RECONCILE_INTERVAL_PROPERTY, DEFAULT_RECONCILE_INTERVAL);
+        m_reconciler = new Timer("RrdResourceIndex-Reconciler", true);
+        m_reconciler.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                reconcile(interval);
+            }
+        }, 0L, Math.min(interval, RECONCILE_CHECK_INTERVAL));
+    }
+
+    /**
+     * <p>stopReconciler</p>
+     */
+    public synchronized void stopReconciler() {
+        if (m_reconciler != null) {
+            m_reconciler.cancel();
+            m_reconciler = null;
+        }
+    }
+
+    private void reconcile(long interval) {
+        try {
+            refresh();
+            Snapshot snapshot = m_snapshot;
+            if (snapshot.isComplete() && System.currentTimeMillis() - snapshot.getBuiltAt() < interval) {
+                return;
+            }
+            rebuild();
+        } catch (Throwable t) {
+            log().warn("Unable to rebuild RRD resource index " + m_indexFile + ": " + t, t);
+        }
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static void release(FileLock lock) {
+        if (lock != null) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static ThreadCategory log() {
+        return ThreadCategory.getInstance(RrdResourceIndex.class);
+    }
+
+    /**
+     * In-memory view of one journal.  The maps may be read while records
+     * are applied, so the per-directory sets are synchronized.
+     */
+    private static class Snapshot {
+        private final String m_header;
+        private final long m_builtAt;
+        private final ConcurrentMap<String, Set<String>> m_directories = new ConcurrentHashMap<String, Set<String>>();
+        private final ConcurrentMap<String, Set<String>> m_files = new ConcurrentHashMap<String, Set<String>>();
+        private long m_offset;
+
+        public Snapshot(String header) {
+            m_header = header;
+            m_builtAt = parseBuiltAt(header);
+            m_directories.put("", newSet());
+        }
+
+        private static long parseBuiltAt(String header) {
+            if (header == null) {
+                return 0L;
+            }
+            String[] fields = header.substring(HEADER_PREFIX.length()).split(" ");
+            try {
+                return Long.parseLong(fields[0]);
+            } catch (NumberFormatException e) {
+                return 0L;
+            }
+        }
+
+        private static Set<String> newSet() {
+            return Collections.synchronizedSet(new HashSet<String>(4));
+        }
+
+        public String getHeader() {
+            return m_header;
+        }
+
+        public boolean isComplete() {
+            return m_header != null;
+        }
+
+        public long getBuiltAt() {
+            return m_builtAt;
+        }
+
+        public long getOffset() {
+            return m_offset;
+        }
+
+        public void setOffset(long offset) {
+            m_offset = offset;
+        }
+
+        public void apply(String record) {
+            if (record.length() < 2) {
+                return;
+            }
+            String path = record.substring(1);
+            switch (record.charAt(0)) {
+            case '+':
+                if (path.endsWith("/")) {
+                    addDirectory(path.substring(0, path.length() - 1));
+                } else {
+                    addFile(path);
+                }
+                break;
+            case '-':
+                remove(path);
+                break;
+            default:
+                break;
+            }
+        }
+
+        public void addDirectory(String path) {
+            if (m_directories.containsKey(path)) {
+                return;
+            }
+            int slash = path.lastIndexOf('/');
+            String parent = slash < 0 ? "" : path.substring(0, slash);
+            addDirectory(parent);
+            m_directories.putIfAbsent(path, newSet());
+            m_directories.get(parent).add(path.substring(slash + 1));
+        }
+
+        public void addFile(String path) {
+            int slash = path.lastIndexOf('/');
+            String parent = slash < 0 ? "" : path.substring(0, slash);
+            addDirectory(parent);
+            Set<String> files = m_files.get(parent);
+            if (files == null) {
+                m_files.putIfAbsent(parent, newSet());
+                files = m_files.get(parent);
+            }
+            files.add(path.substring(slash + 1));
+        }
+
+        public void remove(String path) {
+            if (path.length() == 0) {
+                return;
+            }
+            int slash = path.lastIndexOf('/');
+            String parent = slash < 0 ? "" : path.substring(0, slash);
+            String name = path.substring(slash + 1);
+
+            Set<String> siblings = m_directories.get(parent);
+            if (siblings != null) {
+                siblings.remove(name);
+            }
+            siblings = m_files.get(parent);
+            if (siblings != null) {
+                siblings.remove(name);
+            }
+
+            removeTree(m_directories, path);
+            removeTree(m_files, path);
+        }
+
+        private static void removeTree(Map<String, Set<String>> map, String path) {
+            String prefix = path + "/";
+            for (Iterator<String> it = map.keySet().iterator(); it.hasNext();) {
+                String key = it.next();
+                if (key.equals(path) || key.startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+
+        public int getType(String path) {
+            if (!isComplete()) {
+                return UNKNOWN;
+            }
+            if (m_directories.containsKey(path)) {
+                return DIRECTORY;
+            }
+
+            int slash = path.lastIndexOf('/');
+            String parent = slash < 0 ? "" : path.substring(0, slash);
+            Set<String> files = m_files.get(parent);
+            if (files != null && files.contains(path.substring(slash + 1))) {
+                return FILE;
+            }
+            // only trust a miss if we know what is in the parent directory
+            return m_directories.containsKey(parent) ? MISSING : UNKNOWN;
+        }
+
+        public String[] list(String path) {
+            if (!isComplete()) {
+                return null;
+            }
+            Set<String> directories = m_directories.get(path);
+            if (directories == null) {
+                return null;
+            }
+
+            Set<String> files = m_files.get(path);
+            Set<String> names = new HashSet<String>();
+            synchronized (directories) {
+                names.addAll(directories);
+            }
+            if (files != null) {
+                synchronized (files) {
+                    names.addAll(files);
+                }
+            }
+            return names.toArray(new String[names.size()]);
+        }
+    }
+}
@@ -47,6 +47,7 @@ import org.opennms.core.test.db.TemporaryDatabase;
 import org.opennms.core.test.db.TemporaryDatabaseAware;
 import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
 import org.opennms.core.utils.BeanUtils;
+import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.config.mock.MockNotifdConfigManager;
 import org.opennms.netmgt.config.notifications.Notification;
 import org.opennms.netmgt.dao.CategoryDao;
@@ -67,6 +68,7 @@ import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 
 @RunWith(OpenNMSJUnit4ClassRunner.class)
@@ -420,6 +422,47 @@ public class NotificationManagerTest implements TemporaryDatabaseAware<Temporary
                 false);
     }
     
+    /**
+     * Rules are evaluated against a copy of the inventory, so a change in
+     * the database is only seen once an event for the node arrives.
+     */
+    @Test
+    @JUnitTemporaryDatabase // Relies on specific IDs so we need a fresh database
+    public void testCategoryChangeFollowsEvent() {
+        doTestNodeInterfaceServiceWithRule("node/interface/service match",
+                                           1, "192.168.1.1", "HTTP",
+                                           "(catincCategoryFour)",
+                                           false);
+
+        new JdbcTemplate(m_dataSource).update("INSERT INTO category_node (categoryId, nodeId) VALUES (?, ?)", m_categoryDao.findByName("CategoryFour").getId(), 1);
+
+        doTestNodeInterfaceServiceWithRule("node/interface/service match",
+                                           1, "192.168.1.1", "HTTP",
+                                           "(catincCategoryFour)",
+                                           false);
+
+        EventBuilder builder = new EventBuilder(EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI, "Test.Event");
+        builder.setNodeid(1);
+        m_notificationManager.updateFilterCache(builder.getEvent());
+
+        doTestNodeInterfaceServiceWithRule("node/interface/service match",
+                                           1, "192.168.1.1", "HTTP",
+                                           "(catincCategoryFour)",
+                                           true);
+    }
+
+    /**
+     * Rules that cannot be evaluated in memory still go to the database.
+     */
+    @Test
+    @JUnitTemporaryDatabase // Relies on specific IDs so we need a fresh database
+    public void testRuleNotEvaluatedInMemory() {
+        doTestNodeInterfaceServiceWithRule("node/interface/service match",
+                                           3, "192.168.1.2", "HTTP",
+                                           "(nodelabel IN ('node 1', 'node 3'))",
+                                           true);
+    }
+
     private void doTestNodeInterfaceServiceWithRule(String description, int nodeId, String intf, String svc, String rule, boolean matches) {
         Notification notif = new Notification();
         notif.setName("a notification");
@@ -37,9 +37,11 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -173,5 +175,23 @@ public class IpInterfaceDaoTest implements InitializingBean {
         assertEquals("node ID for 192.168.2.1", Integer.valueOf(m_databasePopulator.getNode1().getId() + 1), interfaceNodes.get(InetAddressUtils.addr("192.168.2.1")));
         assertFalse("node ID for *BOGUS*IP* should not have been found", interfaceNodes.containsKey("*BOGUS*IP*"));
     }
+
+	@Test
+	@Transactional
+	public void testUpdateLastCapsdPoll() throws Exception {
+		Integer nodeId = m_databasePopulator.getNode1().getId();
+		OnmsIpInterface first = m_ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, "192.168.1.1");
+		OnmsIpInterface second = m_ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, "192.168.1.2");
+
+		Date stamp = new Date(1234567890000L);
+		assertEquals(1, m_ipInterfaceDao.updateLastCapsdPoll(nodeId, Arrays.asList(first.getId()), stamp));
+		assertEquals(0, m_ipInterfaceDao.updateLastCapsdPoll(nodeId, Arrays.<Integer>asList(), stamp));
+		// an interface of another node is left alone
+		assertEquals(0, m_ipInterfaceDao.updateLastCapsdPoll(nodeId + 1, Arrays.asList(second.getId()), stamp));
+
+		m_ipInterfaceDao.clear();
+		assertEquals(stamp.getTime(), m_ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, "192.168.1.1").getIpLastCapsdPoll().getTime());
+		assertFalse(stamp.equals(m_ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, "192.168.1.2").getIpLastCapsdPoll()));
+	}
     
 }
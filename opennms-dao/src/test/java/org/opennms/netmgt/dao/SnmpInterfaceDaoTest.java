@@ -29,9 +29,12 @@
 package org.opennms.netmgt.dao;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -88,4 +91,20 @@ public class SnmpInterfaceDaoTest implements InitializingBean {
 		
 	}
 
+	@Test
+	@Transactional
+	public void testUpdateLastCapsdPoll() throws Exception {
+		Integer nodeId = m_databasePopulator.getNode1().getId();
+		assertEquals(4, m_snmpInterfaceDao.findByNodeId(nodeId).size());
+
+		Date stamp = new Date(1234567890000L);
+		assertEquals(2, m_snmpInterfaceDao.updateLastCapsdPoll(nodeId, Arrays.asList(1, 3), stamp));
+		assertEquals(0, m_snmpInterfaceDao.updateLastCapsdPoll(nodeId, Arrays.<Integer>asList(), stamp));
+
+		m_snmpInterfaceDao.clear();
+		assertEquals(stamp.getTime(), m_snmpInterfaceDao.findByNodeIdAndIfIndex(nodeId, 1).getLastCapsdPoll().getTime());
+		assertEquals(stamp.getTime(), m_snmpInterfaceDao.findByNodeIdAndIfIndex(nodeId, 3).getLastCapsdPoll().getTime());
+		assertFalse(stamp.equals(m_snmpInterfaceDao.findByNodeIdAndIfIndex(nodeId, 2).getLastCapsdPoll()));
+	}
+
 }
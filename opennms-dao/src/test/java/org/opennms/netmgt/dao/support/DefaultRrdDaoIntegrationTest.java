@@ -30,8 +30,10 @@ package org.opennms.netmgt.dao.support;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -41,6 +43,7 @@ import org.opennms.netmgt.model.OnmsAttribute;
 import org.opennms.netmgt.model.OnmsResource;
 import org.opennms.netmgt.model.RrdGraphAttribute;
 import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdUtils;
@@ -130,6 +133,50 @@ public class DefaultRrdDaoIntegrationTest extends TestCase {
         assertEquals("value", 1.0, value);
     }
     
+    public void testFetch() throws Exception {
+        long start = System.currentTimeMillis();
+        long end = start + (10 * 300 * 1000);
+
+        OnmsResource topResource = new OnmsResource("1", "Node One", new MockResourceType(), new HashSet<OnmsAttribute>(0));
+
+        OnmsAttribute attribute = new RrdGraphAttribute("ifInOctets", "snmp/1/eth0", "ifInOctets.jrb");
+        HashSet<OnmsAttribute> attributeSet = new HashSet<OnmsAttribute>(1);
+        attributeSet.add(attribute);
+
+        OnmsResource childResource = new OnmsResource("eth0", "Interface One: eth0", new MockResourceType(), attributeSet);
+        childResource.setParent(topResource);
+
+        File snmp = m_fileAnticipator.tempDir(DefaultResourceDao.SNMP_DIRECTORY);
+        File node = m_fileAnticipator.tempDir(snmp, topResource.getName());
+        File intf = m_fileAnticipator.tempDir(node, childResource.getName());
+
+        RrdDataSource rrdDataSource = new RrdDataSource(attribute.getName(), "GAUGE", 600, "U", "U");
+        Object def = m_rrdStrategy.createDefinition("test", intf.getAbsolutePath(), attribute.getName(), 300, Collections.singletonList(rrdDataSource), Collections.singletonList("RRA:AVERAGE:0.5:1:100"));
+        m_rrdStrategy.createFile(def, null);
+        File rrdFile = m_fileAnticipator.expecting(intf, attribute.getName() + RrdUtils.getExtension());
+
+        Object rrdFileObject = m_rrdStrategy.openFile(rrdFile.getAbsolutePath());
+        for (int i = 0; i < 10; i++) {
+            m_rrdStrategy.updateFile(rrdFileObject, "test", (start/1000 + 300*i) + ":1");
+        }
+        m_rrdStrategy.closeFile(rrdFileObject);
+
+        final List<Long> timestamps = new ArrayList<Long>();
+        final List<Double> values = new ArrayList<Double>();
+        m_dao.fetch(attribute, "AVERAGE", start, end, new RrdFetchHandler() {
+            public void row(long timestamp, double[] row) {
+                timestamps.add(timestamp);
+                values.add(row[0]);
+            }
+        });
+
+        assertFalse("rows should have been fetched", timestamps.isEmpty());
+        for (int i = 1; i < timestamps.size(); i++) {
+            assertEquals("rows should be one step apart", 300000L, timestamps.get(i) - timestamps.get(i - 1));
+        }
+        assertTrue("a value of 1.0 should have been fetched", values.contains(1.0));
+    }
+
     public void testNMS4861() throws Exception
     {
     	//long endTime = 1312775700L;
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import static org.easymock.EasyMock.expect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opennms.netmgt.dao.RrdDao;
+import org.opennms.netmgt.mock.MockResourceType;
+import org.opennms.netmgt.model.AttributeStatistic;
+import org.opennms.netmgt.model.OnmsAttribute;
+import org.opennms.netmgt.model.OnmsResource;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.opennms.test.ThrowableAnticipator;
+import org.opennms.test.mock.EasyMockUtils;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+public class ParallelRrdStatisticAttributeVisitorTest extends TestCase {
+    private EasyMockUtils m_mocks = new EasyMockUtils();
+    private RrdDao m_rrdDao = m_mocks.createMock(RrdDao.class);
+    private Long m_startTime = System.currentTimeMillis();
+    private Long m_endTime = m_startTime + (24 * 60 * 60 * 1000); // one day
+    private TopNAttributeStatisticVisitor m_statisticVisitor = new TopNAttributeStatisticVisitor();
+
+    @Override
+    protected void setUp() throws Exception {
+        m_statisticVisitor.setCount(3);
+        m_statisticVisitor.afterPropertiesSet();
+    }
+
+    public void testAfterPropertiesSetNoBatchSize() throws Exception {
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = createVisitor(2, 0);
+
+        ThrowableAnticipator ta = new ThrowableAnticipator();
+        ta.anticipate(new IllegalStateException("property batchSize must be greater than zero"));
+
+        try {
+            attributeVisitor.afterPropertiesSet();
+        } catch (Throwable t) {
+            ta.throwableReceived(t);
+        }
+        ta.verifyAnticipated();
+    }
+
+    public void testVisitBeforeStart() throws Exception {
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = createVisitor(1, 4);
+        attributeVisitor.afterPropertiesSet();
+
+        ThrowableAnticipator ta = new ThrowableAnticipator();
+        ta.anticipate(new IllegalStateException("start must be called before visiting attributes"));
+
+        m_mocks.replayAll();
+        try {
+            attributeVisitor.visit(createAttribute(1));
+        } catch (Throwable t) {
+            ta.throwableReceived(t);
+        }
+        ta.verifyAnticipated();
+        m_mocks.verifyAll();
+    }
+
+    public void testBatchedReadsOnSeveralThreads() throws Exception {
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = createVisitor(3, 4);
+        attributeVisitor.afterPropertiesSet();
+
+        List<OnmsAttribute> attributes = new ArrayList<OnmsAttribute>();
+        for (int i = 0; i < 10; i++) {
+            attributes.add(createAttribute(i));
+        }
+
+        expect(m_rrdDao.getPrintValuesForAttributes(attributes.subList(0, 4), "AVERAGE", m_startTime, m_endTime)).andReturn(new double[][] { { 0.0 }, { 1.0 }, { 2.0 }, { 3.0 } });
+        expect(m_rrdDao.getPrintValuesForAttributes(attributes.subList(4, 8), "AVERAGE", m_startTime, m_endTime)).andReturn(new double[][] { { 4.0 }, { Double.NaN }, { 6.0 }, { 7.0 } });
+        expect(m_rrdDao.getPrintValuesForAttributes(attributes.subList(8, 10), "AVERAGE", m_startTime, m_endTime)).andReturn(new double[][] { { 8.0 }, { 9.0 } });
+
+        m_mocks.replayAll();
+        attributeVisitor.start();
+        try {
+            for (OnmsAttribute attribute : attributes) {
+                attributeVisitor.visit(attribute);
+            }
+            attributeVisitor.finish();
+        } finally {
+            attributeVisitor.cancel();
+        }
+        m_mocks.verifyAll();
+
+        assertEquals("attribute count", 10, attributeVisitor.getAttributeCount());
+        assertEquals("fetch count", 3, attributeVisitor.getFetchCount());
+        assertEquals("statistic count", 9, attributeVisitor.getStatisticCount());
+
+        List<Double> top = new ArrayList<Double>();
+        for (AttributeStatistic stat : m_statisticVisitor.getResults()) {
+            top.add(stat.getStatistic());
+        }
+        assertEquals("top statistics", Arrays.asList(9.0, 8.0, 7.0), top);
+    }
+
+    public void testSingleAttributeUsesPrintValue() throws Exception {
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = createVisitor(1, 4);
+        attributeVisitor.afterPropertiesSet();
+
+        OnmsAttribute attribute = createAttribute(1);
+        expect(m_rrdDao.getPrintValue(attribute, "AVERAGE", m_startTime, m_endTime)).andReturn(1.0);
+
+        m_mocks.replayAll();
+        attributeVisitor.start();
+        attributeVisitor.visit(attribute);
+        attributeVisitor.finish();
+        m_mocks.verifyAll();
+
+        assertEquals("results size", 1, m_statisticVisitor.getResults().size());
+    }
+
+    public void testReadFailureIsRethrownFromFinish() throws Exception {
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = createVisitor(2, 2);
+        attributeVisitor.afterPropertiesSet();
+
+        List<OnmsAttribute> attributes = Arrays.asList(createAttribute(1), createAttribute(2));
+        DataAccessResourceFailureException e = new DataAccessResourceFailureException("rrd is broken");
+        expect(m_rrdDao.getPrintValuesForAttributes(attributes, "AVERAGE", m_startTime, m_endTime)).andThrow(e);
+
+        ThrowableAnticipator ta = new ThrowableAnticipator();
+        ta.anticipate(e);
+
+        m_mocks.replayAll();
+        attributeVisitor.start();
+        try {
+            for (OnmsAttribute attribute : attributes) {
+                attributeVisitor.visit(attribute);
+            }
+            attributeVisitor.finish();
+        } catch (Throwable t) {
+            ta.throwableReceived(t);
+        } finally {
+            attributeVisitor.cancel();
+        }
+        ta.verifyAnticipated();
+        m_mocks.verifyAll();
+    }
+
+    private ParallelRrdStatisticAttributeVisitor createVisitor(int threads, int batchSize) {
+        ParallelRrdStatisticAttributeVisitor attributeVisitor = new ParallelRrdStatisticAttributeVisitor();
+        attributeVisitor.setRrdDao(m_rrdDao);
+        attributeVisitor.setConsolidationFunction("AVERAGE");
+        attributeVisitor.setStartTime(m_startTime);
+        attributeVisitor.setEndTime(m_endTime);
+        attributeVisitor.setStatisticVisitor(m_statisticVisitor);
+        attributeVisitor.setThreads(threads);
+        attributeVisitor.setBatchSize(batchSize);
+        return attributeVisitor;
+    }
+
+    private static OnmsAttribute createAttribute(int ifIndex) {
+        MockResourceType resourceType = new MockResourceType();
+        resourceType.setName("interfaceSnmp");
+        OnmsAttribute attribute = new RrdGraphAttribute("ifInOctets", "snmp/1/if" + ifIndex, "ifInOctets.jrb");
+        new OnmsResource("if" + ifIndex, "Interface " + ifIndex, resourceType, Collections.singleton(attribute));
+        return attribute;
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.test.FileAnticipator;
+
+public class RrdResourceIndexTest {
+    private FileAnticipator m_fileAnticipator;
+    private File m_rrdDirectory;
+    private File m_node;
+
+    @Before
+    public void setUp() throws Exception {
+        m_fileAnticipator = new FileAnticipator();
+        m_rrdDirectory = m_fileAnticipator.getTempDir();
+        m_fileAnticipator.expecting(RrdResourceIndex.INDEX_FILE_NAME);
+        m_fileAnticipator.expecting(RrdResourceIndex.INDEX_FILE_NAME + ".lock");
+        m_fileAnticipator.expecting(RrdResourceIndex.INDEX_FILE_NAME + ".tmp");
+
+        File snmp = m_fileAnticipator.tempDir("snmp");
+        m_node = m_fileAnticipator.tempDir(snmp, "1");
+        m_fileAnticipator.tempFile(m_node, "tcpActiveOpens.jrb");
+        File intf = m_fileAnticipator.tempDir(m_node, "eth0");
+        m_fileAnticipator.tempFile(intf, "ifInOctets.jrb");
+        m_fileAnticipator.tempFile(intf, "strings.properties");
+        m_fileAnticipator.tempDir(m_node, "empty");
+    }
+
+    @After
+    public void tearDown() {
+        m_fileAnticipator.tearDown();
+    }
+
+    @Test
+    public void testFallsBackToFilesystemBeforeFirstRebuild() {
+        RrdResourceIndex index = new RrdResourceIndex(m_rrdDirectory);
+        assertFalse("index should not be ready", index.isReady());
+
+        File node = ResourceTypeUtils.resolve(index.getRootDirectory(), "snmp" + File.separator + "1");
+        assertTrue("node directory should be found on disk", node.isDirectory());
+        assertEquals(names("tcpActiveOpens.jrb", "eth0", "empty"), names(node.list()));
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        RrdResourceIndex index = new RrdResourceIndex(m_rrdDirectory);
+        assertTrue("rebuild should run", index.rebuild());
+        assertTrue("index should be ready", index.isReady());
+
+        // anything created behind the index's back is not visible until the next rebuild
+        File unindexed = m_fileAnticipator.tempDir(new File(m_rrdDirectory, "snmp"), "2");
+        m_fileAnticipator.tempFile(unindexed, "tcpActiveOpens.jrb");
+
+        File snmp = ResourceTypeUtils.resolve(index.getRootDirectory(), "snmp");
+        assertEquals(names("1"), names(snmp.list()));
+        assertFalse("unindexed node directory should not be listed", ResourceTypeUtils.resolve(snmp, "2").isDirectory());
+
+        File node = ResourceTypeUtils.resolve(snmp, "1");
+        assertTrue(node.isDirectory());
+        assertTrue(ResourceTypeUtils.resolve(node, "tcpActiveOpens.jrb").isFile());
+        assertTrue(ResourceTypeUtils.resolve(node, "empty").isDirectory());
+        assertFalse(ResourceTypeUtils.resolve(node, "nonexistent.jrb").exists());
+        assertNull(ResourceTypeUtils.resolve(node, "nonexistent").listFiles());
+
+        File[] dirs = node.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isDirectory();
+            }
+        });
+        assertNotNull(dirs);
+        assertEquals(2, dirs.length);
+        for (File dir : dirs) {
+            assertTrue("listed files should use the index", dir instanceof IndexedRrdFile);
+        }
+
+        assertTrue("rebuild should run", index.rebuild());
+        assertTrue("node directory should be found after rebuild", ResourceTypeUtils.resolve(snmp, "2").isDirectory());
+    }
+
+    @Test
+    public void testUpdatesAreSharedThroughJournal() throws Exception {
+        RrdResourceIndex writer = new RrdResourceIndex(m_rrdDirectory);
+        assertTrue("rebuild should run", writer.rebuild());
+
+        // a second instance stands in for another process reading the same journal
+        RrdResourceIndex reader = new RrdResourceIndex(m_rrdDirectory);
+        File node = ResourceTypeUtils.resolve(reader.getRootDirectory(), "snmp" + File.separator + "1");
+        assertEquals(names("tcpActiveOpens.jrb", "eth0", "empty"), names(node.list()));
+
+        writer.fileCreated(new File(m_node, "tcpPassiveOpens.jrb"));
+        writer.fileCreated(new File(m_node, "eth1" + File.separator + "ifInOctets.jrb"));
+        writer.pathRemoved(new File(m_node, "eth0"));
+        reader.refresh();
+
+        assertEquals(names("tcpActiveOpens.jrb", "tcpPassiveOpens.jrb", "eth1", "empty"), names(node.list()));
+        assertTrue(ResourceTypeUtils.resolve(node, "eth1" + File.separator + "ifInOctets.jrb").isFile());
+        assertFalse(ResourceTypeUtils.resolve(node, "eth0").exists());
+    }
+
+    @Test
+    public void testIgnoresFilesOutsideRrdDirectory() throws Exception {
+        RrdResourceIndex index = new RrdResourceIndex(m_rrdDirectory);
+        assertTrue("rebuild should run", index.rebuild());
+        long length = new File(m_rrdDirectory, RrdResourceIndex.INDEX_FILE_NAME).length();
+
+        index.fileCreated(new File(m_rrdDirectory.getParentFile(), "outside.jrb"));
+        index.fileCreated(new File(m_node, ".." + File.separator + "escaped.jrb"));
+        index.fileCreated(new File(m_node, "tcpActiveOpens.jrb"));
+
+        assertEquals("journal should not grow", length, new File(m_rrdDirectory, RrdResourceIndex.INDEX_FILE_NAME).length());
+    }
+
+    private static Set<String> names(String... names) {
+        assertNotNull("names should not be null", names);
+        return new HashSet<String>(Arrays.asList(names));
+    }
+}
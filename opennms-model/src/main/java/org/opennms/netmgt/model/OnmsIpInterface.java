@@ -479,25 +479,32 @@ public class OnmsIpInterface extends OnmsEntity implements Serializable {
      * <p>mergeInterfaceAttributes</p>
      *
      * @param scannedIface a {@link org.opennms.netmgt.model.OnmsIpInterface} object.
+     * @return true if any attribute of this interface was changed
      */
-    public void mergeInterfaceAttributes(OnmsIpInterface scannedIface) {
+    public boolean mergeInterfaceAttributes(OnmsIpInterface scannedIface) {
+        boolean changed = false;
         
         if (hasNewValue(scannedIface.getIsManaged(), getIsManaged())) {
             setIsManaged(scannedIface.getIsManaged());
+            changed = true;
         }
     
         if (hasNewCollectionTypeValue(scannedIface.getIsSnmpPrimary(), getIsSnmpPrimary())) {
             setIsSnmpPrimary(scannedIface.getIsSnmpPrimary());
+            changed = true;
         }
     
         if (hasNewValue(scannedIface.getIpHostName(), getIpHostName())) {
             setIpHostName(scannedIface.getIpHostName());
+            changed = true;
         }
         
         if (hasNewValue(scannedIface.getIpLastCapsdPoll(), getIpLastCapsdPoll())) {
             setIpLastCapsdPoll(scannedIface.getIpLastCapsdPoll());
+            changed = true;
         }
         
+        return changed;
     }
     
     /**
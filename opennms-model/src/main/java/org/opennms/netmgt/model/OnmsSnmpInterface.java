@@ -686,61 +686,78 @@ public class OnmsSnmpInterface extends OnmsEntity implements Serializable {
      * <p>mergeSnmpInterfaceAttributes</p>
      *
      * @param scannedSnmpIface a {@link org.opennms.netmgt.model.OnmsSnmpInterface} object.
+     * @return true if any attribute of this interface was changed
      */
-    public void mergeSnmpInterfaceAttributes(OnmsSnmpInterface scannedSnmpIface) {
-        
+    public boolean mergeSnmpInterfaceAttributes(OnmsSnmpInterface scannedSnmpIface) {
+        boolean changed = false;
+
         if (hasNewValue(scannedSnmpIface.getIfAdminStatus(), getIfAdminStatus())) {
             setIfAdminStatus(scannedSnmpIface.getIfAdminStatus());
+            changed = true;
         }
         
         if (hasNewValue(scannedSnmpIface.getIfAlias(), getIfAlias())) {
             setIfAlias(scannedSnmpIface.getIfAlias());
+            changed = true;
         }
         
         if (hasNewValue(scannedSnmpIface.getIfDescr(), getIfDescr())) {
             setIfDescr(scannedSnmpIface.getIfDescr());
+            changed = true;
         }
             
         if (hasNewValue(scannedSnmpIface.getIfName(), getIfName())) {
             setIfName(scannedSnmpIface.getIfName());
+            changed = true;
         }
         
         if (hasNewValue(scannedSnmpIface.getIfOperStatus(), getIfOperStatus())) {
             setIfOperStatus(scannedSnmpIface.getIfOperStatus());
+            changed = true;
         }
         
         if (hasNewValue(scannedSnmpIface.getIfSpeed(), getIfSpeed())) {
             setIfSpeed(scannedSnmpIface.getIfSpeed());
+            changed = true;
         }
         
         if (hasNewValue(scannedSnmpIface.getIfType(), getIfType())) {
             setIfType(scannedSnmpIface.getIfType());
+            changed = true;
         }
         
         if (hasNewValue(scannedSnmpIface.getNetMask(), getNetMask())) {
             setNetMask(scannedSnmpIface.getNetMask());
+            changed = true;
         }
         
         if (hasNewValue(scannedSnmpIface.getPhysAddr(), getPhysAddr())) {
             setPhysAddr(scannedSnmpIface.getPhysAddr());
+            changed = true;
         }
         
         if (hasNewValue(scannedSnmpIface.getLastCapsdPoll(), getLastCapsdPoll())) {
             setLastCapsdPoll(scannedSnmpIface.getLastCapsdPoll());
+            changed = true;
         }
         
         if (hasNewValue(scannedSnmpIface.getPoll(), getPoll())) {
             setPoll(scannedSnmpIface.getPoll());
+            changed = true;
         }
 
         if (hasNewValue(scannedSnmpIface.getLastSnmpPoll(), getLastSnmpPoll())) {
             setLastSnmpPoll(scannedSnmpIface.getLastSnmpPoll());
+            changed = true;
         }
         
         if(scannedSnmpIface.isCollectionUserSpecified() || !isCollectionUserSpecified()){
+            final String collect = m_collect;
             setCollectionEnabled(scannedSnmpIface.isCollectionEnabled(), scannedSnmpIface.isCollectionUserSpecified());
+            changed |= !collect.equals(m_collect);
         }
         
+        return changed;
     }
 
 }
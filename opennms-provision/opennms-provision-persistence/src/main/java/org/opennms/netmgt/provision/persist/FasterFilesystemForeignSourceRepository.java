@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.provision.persist;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -311,8 +312,9 @@ public class FasterFilesystemForeignSourceRepository extends AbstractForeignSour
                     requisition.updateDateStamp();
                 }
                 outputStream = new FileOutputStream(outputFile);
-                writer = new OutputStreamWriter(outputStream, "UTF-8");
+                writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
                 JaxbUtils.marshal(requisition, writer);
+                writer.flush();
             } catch (final Throwable e) {
                 throw new ForeignSourceRepositoryException("unable to write requisition to " + outputFile.getPath(), e);
             } finally {
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.provision.persist;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
@@ -324,8 +325,10 @@ public class FilesystemForeignSourceRepository extends AbstractForeignSourceRepo
                     requisition.updateDateStamp();
                 }
                 outputStream = new FileOutputStream(outputFile);
-                writer = new OutputStreamWriter(outputStream, "UTF-8");
+                // large requisitions are marshalled in many small writes, buffer them ahead of the encoder
+                writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
                 JaxbUtils.marshal(requisition, writer);
+                writer.flush();
             } catch (final Throwable e) {
                 throw new ForeignSourceRepositoryException("unable to write requisition to " + outputFile.getPath(), e);
             } finally {
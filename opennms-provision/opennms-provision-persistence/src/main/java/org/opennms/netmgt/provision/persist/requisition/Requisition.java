@@ -44,6 +44,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -79,6 +80,9 @@ public class Requisition implements Serializable, Comparable<Requisition> {
 
 	@XmlTransient
     private Map<String, OnmsNodeRequisition> m_nodeReqs = new LinkedHashMap<String, OnmsNodeRequisition>();
+
+    /** set when a node in m_nodeReqs has had its foreign id changed since it was indexed **/
+    private boolean m_nodeReqsStale = false;
     
     @XmlElement(name="node")
     protected List<RequisitionNode> m_nodes = new ArrayList<RequisitionNode>();
@@ -102,16 +106,10 @@ public class Requisition implements Serializable, Comparable<Requisition> {
      * @param foreignId a {@link java.lang.String} object.
      * @return a {@link org.opennms.netmgt.provision.persist.requisition.RequisitionNode} object.
      */
-    public RequisitionNode getNode(String foreignId) {
-        if (m_nodes != null) {
-            for (RequisitionNode n : m_nodes) {
-                if (n.getForeignId().equals(foreignId)) {
-                	LogUtils.debugf(this, "returning node '%s' for foreign id '%s'", n, foreignId);
-                    return n;
-                }
-            }
-        }
-        return null;
+    public RequisitionNode getNode(final String foreignId) {
+        updateNodeCacheIfNecessary();
+        final OnmsNodeRequisition nodeReq = m_nodeReqs.get(foreignId);
+        return nodeReq == null ? null : nodeReq.getNode();
     }
 
     /**
@@ -119,17 +117,8 @@ public class Requisition implements Serializable, Comparable<Requisition> {
      *
      * @param node a {@link org.opennms.netmgt.provision.persist.requisition.RequisitionNode} object.
      */
-    public void deleteNode(RequisitionNode node) {
-        if (m_nodes != null) {
-            Iterator<RequisitionNode> i = m_nodes.iterator();
-            while (i.hasNext()) {
-                RequisitionNode n = i.next();
-                if (n.getForeignId().equals(node.getForeignId())) {
-                    i.remove();
-                    break;
-                }
-            }
-        }
+    public void deleteNode(final RequisitionNode node) {
+        deleteNode(node.getForeignId());
     }
 
     /**
@@ -139,13 +128,10 @@ public class Requisition implements Serializable, Comparable<Requisition> {
      */
     public void deleteNode(final String foreignId) {
         if (m_nodes != null) {
-        	final Iterator<RequisitionNode> i = m_nodes.iterator();
-            while (i.hasNext()) {
-                final RequisitionNode n = i.next();
-                if (n.getForeignId().equals(foreignId)) {
-                    i.remove();
-                    break;
-                }
+            final RequisitionNode n = getNode(foreignId);
+            if (n != null) {
+                removeNode(n);
+                m_nodeReqs.remove(foreignId);
             }
         }
     }
@@ -188,11 +174,10 @@ public class Requisition implements Serializable, Comparable<Requisition> {
     public void insertNode(final RequisitionNode node) {
         updateNodeCacheIfNecessary();
         if (m_nodeReqs.containsKey(node.getForeignId())) {
-        	final RequisitionNode n = m_nodeReqs.get(node.getForeignId()).getNode();
-            m_nodes.remove(n);
+            removeNode(m_nodeReqs.get(node.getForeignId()).getNode());
         }
         m_nodes.add(0, node);
-        m_nodeReqs.put(node.getForeignId(), new OnmsNodeRequisition(getForeignSource(), node));
+        indexNode(node);
     }
 
     /**
@@ -203,11 +188,10 @@ public class Requisition implements Serializable, Comparable<Requisition> {
     public void putNode(final RequisitionNode node) {
         updateNodeCacheIfNecessary();
         if (m_nodeReqs.containsKey(node.getForeignId())) {
-            final RequisitionNode n = m_nodeReqs.get(node.getForeignId()).getNode();
-            m_nodes.remove(n);
+            removeNode(m_nodeReqs.get(node.getForeignId()).getNode());
         }
         m_nodes.add(node);
-        m_nodeReqs.put(node.getForeignId(), new OnmsNodeRequisition(getForeignSource(), node));
+        indexNode(node);
     }
 
     /**
@@ -324,15 +308,45 @@ public class Requisition implements Serializable, Comparable<Requisition> {
 
     private void updateNodeCache() {
         m_nodeReqs.clear();
+        m_nodeReqsStale = false;
         if (m_nodes != null) {
             for (final RequisitionNode n : m_nodes) {
-                m_nodeReqs.put(n.getForeignId(), new OnmsNodeRequisition(getForeignSource(), n));
+                indexNode(n);
             }
         }
     }
+
+    private void indexNode(final RequisitionNode node) {
+        node.setIndexedBy(this);
+        m_nodeReqs.put(node.getForeignId(), new OnmsNodeRequisition(getForeignSource(), node));
+    }
+
+    /**
+     * Called by a node indexed by this requisition when its foreign id
+     * changes.
+     */
+    void nodeForeignIdChanged() {
+        m_nodeReqsStale = true;
+    }
     
+    /**
+     * Remove the given instance from the node list.  List.remove(Object)
+     * would compare every node before it with the deep equals(), which is
+     * far more expensive than finding the instance itself.
+     */
+    private void removeNode(final RequisitionNode node) {
+        final ListIterator<RequisitionNode> i = m_nodes.listIterator(m_nodes.size());
+        while (i.hasPrevious()) {
+            if (i.previous() == node) {
+                i.remove();
+                return;
+            }
+        }
+    }
+
 	private void updateNodeCacheIfNecessary() {
-		if (m_nodes != null && m_nodeReqs.size() != m_nodes.size()) {
+		if (m_nodes != null && (m_nodeReqsStale || m_nodeReqs.size() != m_nodes.size())) {
+            // a foreign id changed on a node itself leaves that node indexed under its old one
             updateNodeCache();
         }
 	}
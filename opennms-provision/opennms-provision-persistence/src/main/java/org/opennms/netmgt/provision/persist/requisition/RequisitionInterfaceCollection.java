@@ -28,8 +28,8 @@
 
 package org.opennms.netmgt.provision.persist.requisition;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 
 import javax.xml.bind.annotation.XmlAttribute;
@@ -44,7 +44,7 @@ import javax.xml.bind.annotation.XmlRootElement;
  * @version $Id: $
  */
 @XmlRootElement(name="interfaces")
-public class RequisitionInterfaceCollection extends LinkedList<RequisitionInterface> {
+public class RequisitionInterfaceCollection extends ArrayList<RequisitionInterface> {
 
     private static final long serialVersionUID = -7279860847652394855L;
 
@@ -82,6 +82,10 @@ public class RequisitionNode {
     @XmlAttribute(name = "parent-node-label")
     protected String m_parentNodeLabel;
 
+    /** the requisition that looks this node up by its foreign id **/
+    @XmlTransient
+    private Requisition m_indexedBy;
+
     /**
      * <p>getInterfaceCount</p>
      *
@@ -418,6 +422,13 @@ public class RequisitionNode {
      */
     public void setForeignId(String value) {
         m_foreignId = value;
+        if (m_indexedBy != null) {
+            m_indexedBy.nodeForeignIdChanged();
+        }
+    }
+
+    void setIndexedBy(final Requisition requisition) {
+        m_indexedBy = requisition;
     }
 
     /**
@@ -28,8 +28,8 @@
 
 package org.opennms.netmgt.provision.persist.requisition;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 
 import javax.xml.bind.annotation.XmlAttribute;
@@ -44,7 +44,7 @@ import javax.xml.bind.annotation.XmlRootElement;
  * @version $Id: $
  */
 @XmlRootElement(name="nodes")
-public class RequisitionNodeCollection extends LinkedList<RequisitionNode> {
+public class RequisitionNodeCollection extends ArrayList<RequisitionNode> {
 
     private static final long serialVersionUID = 7563467532077046047L;
 
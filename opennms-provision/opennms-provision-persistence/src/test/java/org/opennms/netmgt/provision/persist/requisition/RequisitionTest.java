@@ -28,6 +28,9 @@
 
 package org.opennms.netmgt.provision.persist.requisition;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -121,4 +124,59 @@ public class RequisitionTest {
 			assertTrue("foreignId2 should have 2 errors", e.getMessage().contains("foreignId2 (2 found)"));
 		}
 	}
+
+	@Test
+	public void testNodeLookups() {
+		final Requisition req = new Requisition("foreignSource1");
+		final List<RequisitionNode> nodes = new ArrayList<RequisitionNode>();
+		for (int i = 0; i < 1000; i++) {
+			nodes.add(createNode("foreignId" + i));
+		}
+		req.setNodes(nodes);
+		assertEquals("foreignId500", req.getNode("foreignId500").getForeignId());
+		assertNull(req.getNode("foreignId1000"));
+
+		// replacing a node keeps one entry per foreign id
+		final RequisitionNode replacement = createNode("foreignId500");
+		req.putNode(replacement);
+		assertEquals(1000, req.getNodeCount());
+		assertSame(replacement, req.getNode("foreignId500"));
+		assertSame(replacement, req.getNodes().get(999));
+
+		final RequisitionNode first = createNode("foreignId1000");
+		req.insertNode(first);
+		assertEquals(1001, req.getNodeCount());
+		assertSame(first, req.getNodes().get(0));
+		assertSame(first, req.getNode("foreignId1000"));
+
+		req.deleteNode("foreignId10");
+		assertEquals(1000, req.getNodeCount());
+		assertNull(req.getNode("foreignId10"));
+		assertNull(req.getNodeRequistion("foreignId10"));
+		req.deleteNode(replacement);
+		assertNull(req.getNode("foreignId500"));
+		assertEquals(999, req.getNodeCount());
+
+		// a foreign id changed on the node itself is still found
+		final RequisitionNode renamed = req.getNode("foreignId20");
+		renamed.setForeignId("renamed");
+		assertSame(renamed, req.getNode("renamed"));
+		assertNull(req.getNode("foreignId20"));
+		assertSame(renamed, req.getNodeRequistion("renamed").getNode());
+
+		// and is replaced, not duplicated, when a node is put under its new foreign id
+		req.getNode("foreignId30").setForeignId("moved");
+		final RequisitionNode moved = createNode("moved");
+		req.putNode(moved);
+		assertEquals(999, req.getNodeCount());
+		assertSame(moved, req.getNode("moved"));
+		assertNull(req.getNode("foreignId30"));
+	}
+
+	private static RequisitionNode createNode(final String foreignId) {
+		final RequisitionNode node = new RequisitionNode();
+		node.setForeignId(foreignId);
+		node.setNodeLabel(foreignId);
+		return node;
+	}
 }
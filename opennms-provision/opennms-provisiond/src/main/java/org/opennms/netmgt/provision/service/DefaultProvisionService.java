@@ -389,15 +389,7 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
 
             @Override
             protected OnmsIpInterface doUpdate(final OnmsIpInterface dbIface) {
-                if(dbIface.isManaged() && !scannedIface.isManaged()){
-                    final Set<OnmsMonitoredService> monSvcs = dbIface.getMonitoredServices();
-                    
-                    for(final OnmsMonitoredService monSvc : monSvcs){
-                        monSvc.visit(new DeleteEventVisitor(m_eventForwarder));
-                    }
-                    monSvcs.clear();
-                }
-                
+                deleteServicesOfUnmanagedInterface(dbIface, scannedIface);
                 dbIface.mergeInterfaceAttributes(scannedIface);
                 infof(this, "Updating IpInterface %s", dbIface);
                 m_ipInterfaceDao.update(dbIface);
@@ -423,6 +415,122 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
 
     }
 
+    /** {@inheritDoc} */
+    @Transactional
+    public List<OnmsIpInterface> updateIpInterfaceAttributes(final Integer nodeId, final Collection<OnmsIpInterface> scannedIfaces) {
+        final List<OnmsIpInterface> ifaces = new ArrayList<OnmsIpInterface>(scannedIfaces.size());
+        if (scannedIfaces.isEmpty()) {
+            return ifaces;
+        }
+
+        final Map<InetAddress, OnmsIpInterface> dbIfaces = new HashMap<InetAddress, OnmsIpInterface>();
+        for (final OnmsIpInterface dbIface : m_ipInterfaceDao.findByNodeId(nodeId)) {
+            dbIfaces.put(dbIface.getIpAddress(), dbIface);
+        }
+        Map<Integer, OnmsSnmpInterface> dbSnmpIfaces = null;
+
+        // unchanged rows only need the new stamp, which is written for all of them at once at the end
+        final List<Integer> unchangedIds = new ArrayList<Integer>();
+        final Set<Integer> unchangedIfIndexes = new HashSet<Integer>();
+        Date scanStamp = null;
+        Date snmpScanStamp = null;
+
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        for (final OnmsIpInterface scannedIface : scannedIfaces) {
+            final OnmsIpInterface dbIface = dbIfaces.get(scannedIface.getIpAddress());
+            if (dbIface == null) {
+                // new interfaces take the upsert path so that an interface added by another scan in the meantime is merged rather than duplicated
+                final OnmsIpInterface iface = updateIpInterfaceAttributes(nodeId, scannedIface);
+                dbIfaces.put(iface.getIpAddress(), iface);
+                ifaces.add(iface);
+                inserted++;
+                continue;
+            }
+
+            final OnmsSnmpInterface snmpInterface = scannedIface.getSnmpInterface();
+            if (snmpInterface != null && snmpInterface.getIfIndex() != null) {
+                if (dbSnmpIfaces == null) {
+                    dbSnmpIfaces = new HashMap<Integer, OnmsSnmpInterface>();
+                    for (final OnmsSnmpInterface dbSnmpIface : m_snmpInterfaceDao.findByNodeId(nodeId)) {
+                        dbSnmpIfaces.put(dbSnmpIface.getIfIndex(), dbSnmpIface);
+                    }
+                }
+                OnmsSnmpInterface dbSnmpIface = dbSnmpIfaces.get(snmpInterface.getIfIndex());
+                if (dbSnmpIface == null) {
+                    dbSnmpIface = updateSnmpInterfaceAttributes(nodeId, snmpInterface);
+                    dbSnmpIfaces.put(dbSnmpIface.getIfIndex(), dbSnmpIface);
+                } else {
+                    // as for the IP interface below, leave the stamp out of the merge
+                    final Date lastCapsdPoll = snmpInterface.getLastCapsdPoll();
+                    snmpInterface.setLastCapsdPoll(dbSnmpIface.getLastCapsdPoll());
+                    final boolean snmpChanged = dbSnmpIface.mergeSnmpInterfaceAttributes(snmpInterface);
+                    snmpInterface.setLastCapsdPoll(lastCapsdPoll);
+                    if (snmpChanged) {
+                        if (lastCapsdPoll != null) {
+                            dbSnmpIface.setLastCapsdPoll(lastCapsdPoll);
+                        }
+                        unchangedIfIndexes.remove(dbSnmpIface.getIfIndex());
+                        infof(this, "Updating SnmpInterface %s", dbSnmpIface);
+                        m_snmpInterfaceDao.update(dbSnmpIface);
+                    } else if (lastCapsdPoll != null && !lastCapsdPoll.equals(dbSnmpIface.getLastCapsdPoll())) {
+                        unchangedIfIndexes.add(dbSnmpIface.getIfIndex());
+                        snmpScanStamp = lastCapsdPoll;
+                    }
+                }
+                scannedIface.setSnmpInterface(dbSnmpIface);
+            }
+
+            deleteServicesOfUnmanagedInterface(dbIface, scannedIface);
+
+            // merge everything but the scan stamp so we can tell whether the row really changed
+            final Date ipLastCapsdPoll = scannedIface.getIpLastCapsdPoll();
+            scannedIface.setIpLastCapsdPoll(dbIface.getIpLastCapsdPoll());
+            final boolean changed = dbIface.mergeInterfaceAttributes(scannedIface);
+            scannedIface.setIpLastCapsdPoll(ipLastCapsdPoll);
+            if (changed) {
+                if (ipLastCapsdPoll != null) {
+                    dbIface.setIpLastCapsdPoll(ipLastCapsdPoll);
+                }
+                infof(this, "Updating IpInterface %s", dbIface);
+                m_ipInterfaceDao.update(dbIface);
+                updated++;
+            } else {
+                // deleteObsoleteInterfaces relies on the stamp, so unchanged rows still get it
+                debugf(this, "nodeId = %d, ipAddress = %s unchanged", nodeId, str(dbIface.getIpAddress()));
+                if (ipLastCapsdPoll != null && !ipLastCapsdPoll.equals(dbIface.getIpLastCapsdPoll())) {
+                    unchangedIds.add(dbIface.getId());
+                    scanStamp = ipLastCapsdPoll;
+                }
+                unchanged++;
+            }
+            ifaces.add(dbIface);
+        }
+        m_ipInterfaceDao.flush();
+
+        if (!unchangedIds.isEmpty()) {
+            m_ipInterfaceDao.updateLastCapsdPoll(nodeId, unchangedIds, scanStamp);
+        }
+        if (!unchangedIfIndexes.isEmpty()) {
+            m_snmpInterfaceDao.updateLastCapsdPoll(nodeId, unchangedIfIndexes, snmpScanStamp);
+        }
+
+        infof(this, "Node %d: %d IP interfaces inserted, %d updated, %d unchanged", nodeId, inserted, updated, unchanged);
+        return ifaces;
+    }
+
+    private void deleteServicesOfUnmanagedInterface(final OnmsIpInterface dbIface, final OnmsIpInterface scannedIface) {
+        if(dbIface.isManaged() && !scannedIface.isManaged()){
+            final Set<OnmsMonitoredService> monSvcs = dbIface.getMonitoredServices();
+            
+            for(final OnmsMonitoredService monSvc : monSvcs){
+                monSvc.visit(new DeleteEventVisitor(m_eventForwarder));
+            }
+            monSvcs.clear();
+        }
+    }
+
     /** {@inheritDoc} */
     @Transactional
     public OnmsSnmpInterface updateSnmpInterfaceAttributes(final Integer nodeId, final OnmsSnmpInterface snmpInterface) {
@@ -462,6 +570,60 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         }.execute();
     }
 
+    /** {@inheritDoc} */
+    @Transactional
+    public SnmpInterfaceChanges updateSnmpInterfaceAttributes(final Integer nodeId, final Collection<OnmsSnmpInterface> snmpInterfaces) {
+        final SnmpInterfaceChanges changes = new SnmpInterfaceChanges();
+        if (snmpInterfaces.isEmpty()) {
+            return changes;
+        }
+
+        final Map<Integer, OnmsSnmpInterface> dbSnmpIfaces = new HashMap<Integer, OnmsSnmpInterface>();
+        for (final OnmsSnmpInterface dbSnmpIface : m_snmpInterfaceDao.findByNodeId(nodeId)) {
+            dbSnmpIfaces.put(dbSnmpIface.getIfIndex(), dbSnmpIface);
+        }
+        changes.statement();
+
+        final List<Integer> unchanged = new ArrayList<Integer>();
+        Date scanStamp = null;
+        for (final OnmsSnmpInterface snmpInterface : snmpInterfaces) {
+            final OnmsSnmpInterface dbSnmpIface = dbSnmpIfaces.get(snmpInterface.getIfIndex());
+            if (dbSnmpIface == null) {
+                // new interfaces take the upsert path so that an interface added by another scan in the meantime is merged rather than duplicated
+                dbSnmpIfaces.put(snmpInterface.getIfIndex(), updateSnmpInterfaceAttributes(nodeId, snmpInterface));
+                // the upsert looks the interface up again before inserting it
+                changes.statement();
+                changes.inserted();
+                continue;
+            }
+
+            // merge everything but the scan stamp so we can tell whether the row really changed
+            final Date lastCapsdPoll = snmpInterface.getLastCapsdPoll();
+            snmpInterface.setLastCapsdPoll(dbSnmpIface.getLastCapsdPoll());
+            if (dbSnmpIface.mergeSnmpInterfaceAttributes(snmpInterface)) {
+                dbSnmpIface.setLastCapsdPoll(lastCapsdPoll);
+                infof(this, "Updating SnmpInterface %s", dbSnmpIface);
+                m_snmpInterfaceDao.update(dbSnmpIface);
+                changes.updated();
+            } else if (lastCapsdPoll != null) {
+                // unchanged rows only need the new stamp, which is written for all of them at once below
+                debugf(this, "nodeId = %d, ifIndex = %d unchanged", nodeId, dbSnmpIface.getIfIndex());
+                unchanged.add(dbSnmpIface.getIfIndex());
+                scanStamp = lastCapsdPoll;
+                changes.unchanged();
+            } else {
+                changes.unchanged();
+            }
+        }
+        m_snmpInterfaceDao.flush();
+
+        if (!unchanged.isEmpty()) {
+            m_snmpInterfaceDao.updateLastCapsdPoll(nodeId, unchanged, scanStamp);
+            changes.statement();
+        }
+        return changes;
+    }
+
     /** {@inheritDoc} */
     @Transactional
     public OnmsMonitoredService addMonitoredService(final Integer ipInterfaceId, final String svcName) {
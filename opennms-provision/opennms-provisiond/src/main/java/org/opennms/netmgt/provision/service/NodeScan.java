@@ -34,6 +34,8 @@ import static org.opennms.core.utils.LogUtils.infof;
 import static org.opennms.core.utils.LogUtils.warnf;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -400,6 +402,7 @@ public class NodeScan implements RunInBatch {
                 }
             }
 
+            final List<OnmsIpInterface> ipIfaces = Collections.synchronizedList(new ArrayList<OnmsIpInterface>());
             final IPAddressTableTracker ipAddressTracker = new IPAddressTableTracker() {
             	@Override
             	public void processIPAddressRow(final IPAddressRow row) {
@@ -444,13 +447,13 @@ public class NodeScan implements RunInBatch {
                         }
                         
                         if (iface != null) {
-                            currentPhase.add(ipUpdater(currentPhase, iface), "write");
+                            ipIfaces.add(iface);
                         }
                     }
             	}
             };
 
-            walkTable(currentPhase, provisionedIps, ipAddressTracker);
+            walkTable(currentPhase, provisionedIps, ipIfaces, ipAddressTracker);
         }
         
         public void detectIpInterfaceTable(final BatchTask currentPhase) {
@@ -467,6 +470,7 @@ public class NodeScan implements RunInBatch {
                 }
             }
 
+            final List<OnmsIpInterface> ipIfaces = Collections.synchronizedList(new ArrayList<OnmsIpInterface>());
             final IPInterfaceTableTracker ipIfTracker = new IPInterfaceTableTracker() {
             	@Override
             	public void processIPInterfaceRow(final IPInterfaceRow row) {
@@ -514,16 +518,16 @@ public class NodeScan implements RunInBatch {
 	                    }
 	
 	                    if (iface != null) {
-	                        currentPhase.add(ipUpdater(currentPhase, iface), "write");
+	                        ipIfaces.add(iface);
 	                    }
                     }
                 }
             };
 
-            walkTable(currentPhase, provisionedIps, ipIfTracker);
+            walkTable(currentPhase, provisionedIps, ipIfaces, ipIfTracker);
         }
 
-		private void walkTable(final BatchTask currentPhase, final Set<InetAddress> provisionedIps, final TableTracker tracker) {
+		private void walkTable(final BatchTask currentPhase, final Set<InetAddress> provisionedIps, final List<OnmsIpInterface> ipIfaces, final TableTracker tracker) {
             final OnmsNode node = getNode();
 			infof(this, "detecting IP interfaces for node %d/%s/%s using table tracker %s", node.getId(), node.getForeignSource(), node.getForeignId(), tracker);
 
@@ -556,9 +560,12 @@ public class NodeScan implements RunInBatch {
 					            iface.setIpLastCapsdPoll(getScanStamp());
 					            iface.setIsManaged("M");
 		      
-					            currentPhase.add(ipUpdater(currentPhase, iface), "write");
+					            ipIfaces.add(iface);
 				            }
 				        }
+
+				        // written together once the whole table has been walked
+				        currentPhase.add(ipUpdater(currentPhase, ipIfaces), "write");
 	      
 				        debugf(this, "Finished phase %s", currentPhase);
 	      
@@ -574,6 +581,7 @@ public class NodeScan implements RunInBatch {
             final SnmpAgentConfig agentConfig = getAgentConfigFactory().getAgentConfig(getAgentAddress());
             Assert.notNull(getAgentConfigFactory(), "agentConfigFactory was not injected");
             
+            final List<OnmsSnmpInterface> snmpIfaces = Collections.synchronizedList(new ArrayList<OnmsSnmpInterface>());
             final PhysInterfaceTableTracker physIfTracker = new PhysInterfaceTableTracker() {
                 @Override
                 public void processPhysicalInterfaceRow(PhysicalInterfaceRow row) {
@@ -589,16 +597,8 @@ public class NodeScan implements RunInBatch {
                     }
                     
                     if (snmpIface != null) {
-                        final OnmsSnmpInterface snmpIfaceResult = snmpIface;
-        
-                        // add call to the SNMP interface collection enable policies
-        
-                        final Runnable r = new Runnable() {
-                            public void run() {
-                                getProvisionService().updateSnmpInterfaceAttributes(getNodeId(), snmpIfaceResult);
-                            }
-                        };
-                        currentPhase.add(r, "write");
+                        // written together once the whole table has been walked
+                        snmpIfaces.add(snmpIface);
                     }
                 }
             };
@@ -616,6 +616,16 @@ public class NodeScan implements RunInBatch {
                     abort("Aborting node scan : Agent failed while scanning the interfaces table: " + walker.getErrorMessage());
                 }
                 else {
+                    final Runnable r = new Runnable() {
+                        public void run() {
+                            final WorkDuration duration = new WorkDuration("writing SNMP interfaces");
+                            duration.start();
+                            final SnmpInterfaceChanges changes = getProvisionService().updateSnmpInterfaceAttributes(getNodeId(), snmpIfaces);
+                            duration.end();
+                            infof(this, "Node %d/%s/%s: %s, %s", getNodeId(), getForeignSource(), getForeignId(), changes, duration);
+                        }
+                    };
+                    currentPhase.add(r, "write");
                     debugf(this, "Finished phase %s", currentPhase);
                 }
             } catch (final InterruptedException e) {
@@ -688,11 +698,12 @@ public class NodeScan implements RunInBatch {
         void stampProvisionedInterfaces(final BatchTask phase) {
             if (!isAborted()) { 
             
+                final List<OnmsIpInterface> ipIfaces = new ArrayList<OnmsIpInterface>();
                 for(final OnmsIpInterface iface : getNode().getIpInterfaces()) {
                     iface.setIpLastCapsdPoll(getScanStamp());
-                    phase.add(ipUpdater(phase, iface), "write");
-            
+                    ipIfaces.add(iface);
                 }
+                phase.add(ipUpdater(phase, ipIfaces), "write");
             
             }
         }
@@ -787,17 +798,19 @@ public class NodeScan implements RunInBatch {
                 .toString();
         }
 
-        void updateIpInterface(final BatchTask currentPhase, final OnmsIpInterface iface) {
-            getProvisionService().updateIpInterfaceAttributes(getNodeId(), iface);
-            if (iface.isManaged()) {
-                currentPhase.add(new IpInterfaceScan(getNodeId(), iface.getIpAddress(), getForeignSource(), getProvisionService()));
+        void updateIpInterfaces(final BatchTask currentPhase, final List<OnmsIpInterface> ifaces) {
+            final List<OnmsIpInterface> dbIfaces = getProvisionService().updateIpInterfaceAttributes(getNodeId(), ifaces);
+            for (final OnmsIpInterface iface : dbIfaces) {
+                if (iface.isManaged()) {
+                    currentPhase.add(new IpInterfaceScan(getNodeId(), iface.getIpAddress(), getForeignSource(), getProvisionService()));
+                }
             }
         }
 
-        protected Runnable ipUpdater(final BatchTask currentPhase, final OnmsIpInterface iface) {
+        protected Runnable ipUpdater(final BatchTask currentPhase, final List<OnmsIpInterface> ifaces) {
             Runnable r = new Runnable() {
                 public void run() {
-                    updateIpInterface(currentPhase, iface);
+                    updateIpInterfaces(currentPhase, ifaces);
                 }
             };
             return r;
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.provision.service;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -137,6 +138,20 @@ public interface ProvisionService {
      */
     @Transactional
     OnmsIpInterface updateIpInterfaceAttributes(Integer nodeId, OnmsIpInterface ipInterface);
+
+    /**
+     * Write all of the IP interfaces found by a scan of a node in one
+     * transaction.  The node's existing interfaces are loaded once and only
+     * the ones that differ from the scan are written; interfaces that are
+     * new to the node are added, with their events, as in
+     * {@link #updateIpInterfaceAttributes(Integer, OnmsIpInterface)}.
+     *
+     * @param nodeId a {@link java.lang.Integer} object.
+     * @param ipInterfaces the scanned interfaces, all stamped with the scan's ipLastCapsdPoll
+     * @return the persisted interfaces, in the order they were scanned
+     */
+    @Transactional
+    List<OnmsIpInterface> updateIpInterfaceAttributes(Integer nodeId, Collection<OnmsIpInterface> ipInterfaces);
     
     /**
      * <p>updateSnmpInterfaceAttributes</p>
@@ -148,6 +163,18 @@ public interface ProvisionService {
     @Transactional
     OnmsSnmpInterface updateSnmpInterfaceAttributes(Integer nodeId, OnmsSnmpInterface snmpInterface);
 
+    /**
+     * Write all of the SNMP interfaces found by a scan of a node in one
+     * transaction.  The node's existing interfaces are loaded once and only
+     * the ones that differ from the scan are written.
+     *
+     * @param nodeId a {@link java.lang.Integer} object.
+     * @param snmpInterfaces the scanned interfaces, all stamped with the scan's lastCapsdPoll
+     * @return a {@link org.opennms.netmgt.provision.service.SnmpInterfaceChanges} object.
+     */
+    @Transactional
+    SnmpInterfaceChanges updateSnmpInterfaceAttributes(Integer nodeId, Collection<OnmsSnmpInterface> snmpInterfaces);
+
     /**
      * <p>addMonitoredService</p>
      *
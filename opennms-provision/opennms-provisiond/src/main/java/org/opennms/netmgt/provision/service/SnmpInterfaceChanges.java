@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service;
+
+/**
+ * The outcome of writing the SNMP interfaces found by one node scan: how
+ * many were inserted, how many changed and how many were only re-stamped,
+ * along with the number of database statements it took.
+ *
+ * @version $Id: $
+ */
+public class SnmpInterfaceChanges {
+
+    private int m_inserted = 0;
+    private int m_updated = 0;
+    private int m_unchanged = 0;
+    private int m_statements = 0;
+
+    /**
+     * <p>getInserted</p>
+     *
+     * @return a int.
+     */
+    public int getInserted() {
+        return m_inserted;
+    }
+
+    /**
+     * <p>getUpdated</p>
+     *
+     * @return a int.
+     */
+    public int getUpdated() {
+        return m_updated;
+    }
+
+    /**
+     * <p>getUnchanged</p>
+     *
+     * @return a int.
+     */
+    public int getUnchanged() {
+        return m_unchanged;
+    }
+
+    /**
+     * <p>getStatements</p>
+     *
+     * @return a int.
+     */
+    public int getStatements() {
+        return m_statements;
+    }
+
+    void inserted() {
+        m_inserted++;
+        m_statements++;
+    }
+
+    void updated() {
+        m_updated++;
+        m_statements++;
+    }
+
+    void unchanged() {
+        m_unchanged++;
+    }
+
+    void statement() {
+        m_statements++;
+    }
+
+    /**
+     * <p>toString</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String toString() {
+        return new StringBuilder()
+            .append(m_inserted).append(" inserted, ")
+            .append(m_updated).append(" updated, ")
+            .append(m_unchanged).append(" unchanged in ")
+            .append(m_statements).append(" statements")
+            .toString();
+    }
+
+}
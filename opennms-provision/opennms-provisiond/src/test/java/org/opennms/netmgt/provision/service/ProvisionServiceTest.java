@@ -28,6 +28,13 @@
 
 package org.opennms.netmgt.provision.service;
 
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
 import junit.framework.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -38,6 +45,16 @@ import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
 import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
 import org.opennms.core.utils.BeanUtils;
 import org.opennms.core.utils.url.GenericURLFactory;
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.dao.IpInterfaceDao;
+import org.opennms.netmgt.dao.NodeDao;
+import org.opennms.netmgt.dao.SnmpInterfaceDao;
+import org.opennms.netmgt.eventd.mock.EventAnticipator;
+import org.opennms.netmgt.eventd.mock.MockEventIpcManager;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsSnmpInterface;
+import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionInterface;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
@@ -47,8 +64,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.test.context.ContextConfiguration;
-
-import java.net.MalformedURLException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 
 /**
@@ -75,6 +93,21 @@ public class ProvisionServiceTest implements InitializingBean {
     @Autowired
     ProvisionService m_provService;
 
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private SnmpInterfaceDao m_snmpInterfaceDao;
+
+    @Autowired
+    private IpInterfaceDao m_ipInterfaceDao;
+
+    @Autowired
+    private MockEventIpcManager m_eventSubscriber;
+
+    @Autowired
+    private TransactionTemplate m_transactionTemplate;
+
     /*
     *  A list of use cases/todos for a Provision Service
     * - provide a set of scanners to be called
@@ -270,4 +303,127 @@ public class ProvisionServiceTest implements InitializingBean {
 //            }
 //        }
     }
+
+    @Test
+    public void testUpdateSnmpInterfaceAttributesOnRescan() {
+        final Date firstScan = new Date(System.currentTimeMillis() - 60000);
+        final Date secondScan = new Date();
+        final Integer nodeId = m_transactionTemplate.execute(new TransactionCallback<Integer>() {
+            public Integer doInTransaction(final TransactionStatus status) {
+                final OnmsNode node = createNode();
+                snmpInterface(node, 1, "eth0", firstScan);
+                snmpInterface(node, 2, "eth1", firstScan).setIfAlias("spare");
+                m_nodeDao.save(node);
+                m_nodeDao.flush();
+                return node.getId();
+            }
+        });
+
+        // ifIndex 1 is unchanged, 2 has a new alias and 3 is new
+        final OnmsSnmpInterface uplink = snmpInterface(null, 2, "eth1", secondScan);
+        uplink.setIfAlias("uplink");
+        final List<OnmsSnmpInterface> scanned = Arrays.asList(
+            snmpInterface(null, 1, "eth0", secondScan),
+            uplink,
+            snmpInterface(null, 3, "eth2", secondScan)
+        );
+
+        final SnmpInterfaceChanges changes = m_provService.updateSnmpInterfaceAttributes(nodeId, scanned);
+        Assert.assertEquals(1, changes.getInserted());
+        Assert.assertEquals(1, changes.getUpdated());
+        Assert.assertEquals(1, changes.getUnchanged());
+        // one to load the node's interfaces, two for the upsert of the new one, one for the update and one to stamp the unchanged interface
+        Assert.assertEquals(5, changes.getStatements());
+
+        m_transactionTemplate.execute(new TransactionCallback<Object>() {
+            public Object doInTransaction(final TransactionStatus status) {
+                Assert.assertEquals(3, m_snmpInterfaceDao.findByNodeId(nodeId).size());
+                for (int ifIndex = 1; ifIndex <= 3; ifIndex++) {
+                    final OnmsSnmpInterface dbSnmpIface = m_snmpInterfaceDao.findByNodeIdAndIfIndex(nodeId, ifIndex);
+                    Assert.assertEquals("eth" + (ifIndex - 1), dbSnmpIface.getIfDescr());
+                    Assert.assertEquals("lastCapsdPoll of ifIndex " + ifIndex, secondScan.getTime(), dbSnmpIface.getLastCapsdPoll().getTime());
+                }
+                Assert.assertNull(m_snmpInterfaceDao.findByNodeIdAndIfIndex(nodeId, 1).getIfAlias());
+                Assert.assertEquals("uplink", m_snmpInterfaceDao.findByNodeIdAndIfIndex(nodeId, 2).getIfAlias());
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testUpdateIpInterfaceAttributesOnRescan() {
+        final Date firstScan = new Date(System.currentTimeMillis() - 60000);
+        final Date secondScan = new Date();
+        final Integer nodeId = m_transactionTemplate.execute(new TransactionCallback<Integer>() {
+            public Integer doInTransaction(final TransactionStatus status) {
+                final OnmsNode node = createNode();
+                ipInterface(node, "192.168.1.1", "one", firstScan).setSnmpInterface(snmpInterface(node, 1, "eth0", firstScan));
+                ipInterface(node, "192.168.1.2", "two", firstScan);
+                m_nodeDao.save(node);
+                m_nodeDao.flush();
+                return node.getId();
+            }
+        });
+
+        // only the interface that is new to the node should be announced
+        final EventAnticipator anticipator = m_eventSubscriber.getEventAnticipator();
+        anticipator.reset();
+        anticipator.anticipateEvent(new EventBuilder(EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI, "Provisiond").setNodeid(nodeId).setInterface(addr("192.168.1.3")).getEvent());
+
+        // 192.168.1.1 and its SNMP interface are unchanged, 192.168.1.2 has a new host name and 192.168.1.3 is new
+        final OnmsIpInterface one = ipInterface(null, "192.168.1.1", "one", secondScan);
+        one.setSnmpInterface(snmpInterface(null, 1, "eth0", secondScan));
+        final List<OnmsIpInterface> scanned = Arrays.asList(
+            one,
+            ipInterface(null, "192.168.1.2", "two.example.org", secondScan),
+            ipInterface(null, "192.168.1.3", "three", secondScan)
+        );
+
+        final List<OnmsIpInterface> ifaces = m_provService.updateIpInterfaceAttributes(nodeId, scanned);
+        Assert.assertEquals(3, ifaces.size());
+        for (int i = 0; i < ifaces.size(); i++) {
+            Assert.assertEquals(scanned.get(i).getIpAddress(), ifaces.get(i).getIpAddress());
+            Assert.assertNotNull(ifaces.get(i).getId());
+        }
+
+        anticipator.verifyAnticipated(5000, 0, 0, 0, 0);
+
+        m_transactionTemplate.execute(new TransactionCallback<Object>() {
+            public Object doInTransaction(final TransactionStatus status) {
+                Assert.assertEquals(3, m_ipInterfaceDao.findByNodeId(nodeId).size());
+                Assert.assertEquals("one", m_ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, "192.168.1.1").getIpHostName());
+                Assert.assertEquals("two.example.org", m_ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, "192.168.1.2").getIpHostName());
+                for (final String ipAddr : new String[] { "192.168.1.1", "192.168.1.2", "192.168.1.3" }) {
+                    final OnmsIpInterface dbIface = m_ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, ipAddr);
+                    Assert.assertEquals("ipLastCapsdPoll of " + ipAddr, secondScan.getTime(), dbIface.getIpLastCapsdPoll().getTime());
+                }
+                final OnmsSnmpInterface dbSnmpIface = m_snmpInterfaceDao.findByNodeIdAndIfIndex(nodeId, 1);
+                Assert.assertEquals("eth0", dbSnmpIface.getIfDescr());
+                Assert.assertEquals("lastCapsdPoll of ifIndex 1", secondScan.getTime(), dbSnmpIface.getLastCapsdPoll().getTime());
+                return null;
+            }
+        });
+    }
+
+    private OnmsNode createNode() {
+        final OnmsNode node = new OnmsNode(m_provService.createDistPollerIfNecessary("localhost", "127.0.0.1"), "rescan");
+        node.setType("A");
+        return node;
+    }
+
+    private static OnmsSnmpInterface snmpInterface(final OnmsNode node, final int ifIndex, final String ifDescr, final Date lastCapsdPoll) {
+        final OnmsSnmpInterface snmpIface = new OnmsSnmpInterface(node, ifIndex);
+        snmpIface.setIfDescr(ifDescr);
+        snmpIface.setIfType(6);
+        snmpIface.setLastCapsdPoll(lastCapsdPoll);
+        return snmpIface;
+    }
+
+    private static OnmsIpInterface ipInterface(final OnmsNode node, final String ipAddr, final String hostName, final Date lastCapsdPoll) {
+        final OnmsIpInterface iface = new OnmsIpInterface(addr(ipAddr), node);
+        iface.setIpHostName(hostName);
+        iface.setIsManaged("M");
+        iface.setIpLastCapsdPoll(lastCapsdPoll);
+        return iface;
+    }
 }
@@ -170,6 +170,11 @@ public class MultiOutputRrdStrategy implements RrdStrategy<List<Object>,List<Obj
         return m_strategies.get(m_fetchStrategyIndex).fetchLastValueInRange(rrdFile, ds, interval, range);
     }
 
+    /** {@inheritDoc} */
+    public void fetch(String rrdFile, String[] dsNames, String consolidationFunction, long start, long end, RrdFetchHandler handler) throws IOException, RrdException {
+        m_strategies.get(m_fetchStrategyIndex).fetch(rrdFile, dsNames, consolidationFunction, start, end, handler);
+    }
+
     /**
      * <p>getDefaultFileExtension</p>
      *
@@ -242,4 +247,11 @@ public class MultiOutputRrdStrategy implements RrdStrategy<List<Object>,List<Obj
             m_strategies.get(i).updateFile(rrd.get(i), owner, data);
         }
     }
+
+    /** {@inheritDoc} */
+    public void updateFile(List<Object> rrd, String owner, long timestamp, double[] values) throws Exception {
+        for (int i = 0; i < rrd.size(); i++) {
+            m_strategies.get(i).updateFile(rrd.get(i), owner, timestamp, values);
+        }
+    }
 }
@@ -33,14 +33,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
@@ -73,6 +78,13 @@ import org.apache.log4j.Logger;
  * updates are put at the lowest priority and are only written when the highest
  * priority updates have been written
  *
+ * Each file's pending operations are kept in their own queue in a concurrent
+ * map and are guarded only by that queue, so collection threads enqueueing
+ * for different files never contend. Files that are ready to be written wait
+ * on lock-free ready queues (promoted, significant, insignificant) in the
+ * order they became ready, so the number of write threads can be raised to
+ * match the number of disks or cores.
+ *
  * This implementation delegates all the actual writing to another RrdStrategy
  * implementation.
  *
@@ -353,41 +365,94 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
-    LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
+    private static final int IDLE = 0;
+
+    private static final int QUEUED_INSIGNIFICANT = 1;
+
+    private static final int QUEUED_SIGNIFICANT = 2;
+
+    private static final int RUNNING = 3;
+
+    /**
+     * The pending operations for a single file.  All fields are guarded by
+     * the FileQueue's own monitor so enqueues for different files never
+     * contend with each other.
+     */
+    static class FileQueue {
+        final String m_fileName;
+
+        LinkedList<Operation> m_operations = new LinkedList<Operation>();
+
+        int m_state = IDLE;
+
+        boolean m_removed = false;
+
+        volatile long m_firstEnqueued;
+
+        FileQueue(String fileName) {
+            m_fileName = fileName;
+        }
+    }
+
+    /**
+     * Work counters for a single write thread.
+     */
+    static class WriterStats {
+        final AtomicLong m_files = new AtomicLong();
+
+        final AtomicLong m_operations = new AtomicLong();
+
+        final AtomicLong m_busyMillis = new AtomicLong();
+    }
+
+    private final ConcurrentMap<String, FileQueue> m_fileQueues = new ConcurrentHashMap<String, FileQueue>();
+
+    private final Queue<FileQueue> m_promotedFiles = new ConcurrentLinkedQueue<FileQueue>();
+
+    private final Queue<FileQueue> m_filesWithSignificantWork = new ConcurrentLinkedQueue<FileQueue>();
 
-    LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
+    private final Queue<FileQueue> m_filesWithInsignificantWork = new ConcurrentLinkedQueue<FileQueue>();
 
-    Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
+    /**
+     * Signals write threads that a file has been added to one of the ready
+     * queues.  Permits are only a wake-up hint, the queues are always polled
+     * before waiting.
+     */
+    private final Semaphore m_readyFiles = new Semaphore(0);
+
+    private final AtomicInteger m_significantFiles = new AtomicInteger();
 
-    Map<Thread, String> fileAssignments = new HashMap<Thread, String>();
+    private final AtomicInteger m_insignificantFiles = new AtomicInteger();
 
-    Set<String> reservedFiles = new HashSet<String>();
+    private final ThreadLocal<FileQueue> m_assignment = new ThreadLocal<FileQueue>();
 
-    private long m_totalOperationsPending = 0;
+    private final ConcurrentMap<String, WriterStats> m_writerStats = new ConcurrentHashMap<String, WriterStats>();
 
-    private long m_enqueuedOperations = 0;
+    private final AtomicLong m_totalOperationsPending = new AtomicLong();
 
-    private long m_dequeuedOperations = 0;
+    private final AtomicLong m_enqueuedOperations = new AtomicLong();
 
-    private long m_significantOpsEnqueued = 0;
+    private final AtomicLong m_dequeuedOperations = new AtomicLong();
 
-    private long m_significantOpsDequeued = 0;
+    private final AtomicLong m_significantOpsEnqueued = new AtomicLong();
 
-    private long m_significantOpsCompleted = 0;
+    private final AtomicLong m_significantOpsDequeued = new AtomicLong();
 
-    private long m_dequeuedItems = 0;
+    private final AtomicLong m_significantOpsCompleted = new AtomicLong();
 
-    private long m_createsCompleted = 0;
+    private final AtomicLong m_dequeuedItems = new AtomicLong();
 
-    private long m_updatesCompleted = 0;
+    private final AtomicLong m_createsCompleted = new AtomicLong();
 
-    private long m_errors = 0;
+    private final AtomicLong m_updatesCompleted = new AtomicLong();
 
-    int threadsRunning = 0;
+    private final AtomicLong m_errors = new AtomicLong();
 
-    private long m_startTime = 0;
+    private final AtomicInteger m_threadsRunning = new AtomicInteger();
 
-    private long m_promotionCount = 0;
+    private final AtomicLong m_startTime = new AtomicLong();
+
+    private final AtomicLong m_promotionCount = new AtomicLong();
 
     long lastLap = System.currentTimeMillis();
 
@@ -481,7 +546,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             m_delegate.createFile(getData(), attributeMappings);
 
             // keep stats
-            setCreatesCompleted(getCreatesCompleted() + 1);
+            m_createsCompleted.incrementAndGet();
 
             // return the file
             return rrd;
@@ -521,8 +586,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             }
 
             // keep stats
-            setUpdatesCompleted(getUpdatesCompleted() + 1);
-            if (getUpdatesCompleted() % m_modulus == 0) {
+            if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                 logStats();
             }
             // return the open rrd for further processing
@@ -532,6 +596,46 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     }
 
+    /**
+     * Represents an update to a rrd file whose values are already numeric.
+     * The values are handed to the delegate without being formatted.
+     */
+    public class TypedUpdateOperation extends Operation {
+
+        private final long m_timeStamp;
+
+        TypedUpdateOperation(String fileName, long timeStamp, double[] values) {
+            super(fileName, UPDATE, values, true);
+            m_timeStamp = timeStamp;
+        }
+
+        Object process(Object rrd) throws Exception {
+            // open the file if we need to
+            if (rrd == null) rrd = m_delegate.openFile(getFileName());
+
+            final double[] values = (double[]) getData();
+
+            try {
+                // process the update
+                m_delegate.updateFile(rrd, "", m_timeStamp, values);
+            } catch (final Throwable e) {
+                final String error = String.format("Error processing update for file %s: %s", getFileName(), RrdUtils.formatUpdate(m_timeStamp, values));
+                if (log().isDebugEnabled()) {
+                    log().debug(error, e);
+                }
+                throw new Exception(error, e);
+            }
+
+            // keep stats
+            if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
+                logStats();
+            }
+            // return the open rrd for further processing
+            return rrd;
+        }
+
+    }
+
     /**
      * Represents an update whose value is 0. These operations can be merged
      * together and take up less memory
@@ -551,24 +655,23 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         }
 
         Object process(Object rrd) throws Exception {
+            final double[] zero = new double[] { 0.0 };
             long ts = getFirstTimeStamp();
             for (int i = 0; i < count; i++) {
                 // open the file if we need to
                 if (rrd == null)
                     rrd = m_delegate.openFile(getFileName());
 
-                String update = ts + ":0";
                 try {
                     // process the update
-                    m_delegate.updateFile(rrd, "", update);
+                    m_delegate.updateFile(rrd, "", ts, zero);
                 } catch (Throwable e) {
-                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + update, e);
+                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + ts + ":0", e);
                 }
                 ts += getInterval();
 
                 // keep stats
-                setUpdatesCompleted(getUpdatesCompleted() + 1);
-                if (getUpdatesCompleted() % m_modulus == 0) {
+                if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                     logStats();
                 }
             }
@@ -672,6 +775,25 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return new UpdateOperation(fileName, update);
     }
 
+    /**
+     * <p>makeUpdateOperation</p>
+     *
+     * @param fileName a {@link java.lang.String} object.
+     * @param owner a {@link java.lang.String} object.
+     * @param timeStamp the update time in seconds
+     * @param values an array of double.
+     * @return a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     */
+    public Operation makeUpdateOperation(String fileName, String owner, long timeStamp, double[] values) {
+        if (values.length == 1 && values[0] == 0.0) {
+            if (timeStamp == 0)
+                log().debug("ZERO ERROR: created a zero update with ts=0 for file: " + fileName);
+
+            return new ZeroUpdateOperation(fileName, timeStamp);
+        }
+        return new TypedUpdateOperation(fileName, timeStamp, values);
+    }
+
     // 
     // Queue management functions.
     //
@@ -684,31 +806,28 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
      */
     public void addOperation(Operation op) {
-        synchronized (this) {
-            if (queueIsFull()) {
-                log().error("RRD Data Queue is Full!! Discarding operation for file "+op.getFileName());
-                return;
-            }
-            
-            if (op.isSignificant() && sigQueueIsFull()) {
-                log().error("RRD Data Significant Queue is Full!! Discarding operation for file "+op.getFileName());
-                return;
-            }
-            
-            if (!op.isSignificant() && inSigQueueIsFull()) {
-                log().error("RRD Insignificant Data Queue is Full!! Discarding operation for file "+op.getFileName());
-                return;
-            }
-            
-            storeAssignment(op);
-
-            setTotalOperationsPending(getTotalOperationsPending() + 1);
-            setEnqueuedOperations(getEnqueuedOperations() + 1);
-            if (op.isSignificant())
-                setSignificantOpsEnqueued(getSignificantOpsEnqueued() + 1);
-            notifyAll();
-            ensureThreadsStarted();
+        if (queueIsFull()) {
+            log().error("RRD Data Queue is Full!! Discarding operation for file "+op.getFileName());
+            return;
+        }
+
+        if (op.isSignificant() && sigQueueIsFull()) {
+            log().error("RRD Data Significant Queue is Full!! Discarding operation for file "+op.getFileName());
+            return;
+        }
+
+        if (!op.isSignificant() && inSigQueueIsFull()) {
+            log().error("RRD Insignificant Data Queue is Full!! Discarding operation for file "+op.getFileName());
+            return;
         }
+
+        m_totalOperationsPending.incrementAndGet();
+        m_enqueuedOperations.incrementAndGet();
+        if (op.isSignificant())
+            m_significantOpsEnqueued.incrementAndGet();
+
+        storeAssignment(op);
+        ensureThreadsStarted();
     }
 
     
@@ -740,91 +859,147 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     /**
      * Ensure that we have threads started to process the queue.
      */
-    public synchronized void ensureThreadsStarted() {
-        if (threadsRunning < m_writeThreads) {
-            threadsRunning++;
-            new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
+    public void ensureThreadsStarted() {
+        int running;
+        while ((running = m_threadsRunning.get()) < m_writeThreads) {
+            if (m_threadsRunning.compareAndSet(running, running + 1)) {
+                new Thread(this, this.getClass().getSimpleName() + "-" + (running + 1)).start();
+                return;
+            }
         }
     }
 
     /**
-     * Get the operations for the next file that should be worked on.
+     * Get the operations for the next file that should be worked on, waiting
+     * until there are some.
      *
      * @return a linkedList of operations to be processed all for the same file.
      */
     public LinkedList<Operation> getNext() {
-        LinkedList<Operation> ops = null;
-        synchronized (this) {
+        LinkedList<Operation> ops;
+        while ((ops = pollNext(Long.MAX_VALUE)) == null) {
+            // keep waiting
+        }
+        return ops;
+    }
 
-            // turn in our previous assignment
-            completeAssignment();
+    /**
+     * Turn in the current thread's previous assignment and take the
+     * operations for the next file with work, waiting at most
+     * <code>timeout</code> milliseconds for one to become ready.
+     */
+    private LinkedList<Operation> pollNext(long timeout) {
+        // turn in our previous assignment
+        completeAssignment();
 
-            String newAssignment;
-            // wait until there is work to do
-            while ((newAssignment = selectNewAssignment()) == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
+        boolean signalled = false;
+        FileQueue fileQueue;
+        while ((fileQueue = selectNewAssignment()) == null) {
+            try {
+                if (!m_readyFiles.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    return null;
                 }
+            } catch (InterruptedException e) {
+                return null;
             }
+            signalled = true;
+        }
+        if (!signalled) {
+            // consume the wake-up that was released for this file
+            m_readyFiles.tryAcquire();
+        }
 
-            // initialize start time for stats
-            if (getStartTime() == 0)
-                setStartTime(System.currentTimeMillis());
+        // initialize start time for stats
+        m_startTime.compareAndSet(0, System.currentTimeMillis());
 
-            // reserve the assignment and take work items
-            ops = takeAssignment(newAssignment);
+        // reserve the assignment and take work items
+        LinkedList<Operation> ops = takeAssignment(fileQueue);
 
-            // keep stats
-            if (ops != null) {
-                for(Operation op : ops) {
-                    setTotalOperationsPending(getTotalOperationsPending()-op.getCount());
-                    setDequeuedOperations(getDequeuedOperations() + op.getCount());
-                    if (op.isSignificant()) {
-                    	setSignificantOpsDequeued(getSignificantOpsDequeued() + op.getCount());
-                    }
-                }
-                setDequeuedItems(getDequeuedItems() + 1);
+        // keep stats
+        for(Operation op : ops) {
+            m_totalOperationsPending.addAndGet(-op.getCount());
+            m_dequeuedOperations.addAndGet(op.getCount());
+            if (op.isSignificant()) {
+                m_significantOpsDequeued.addAndGet(op.getCount());
             }
         }
+        m_dequeuedItems.incrementAndGet();
 
         return ops;
-
     }
 
     /**
-     * We need to track which files are being processed by which threads so that
-     * we don't try to process updates for the same file on more than one
+     * Add the operation to its file's queue, and put the file on the
+     * appropriate ready queue if it isn't already waiting or being processed.
+     * We need to track which files are being processed by which threads so
+     * that we don't try to process updates for the same file on more than one
      * thread.
      */
-    private synchronized void storeAssignment(Operation op) {
-        // look and see if there a pending ops list for this file
-        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
-
-        // if not then we create an ops list for the file and add the file to
-        // the work items list
-        if (pendingOperations == null) {
-            pendingOperations = new LinkedList<Operation>();
-            pendingFileOperations.put(op.getFileName(), pendingOperations);
-
-            // add the file to the correct list based on what type of work we
-            // are adding.  (if we aren't prioritizing then every file is counted as
-            // signficant
-            if (!m_prioritizeSignificantUpdates || op.isSignificant())
-                filesWithSignificantWork.addLast(op.getFileName());
-            else
-                filesWithInsignificantWork.addLast(op.getFileName());
-        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
-            // only do this when we are prioritizing as this bumps files from inSig
-            // up to insig
-            // promote the file to the significant list if this is the first
-            // significant
-            filesWithSignificantWork.addLast(op.getFileName());
+    private void storeAssignment(Operation op) {
+        while (true) {
+            FileQueue fileQueue = m_fileQueues.get(op.getFileName());
+            if (fileQueue == null) {
+                FileQueue newQueue = new FileQueue(op.getFileName());
+                fileQueue = m_fileQueues.putIfAbsent(op.getFileName(), newQueue);
+                if (fileQueue == null) {
+                    fileQueue = newQueue;
+                }
+            }
+
+            synchronized (fileQueue) {
+                // the file was finished and dropped after we looked it up
+                if (fileQueue.m_removed) continue;
+
+                if (fileQueue.m_operations.isEmpty()) {
+                    fileQueue.m_firstEnqueued = System.currentTimeMillis();
+                }
+                op.addToPendingList(fileQueue.m_operations);
+
+                // (if we aren't prioritizing then every file is counted as
+                // signficant)
+                boolean significant = !m_prioritizeSignificantUpdates || op.isSignificant();
+                if (fileQueue.m_state == IDLE) {
+                    schedule(fileQueue, significant);
+                } else if (significant && fileQueue.m_state == QUEUED_INSIGNIFICANT) {
+                    // promote the file to the significant list if this is the
+                    // first significant operation
+                    schedule(fileQueue, true);
+                }
+            }
+
+            promoteAgedFiles();
+            return;
         }
+    }
 
-        promoteAgedFiles();
+    /**
+     * Put a file on a ready queue.  The caller must hold the file's monitor.
+     * A file may be left behind on the insignificant queue when it is
+     * promoted; such stale entries are skipped when they are polled.
+     */
+    private void schedule(FileQueue fileQueue, boolean significant) {
+        if (significant) {
+            setState(fileQueue, QUEUED_SIGNIFICANT);
+            m_filesWithSignificantWork.offer(fileQueue);
+        } else {
+            setState(fileQueue, QUEUED_INSIGNIFICANT);
+            m_filesWithInsignificantWork.offer(fileQueue);
+        }
+        m_readyFiles.release();
+    }
 
-        op.addToPendingList(pendingOperations);
+    private void setState(FileQueue fileQueue, int state) {
+        if (fileQueue.m_state == QUEUED_SIGNIFICANT) {
+            m_significantFiles.decrementAndGet();
+        } else if (fileQueue.m_state == QUEUED_INSIGNIFICANT) {
+            m_insignificantFiles.decrementAndGet();
+        }
+        fileQueue.m_state = state;
+        if (state == QUEUED_SIGNIFICANT) {
+            m_significantFiles.incrementAndGet();
+        } else if (state == QUEUED_INSIGNIFICANT) {
+            m_insignificantFiles.incrementAndGet();
+        }
     }
 
     /**
@@ -832,13 +1007,14 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * necessary
      * 
      */
-    private synchronized void promoteAgedFiles() {
+    private void promoteAgedFiles() {
         
         // no need to do this is we aren't prioritizing
         if (!m_prioritizeSignificantUpdates) return;
 
         // the num seconds to update files is 0 then use unfair prioritization
-        if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
+        int insignificantFiles = m_insignificantFiles.get();
+        if (m_maxInsigUpdateSeconds == 0 || insignificantFiles <= 0)
             return;
 
         // calculate the elapsed time we first queued updates
@@ -848,25 +1024,43 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         // calculate the milliseconds between promotions necessary to age
         // insignificant files into
         // the significant queue
-        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
+        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / insignificantFiles);
 
         // calculate the number of millis since start until the next file needs
         // to be promotoed
-        long nextPromotionMillis = (long) (millisPerPromotion * getPromotionCount());
+        long promotionCount = getPromotionCount();
+        long nextPromotionMillis = (long) (millisPerPromotion * promotionCount);
 
         // if more time has elapsed than the next promotion time then promote a
-        // file
-        if (elapsedMillis > nextPromotionMillis) {
-            String file = filesWithInsignificantWork.removeFirst();
-            filesWithSignificantWork.addFirst(file);
-            setPromotionCount(getPromotionCount() + 1);
+        // file; only one of the threads that notice this gets to do it
+        if (elapsedMillis > nextPromotionMillis && m_promotionCount.compareAndSet(promotionCount, promotionCount + 1)) {
+            FileQueue fileQueue;
+            while ((fileQueue = m_filesWithInsignificantWork.poll()) != null) {
+                synchronized (fileQueue) {
+                    if (fileQueue.m_state == QUEUED_INSIGNIFICANT) {
+                        setState(fileQueue, QUEUED_SIGNIFICANT);
+                        m_promotedFiles.offer(fileQueue);
+                        return;
+                    }
+                }
+            }
         }
 
     }
     
     /** {@inheritDoc} */
-    public synchronized void promoteEnqueuedFiles(Collection<String> rrdFiles) {
-        filesWithSignificantWork.addAll(0, rrdFiles);
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        for (String rrdFile : rrdFiles) {
+            FileQueue fileQueue = m_fileQueues.get(rrdFile);
+            if (fileQueue == null) continue;
+            synchronized (fileQueue) {
+                if (fileQueue.m_state == QUEUED_SIGNIFICANT || fileQueue.m_state == QUEUED_INSIGNIFICANT) {
+                    setState(fileQueue, QUEUED_SIGNIFICANT);
+                    m_promotedFiles.offer(fileQueue);
+                    m_readyFiles.release();
+                }
+            }
+        }
         m_delegate.promoteEnqueuedFiles(rrdFiles);
     }
 
@@ -886,49 +1080,69 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     /**
      * register the file that the currentThread is be working on. This enables
      * us to ensure that another thread doesn't try to work on operations for
-     * that file.  Note: this is not synchronized as it is called from getNext which
-     * is thread safe
+     * that file.  Operations enqueued while the file is being worked on are
+     * held until the assignment is completed.
      */
-    private LinkedList<Operation> takeAssignment(String newAssignment) {
-
-        // make the file as reserved by the current thread
-        fileAssignments.put(Thread.currentThread(), newAssignment);
-        reservedFiles.add(newAssignment);
+    private LinkedList<Operation> takeAssignment(FileQueue fileQueue) {
+        m_assignment.set(fileQueue);
 
         // get the assignments work list and return it
-        return pendingFileOperations.remove(newAssignment);
+        synchronized (fileQueue) {
+            LinkedList<Operation> ops = fileQueue.m_operations;
+            fileQueue.m_operations = new LinkedList<Operation>();
+            return ops;
+        }
     }
 
     /**
-     * Return the name of the next file with available work
+     * Return the next file with available work, marking it as running.
+     * Promoted files come first, then files with significant work, then the
+     * rest; within each queue files are taken in the order they became ready.
      */
-    private String selectNewAssignment() {
-        for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
-        }
-        for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
+    private FileQueue selectNewAssignment() {
+        FileQueue fileQueue;
+        while ((fileQueue = pollReadyQueues()) != null) {
+            synchronized (fileQueue) {
+                if (fileQueue.m_state == QUEUED_SIGNIFICANT || fileQueue.m_state == QUEUED_INSIGNIFICANT) {
+                    setState(fileQueue, RUNNING);
+                    return fileQueue;
+                }
             }
         }
         return null;
     }
 
+    private FileQueue pollReadyQueues() {
+        FileQueue fileQueue = m_promotedFiles.poll();
+        if (fileQueue == null) {
+            fileQueue = m_filesWithSignificantWork.poll();
+        }
+        if (fileQueue == null) {
+            fileQueue = m_filesWithInsignificantWork.poll();
+        }
+        return fileQueue;
+    }
+
     /**
      * Record that fact that the current thread has finished process operations
-     * for its current assignment
+     * for its current assignment.  If more work arrived for the file in the
+     * meantime it goes back on a ready queue, otherwise the file is dropped.
      */
-    private synchronized void completeAssignment() {
+    private void completeAssignment() {
         // remove any existing reservation of the current thread
-        String previousAssignment = fileAssignments.remove(Thread.currentThread());
-        if (previousAssignment != null)
-            reservedFiles.remove(previousAssignment);
+        FileQueue previousAssignment = m_assignment.get();
+        if (previousAssignment == null) return;
+        m_assignment.remove();
+
+        synchronized (previousAssignment) {
+            if (previousAssignment.m_operations.isEmpty()) {
+                setState(previousAssignment, IDLE);
+                previousAssignment.m_removed = true;
+                m_fileQueues.remove(previousAssignment.m_fileName, previousAssignment);
+            } else {
+                schedule(previousAssignment, !m_prioritizeSignificantUpdates || !hasOnlyInsignificant(previousAssignment.m_operations));
+            }
+        }
     }
 
     /**
@@ -1041,6 +1255,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         addOperation(makeUpdateOperation((String) rrdFile, owner, data));
     }
 
+    /** {@inheritDoc} */
+    public void updateFile(String rrdFile, String owner, long timestamp, double[] values) throws Exception {
+        addOperation(makeUpdateOperation(rrdFile, owner, timestamp, values));
+    }
+
     /** {@inheritDoc} */
     public Double fetchLastValue(String rrdFile, String ds, int interval) throws NumberFormatException, RrdException {
         // TODO: handle queued values with fetch. Fetch could pull values off
@@ -1065,6 +1284,12 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return m_delegate.fetchLastValueInRange(rrdFile, ds, interval, range);
     }
 
+    /** {@inheritDoc} */
+    public void fetch(String rrdFile, String[] dsNames, String consolidationFunction, long start, long end, RrdFetchHandler handler) throws IOException, RrdException {
+        // like the last value fetches this does not see values that are still queued
+        m_delegate.fetch(rrdFile, dsNames, consolidationFunction, start, end, handler);
+    }
+
     /** {@inheritDoc} */
     public InputStream createGraph(String command, File workDir) throws IOException, RrdException {
         return m_delegate.createGraph(command, workDir);
@@ -1078,73 +1303,78 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * <p>run</p>
      */
     public void run() {
+        WriterStats stats = getWriterStats(Thread.currentThread().getName());
         try {
 
             long waitStart = -1L;
-            long delayed = 0;
-            while (delayed < m_writeThreadExitDelay) {
-                if (getTotalOperationsPending() > 0) {
-                    delayed = 0;
+            while (true) {
+                LinkedList<Operation> ops = pollNext(m_writeThreadSleepTime);
+                if (ops != null) {
                     waitStart = -1L;
-                    processPendingOperations();
+                    processPendingOperations(ops, stats);
                 } else {
+                    long now = System.currentTimeMillis();
                     if (waitStart < 0) {
-                        waitStart = System.currentTimeMillis();
+                        waitStart = now;
                     }
-                    try {
-                        Thread.sleep(m_writeThreadSleepTime);
-                    } catch (InterruptedException e) {
+                    if (now - waitStart >= m_writeThreadExitDelay) {
+                        break;
                     }
-                    long now = System.currentTimeMillis();
-                    delayed = now - waitStart;
                 }
 
             }
         } finally {
-            synchronized (this) {
-                threadsRunning--;
-                completeAssignment();
+            completeAssignment();
+            m_threadsRunning.decrementAndGet();
+            // don't strand work that was enqueued while we were exiting
+            if (getTotalOperationsPending() > 0) {
+                ensureThreadsStarted();
             }
         }
     }
 
-    /**
-     * Actually process the operations be calling the underlying delegate
-     * strategy
-     */
-    private void processPendingOperations() {
+    private WriterStats getWriterStats(String threadName) {
+        WriterStats stats = m_writerStats.get(threadName);
+        if (stats == null) {
+            WriterStats newStats = new WriterStats();
+            stats = m_writerStats.putIfAbsent(threadName, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    private void processPendingOperations(LinkedList<Operation> ops, WriterStats stats) {
         Object rrd = null;
         String fileName = null;
+        long start = System.currentTimeMillis();
 
         try {
-            LinkedList<Operation> ops = getNext();
-            if (ops == null)
-                return;
             // update stats correctly we update them even if an exception occurs
             // while we are processing
             for(Operation op : ops) {
                 if (op.isSignificant()) {
-                	setSignificantOpsCompleted(getSignificantOpsCompleted() + 1);
+                	m_significantOpsCompleted.incrementAndGet();
                 }
-
+                stats.m_operations.addAndGet(op.getCount());
             }
+            stats.m_files.incrementAndGet();
             // now we actually process the events
             for(Operation op : ops) {
                 fileName = op.getFileName();
                 rrd = op.process(rrd);
             }
         } catch (Throwable e) {
-            setErrors(getErrors() + 1);
+            m_errors.incrementAndGet();
             logLapTime("Error updating file " + fileName + ": " + e.getMessage());
             log().debug("Error updating file " + fileName + ": " + e.getMessage(), e);
         } finally {
             processClose(rrd);
+            stats.m_busyMillis.addAndGet(System.currentTimeMillis() - start);
         }
     }
 
-    /**
-     * close the rrd file
-     */
     private void processClose(Object rrd) {
         if (rrd != null) {
             try {
@@ -1160,7 +1390,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      *
      * @return a {@link java.lang.String} object.
      */
-    public String getStats() {
+    public synchronized String getStats() {
         long now = System.currentTimeMillis();
 
         long currentElapsedMillis = Math.max(now - lastStatsTime, 1);
@@ -1193,8 +1423,10 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
         String stats = "\nQS:\t" + "totalOperationsPending=" + getTotalOperationsPending() + 
         ", significantOpsPending=" + (getSignificantOpsEnqueued() - getSignificantOpsCompleted()) + 
-        ", filesWithSignificantWork=" + filesWithSignificantWork.size() + 
-        ", filesWithInsignificantWork=" + filesWithInsignificantWork.size()
+        ", filesWithSignificantWork=" + getFilesWithSignificantWork() + 
+        ", filesWithInsignificantWork=" + getFilesWithInsignificantWork() + 
+        ", oldestPendingAge=" + getOldestPendingAge() + 
+        ", writeThreadsRunning=" + getWriteThreadsRunning()
 
         + "\nQS:\t" + ", createsCompleted=" + getCreatesCompleted() + 
         ", updatesCompleted=" + getUpdatesCompleted() + 
@@ -1213,7 +1445,9 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         ", overallItemDequeRate=" + overallItemDequeueRate + 
         ", overallOpsPerUpdate=" + (getDequeuedOperations() / Math.max(getDequeuedItems(), 1.0)) + 
         ", overallPrcntSignificant=" + (getSignificantOpsEnqueued() * 100.0 / Math.max(getEnqueuedOperations(), 1.0)) + "%" + 
-        ", totalElapsedTime=" + ((totalElapsedMillis + 500) / 1000);
+        ", totalElapsedTime=" + ((totalElapsedMillis + 500) / 1000)
+
+        + "\nQS:\t" + ", writers=(" + getWriterStats() + ")";
 
         lastStatsTime = now;
         lastEnqueued = getEnqueuedOperations();
@@ -1303,7 +1537,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getTotalOperationsPending() {
-		return m_totalOperationsPending;
+		return m_totalOperationsPending.get();
 	}
 
 	/**
@@ -1312,7 +1546,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param totalOperationsPending a long.
 	 */
 	public void setTotalOperationsPending(long totalOperationsPending) {
-		m_totalOperationsPending = totalOperationsPending;
+		m_totalOperationsPending.set(totalOperationsPending);
 	}
 
 	/**
@@ -1321,7 +1555,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getCreatesCompleted() {
-		return m_createsCompleted;
+		return m_createsCompleted.get();
 	}
 
 	/**
@@ -1330,7 +1564,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param createsCompleted a long.
 	 */
 	public void setCreatesCompleted(long createsCompleted) {
-		m_createsCompleted = createsCompleted;
+		m_createsCompleted.set(createsCompleted);
 	}
 
 	/**
@@ -1339,7 +1573,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getUpdatesCompleted() {
-		return m_updatesCompleted;
+		return m_updatesCompleted.get();
 	}
 
 	/**
@@ -1348,7 +1582,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param updatesCompleted a long.
 	 */
 	public void setUpdatesCompleted(long updatesCompleted) {
-		m_updatesCompleted = updatesCompleted;
+		m_updatesCompleted.set(updatesCompleted);
 	}
 
 	/**
@@ -1357,7 +1591,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getErrors() {
-		return m_errors;
+		return m_errors.get();
 	}
 
 	/**
@@ -1366,7 +1600,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param errors a long.
 	 */
 	public void setErrors(long errors) {
-		m_errors = errors;
+		m_errors.set(errors);
 	}
 
 	/**
@@ -1375,7 +1609,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getPromotionCount() {
-		return m_promotionCount;
+		return m_promotionCount.get();
 	}
 
 	/**
@@ -1384,7 +1618,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param promotionCount a long.
 	 */
 	public void setPromotionCount(long promotionCount) {
-		m_promotionCount = promotionCount;
+		m_promotionCount.set(promotionCount);
 	}
 
 	/**
@@ -1393,7 +1627,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsEnqueued() {
-		return m_significantOpsEnqueued;
+		return m_significantOpsEnqueued.get();
 	}
 
 	/**
@@ -1402,7 +1636,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsEnqueued a long.
 	 */
 	public void setSignificantOpsEnqueued(long significantOpsEnqueued) {
-		m_significantOpsEnqueued = significantOpsEnqueued;
+		m_significantOpsEnqueued.set(significantOpsEnqueued);
 	}
 
 	/**
@@ -1411,7 +1645,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsDequeued() {
-		return m_significantOpsDequeued;
+		return m_significantOpsDequeued.get();
 	}
 
 	/**
@@ -1420,7 +1654,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsDequeued a long.
 	 */
 	public void setSignificantOpsDequeued(long significantOpsDequeued) {
-		m_significantOpsDequeued = significantOpsDequeued;
+		m_significantOpsDequeued.set(significantOpsDequeued);
 	}
 
 	/**
@@ -1429,7 +1663,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getEnqueuedOperations() {
-		return m_enqueuedOperations;
+		return m_enqueuedOperations.get();
 	}
 
 	/**
@@ -1438,7 +1672,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param enqueuedOperations a long.
 	 */
 	public void setEnqueuedOperations(long enqueuedOperations) {
-		m_enqueuedOperations = enqueuedOperations;
+		m_enqueuedOperations.set(enqueuedOperations);
 	}
 
 	/**
@@ -1447,7 +1681,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedOperations() {
-		return m_dequeuedOperations;
+		return m_dequeuedOperations.get();
 	}
 
 	/**
@@ -1456,7 +1690,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param dequeuedOperations a long.
 	 */
 	public void setDequeuedOperations(long dequeuedOperations) {
-		m_dequeuedOperations = dequeuedOperations;
+		m_dequeuedOperations.set(dequeuedOperations);
 	}
 
 	/**
@@ -1465,7 +1699,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedItems() {
-		return m_dequeuedItems;
+		return m_dequeuedItems.get();
 	}
 
 	/**
@@ -1474,7 +1708,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param dequeuedItems a long.
 	 */
 	public void setDequeuedItems(long dequeuedItems) {
-		m_dequeuedItems = dequeuedItems;
+		m_dequeuedItems.set(dequeuedItems);
 	}
 
 	/**
@@ -1483,7 +1717,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsCompleted() {
-		return m_significantOpsCompleted;
+		return m_significantOpsCompleted.get();
 	}
 
 	/**
@@ -1492,7 +1726,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsCompleted a long.
 	 */
 	public void setSignificantOpsCompleted(long significantOpsCompleted) {
-		m_significantOpsCompleted = significantOpsCompleted;
+		m_significantOpsCompleted.set(significantOpsCompleted);
 	}
 
 	/**
@@ -1501,7 +1735,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getStartTime() {
-		return m_startTime;
+		return m_startTime.get();
 	}
 
 	/**
@@ -1510,8 +1744,74 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param updateStart a long.
 	 */
 	public void setStartTime(long updateStart) {
-		m_startTime = updateStart;
+		m_startTime.set(updateStart);
 	}
 
+	/**
+	 * <p>getFilesWithSignificantWork</p>
+	 *
+	 * @return the number of files waiting with significant work
+	 */
+	public int getFilesWithSignificantWork() {
+		return m_significantFiles.get();
+	}
+
+	/**
+	 * <p>getFilesWithInsignificantWork</p>
+	 *
+	 * @return the number of files waiting with only insignificant work
+	 */
+	public int getFilesWithInsignificantWork() {
+		return m_insignificantFiles.get();
+	}
+
+	/**
+	 * <p>getWriteThreadsRunning</p>
+	 *
+	 * @return a int.
+	 */
+	public int getWriteThreadsRunning() {
+		return m_threadsRunning.get();
+	}
+
+	/**
+	 * Returns the age in milliseconds of the oldest operation at the head of
+	 * the ready queues, or 0 if nothing is waiting.
+	 *
+	 * @return a long.
+	 */
+	public long getOldestPendingAge() {
+		long now = System.currentTimeMillis();
+		long oldest = Math.min(now, getFirstEnqueued(m_promotedFiles, now));
+		oldest = Math.min(oldest, getFirstEnqueued(m_filesWithSignificantWork, now));
+		oldest = Math.min(oldest, getFirstEnqueued(m_filesWithInsignificantWork, now));
+		return now - oldest;
+	}
+
+	private long getFirstEnqueued(Queue<FileQueue> queue, long now) {
+		FileQueue head = queue.peek();
+		return head == null || head.m_firstEnqueued == 0 ? now : head.m_firstEnqueued;
+	}
+
+	/**
+	 * Returns the number of files and operations written, and the time spent
+	 * writing, by each write thread.
+	 *
+	 * @return a {@link java.lang.String} object.
+	 */
+	public String getWriterStats() {
+		StringBuilder buf = new StringBuilder();
+		for (Map.Entry<String, WriterStats> entry : new TreeMap<String, WriterStats>(m_writerStats).entrySet()) {
+			WriterStats stats = entry.getValue();
+			if (buf.length() > 0) {
+				buf.append(", ");
+			}
+			buf.append(entry.getKey())
+				.append(": files=").append(stats.m_files.get())
+				.append(", ops=").append(stats.m_operations.get())
+				.append(", busyMillis=").append(stats.m_busyMillis.get());
+		}
+		return buf.toString();
+	}
 
 }
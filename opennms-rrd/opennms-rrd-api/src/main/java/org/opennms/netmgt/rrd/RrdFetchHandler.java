@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a range fetch from an RRD one at a time so callers
+ * can stream them without the strategy collecting them first.
+ *
+ * @see RrdStrategy#fetch(String, String[], String, long, long, RrdFetchHandler)
+ */
+public interface RrdFetchHandler {
+    /**
+     * Called once for each row, in timestamp order.
+     *
+     * @param timestamp the time of the row in milliseconds
+     * @param values one value for each requested data source, in the order
+     *            they were requested.  Unknown values are NaN.  The array is
+     *            reused between rows and must not be kept.
+     * @throws java.io.IOException if the row cannot be written
+     */
+    public void row(long timestamp, double[] values) throws IOException;
+}
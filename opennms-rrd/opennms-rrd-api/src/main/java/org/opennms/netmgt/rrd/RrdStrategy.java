@@ -130,6 +130,28 @@ public interface RrdStrategy<D extends Object,F extends Object> {
      */
     public void updateFile(F rrd, String owner, String data) throws Exception;
 
+    /**
+     * Updates the supplied round robin database with one value per
+     * datasource at the given timestamp.  Unknown values are passed as
+     * {@link Double#NaN}.  Strategies that can write samples directly should
+     * do so rather than formatting and re-parsing a <timestamp>:<values>
+     * string; others may adapt the call using
+     * {@link RrdUtils#formatUpdate(long, double[])}.
+     *
+     * @param rrd
+     *            an rrd object created using openFile
+     * @param owner
+     *            the owner of the rrd
+     * @param timestamp
+     *            the time of the update in seconds since the epoch
+     * @param values
+     *            the datasource values in datasource order; the array must
+     *            not be modified once it has been handed over
+     * @throws java.lang.Exception
+     *             if an error occurs updating the file
+     */
+    public void updateFile(F rrd, String owner, long timestamp, double[] values) throws Exception;
+
     /**
      * This closes the supplied round robin database
      *
@@ -199,6 +221,30 @@ public interface RrdStrategy<D extends Object,F extends Object> {
      * @throws org.opennms.netmgt.rrd.RrdException if any.
      */
     public Double fetchLastValueInRange(String rrdFile, String ds, int interval, int range) throws NumberFormatException, RrdException;
+
+    /**
+     * Fetches the rows of the round robin database with the given name that
+     * fall within a time range and passes them to a handler one at a time.
+     *
+     * @param rrdFile
+     *            a name the represents a round robin database
+     * @param dsNames
+     *            the data sources to fetch
+     * @param consolidationFunction
+     *            the consolidation function of the archive to read (usually
+     *            "AVERAGE")
+     * @param start
+     *            start time in milliseconds
+     * @param end
+     *            end time in milliseconds
+     * @param handler
+     *            receives each row
+     * @throws java.io.IOException
+     *             if an IOError occurs or the handler fails
+     * @throws org.opennms.netmgt.rrd.RrdException
+     *             if an RRD error occurs or the strategy cannot fetch ranges
+     */
+    public void fetch(String rrdFile, String[] dsNames, String consolidationFunction, long start, long end, RrdFetchHandler handler) throws IOException, RrdException;
     
     /**
      * Creates an InputStream representing the bytes of a graph created from
@@ -332,6 +332,75 @@ public abstract class RrdUtils {
         }
     }
 
+    /**
+     * Add datapoints to a round robin database without building an update
+     * string.  The values are handed to
+     * {@link RrdStrategy#updateFile(Object, String, long, double[])} as-is.
+     *
+     * @param owner the owner of the file. This is used in log messages
+     * @param repositoryDir the directory the file resides in
+     * @param rrdName the name for the rrd file.
+     * @param timestamp the timestamp in millis to use for the rrd update (this
+     * gets rounded to the nearest second)
+     * @param values one value per datasource, {@link Double#NaN} for unknown
+     * @throws org.opennms.netmgt.rrd.RrdException if any.
+     */
+    public static void updateRRD(String owner, String repositoryDir, String rrdName, long timestamp, double[] values) throws RrdException {
+        String rrdFile = repositoryDir + File.separator + rrdName + getExtension();
+        long time = (timestamp + 500L) / 1000L;
+
+        if (log().isInfoEnabled()) {
+            log().info("updateRRD: updating RRD file " + rrdFile + " with values '" + formatUpdate(time, values) + "'");
+        }
+
+        Object rrd = null;
+        try {
+            rrd = getStrategy().openFile(rrdFile);
+            getStrategy().updateFile(rrd, owner, time, values);
+        } catch (Throwable e) {
+            log().error("updateRRD: Error updating RRD file " + rrdFile + " with values '" + formatUpdate(time, values) + "': " + e, e);
+            throw new org.opennms.netmgt.rrd.RrdException("Error updating RRD file " + rrdFile + " with values '" + formatUpdate(time, values) + "': " + e, e);
+        } finally {
+            try {
+                if (rrd != null) {
+                    getStrategy().closeFile(rrd);
+                }
+            } catch (Throwable e) {
+                log().error("updateRRD: Exception closing RRD file " + rrdFile + ": " + e, e);
+                throw new org.opennms.netmgt.rrd.RrdException("Exception closing RRD file " + rrdFile + ": " + e, e);
+            }
+        }
+
+        if (log().isDebugEnabled()) {
+            log().debug("updateRRD: RRD update command completed.");
+        }
+    }
+
+    /**
+     * Formats a typed update as the <timestamp>:<value>:... string accepted
+     * by {@link RrdStrategy#updateFile(Object, String, String)}.  NaN values
+     * are written as "U" and integral values are written without a fraction.
+     *
+     * @param timestamp the update time in seconds
+     * @param values the datasource values
+     * @return a {@link java.lang.String} object.
+     */
+    public static String formatUpdate(long timestamp, double[] values) {
+        StringBuilder buf = new StringBuilder(16 + values.length * 12);
+        buf.append(timestamp);
+        for (double value : values) {
+            buf.append(':');
+            if (Double.isNaN(value)) {
+                buf.append('U');
+            } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                buf.append((long) value);
+            } else {
+                buf.append(value);
+            }
+        }
+        return buf.toString();
+    }
+
     /**
      * This method issues an round robin fetch command to retrieve the last
      * value of the datasource stored in the specified RRD file. The retrieved
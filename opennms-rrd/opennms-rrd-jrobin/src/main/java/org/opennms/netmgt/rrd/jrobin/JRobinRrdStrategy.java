@@ -52,6 +52,7 @@ import org.jrobin.graph.RrdGraph;
 import org.jrobin.graph.RrdGraphDef;
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdUtils;
@@ -68,6 +69,10 @@ import org.opennms.netmgt.rrd.RrdUtils;
 public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
+    private static final String CACHE_MAX_OPEN_FILES_PROPERTY = "org.opennms.rrd.jrobin.cache.maxOpenFiles";
+    private static final String CACHE_MAX_PENDING_UPDATES_PROPERTY = "org.opennms.rrd.jrobin.cache.maxPendingUpdates";
+    private static final String CACHE_MAX_PENDING_AGE_PROPERTY = "org.opennms.rrd.jrobin.cache.maxPendingAge";
+    private static final String CACHE_IDLE_TIMEOUT_PROPERTY = "org.opennms.rrd.jrobin.cache.idleTimeout";
 
     /*
      * Ensure that we only initialize certain things *once* per
@@ -76,6 +81,12 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     private static boolean s_initialized = false;
 
     private Properties m_configurationProperties;
+
+    /**
+     * Cache of open files; null unless enabled with
+     * <code>org.opennms.rrd.jrobin.cache.maxOpenFiles</code>.
+     */
+    private RrdDbCache m_cache;
     
     /**
      * An extremely simple Plottable for holding static datasources that
@@ -131,6 +142,38 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
                 log().error("Could not set default JRobin RRD factory: " + e.getMessage(), e);
             }
         }
+
+        final int maxOpenFiles = getIntProperty(CACHE_MAX_OPEN_FILES_PROPERTY, 0);
+        if (maxOpenFiles > 0 && m_cache == null) {
+            m_cache = new RrdDbCache(maxOpenFiles,
+                                     getIntProperty(CACHE_MAX_PENDING_UPDATES_PROPERTY, 1),
+                                     getIntProperty(CACHE_MAX_PENDING_AGE_PROPERTY, 300) * 1000L,
+                                     getIntProperty(CACHE_IDLE_TIMEOUT_PROPERTY, 900) * 1000L);
+            log().info("Caching up to " + maxOpenFiles + " open JRobin files");
+        }
+    }
+
+    private int getIntProperty(final String name, final int defaultValue) {
+        final String value = m_configurationProperties == null ? null : m_configurationProperties.getProperty(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (final NumberFormatException e) {
+            log().warn("Invalid value '" + value + "' for " + name + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Write all pending updates and close the cached files, if caching is
+     * enabled.
+     */
+    public void close() {
+        if (m_cache != null) {
+            m_cache.close();
+        }
     }
 
     /**
@@ -140,7 +183,10 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      * @throws java.lang.Exception if any.
      */
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        // cached files stay open until they are evicted
+        if (m_cache == null) {
+            rrdFile.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -194,6 +240,11 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
             return;
         }
         log().info("createRRD: creating RRD file " + rrdDef.getPath());
+
+        if (m_cache != null) {
+            // drop any handle left over from an earlier file at this path
+            m_cache.remove(rrdDef.getPath());
+        }
         
         RrdDb rrd = new RrdDb(rrdDef);
         rrd.close();
@@ -213,6 +264,9 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      * Opens the JRobin RrdDb by name and returns it.
      */
     public RrdDb openFile(final String fileName) throws Exception {
+        if (m_cache != null) {
+            return m_cache.open(fileName);
+        }
         RrdDb rrd = new RrdDb(fileName);
         return rrd;
     }
@@ -223,10 +277,30 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      * Creates a sample from the JRobin RrdDb and passes in the data provided.
      */
     public void updateFile(final RrdDb rrdFile, final String owner, final String data) throws Exception {
+        if (m_cache != null) {
+            m_cache.update(rrdFile.getPath(), data);
+            return;
+        }
         Sample sample = rrdFile.createSample();
         sample.setAndUpdate(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Creates a sample at the given time and sets its values directly, without
+     * formatting or parsing an update string.
+     */
+    public void updateFile(final RrdDb rrdFile, final String owner, final long timestamp, final double[] values) throws Exception {
+        if (m_cache != null) {
+            m_cache.update(rrdFile.getPath(), timestamp, values);
+            return;
+        }
+        Sample sample = rrdFile.createSample(timestamp);
+        sample.setValues(values);
+        sample.update();
+    }
+
     /**
      * Initialized the RrdDb to use the FILE factory because the NIO factory
      * uses too much memory for our implementation.
@@ -254,8 +328,13 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         try {
             long now = System.currentTimeMillis();
             long collectTime = (now - (now % interval)) / 1000L;
-            rrd = new RrdDb(fileName);
-            FetchData data = rrd.createFetchRequest(consolidationFunction, collectTime, collectTime).fetchData();
+            final FetchData data;
+            if (m_cache != null) {
+                data = m_cache.fetch(fileName, consolidationFunction, collectTime, collectTime);
+            } else {
+                rrd = new RrdDb(fileName);
+                data = rrd.createFetchRequest(consolidationFunction, collectTime, collectTime).fetchData();
+            }
             if(log().isDebugEnabled()) {
             	//The "toString" method of FetchData is quite computationally expensive; 
             	log().debug(data.toString());
@@ -284,7 +363,6 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
         RrdDb rrd = null;
         try {
-        	rrd = new RrdDb(fileName);
          	long now = System.currentTimeMillis();
             long latestUpdateTime = (now - (now % interval)) / 1000L;
             long earliestUpdateTime = ((now - (now % interval)) - range) / 1000L;
@@ -292,7 +370,13 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
             	log().debug("fetchInRange: fetching data from " + earliestUpdateTime + " to " + latestUpdateTime);
             }
             
-            FetchData data = rrd.createFetchRequest("AVERAGE", earliestUpdateTime, latestUpdateTime).fetchData();
+            final FetchData data;
+            if (m_cache != null) {
+                data = m_cache.fetch(fileName, "AVERAGE", earliestUpdateTime, latestUpdateTime);
+            } else {
+                rrd = new RrdDb(fileName);
+                data = rrd.createFetchRequest("AVERAGE", earliestUpdateTime, latestUpdateTime).fetchData();
+            }
             
 		    double[] vals = data.getValues(ds);
 		    long[] times = data.getTimestamps();
@@ -327,6 +411,47 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
     }
 
+    /** {@inheritDoc} */
+    public void fetch(final String fileName, final String[] dsNames, final String consolidationFunction, final long start, final long end, final RrdFetchHandler handler) throws IOException, org.opennms.netmgt.rrd.RrdException {
+        final long[] timestamps;
+        final double[][] columns = new double[dsNames.length][];
+        RrdDb rrd = null;
+        try {
+            final FetchData data;
+            if (m_cache != null) {
+                data = m_cache.fetch(fileName, consolidationFunction, start / 1000L, end / 1000L);
+            } else {
+                rrd = new RrdDb(fileName);
+                data = rrd.createFetchRequest(consolidationFunction, start / 1000L, end / 1000L).fetchData();
+            }
+            timestamps = data.getTimestamps();
+            for (int i = 0; i < dsNames.length; i++) {
+                columns[i] = data.getValues(dsNames[i]);
+            }
+        } catch (IOException e) {
+            throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
+        } catch (RrdException e) {
+            throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
+        } finally {
+            if (rrd != null) {
+                try {
+                    rrd.close();
+                } catch (IOException e) {
+                    log().error("Failed to close rrd file: " + fileName, e);
+                }
+            }
+        }
+
+        // the file is closed before the rows are handed out so a slow reader cannot hold it open
+        final double[] row = new double[dsNames.length];
+        for (int i = 0; i < timestamps.length; i++) {
+            for (int j = 0; j < columns.length; j++) {
+                row[j] = columns[j][i];
+            }
+            handler.row(timestamps[i] * 1000L, row);
+        }
+    }
+
     private Color getColor(final String colorValue) {
         int rVal = Integer.parseInt(colorValue.substring(0, 2), 16);
         int gVal = Integer.parseInt(colorValue.substring(2, 4), 16);
@@ -816,12 +941,12 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     }
 
     /**
-     * This implementation does not track any stats.
+     * Returns the file cache statistics, if caching is enabled.
      *
      * @return a {@link java.lang.String} object.
      */
     public String getStats() {
-        return "";
+        return m_cache == null ? "" : m_cache.getStats();
     }
 
     /*
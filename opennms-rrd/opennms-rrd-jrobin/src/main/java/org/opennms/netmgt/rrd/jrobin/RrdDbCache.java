@@ -0,0 +1,513 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jrobin.core.FetchData;
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.jrobin.core.Sample;
+import org.opennms.core.utils.ThreadCategory;
+
+/**
+ * A bounded LRU cache of open JRobin {@link RrdDb} handles, keyed by path.
+ *
+ * <p>Updates are appended to a per-file pending list and written together,
+ * with a single pass over the open file, once <code>maxPendingUpdates</code>
+ * samples are waiting, once the oldest is <code>maxPendingAge</code>
+ * milliseconds old, before any read of the file, and when the handle is
+ * evicted. Handles are evicted when the cache is full or when they have
+ * not been used for <code>idleTimeout</code> milliseconds. All pending
+ * updates are written and all handles closed by {@link #close()}, which is
+ * also registered as a JVM shutdown hook.</p>
+ *
+ * <p>A file is not opened again until its evicted handle has been written
+ * and closed. Updates that fail to be written are logged for their file;
+ * only the caller whose update triggered the write sees the exception.</p>
+ *
+ * @version $Id: $
+ */
+public class RrdDbCache {
+
+    private final int m_maxOpenFiles;
+    private final int m_maxPendingUpdates;
+    private final long m_maxPendingAge;
+    private final long m_idleTimeout;
+
+    /** Access-ordered, so iteration starts at the least recently used entry. */
+    private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** Entries that have been removed from the cache but are still being written and closed. */
+    private final Map<String, Entry> m_closing = new HashMap<String, Entry>();
+
+    private final Timer m_timer;
+    private final Thread m_shutdownHook;
+    private volatile boolean m_closed = false;
+
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final AtomicLong m_evictions = new AtomicLong();
+    private final AtomicLong m_writes = new AtomicLong();
+    private final AtomicLong m_updates = new AtomicLong();
+    private final AtomicLong m_failures = new AtomicLong();
+
+    private static class Entry {
+        private final String m_path;
+        private RrdDb m_rrdDb;
+        private final List<Object> m_pending = new ArrayList<Object>();
+        private long m_oldestPending;
+        private long m_lastAccess;
+        private boolean m_evicted = false;
+        private boolean m_released = false;
+        /** The evicted entry for the same file, which must be closed before this one opens it. */
+        private Entry m_predecessor;
+
+        private Entry(final String path, final Entry predecessor) {
+            m_path = path;
+            m_predecessor = predecessor;
+        }
+    }
+
+    /**
+     * <p>Constructor for RrdDbCache.</p>
+     *
+     * @param maxOpenFiles the maximum number of open handles
+     * @param maxPendingUpdates the number of pending updates that triggers a write
+     * @param maxPendingAge the age, in milliseconds, at which pending updates are written
+     * @param idleTimeout the time, in milliseconds, after which an unused handle is closed
+     */
+    public RrdDbCache(final int maxOpenFiles, final int maxPendingUpdates, final long maxPendingAge, final long idleTimeout) {
+        m_maxOpenFiles = Math.max(1, maxOpenFiles);
+        m_maxPendingUpdates = Math.max(1, maxPendingUpdates);
+        m_maxPendingAge = maxPendingAge;
+        m_idleTimeout = idleTimeout;
+
+        final long period = Math.max(1000L, Math.min(m_maxPendingAge, m_idleTimeout) / 2);
+        m_timer = new Timer("JRobin-RrdDbCache", true);
+        m_timer.schedule(new TimerTask() {
+            public void run() {
+                maintain();
+            }
+        }, period, period);
+
+        m_shutdownHook = new Thread("JRobin-RrdDbCache-shutdown") {
+            public void run() {
+                close();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(m_shutdownHook);
+    }
+
+    /**
+     * Get the open handle for a file, opening it if it is not cached.
+     *
+     * <p>The handle is shared and must not be closed by the caller.</p>
+     *
+     * @param path the file
+     * @return a {@link org.jrobin.core.RrdDb} object.
+     * @throws java.io.IOException if any.
+     * @throws org.jrobin.core.RrdException if any.
+     */
+    public RrdDb open(final String path) throws IOException, RrdException {
+        while (true) {
+            final Entry entry = getEntry(path);
+            synchronized (entry) {
+                if (entry.m_evicted) continue;
+                return ensureOpen(entry);
+            }
+        }
+    }
+
+    private static class PendingSample {
+        private final long m_time;
+        private final double[] m_values;
+
+        private PendingSample(final long time, final double[] values) {
+            m_time = time;
+            m_values = values;
+        }
+    }
+
+    /**
+     * Queue an update for a file, writing the pending updates if there are
+     * now enough of them.
+     *
+     * @param path the file
+     * @param data the update, as <code>timestamp:value[:value...]</code>
+     * @throws java.io.IOException if any.
+     * @throws org.jrobin.core.RrdException if any.
+     */
+    public void update(final String path, final String data) throws IOException, RrdException {
+        enqueue(path, data);
+    }
+
+    /**
+     * Queue a typed update for a file, writing the pending updates if there
+     * are now enough of them.
+     *
+     * @param path the file
+     * @param time the update time in seconds
+     * @param values one value per datasource
+     * @throws java.io.IOException if any.
+     * @throws org.jrobin.core.RrdException if any.
+     */
+    public void update(final String path, final long time, final double[] values) throws IOException, RrdException {
+        enqueue(path, new PendingSample(time, values));
+    }
+
+    private void enqueue(final String path, final Object data) throws IOException, RrdException {
+        m_updates.incrementAndGet();
+        while (true) {
+            final Entry entry = getEntry(path);
+            synchronized (entry) {
+                if (entry.m_evicted) continue;
+                if (entry.m_pending.isEmpty()) {
+                    entry.m_oldestPending = System.currentTimeMillis();
+                }
+                entry.m_pending.add(data);
+                if (entry.m_pending.size() >= m_maxPendingUpdates) {
+                    write(entry);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fetch data from a file after writing its pending updates.
+     *
+     * @param path the file
+     * @param consolidationFunction the consolidation function
+     * @param start the start time, in seconds
+     * @param end the end time, in seconds
+     * @return a {@link org.jrobin.core.FetchData} object.
+     * @throws java.io.IOException if any.
+     * @throws org.jrobin.core.RrdException if any.
+     */
+    public FetchData fetch(final String path, final String consolidationFunction, final long start, final long end) throws IOException, RrdException {
+        while (true) {
+            final Entry entry = getEntry(path);
+            synchronized (entry) {
+                if (entry.m_evicted) continue;
+                write(entry);
+                return ensureOpen(entry).createFetchRequest(consolidationFunction, start, end).fetchData();
+            }
+        }
+    }
+
+    /**
+     * Write the pending updates of a file, if it is cached.
+     *
+     * @param path the file
+     * @throws java.io.IOException if any.
+     * @throws org.jrobin.core.RrdException if any.
+     */
+    public void flush(final String path) throws IOException, RrdException {
+        final Entry entry;
+        synchronized (m_entries) {
+            entry = m_entries.get(path);
+        }
+        if (entry != null) {
+            synchronized (entry) {
+                write(entry);
+            }
+        }
+    }
+
+    /**
+     * Write the pending updates of a file and close it, if it is cached.
+     *
+     * @param path the file
+     */
+    public void remove(final String path) {
+        final Entry entry;
+        synchronized (m_entries) {
+            entry = m_entries.remove(path);
+            if (entry != null) {
+                m_closing.put(path, entry);
+            }
+        }
+        if (entry != null) {
+            evict(entry);
+        }
+    }
+
+    private Entry getEntry(final String path) {
+        if (m_closed) {
+            throw new IllegalStateException("The JRobin RrdDb cache has been closed");
+        }
+
+        final List<Entry> evicted = new ArrayList<Entry>();
+        Entry entry;
+        synchronized (m_entries) {
+            entry = m_entries.get(path);
+            if (entry == null) {
+                m_misses.incrementAndGet();
+                entry = new Entry(path, m_closing.get(path));
+                m_entries.put(path, entry);
+                final Iterator<Entry> it = m_entries.values().iterator();
+                while (m_entries.size() > m_maxOpenFiles && it.hasNext()) {
+                    final Entry eldest = it.next();
+                    if (eldest != entry) {
+                        it.remove();
+                        m_closing.put(eldest.m_path, eldest);
+                        evicted.add(eldest);
+                    }
+                }
+            } else {
+                m_hits.incrementAndGet();
+            }
+        }
+
+        for (final Entry e : evicted) {
+            evict(e);
+        }
+        return entry;
+    }
+
+    private RrdDb ensureOpen(final Entry entry) throws IOException, RrdException {
+        if (entry.m_rrdDb == null) {
+            awaitPredecessor(entry);
+            entry.m_rrdDb = new RrdDb(entry.m_path);
+        }
+        entry.m_lastAccess = System.currentTimeMillis();
+        return entry.m_rrdDb;
+    }
+
+    /**
+     * Wait for the evicted handle of the same file, if any, to finish writing
+     * its pending updates and close, so that the file is never open twice.
+     */
+    private void awaitPredecessor(final Entry entry) throws IOException {
+        final Entry predecessor = entry.m_predecessor;
+        if (predecessor == null) {
+            return;
+        }
+        synchronized (predecessor) {
+            while (!predecessor.m_released) {
+                try {
+                    predecessor.wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for " + entry.m_path + " to be closed");
+                }
+            }
+        }
+        entry.m_predecessor = null;
+    }
+
+    /**
+     * Write all pending updates of an entry in one pass. An update that
+     * fails does not stop the ones after it; failures are logged for the
+     * file and the first one is rethrown.
+     */
+    private void write(final Entry entry) throws IOException, RrdException {
+        if (entry.m_pending.isEmpty()) {
+            return;
+        }
+        final List<Object> pending = new ArrayList<Object>(entry.m_pending);
+        entry.m_pending.clear();
+
+        final RrdDb rrdDb;
+        try {
+            rrdDb = ensureOpen(entry);
+        } catch (final IOException e) {
+            log().error("Unable to open " + entry.m_path + ", dropping " + pending.size() + " pending updates: " + e, e);
+            throw e;
+        } catch (final RrdException e) {
+            log().error("Unable to open " + entry.m_path + ", dropping " + pending.size() + " pending updates: " + e, e);
+            throw e;
+        }
+
+        m_writes.incrementAndGet();
+        Exception failure = null;
+        int failed = 0;
+        for (final Object data : pending) {
+            try {
+                if (data instanceof PendingSample) {
+                    final PendingSample sample = (PendingSample)data;
+                    final Sample rrdSample = rrdDb.createSample(sample.m_time);
+                    rrdSample.setValues(sample.m_values);
+                    rrdSample.update();
+                } else {
+                    rrdDb.createSample().setAndUpdate((String)data);
+                }
+            } catch (final IOException e) {
+                if (failure == null) failure = e;
+                failed++;
+            } catch (final RrdException e) {
+                if (failure == null) failure = e;
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            m_failures.addAndGet(failed);
+            log().error("Failed to write " + failed + " of " + pending.size() + " pending updates to " + entry.m_path + ": " + failure, failure);
+        }
+        if (failure instanceof IOException) {
+            throw (IOException)failure;
+        } else if (failure instanceof RrdException) {
+            throw (RrdException)failure;
+        }
+    }
+
+    private void evict(final Entry entry) {
+        m_evictions.incrementAndGet();
+        synchronized (entry) {
+            entry.m_evicted = true;
+            try {
+                write(entry);
+            } catch (final Exception e) {
+                // already logged by write()
+            }
+            if (entry.m_rrdDb != null) {
+                try {
+                    entry.m_rrdDb.close();
+                } catch (final IOException e) {
+                    log().error("Failed to close rrd file: " + entry.m_path, e);
+                }
+                entry.m_rrdDb = null;
+            }
+            // an entry that never opened the file must still not release it before its predecessor
+            try {
+                awaitPredecessor(entry);
+            } catch (final IOException e) {
+                log().warn("Releasing " + entry.m_path + " before the previous handle was closed: " + e.getMessage());
+            }
+            entry.m_released = true;
+            entry.notifyAll();
+        }
+        synchronized (m_entries) {
+            if (m_closing.get(entry.m_path) == entry) {
+                m_closing.remove(entry.m_path);
+            }
+        }
+    }
+
+    /**
+     * Write updates that have been pending for too long and close idle handles.
+     */
+    void maintain() {
+        final long now = System.currentTimeMillis();
+        final List<Entry> entries;
+        synchronized (m_entries) {
+            entries = new ArrayList<Entry>(m_entries.values());
+        }
+
+        for (final Entry entry : entries) {
+            boolean idle = false;
+            synchronized (entry) {
+                if (entry.m_evicted) continue;
+                if (!entry.m_pending.isEmpty() && now - entry.m_oldestPending >= m_maxPendingAge) {
+                    try {
+                        write(entry);
+                    } catch (final Exception e) {
+                        // already logged by write()
+                    }
+                }
+                idle = entry.m_pending.isEmpty() && now - entry.m_lastAccess >= m_idleTimeout;
+            }
+            if (idle) {
+                synchronized (m_entries) {
+                    if (m_entries.get(entry.m_path) != entry) continue;
+                    m_entries.remove(entry.m_path);
+                    m_closing.put(entry.m_path, entry);
+                }
+                evict(entry);
+            }
+        }
+    }
+
+    /**
+     * Write all pending updates and close all handles.
+     */
+    public void close() {
+        if (m_closed) {
+            return;
+        }
+        m_closed = true;
+        m_timer.cancel();
+
+        final List<Entry> entries;
+        synchronized (m_entries) {
+            entries = new ArrayList<Entry>(m_entries.values());
+            m_entries.clear();
+        }
+        for (final Entry entry : entries) {
+            evict(entry);
+        }
+
+        try {
+            Runtime.getRuntime().removeShutdownHook(m_shutdownHook);
+        } catch (final IllegalStateException e) {
+            // already shutting down
+        }
+        log().info("Closed JRobin RrdDb cache: " + getStats());
+    }
+
+    /**
+     * <p>getOpenFiles</p>
+     *
+     * @return the number of cached handles
+     */
+    public int getOpenFiles() {
+        synchronized (m_entries) {
+            return m_entries.size();
+        }
+    }
+
+    /**
+     * <p>getStats</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getStats() {
+        return "open files: " + getOpenFiles()
+            + ", hits: " + m_hits.get()
+            + ", misses: " + m_misses.get()
+            + ", evictions: " + m_evictions.get()
+            + ", updates: " + m_updates.get()
+            + ", writes: " + m_writes.get()
+            + ", failed updates: " + m_failures.get();
+    }
+
+    private final ThreadCategory log() {
+        return ThreadCategory.getInstance(getClass());
+    }
+}
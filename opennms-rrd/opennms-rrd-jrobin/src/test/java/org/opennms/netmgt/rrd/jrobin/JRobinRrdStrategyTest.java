@@ -37,6 +37,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
 
 import org.jrobin.core.RrdDb;
 import org.jrobin.core.RrdDef;
@@ -49,6 +50,7 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.rrd.QueuingRrdStrategy;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
@@ -173,6 +175,128 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testCachedUpdatesAreCoalesced() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        props.setProperty("org.opennms.rrd.jrobin.cache.maxOpenFiles", "4");
+        props.setProperty("org.opennms.rrd.jrobin.cache.maxPendingUpdates", "3");
+        JRobinRrdStrategy strategy = new JRobinRrdStrategy();
+        strategy.setConfigurationProperties(props);
+        m_strategy = strategy;
+
+        File rrdFile = createRrdFile();
+        long start = (System.currentTimeMillis() / 1000) / 300 * 300;
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+                m_strategy.updateFile(openedFile, "huh?", (start + i * 300) + ":" + i);
+                m_strategy.closeFile(openedFile);
+
+                // the first two updates are held back, the third writes all of them
+                assertEquals("last update after update " + i, i < 2 ? 1000 : start + 600, getLastUpdateTime(rrdFile));
+            }
+
+            RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+            m_strategy.updateFile(openedFile, "huh?", (start + 900) + ":3");
+            m_strategy.closeFile(openedFile);
+        } finally {
+            // closing writes the pending update
+            strategy.close();
+        }
+        assertEquals("last update after close", start + 900, getLastUpdateTime(rrdFile));
+    }
+
+    @Test
+    public void testTypedUpdate() throws Exception {
+        File rrdFile = createRrdFile();
+        long start = (System.currentTimeMillis() / 1000) / 300 * 300;
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", start, new double[] { 1.5 });
+        m_strategy.closeFile(openedFile);
+
+        RrdDb rrdDb = new RrdDb(rrdFile.getAbsolutePath(), true);
+        try {
+            assertEquals("last update time", start, rrdDb.getLastUpdateTime());
+            assertEquals("last value", 1.5, rrdDb.getDatasource(0).getLastValue(), 0.0);
+        } finally {
+            rrdDb.close();
+        }
+
+        assertEquals(start + ":U:2:1.5", RrdUtils.formatUpdate(start, new double[] { Double.NaN, 2.0, 1.5 }));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testQueuedUpdatesFromManyThreads() throws Exception {
+        final int fileCount = 8;
+        final int updateCount = 20;
+        final long start = (System.currentTimeMillis() / 1000) / 300 * 300;
+
+        m_fileAnticipator.initialize();
+        List<RrdDataSource> dataSources = new ArrayList<RrdDataSource>();
+        dataSources.add(new RrdDataSource("bar", "GAUGE", 3000, "U", "U"));
+        List<String> rraList = new ArrayList<String>();
+        rraList.add("RRA:AVERAGE:0.5:1:2016");
+        final List<File> rrdFiles = new ArrayList<File>();
+        for (int i = 0; i < fileCount; i++) {
+            RrdDef def = m_strategy.createDefinition("hello!", m_fileAnticipator.getTempDir().getAbsolutePath(), "queued" + i, 300, dataSources, rraList);
+            m_strategy.createFile(def, null);
+            rrdFiles.add(m_fileAnticipator.expecting("queued" + i + RrdUtils.getExtension()));
+        }
+
+        final QueuingRrdStrategy queue = new QueuingRrdStrategy((RrdStrategy<Object, Object>) (RrdStrategy<?, ?>) m_strategy);
+        queue.setWriteThreads(4);
+        queue.setModulus(10000);
+        queue.setCategory("OpenNMS.Queued");
+        queue.setWriteThreadSleepTime(10);
+        queue.setWriteThreadExitDelay(500);
+
+        // one collector thread per file, all enqueueing at the same time
+        List<Thread> collectors = new ArrayList<Thread>();
+        for (final File rrdFile : rrdFiles) {
+            Thread collector = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 1; j <= updateCount; j++) {
+                            queue.updateFile(rrdFile.getAbsolutePath(), "test", start + j * 300, new double[] { j });
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            collectors.add(collector);
+            collector.start();
+        }
+        for (Thread collector : collectors) {
+            collector.join();
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (queue.getUpdatesCompleted() < fileCount * updateCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertEquals("updates completed", fileCount * updateCount, queue.getUpdatesCompleted());
+        assertEquals("errors", 0, queue.getErrors());
+        assertEquals("operations pending", 0, queue.getTotalOperationsPending());
+        for (File rrdFile : rrdFiles) {
+            assertEquals("last update of " + rrdFile, start + updateCount * 300, getLastUpdateTime(rrdFile));
+        }
+    }
+
+    private long getLastUpdateTime(File rrdFile) throws Exception {
+        RrdDb rrdDb = new RrdDb(rrdFile.getAbsolutePath(), true);
+        try {
+            return rrdDb.getLastUpdateTime();
+        } finally {
+            rrdDb.close();
+        }
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
@@ -44,6 +44,7 @@ import org.opennms.core.utils.StringUtils;
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdUtils;
@@ -207,6 +208,16 @@ public class JniRrdStrategy implements RrdStrategy<JniRrdStrategy.CreateCommand
         rrd.append(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * rrdtool only accepts textual updates, so the values are formatted and
+     * appended to the command string like any other update.
+     */
+    public void updateFile(StringBuffer rrd, String owner, long timestamp, double[] values) throws Exception {
+        updateFile(rrd, owner, RrdUtils.formatUpdate(timestamp, values));
+    }
+
     /**
      * Initialized the JNI Interface
      *
@@ -407,6 +418,17 @@ public class JniRrdStrategy implements RrdStrategy<JniRrdStrategy.CreateCommand
         
         return null;
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The jrrd fetch interface returns the values of each row without its
+     * timestamp or the step of the archive it was read from, so rows cannot
+     * be placed in time reliably and range fetches are not supported.
+     */
+    public void fetch(String rrdFile, String[] dsNames, String consolidationFunction, long start, long end, RrdFetchHandler handler) throws RrdException {
+        throw new RrdException("Fetching a range of rows from " + rrdFile + " is not supported by " + getClass().getName());
+    }
     
     /**
      * {@inheritDoc}
@@ -42,8 +42,10 @@ import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
+import org.opennms.netmgt.rrd.RrdUtils;
 import org.opennms.netmgt.rrd.tcp.TcpRrdStrategy.RrdDefinition;
 
 /**
@@ -173,6 +175,11 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
         }
     }
 
+    /** {@inheritDoc} */
+    public void updateFile(String fileName, String owner, long timestamp, double[] values) throws Exception {
+        updateFile(fileName, owner, RrdUtils.formatUpdate(timestamp, values));
+    }
+
     /**
      * <p>closeFile</p>
      *
@@ -198,6 +205,11 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
         return m_delegate.fetchLastValueInRange(rrdFile, ds, interval, range);
     }
 
+    /** {@inheritDoc} */
+    public void fetch(String rrdFile, String[] dsNames, String consolidationFunction, long start, long end, RrdFetchHandler handler) {
+        m_delegate.fetch(rrdFile, dsNames, consolidationFunction, start, end, handler);
+    }
+
     /** {@inheritDoc} */
     public InputStream createGraph(String command, File workDir) throws IOException {
         return m_delegate.createGraph(command, workDir);
@@ -37,8 +37,10 @@ import java.util.Map;
 import java.util.Properties;
 
 import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
+import org.opennms.netmgt.rrd.RrdUtils;
 
 /**
  * Provides a TCP socket-based implementation of RrdStrategy that pushes update
@@ -166,6 +168,11 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
         rrd.getSocket().addData(rrd.getFilename(), owner, data);
     }
 
+    /** {@inheritDoc} */
+    public void updateFile(RrdOutputSocketWithFilename rrd, String owner, long timestamp, double[] values) throws Exception {
+        updateFile(rrd, owner, RrdUtils.formatUpdate(timestamp, values));
+    }
+
     /**
      * <p>closeFile</p>
      *
@@ -191,6 +198,11 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
         return Double.NaN;
     }
 
+    /** {@inheritDoc} */
+    public void fetch(String rrdFile, String[] dsNames, String consolidationFunction, long start, long end, RrdFetchHandler handler) {
+        throw new UnsupportedOperationException(this.getClass().getName() + " does not support fetching.");
+    }
+
     /** {@inheritDoc} */
     public InputStream createGraph(String command, File workDir) throws IOException {
         throw new UnsupportedOperationException(this.getClass().getName() + " does not support graphing.");
@@ -103,6 +103,8 @@ final class CollectableService implements ReadyRunnable {
 
     private final IpInterfaceDao m_ifaceDao;
 
+    private final CollectionAgentSnapshotCache m_agentSnapshots;
+
     private final ServiceParameters m_params;
     
     private final RrdRepository m_repository;
@@ -116,14 +118,16 @@ final class CollectableService implements ReadyRunnable {
      * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      * @param schedulingCompletedFlag a {@link org.opennms.netmgt.collectd.Collectd.SchedulingCompletedFlag} object.
      * @param transMgr a {@link org.springframework.transaction.PlatformTransactionManager} object.
+     * @param agentSnapshots a {@link org.opennms.netmgt.collectd.CollectionAgentSnapshotCache} object, or null to read the agent from the database
      */
-    protected CollectableService(OnmsIpInterface iface, IpInterfaceDao ifaceDao, CollectionSpecification spec, Scheduler scheduler, SchedulingCompletedFlag schedulingCompletedFlag, PlatformTransactionManager transMgr) throws CollectionInitializationException {
-        m_agent = DefaultCollectionAgent.create(iface.getId(), ifaceDao, transMgr);
+    protected CollectableService(OnmsIpInterface iface, IpInterfaceDao ifaceDao, CollectionSpecification spec, Scheduler scheduler, SchedulingCompletedFlag schedulingCompletedFlag, PlatformTransactionManager transMgr, CollectionAgentSnapshotCache agentSnapshots) throws CollectionInitializationException {
         m_spec = spec;
         m_scheduler = scheduler;
         m_schedulingCompletedFlag = schedulingCompletedFlag;
         m_ifaceDao = ifaceDao;
         m_transMgr = transMgr;
+        m_agentSnapshots = agentSnapshots;
+        m_agent = createAgent(iface);
 
         m_nodeId = iface.getNode().getId().intValue();
         m_status = ServiceCollector.COLLECTION_SUCCEEDED;
@@ -568,11 +572,17 @@ final class CollectableService implements ReadyRunnable {
 
     private void reinitialize(OnmsIpInterface newIface) throws CollectionInitializationException {
         m_spec.release(m_agent);
-        m_agent = DefaultCollectionAgent.create(newIface.getId(), m_ifaceDao,
-                                                m_transMgr);
+        m_agent = createAgent(newIface);
         m_spec.initialize(m_agent);
     }
 
+    private CollectionAgent createAgent(OnmsIpInterface iface) {
+        if (m_agentSnapshots == null) {
+            return DefaultCollectionAgent.create(iface.getId(), m_ifaceDao, m_transMgr);
+        }
+        return DefaultCollectionAgent.create(iface.getId(), m_agentSnapshots);
+    }
+
     /**
      * <p>reinitializeThresholding</p>
      */
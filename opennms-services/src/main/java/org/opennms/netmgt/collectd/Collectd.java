@@ -68,9 +68,9 @@ import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventIpcManager;
 import org.opennms.netmgt.model.events.EventListener;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Value;
@@ -113,6 +113,12 @@ public class Collectd extends AbstractServiceDaemon implements
      * Log4j category
      */
     private final static String LOG4J_CATEGORY = "OpenNMS.Collectd";
+
+    /**
+     * Set to false to have collection agents read their attributes from the
+     * database instead of from the agent snapshot cache.
+     */
+    public final static String AGENT_SNAPSHOTS_PROPERTY = "org.opennms.collectd.agentSnapshots";
     
     /**
      * Instantiated service collectors specified in config file
@@ -158,6 +164,8 @@ public class Collectd extends AbstractServiceDaemon implements
 
     private volatile NodeDao m_nodeDao;
 
+    private volatile CollectionAgentSnapshotCache m_agentSnapshots;
+
     /**
      * Constructor.
      */
@@ -183,6 +191,13 @@ public class Collectd extends AbstractServiceDaemon implements
         // make sure the instrumentation gets initialized
         instrumentation();
         
+        if (Boolean.valueOf(System.getProperty(AGENT_SNAPSHOTS_PROPERTY, "true"))) {
+            m_agentSnapshots = new CollectionAgentSnapshotCache(m_ifaceDao, m_transTemplate);
+        } else {
+            log().info("init: collection agents will be read from the database");
+            m_agentSnapshots = null;
+        }
+        
         instantiateCollectors();
 
         getScheduler().schedule(0, ifScheduler());
@@ -234,6 +249,9 @@ public class Collectd extends AbstractServiceDaemon implements
         // node category membership changes
         ueiList.add(EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI);
         
+        // node attribute changes
+        ueiList.add(EventConstants.NODE_UPDATED_EVENT_UEI);
+        
         getEventIpcManager().addEventListener(this, ueiList);
     }
 
@@ -289,9 +307,9 @@ public class Collectd extends AbstractServiceDaemon implements
         try {
             log().debug("init: Creating collectd scheduler");
 
-            setScheduler(new LegacyScheduler(
-                                             "Collectd",
-                                             getCollectorConfigDao().getSchedulerThreads()));
+            setScheduler(SchedulerFactory.createScheduler(
+                                                          "Collectd",
+                                                          getCollectorConfigDao().getSchedulerThreads()));
         } catch (RuntimeException e) {
             log().fatal("init: Failed to create collectd scheduler", e);
             throw e;
@@ -368,6 +386,9 @@ public class Collectd extends AbstractServiceDaemon implements
         log().info("scheduleInterfacesWithService: svcName = " + svcName);
 
         Collection<OnmsIpInterface> ifsWithServices = findInterfacesWithService(svcName);
+        if (m_agentSnapshots != null) {
+            m_agentSnapshots.putAll(ifsWithServices);
+        }
         for (OnmsIpInterface iface : ifsWithServices) {
             scheduleInterface(iface, svcName, true);
         }
@@ -418,6 +439,10 @@ public class Collectd extends AbstractServiceDaemon implements
             return;
         }
         
+        if (m_agentSnapshots != null) {
+            m_agentSnapshots.put(iface);
+        }
+        
         scheduleInterface(iface, svc.getServiceType().getName(),
                           existing);
     }
@@ -429,6 +454,13 @@ public class Collectd extends AbstractServiceDaemon implements
 		OnmsNode node = m_nodeDao.getHierarchy(nodeId);
 		node.visit(new AbstractEntityVisitor() {
 
+			@Override
+			public void visitIpInterface(OnmsIpInterface iface) {
+				if (m_agentSnapshots != null) {
+					m_agentSnapshots.put(iface);
+				}
+			}
+
 			@Override
 			public void visitMonitoredService(OnmsMonitoredService monSvc) {
 				scheduleInterface(monSvc.getIpInterface(), monSvc.getServiceName(), existing);
@@ -512,7 +544,8 @@ public class Collectd extends AbstractServiceDaemon implements
 
                 cSvc = new CollectableService(iface, m_ifaceDao, spec, getScheduler(),
                                               m_schedulingCompletedFlag,
-                                              m_transTemplate.getTransactionManager());
+                                              m_transTemplate.getTransactionManager(),
+                                              m_agentSnapshots);
 
                 // Add new collectable service to the collectable service list.
                 m_collectableServices.add(cSvc);
@@ -759,6 +792,8 @@ public class Collectd extends AbstractServiceDaemon implements
                 handleReloadDaemonConfig(event);
             } else if (event.getUei().equals(EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI)) {
                 handleNodeCategoryMembershipChanged(event);
+            } else if (event.getUei().equals(EventConstants.NODE_UPDATED_EVENT_UEI)) {
+                handleNodeUpdated(event);
             }
         } catch (InsufficientInformationException e) {
             handleInsufficientInfo(e);
@@ -853,6 +888,10 @@ public class Collectd extends AbstractServiceDaemon implements
 
         Long nodeId = event.getNodeid();
 
+        if (m_agentSnapshots != null) {
+            m_agentSnapshots.removeInterface(nodeId.intValue(), ipAddr);
+        }
+
         // Iterate over the collectable services list and mark any entries
         // which match the deleted nodeId/IP address pair for deletion
         synchronized (getCollectableServices()) {
@@ -957,6 +996,15 @@ public class Collectd extends AbstractServiceDaemon implements
             return;
         }
 
+        // The interface keeps its ID, so refreshing both nodes moves its
+        // snapshot over to the new parent
+        try {
+            refreshAgentSnapshots(Integer.parseInt(oldNodeIdStr));
+            refreshAgentSnapshots(Integer.parseInt(newNodeIdStr));
+        } catch (NumberFormatException nfe) {
+            log.warn("interfaceReparentedHandler: unable to refresh agent snapshots for old nodeId " + oldNodeIdStr + " and new nodeId " + newNodeIdStr);
+        }
+
         // Iterate over the CollectableService objects in the services
         // list looking for entries which share the same interface
         // address as the reparented interface. Mark any matching objects
@@ -1025,6 +1073,10 @@ public class Collectd extends AbstractServiceDaemon implements
 
         unscheduleNodeAndMarkForDeletion(nodeId);
 
+        if (m_agentSnapshots != null) {
+            m_agentSnapshots.removeNode(nodeId.intValue());
+        }
+
         if (log.isDebugEnabled())
             log.debug("nodeDeletedHandler: processing of nodeDeleted event for nodeid "
                     + nodeId + " completed.");
@@ -1088,6 +1140,31 @@ public class Collectd extends AbstractServiceDaemon implements
         }
 	}
 
+    /**
+     * This method is responsible for handling nodeUpdated events. The agent
+     * snapshots of the node are refreshed so that collectable services that
+     * are (re)initialized from now on see the new node attributes.
+     * 
+     * @param event
+     *            The event to process.
+     * @throws InsufficientInformationException
+     */
+    private void handleNodeUpdated(Event event) throws InsufficientInformationException {
+        EventUtils.checkNodeId(event);
+
+        refreshAgentSnapshots(event.getNodeid().intValue());
+
+        if (log().isDebugEnabled()) {
+            log().debug("nodeUpdatedHandler: refreshed agent snapshots for nodeid " + event.getNodeid());
+        }
+    }
+
+    private void refreshAgentSnapshots(int nodeId) {
+        if (m_agentSnapshots != null) {
+            m_agentSnapshots.refreshNode(nodeId);
+        }
+    }
+
     /**
      * Process the event, construct a new CollectableService object
      * representing the node/interface combination, and schedule the interface
@@ -1272,6 +1349,9 @@ public class Collectd extends AbstractServiceDaemon implements
             }
         }
 
+        // The primary flag of both the old and the new interface changed
+        refreshAgentSnapshots(event.getNodeid().intValue());
+
         // Now we can schedule the new service...
         //
         scheduleForCollection(event);
@@ -1308,6 +1388,10 @@ public class Collectd extends AbstractServiceDaemon implements
         Long nodeid = event.getNodeid();
         String ipAddress = event.getInterface();
 
+        // Pick up the node's new SNMP interfaces before the collectable
+        // services are reinitialized from the snapshots
+        refreshAgentSnapshots(nodeid.intValue());
+
         // Mark the primary SNMP interface for reinitialization in
         // order to update any modified attributes associated with
         // the collectable service..
@@ -1470,6 +1554,15 @@ public class Collectd extends AbstractServiceDaemon implements
         return m_ifaceDao;
     }
 
+    /**
+     * <p>getAgentSnapshotCache</p>
+     *
+     * @return a {@link org.opennms.netmgt.collectd.CollectionAgentSnapshotCache} object, or null if agent snapshots are disabled.
+     */
+    public CollectionAgentSnapshotCache getAgentSnapshotCache() {
+        return m_agentSnapshots;
+    }
+
     /**
      * <p>setTransactionTemplate</p>
      *
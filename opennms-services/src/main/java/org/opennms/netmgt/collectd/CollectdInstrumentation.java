@@ -174,6 +174,24 @@ public interface CollectdInstrumentation {
      * @param e a {@link org.opennms.netmgt.collectd.CollectionException} object.
      */
     public void reportCollectionException(int nodeid, String ipAddress, String svcName, CollectionException e);
+    /**
+     * <p>reportAgentDatabaseLoad</p>
+     *
+     * @param ifaceId a {@link java.lang.Integer} object.
+     */
+    public void reportAgentDatabaseLoad(Integer ifaceId);
+    /**
+     * <p>getCollectionsCompleted</p>
+     *
+     * @return the number of collector collect calls that have completed
+     */
+    public long getCollectionsCompleted();
+    /**
+     * <p>getAgentDatabaseLoads</p>
+     *
+     * @return the number of times collection agent attributes were read from the database
+     */
+    public long getAgentDatabaseLoads();
     
 
 }
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.SnmpPeerFactory;
+import org.opennms.netmgt.dao.support.DefaultResourceDao;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsSnmpInterface;
+import org.opennms.netmgt.model.PrimaryType;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+
+/**
+ * An immutable copy of the database attributes of a collection agent.  It is
+ * built while the interface is attached to a Hibernate session and never
+ * touches the database afterwards, so collection threads can use it freely.
+ *
+ * @author ranger
+ * @version $Id: $
+ */
+public class CollectionAgentSnapshot implements CollectionAgentService {
+
+    private final Integer m_ifaceId;
+    private final int m_nodeId;
+    private final InetAddress m_inetAddress;
+    private final int m_ifIndex;
+    private final PrimaryType m_isSnmpPrimary;
+    private final String m_sysObjectId;
+    private final String m_foreignSource;
+    private final String m_foreignId;
+    private final Set<SnmpIfData> m_snmpIfData;
+
+    /**
+     * <p>create</p>
+     *
+     * Must be called from within a transaction since it walks the node and
+     * SNMP interfaces of the given interface.
+     *
+     * @param iface a {@link org.opennms.netmgt.model.OnmsIpInterface} object.
+     * @return a {@link org.opennms.netmgt.collectd.CollectionAgentSnapshot} object.
+     */
+    public static CollectionAgentSnapshot create(final OnmsIpInterface iface) {
+        final OnmsNode node = iface.getNode();
+
+        final Set<SnmpIfData> snmpIfData = new LinkedHashSet<SnmpIfData>(node.getSnmpInterfaces().size());
+        for (final OnmsSnmpInterface snmpIface : node.getSnmpInterfaces()) {
+            snmpIfData.add(new SnmpIfData(snmpIface));
+        }
+
+        return new CollectionAgentSnapshot(
+            iface.getId(),
+            node.getId() == null ? -1 : node.getId().intValue(),
+            iface.getIpAddress(),
+            iface.getIfIndex() == null ? -1 : iface.getIfIndex().intValue(),
+            iface.getIsSnmpPrimary(),
+            node.getSysObjectId() == null ? null : node.getSysObjectId().intern(),
+            node.getForeignSource(),
+            node.getForeignId(),
+            Collections.unmodifiableSet(snmpIfData)
+        );
+    }
+
+    private CollectionAgentSnapshot(final Integer ifaceId, final int nodeId, final InetAddress inetAddress, final int ifIndex, final PrimaryType isSnmpPrimary, final String sysObjectId, final String foreignSource, final String foreignId, final Set<SnmpIfData> snmpIfData) {
+        m_ifaceId = ifaceId;
+        m_nodeId = nodeId;
+        m_inetAddress = inetAddress;
+        m_ifIndex = ifIndex;
+        m_isSnmpPrimary = isSnmpPrimary;
+        m_sysObjectId = sysObjectId;
+        m_foreignSource = foreignSource;
+        m_foreignId = foreignId;
+        m_snmpIfData = snmpIfData;
+    }
+
+    /**
+     * <p>getIfaceId</p>
+     *
+     * @return a {@link java.lang.Integer} object.
+     */
+    public Integer getIfaceId() {
+        return m_ifaceId;
+    }
+
+    /**
+     * <p>getHostAddress</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getHostAddress() {
+        return InetAddressUtils.str(m_inetAddress);
+    }
+
+    /**
+     * <p>isStoreByForeignSource</p>
+     *
+     * @return a {@link java.lang.Boolean} object.
+     */
+    public Boolean isStoreByForeignSource() {
+        return Boolean.getBoolean("org.opennms.rrd.storeByForeignSource");
+    }
+
+    /**
+     * <p>getForeignSource</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getForeignSource() {
+        return m_foreignSource;
+    }
+
+    /**
+     * <p>getForeignId</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getForeignId() {
+        return m_foreignId;
+    }
+
+    /**
+     * <p>getStorageDir</p>
+     *
+     * @return a {@link java.io.File} object.
+     */
+    public File getStorageDir() {
+        if (isStoreByForeignSource() && m_foreignSource != null && m_foreignId != null) {
+            return new File(new File(DefaultResourceDao.FOREIGN_SOURCE_DIRECTORY, m_foreignSource), m_foreignId);
+        }
+        return new File(String.valueOf(m_nodeId));
+    }
+
+    /**
+     * <p>getNodeId</p>
+     *
+     * @return a int.
+     */
+    public int getNodeId() {
+        return m_nodeId;
+    }
+
+    /**
+     * <p>getIfIndex</p>
+     *
+     * @return a int.
+     */
+    public int getIfIndex() {
+        return m_ifIndex;
+    }
+
+    /**
+     * <p>getSysObjectId</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getSysObjectId() {
+        return m_sysObjectId;
+    }
+
+    /**
+     * <p>getIsSnmpPrimary</p>
+     *
+     * @return a {@link org.opennms.netmgt.model.PrimaryType} object.
+     */
+    public PrimaryType getIsSnmpPrimary() {
+        return m_isSnmpPrimary;
+    }
+
+    /**
+     * <p>getAgentConfig</p>
+     *
+     * @return a {@link org.opennms.netmgt.snmp.SnmpAgentConfig} object.
+     */
+    public SnmpAgentConfig getAgentConfig() {
+        return SnmpPeerFactory.getInstance().getAgentConfig(m_inetAddress);
+    }
+
+    /**
+     * <p>getSnmpInterfaceData</p>
+     *
+     * @return a {@link java.util.Set} object.
+     */
+    public Set<SnmpIfData> getSnmpInterfaceData() {
+        return m_snmpIfData;
+    }
+
+    /**
+     * <p>getInetAddress</p>
+     *
+     * @return a {@link java.net.InetAddress} object.
+     */
+    public InetAddress getInetAddress() {
+        return m_inetAddress;
+    }
+
+    /**
+     * <p>toString</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String toString() {
+        return "AgentSnapshot[ifaceId = "+m_ifaceId+" nodeid = "+m_nodeId+" ipaddr= "+getHostAddress()+']';
+    }
+
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.LogUtils;
+import org.opennms.netmgt.dao.IpInterfaceDao;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Holds a {@link CollectionAgentSnapshot} for every interface Collectd is
+ * collecting from, keyed by interface ID.  The cache is filled in bulk while
+ * the existing interfaces are scheduled and is only refreshed from the
+ * node and interface events Collectd receives, so that collection threads
+ * never have to go to the database.
+ *
+ * @author ranger
+ * @version $Id: $
+ */
+public class CollectionAgentSnapshotCache {
+
+    private final ConcurrentMap<Integer, CollectionAgentSnapshot> m_snapshots = new ConcurrentHashMap<Integer, CollectionAgentSnapshot>();
+
+    private final IpInterfaceDao m_ifaceDao;
+
+    private final TransactionTemplate m_transTemplate;
+
+    /**
+     * <p>Constructor for CollectionAgentSnapshotCache.</p>
+     *
+     * @param ifaceDao a {@link org.opennms.netmgt.dao.IpInterfaceDao} object.
+     * @param transTemplate a {@link org.springframework.transaction.support.TransactionTemplate} object.
+     */
+    public CollectionAgentSnapshotCache(final IpInterfaceDao ifaceDao, final TransactionTemplate transTemplate) {
+        m_ifaceDao = ifaceDao;
+        m_transTemplate = transTemplate;
+    }
+
+    /**
+     * Returns the snapshot for the given interface.  The interface is only
+     * loaded from the database if it has never been cached.
+     *
+     * @param ifaceId a {@link java.lang.Integer} object.
+     * @return a {@link org.opennms.netmgt.collectd.CollectionAgentSnapshot} object.
+     */
+    public CollectionAgentSnapshot get(final Integer ifaceId) {
+        final CollectionAgentSnapshot snapshot = m_snapshots.get(ifaceId);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        LogUtils.debugf(this, "get: no agent snapshot for interface %d, loading it from the database", ifaceId);
+        Collectd.instrumentation().reportAgentDatabaseLoad(ifaceId);
+        return m_transTemplate.execute(new TransactionCallback<CollectionAgentSnapshot>() {
+            public CollectionAgentSnapshot doInTransaction(final TransactionStatus status) {
+                return put(m_ifaceDao.load(ifaceId));
+            }
+        });
+    }
+
+    /**
+     * Replaces the snapshot of the given interface.  Must be called from
+     * within a transaction.
+     *
+     * @param iface a {@link org.opennms.netmgt.model.OnmsIpInterface} object.
+     * @return a {@link org.opennms.netmgt.collectd.CollectionAgentSnapshot} object.
+     */
+    public CollectionAgentSnapshot put(final OnmsIpInterface iface) {
+        final CollectionAgentSnapshot snapshot = CollectionAgentSnapshot.create(iface);
+        m_snapshots.put(snapshot.getIfaceId(), snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Replaces the snapshots of all of the given interfaces.  Must be called
+     * from within a transaction.
+     *
+     * @param ifaces a {@link java.util.Collection} object.
+     */
+    public void putAll(final Collection<OnmsIpInterface> ifaces) {
+        for (final OnmsIpInterface iface : ifaces) {
+            put(iface);
+        }
+        LogUtils.debugf(this, "putAll: cached %d agent snapshots, %d total", ifaces.size(), m_snapshots.size());
+    }
+
+    /**
+     * Reloads every cached interface on the given node.  Interfaces that no
+     * longer exist are dropped.
+     *
+     * @param nodeId a int.
+     */
+    public void refreshNode(final int nodeId) {
+        final List<Integer> ifaceIds = getInterfaceIds(nodeId);
+        if (ifaceIds.isEmpty()) {
+            return;
+        }
+
+        m_transTemplate.execute(new TransactionCallback<Object>() {
+            public Object doInTransaction(final TransactionStatus status) {
+                for (final Integer ifaceId : ifaceIds) {
+                    final OnmsIpInterface iface = m_ifaceDao.get(ifaceId);
+                    if (iface == null) {
+                        m_snapshots.remove(ifaceId);
+                    } else {
+                        put(iface);
+                    }
+                }
+                return null;
+            }
+        });
+        LogUtils.debugf(this, "refreshNode: refreshed %d agent snapshots for node %d", ifaceIds.size(), nodeId);
+    }
+
+    /**
+     * Drops every cached interface on the given node.
+     *
+     * @param nodeId a int.
+     */
+    public void removeNode(final int nodeId) {
+        for (final Integer ifaceId : getInterfaceIds(nodeId)) {
+            m_snapshots.remove(ifaceId);
+        }
+    }
+
+    /**
+     * Drops the cached interface with the given address on the given node.
+     *
+     * @param nodeId a int.
+     * @param ipAddr a {@link java.lang.String} object.
+     */
+    public void removeInterface(final int nodeId, final String ipAddr) {
+        for (final CollectionAgentSnapshot snapshot : m_snapshots.values()) {
+            if (snapshot.getNodeId() == nodeId && ipAddr.equals(InetAddressUtils.str(snapshot.getInetAddress()))) {
+                m_snapshots.remove(snapshot.getIfaceId());
+            }
+        }
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return a int.
+     */
+    public int size() {
+        return m_snapshots.size();
+    }
+
+    private List<Integer> getInterfaceIds(final int nodeId) {
+        final List<Integer> ifaceIds = new ArrayList<Integer>();
+        for (final CollectionAgentSnapshot snapshot : m_snapshots.values()) {
+            if (snapshot.getNodeId() == nodeId) {
+                ifaceIds.add(snapshot.getIfaceId());
+            }
+        }
+        return ifaceIds;
+    }
+
+}
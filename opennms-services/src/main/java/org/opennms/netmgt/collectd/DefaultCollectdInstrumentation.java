@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.collectd;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.log4j.Logger;
 
 /**
@@ -38,6 +40,10 @@ import org.apache.log4j.Logger;
  */
 public class DefaultCollectdInstrumentation implements CollectdInstrumentation {
 
+    private final AtomicLong m_collectionsCompleted = new AtomicLong();
+
+    private final AtomicLong m_agentDatabaseLoads = new AtomicLong();
+
     private Logger log() {
         return Logger.getLogger("Instrumentation.Collectd");
     }
@@ -95,6 +101,7 @@ public class DefaultCollectdInstrumentation implements CollectdInstrumentation {
 
     /** {@inheritDoc} */
     public void endCollectorCollect(int nodeId, String ipAddress, String svcName) {
+        m_collectionsCompleted.incrementAndGet();
         log().debug("collector.collect: end:"+nodeId+"/"+ipAddress+"/"+svcName);
         
     }
@@ -160,4 +167,28 @@ public class DefaultCollectdInstrumentation implements CollectdInstrumentation {
         log().debug("collector.collect: error: "+nodeId+"/"+ipAddress+"/"+svcName+": "+e);
     }
 
+    /** {@inheritDoc} */
+    public void reportAgentDatabaseLoad(Integer ifaceId) {
+        m_agentDatabaseLoads.incrementAndGet();
+        log().debug("collectionAgent: database load: "+ifaceId);
+    }
+
+    /**
+     * <p>getCollectionsCompleted</p>
+     *
+     * @return a long.
+     */
+    public long getCollectionsCompleted() {
+        return m_collectionsCompleted.get();
+    }
+
+    /**
+     * <p>getAgentDatabaseLoads</p>
+     *
+     * @return a long.
+     */
+    public long getAgentDatabaseLoads() {
+        return m_agentDatabaseLoads.get();
+    }
+
 }
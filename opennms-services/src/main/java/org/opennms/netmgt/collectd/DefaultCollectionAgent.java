@@ -69,6 +69,17 @@ public class DefaultCollectionAgent extends InetNetworkInterface implements Coll
         return new DefaultCollectionAgent(DefaultCollectionAgentService.create(ifaceId, ifaceDao, transMgr));
     }
 
+    /**
+     * <p>create</p>
+     *
+     * @param ifaceId a {@link java.lang.Integer} object.
+     * @param agentSnapshots a {@link org.opennms.netmgt.collectd.CollectionAgentSnapshotCache} object.
+     * @return a {@link org.opennms.netmgt.collectd.CollectionAgent} object.
+     */
+    public static CollectionAgent create(final Integer ifaceId, final CollectionAgentSnapshotCache agentSnapshots) {
+        return new DefaultCollectionAgent(agentSnapshots.get(ifaceId));
+    }
+
     // miscellaneous junk?
     private int m_ifCount = -1;
     private long m_sysUpTime = -1;
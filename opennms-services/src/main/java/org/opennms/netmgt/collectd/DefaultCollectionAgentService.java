@@ -35,6 +35,8 @@ import java.util.LinkedHashSet;
 import java.util.Properties;
 import java.util.Set;
 
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.config.SnmpPeerFactory;
@@ -63,13 +65,21 @@ public class DefaultCollectionAgentService implements CollectionAgentService {
      * @param transMgr a {@link org.springframework.transaction.PlatformTransactionManager} object.
      * @return a {@link org.opennms.netmgt.collectd.CollectionAgentService} object.
      */
-    public static CollectionAgentService create(Integer ifaceId, final IpInterfaceDao ifaceDao, final PlatformTransactionManager transMgr) {
+    public static CollectionAgentService create(final Integer ifaceId, final IpInterfaceDao ifaceDao, final PlatformTransactionManager transMgr) {
         CollectionAgentService agent = new DefaultCollectionAgentService(ifaceId, ifaceDao);
         
         TransactionProxyFactoryBean bean = new TransactionProxyFactoryBean();
         bean.setTransactionManager(transMgr);
         bean.setTarget(agent);
         
+        // every call on the proxy runs its own transaction against the database
+        bean.setPreInterceptors(new Object[] { new MethodInterceptor() {
+            public Object invoke(MethodInvocation invocation) throws Throwable {
+                Collectd.instrumentation().reportAgentDatabaseLoad(ifaceId);
+                return invocation.proceed();
+            }
+        } });
+        
         Properties props = new Properties();
         props.put("*", "PROPAGATION_REQUIRED,readOnly");
         
@@ -33,6 +33,7 @@ import java.util.List;
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.config.DataCollectionConfigFactory;
 import org.opennms.netmgt.config.MibObject;
+import org.opennms.netmgt.dao.support.RrdResourceIndex;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.opennms.netmgt.snmp.SnmpValue;
@@ -443,7 +444,9 @@ public class JMXDataSource implements Cloneable {
 	        List<String> rraList = DataCollectionConfigFactory.getInstance().getRRAList(collectionName);
 		boolean result=false;
 		try {
-		        RrdUtils.createRRD(owner, repository.getAbsolutePath(), getName(), step, getType(), getHeartbeat(), getMin(), getMax(), rraList);
+		        if (RrdUtils.createRRD(owner, repository.getAbsolutePath(), getName(), step, getType(), getHeartbeat(), getMin(), getMax(), rraList)) {
+		            RrdResourceIndex.notifyFileCreated(new File(repository, getName() + RrdUtils.getExtension()));
+		        }
 	
 			RrdUtils.updateRRD(owner, repository.getAbsolutePath(), getName(), val);
 		} catch (RrdException e) {
@@ -38,6 +38,7 @@ import org.opennms.core.utils.TimeKeeper;
 import org.opennms.netmgt.config.collector.AttributeDefinition;
 import org.opennms.netmgt.config.collector.ByNameComparator;
 import org.opennms.netmgt.config.collector.ResourceIdentifier;
+import org.opennms.netmgt.dao.support.RrdResourceIndex;
 import org.opennms.netmgt.model.RrdRepository;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
@@ -146,11 +147,45 @@ public class PersistOperationBuilder {
             return;
         }
         
-        RrdUtils.createRRD(m_resource.getOwnerName(), getResourceDir(m_resource).getAbsolutePath(), m_rrdName, getRepository().getStep(), getDataSources(), getRepository().getRraList(), getAttributeMappings());
-        RrdUtils.updateRRD(m_resource.getOwnerName(), getResourceDir(m_resource).getAbsolutePath(), m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+        if (RrdUtils.createRRD(m_resource.getOwnerName(), getResourceDir(m_resource).getAbsolutePath(), m_rrdName, getRepository().getStep(), getDataSources(), getRepository().getRraList(), getAttributeMappings())) {
+            RrdResourceIndex.notifyFileCreated(new File(getResourceDir(m_resource), m_rrdName + RrdUtils.getExtension()));
+        }
+        double[] values = getNumericValues();
+        if (values != null) {
+            RrdUtils.updateRRD(m_resource.getOwnerName(), getResourceDir(m_resource).getAbsolutePath(), m_rrdName, m_timeKeeper.getCurrentTime(), values);
+        } else {
+            RrdUtils.updateRRD(m_resource.getOwnerName(), getResourceDir(m_resource).getAbsolutePath(), m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+        }
         RrdUtils.createMetaDataFile(getResourceDir(m_resource).getAbsolutePath(), m_rrdName, m_metaData);
     }
 
+    /**
+     * Parse the attribute values once so that they can be handed to the
+     * strategy without building an update string.  Returns null if a value
+     * can't be represented exactly as a double (for instance a large 64-bit
+     * counter), in which case the string update is used so that strategies
+     * like rrdtool still see the exact value.
+     */
+    private double[] getNumericValues() {
+        double[] values = new double[m_declarations.size()];
+        int i = 0;
+        for (String value : m_declarations.values()) {
+            if (value == null || "U".equals(value)) {
+                values[i++] = Double.NaN;
+                continue;
+            }
+            if (value.length() > 15 && value.indexOf('.') < 0 && value.indexOf('e') < 0 && value.indexOf('E') < 0) {
+                return null;
+            }
+            try {
+                values[i++] = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return values;
+    }
+
     private String getValues() {
         boolean first = true;
         StringBuffer values = new StringBuffer();
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.collectd.jmx;
 
+import org.opennms.netmgt.collectd.CollectionAgentSnapshotCache;
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 
 /**
@@ -51,4 +52,20 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
         return "collectdContext";
     }
 
+    /** {@inheritDoc} */
+    public long getCollectionsCompleted() {
+        return org.opennms.netmgt.collectd.Collectd.instrumentation().getCollectionsCompleted();
+    }
+
+    /** {@inheritDoc} */
+    public long getAgentDatabaseLoads() {
+        return org.opennms.netmgt.collectd.Collectd.instrumentation().getAgentDatabaseLoads();
+    }
+
+    /** {@inheritDoc} */
+    public int getAgentSnapshotCount() {
+        final CollectionAgentSnapshotCache agentSnapshots = getDaemon().getAgentSnapshotCache();
+        return agentSnapshots == null ? 0 : agentSnapshots.size();
+    }
+
 }
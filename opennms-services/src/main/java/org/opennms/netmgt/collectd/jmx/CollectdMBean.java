@@ -37,4 +37,18 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface CollectdMBean extends BaseOnmsMBean {
+    /**
+     * @return the number of collector collect calls that have completed
+     */
+    public long getCollectionsCompleted();
+
+    /**
+     * @return the number of times collection agent attributes were read from the database
+     */
+    public long getAgentDatabaseLoads();
+
+    /**
+     * @return the number of interfaces held in the agent snapshot cache
+     */
+    public int getAgentSnapshotCount();
 }
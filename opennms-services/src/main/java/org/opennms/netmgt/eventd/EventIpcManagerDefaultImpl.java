@@ -32,19 +32,25 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.utils.ThreadCategory;
+import org.opennms.netmgt.eventd.adaptors.EventQueueMonitor;
+import org.opennms.netmgt.model.events.BatchEventListener;
 import org.opennms.netmgt.model.events.EventIpcBroadcaster;
 import org.opennms.netmgt.model.events.EventIpcManager;
 import org.opennms.netmgt.model.events.EventIpcManagerProxy;
@@ -64,7 +70,7 @@ import org.springframework.util.StringUtils;
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
-public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroadcaster, InitializingBean {
+public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroadcaster, EventQueueMonitor, InitializingBean {
 
     public static class DiscardTrapsAndSyslogEvents implements RejectedExecutionHandler {
         /**
@@ -101,12 +107,18 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     /**
      * Hash table of event listener threads keyed by the listener's id
      */
-    private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
+    private Map<String, EventListenerExecutor> m_listenerThreads = new ConcurrentHashMap<String, EventListenerExecutor>();
+
+    /**
+     * The compiled form of m_ueiListeners and m_listeners used to broadcast
+     * events; replaced whenever they change
+     */
+    private volatile UeiListenerTrie m_dispatch = UeiListenerTrie.EMPTY;
 
     /**
      * The thread pool handling the events
      */
-    private ExecutorService m_eventHandlerPool;
+    private ThreadPoolExecutor m_eventHandlerPool;
 
     private EventHandler m_eventHandler;
 
@@ -118,67 +130,149 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
     /**
      * A thread dedicated to each listener. The events meant for each listener
-     * is added to an execution queue when the 'sendNow()' is called. The
-     * ListenerThread reads events off of this queue and sends them to the
-     * appropriate listener.
+     * are added to its queue when 'broadcastNow()' is called. Whenever there
+     * are queued events the listener thread drains them in batches and hands
+     * them to the listener, all at once if it is a {@link BatchEventListener}.
+     * When the queue is full new events are discarded and counted.
      */
-    private static class EventListenerExecutor {
+    private static class EventListenerExecutor implements Runnable {
+        /**
+         * The largest number of events handed to a listener at a time.
+         */
+        private static final int MAX_BATCH_SIZE = 100;
+
+        /**
+         * Log a warning for the first and then every this many discarded events.
+         */
+        private static final long DROP_WARNING_INTERVAL = 1000;
+
         /**
          * Listener to which this thread is dedicated
          */
         private final EventListener m_listener;
 
+        private final BlockingQueue<QueuedEvent> m_queue;
+
+        private final int m_queueCapacity;
+
         /**
          * The thread that is running this runnable.
          */
         private final ExecutorService m_delegateThread;
 
+        /**
+         * Set while a drain of the queue is scheduled or running.
+         */
+        private final AtomicBoolean m_scheduled = new AtomicBoolean(false);
+
+        private final AtomicLong m_delivered = new AtomicLong(0);
+        private final AtomicLong m_dropped = new AtomicLong(0);
+        private final AtomicLong m_batches = new AtomicLong(0);
+        private volatile long m_lastLag = 0;
+        private volatile long m_maxLag = 0;
+
         /**
          * Constructor
          */
         EventListenerExecutor(EventListener listener, Integer handlerQueueLength) {
             m_listener = listener;
-            // You could also do Executors.newSingleThreadExecutor() here
-            m_delegateThread = new ThreadPoolExecutor(
-                    1,
-                    1,
-                    0L,
-                    TimeUnit.MILLISECONDS,
-                    handlerQueueLength == null ? new LinkedBlockingQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(handlerQueueLength),
-                    // This ThreadFactory will ensure that the log prefix of the calling thread
-                    // is used for all events that this listener handles. Therefore, if Notifd
-                    // registers for an event then all logs for handling that event will end up
-                    // inside notifd.log.
-                    new LogPreservingThreadFactory(m_listener.getName(), 1, true),
-                    new RejectedExecutionHandler() {
-                        @Override
-                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                            log().warn("Listener " + m_listener.getName() + "'s event queue is full, discarding event");
-                        }
-                    }
-            );
+            if (handlerQueueLength == null) {
+                m_queue = new LinkedBlockingQueue<QueuedEvent>();
+                m_queueCapacity = -1;
+            } else {
+                m_queue = new ArrayBlockingQueue<QueuedEvent>(handlerQueueLength);
+                m_queueCapacity = handlerQueueLength;
+            }
+            // This ThreadFactory will ensure that the log prefix of the calling thread
+            // is used for all events that this listener handles. Therefore, if Notifd
+            // registers for an event then all logs for handling that event will end up
+            // inside notifd.log.
+            m_delegateThread = Executors.newSingleThreadExecutor(new LogPreservingThreadFactory(m_listener.getName(), 1, true));
         }
 
         public void addEvent(final Event event) {
-            m_delegateThread.execute(new Runnable() {
-                public void run() {
-                    try {
-                        if (log().isInfoEnabled()) {
-                            log().info("run: calling onEvent on " + m_listener.getName() + " for event " + event.getUei() + " dbid " + event.getDbid() + " with time " + event.getTime());
-                        }
+            if (!m_queue.offer(new QueuedEvent(event))) {
+                final long dropped = m_dropped.incrementAndGet();
+                if (dropped == 1 || dropped % DROP_WARNING_INTERVAL == 0) {
+                    log().warn("Listener " + m_listener.getName() + "'s event queue is full, discarding event; " + dropped + " events discarded so far");
+                }
+                return;
+            }
+            schedule();
+        }
 
-                        // Make sure we restore our log4j logging prefix after onEvent is called
-                        String log4jPrefix = ThreadCategory.getPrefix(); 
-                        try {
-                            m_listener.onEvent(event);
-                        } finally {
-                            ThreadCategory.setPrefix(log4jPrefix);
-                        }
+        private void schedule() {
+            if (m_scheduled.compareAndSet(false, true)) {
+                try {
+                    m_delegateThread.execute(this);
+                } catch (RejectedExecutionException e) {
+                    m_scheduled.set(false);
+                    log().debug("Listener " + m_listener.getName() + " has been stopped, not delivering its queued events");
+                }
+            }
+        }
+
+        public void run() {
+            final List<QueuedEvent> batch = new ArrayList<QueuedEvent>(MAX_BATCH_SIZE);
+            try {
+                while (m_queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+                    deliver(batch);
+                    batch.clear();
+                }
+            } finally {
+                m_scheduled.set(false);
+            }
+
+            // an event may have been queued after the last drain found the queue empty
+            if (!m_queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void deliver(final List<QueuedEvent> batch) {
+            final long lag = System.currentTimeMillis() - batch.get(0).getQueued();
+            m_lastLag = lag;
+            if (lag > m_maxLag) {
+                m_maxLag = lag;
+            }
+
+            if (log().isDebugEnabled()) {
+                log().debug("run: delivering " + batch.size() + " events to " + m_listener.getName() + ", the oldest queued " + lag + "ms ago");
+            }
+
+            // Make sure we restore our log4j logging prefix after onEvent is called
+            final String log4jPrefix = ThreadCategory.getPrefix();
+            try {
+                if (m_listener instanceof BatchEventListener) {
+                    final List<Event> events = new ArrayList<Event>(batch.size());
+                    for (final QueuedEvent queued : batch) {
+                        events.add(queued.getEvent());
+                    }
+                    try {
+                        ((BatchEventListener) m_listener).onEvents(events);
                     } catch (Throwable t) {
                         log().warn("run: an unexpected error occured during ListenerThread " + m_listener.getName() + " run: " + t, t);
                     }
+                } else {
+                    for (final QueuedEvent queued : batch) {
+                        try {
+                            m_listener.onEvent(queued.getEvent());
+                        } catch (Throwable t) {
+                            log().warn("run: an unexpected error occured during ListenerThread " + m_listener.getName() + " run: " + t, t);
+                        }
+                        ThreadCategory.setPrefix(log4jPrefix);
+                    }
                 }
-            });
+            } finally {
+                ThreadCategory.setPrefix(log4jPrefix);
+            }
+
+            m_delivered.addAndGet(batch.size());
+            m_batches.incrementAndGet();
+        }
+
+        public ListenerQueueStatistics getStatistics() {
+            return new ListenerQueueStatistics(m_listener.getName(), m_queue.size(), m_queueCapacity, m_delivered.get(), m_dropped.get(), m_batches.get(), m_lastLag, m_maxLag);
         }
 
         /**
@@ -189,6 +283,27 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
     }
 
+    /**
+     * An event waiting in a listener's queue, along with when it was queued.
+     */
+    private static class QueuedEvent {
+        private final Event m_event;
+        private final long m_queued;
+
+        QueuedEvent(final Event event) {
+            m_event = event;
+            m_queued = System.currentTimeMillis();
+        }
+
+        public Event getEvent() {
+            return m_event;
+        }
+
+        public long getQueued() {
+            return m_queued;
+        }
+    }
+
     /**
      * <p>Constructor for EventIpcManagerDefaultImpl.</p>
      */
@@ -254,12 +369,15 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             log().debug("Event ID " + event.getDbid() + " to be broadcasted: " + event.getUei());
         }
 
-        if (m_listeners.isEmpty()) {
+        final UeiListenerTrie dispatch = m_dispatch;
+
+        final EventListener[] allListeners = dispatch.getAllListeners();
+        if (allListeners.length == 0) {
             log().debug("No listeners interested in all events");
         }
 
         // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
+        for (EventListener listener : allListeners) {
             queueEventToListener(event, listener);
         }
 
@@ -271,32 +389,15 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
 
         /*
-         * Send to listeners who are interested in this event UEI.
-         * Loop to attempt partial wild card "directory" matches.
+         * Send to listeners who are interested in this event UEI,
+         * including partial wild card "directory" matches.
          */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
-        for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        queueEventToListener(event, listener);
-                        sentToListeners.add(listener);
-                    }
-                }
-            }
-            
-            // Try wild cards: Find / before last character
-            int i = uei.lastIndexOf("/", uei.length() - 2);
-            if (i > 0) {
-                // Split at "/", including the /
-                uei = uei.substring (0, i + 1);
-            } else {
-                // No more wild cards to match
-                break;
-            }
+        final EventListener[] ueiListeners = dispatch.getListeners(event.getUei());
+        for (EventListener listener : ueiListeners) {
+            queueEventToListener(event, listener);
         }
-        
-        if (sentToListeners.isEmpty()) {
+
+        if (ueiListeners.length == 0) {
             if (log().isDebugEnabled()) {
                 log().debug("No listener interested in event ID " + event.getDbid() + ": " + event.getUei());
             }
@@ -304,7 +405,31 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     }
 
     private void queueEventToListener(Event event, EventListener listener) {
-        m_listenerThreads.get(listener.getName()).addEvent(event);
+        final EventListenerExecutor executor = m_listenerThreads.get(listener.getName());
+        if (executor != null) {
+            executor.addEvent(event);
+        }
+    }
+
+    /**
+     * Returns the state of the delivery queue of every registered listener.
+     *
+     * @return a {@link java.util.List} object.
+     */
+    public List<ListenerQueueStatistics> getListenerQueueStatistics() {
+        final List<ListenerQueueStatistics> stats = new ArrayList<ListenerQueueStatistics>(m_listenerThreads.size());
+        for (final EventListenerExecutor executor : m_listenerThreads.values()) {
+            stats.add(executor.getStatistics());
+        }
+        return stats;
+    }
+
+    /**
+     * Publishes the current registrations to broadcastNow(). Must be called,
+     * while holding the lock, after every change to the registrations.
+     */
+    private void rebuildDispatch() {
+        m_dispatch = new UeiListenerTrie(m_ueiListeners, m_listeners);
     }
 
     /**
@@ -324,6 +449,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : m_ueiListeners.keySet()) {
             removeUeiForListener(uei, listener);
         }
+
+        rebuildDispatch();
     }
 
     /**
@@ -352,6 +479,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         // Since we have a UEI-specific listener, remove the match-all listener
         removeMatchAllForListener(listener);
+
+        rebuildDispatch();
     }
 
     /**
@@ -384,6 +513,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : ueis) {
             removeUeiForListener(uei, listener);
         }
+
+        rebuildDispatch();
     }
 
     /**
@@ -402,6 +533,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(uei, "uei argument cannot be null");
 
         removeUeiForListener(uei, listener);
+
+        rebuildDispatch();
     }
 
     /**
@@ -421,6 +554,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             removeUeiForListener(uei, listener);
         }
 
+        rebuildDispatch();
+
         // stop and remove the listener thread for this listener
         if (m_listenerThreads.containsKey(listener.getName())) {
             m_listenerThreads.get(listener.getName()).stop();
@@ -522,6 +657,21 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The handler queue is considered saturated once less than a tenth of
+     * its configured length is left. An unbounded queue never is.
+     */
+    @Override
+    public boolean isSaturated() {
+        if (m_eventHandlerPool == null || m_handlerQueueLength == null) {
+            return false;
+        }
+        final int headroom = Math.max(1, m_handlerQueueLength / 10);
+        return m_eventHandlerPool.getQueue().remainingCapacity() < headroom;
+    }
+
     /**
      * <p>getEventHandler</p>
      *
@@ -33,6 +33,7 @@ import java.util.Collection;
 
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.eventd.adaptors.EventReceiver;
+import org.opennms.netmgt.eventd.processor.JdbcEventWriter;
 import org.springframework.util.Assert;
 
 /**
@@ -89,6 +90,18 @@ public final class Eventd extends AbstractServiceDaemon {
      */
     private Collection<EventReceiver> m_eventReceivers;
 
+    /**
+     * The event writer, kept so that its batch statistics can be exposed
+     * over JMX.  Optional.
+     */
+    private JdbcEventWriter m_eventWriter;
+
+    /**
+     * The event IPC manager, kept so that its listener queue statistics can
+     * be exposed over JMX.  Optional.
+     */
+    private EventIpcManagerDefaultImpl m_eventIpcManagerImpl;
+
     /**
      * Constuctor creates the localhost address(to be used eventually when
      * eventd originates events during correlation) and the broadcast queue
@@ -192,4 +205,40 @@ public final class Eventd extends AbstractServiceDaemon {
     public void setEventReceivers(Collection<EventReceiver> eventReceivers) {
         m_eventReceivers = eventReceivers;
     }
+
+    /**
+     * <p>getEventWriter</p>
+     *
+     * @return a {@link org.opennms.netmgt.eventd.processor.JdbcEventWriter} object, or null if none was set.
+     */
+    public JdbcEventWriter getEventWriter() {
+        return m_eventWriter;
+    }
+
+    /**
+     * <p>setEventWriter</p>
+     *
+     * @param eventWriter a {@link org.opennms.netmgt.eventd.processor.JdbcEventWriter} object.
+     */
+    public void setEventWriter(JdbcEventWriter eventWriter) {
+        m_eventWriter = eventWriter;
+    }
+
+    /**
+     * <p>getEventIpcManagerImpl</p>
+     *
+     * @return a {@link org.opennms.netmgt.eventd.EventIpcManagerDefaultImpl} object, or null if none was set.
+     */
+    public EventIpcManagerDefaultImpl getEventIpcManagerImpl() {
+        return m_eventIpcManagerImpl;
+    }
+
+    /**
+     * <p>setEventIpcManagerImpl</p>
+     *
+     * @param eventIpcManagerImpl a {@link org.opennms.netmgt.eventd.EventIpcManagerDefaultImpl} object.
+     */
+    public void setEventIpcManagerImpl(EventIpcManagerDefaultImpl eventIpcManagerImpl) {
+        m_eventIpcManagerImpl = eventIpcManagerImpl;
+    }
 }
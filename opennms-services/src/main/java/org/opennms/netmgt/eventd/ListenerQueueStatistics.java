@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+/**
+ * A snapshot of the delivery queue eventd keeps for one event listener.
+ *
+ * @author ranger
+ * @version $Id: $
+ */
+public final class ListenerQueueStatistics {
+    private final String m_listenerName;
+    private final int m_queueDepth;
+    private final int m_queueCapacity;
+    private final long m_eventsDelivered;
+    private final long m_eventsDropped;
+    private final long m_batchesDelivered;
+    private final long m_lastLag;
+    private final long m_maxLag;
+
+    ListenerQueueStatistics(final String listenerName, final int queueDepth, final int queueCapacity, final long eventsDelivered, final long eventsDropped, final long batchesDelivered, final long lastLag, final long maxLag) {
+        m_listenerName = listenerName;
+        m_queueDepth = queueDepth;
+        m_queueCapacity = queueCapacity;
+        m_eventsDelivered = eventsDelivered;
+        m_eventsDropped = eventsDropped;
+        m_batchesDelivered = batchesDelivered;
+        m_lastLag = lastLag;
+        m_maxLag = maxLag;
+    }
+
+    /**
+     * @return the name of the listener
+     */
+    public String getListenerName() {
+        return m_listenerName;
+    }
+
+    /**
+     * @return the number of events waiting to be delivered
+     */
+    public int getQueueDepth() {
+        return m_queueDepth;
+    }
+
+    /**
+     * @return the size of the queue, or -1 if it is unbounded
+     */
+    public int getQueueCapacity() {
+        return m_queueCapacity;
+    }
+
+    /**
+     * @return the number of events handed to the listener
+     */
+    public long getEventsDelivered() {
+        return m_eventsDelivered;
+    }
+
+    /**
+     * @return the number of events discarded because the queue was full
+     */
+    public long getEventsDropped() {
+        return m_eventsDropped;
+    }
+
+    /**
+     * @return the number of batches the events were delivered in
+     */
+    public long getBatchesDelivered() {
+        return m_batchesDelivered;
+    }
+
+    /**
+     * @return how long, in milliseconds, the oldest event of the last batch waited in the queue
+     */
+    public long getLastLag() {
+        return m_lastLag;
+    }
+
+    /**
+     * @return the longest time, in milliseconds, an event waited in the queue
+     */
+    public long getMaxLag() {
+        return m_maxLag;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return m_listenerName + ": depth=" + m_queueDepth + (m_queueCapacity < 0 ? "" : "/" + m_queueCapacity)
+            + ", delivered=" + m_eventsDelivered + ", dropped=" + m_eventsDropped + ", batches=" + m_batchesDelivered
+            + ", lag=" + m_lastLag + "ms, maxLag=" + m_maxLag + "ms";
+    }
+}
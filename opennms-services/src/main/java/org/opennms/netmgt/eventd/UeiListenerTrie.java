@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.opennms.netmgt.model.events.EventListener;
+
+/**
+ * An immutable lookup table from event UEIs to the listeners registered for
+ * them. It is rebuilt whenever a listener registration changes and replaced
+ * as a whole, so broadcasting an event never takes a lock.
+ *
+ * The UEIs are kept in a character trie. Every node knows the complete,
+ * de-duplicated listener list both for a UEI that ends at that node and for
+ * any longer UEI that leaves the trie there, including the listeners of all
+ * the "directory" wildcards (registered UEIs ending in '/') above it. A
+ * lookup is therefore a single walk down the trie that allocates nothing.
+ *
+ * @author ranger
+ * @version $Id: $
+ */
+final class UeiListenerTrie {
+    private static final EventListener[] NO_LISTENERS = new EventListener[0];
+
+    /**
+     * A trie without any listeners.
+     */
+    static final UeiListenerTrie EMPTY = new UeiListenerTrie(new TreeMap<String, List<EventListener>>(), new ArrayList<EventListener>(0));
+
+    private static final class Node {
+        private final char[] m_keys;
+        private final Node[] m_children;
+
+        /**
+         * The listeners for an event whose UEI ends at this node.
+         */
+        private final EventListener[] m_exact;
+
+        /**
+         * The listeners for an event whose UEI continues past this node but
+         * has no node for the next character.
+         */
+        private final EventListener[] m_beyond;
+
+        private Node(final char[] keys, final Node[] children, final EventListener[] exact, final EventListener[] beyond) {
+            m_keys = keys;
+            m_children = children;
+            m_exact = exact;
+            m_beyond = beyond;
+        }
+
+        private Node getChild(final char c) {
+            final int i = Arrays.binarySearch(m_keys, c);
+            return i < 0 ? null : m_children[i];
+        }
+    }
+
+    /**
+     * A mutable node used while the trie is being built.
+     */
+    private static final class Builder {
+        private final TreeMap<Character, Builder> m_children = new TreeMap<Character, Builder>();
+        private final List<EventListener> m_listeners = new ArrayList<EventListener>();
+
+        private void add(final String uei, final Collection<EventListener> listeners) {
+            Builder node = this;
+            for (int i = 0; i < uei.length(); i++) {
+                final Character c = Character.valueOf(uei.charAt(i));
+                Builder child = node.m_children.get(c);
+                if (child == null) {
+                    child = new Builder();
+                    node.m_children.put(c, child);
+                }
+                node = child;
+            }
+            node.m_listeners.addAll(listeners);
+        }
+
+        /**
+         * @param depth the length of the UEI leading to this node
+         * @param last the last character of that UEI
+         * @param inherited the wildcard listeners of the ancestors, most specific first
+         */
+        private Node compile(final int depth, final char last, final EventListener[] inherited) {
+            final EventListener[] exact = merge(m_listeners, inherited);
+
+            // a registered UEI ending in '/' also matches every longer UEI below it
+            final boolean wildcard = depth >= 2 && last == '/' && !m_listeners.isEmpty();
+            final EventListener[] beyond = wildcard ? exact : inherited;
+
+            final char[] keys = new char[m_children.size()];
+            final Node[] children = new Node[m_children.size()];
+            int i = 0;
+            for (final Map.Entry<Character, Builder> entry : m_children.entrySet()) {
+                keys[i] = entry.getKey().charValue();
+                children[i] = entry.getValue().compile(depth + 1, keys[i], beyond);
+                i++;
+            }
+
+            return new Node(keys, children, exact, beyond);
+        }
+
+        private static EventListener[] merge(final List<EventListener> own, final EventListener[] inherited) {
+            if (own.isEmpty()) {
+                return inherited;
+            }
+            final Set<EventListener> merged = new LinkedHashSet<EventListener>(own);
+            merged.addAll(Arrays.asList(inherited));
+            return merged.toArray(new EventListener[merged.size()]);
+        }
+    }
+
+    private final Node m_root;
+
+    private final EventListener[] m_allListeners;
+
+    /**
+     * Compiles a trie from the current listener registrations.
+     *
+     * @param ueiListeners the listeners registered for each UEI
+     * @param allListeners the listeners registered for all events
+     */
+    UeiListenerTrie(final Map<String, List<EventListener>> ueiListeners, final List<EventListener> allListeners) {
+        final Builder root = new Builder();
+        for (final Map.Entry<String, List<EventListener>> entry : ueiListeners.entrySet()) {
+            // an event without a UEI never matches anything, not even ""
+            if (entry.getKey().length() > 0 && !entry.getValue().isEmpty()) {
+                root.add(entry.getKey(), entry.getValue());
+            }
+        }
+        m_root = root.compile(0, '\0', NO_LISTENERS);
+        m_allListeners = allListeners.toArray(new EventListener[allListeners.size()]);
+    }
+
+    /**
+     * Returns the listeners interested in all events.
+     *
+     * @return an array of {@link org.opennms.netmgt.model.events.EventListener} objects; must not be modified.
+     */
+    EventListener[] getAllListeners() {
+        return m_allListeners;
+    }
+
+    /**
+     * Returns the listeners registered for the UEI or for one of its
+     * "directory" prefixes, the most specific ones first.
+     *
+     * @param uei the UEI of the event
+     * @return an array of {@link org.opennms.netmgt.model.events.EventListener} objects; must not be modified.
+     */
+    EventListener[] getListeners(final String uei) {
+        Node node = m_root;
+        for (int i = 0; i < uei.length(); i++) {
+            final Node child = node.getChild(uei.charAt(i));
+            if (child == null) {
+                return node.m_beyond;
+            }
+            node = child;
+        }
+        return node.m_exact;
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import java.io.InputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlSchema;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Pulls the &lt;event&gt; elements out of an event log document with a StAX
+ * reader and unmarshals them one at a time, so the enclosing &lt;log&gt; and
+ * &lt;events&gt; elements never have to be built.  Like the SAX filter used by
+ * {@link JaxbUtils}, documents that do not declare the event namespace are
+ * read as if they did.
+ *
+ * Instances are not thread-safe; use one parser per thread.
+ *
+ * @author ranger
+ * @version $Id: $
+ */
+final class EventStreamParser {
+
+    /**
+     * Receives the events of a document as they are parsed.
+     */
+    interface Listener {
+        void onEvent(Event event);
+    }
+
+    private static final String EVENT_NAMESPACE = Event.class.getPackage().getAnnotation(XmlSchema.class).namespace();
+
+    private static final String EVENT_ELEMENT = "event";
+
+    private final XMLInputFactory m_factory;
+
+    private final Unmarshaller m_unmarshaller;
+
+    EventStreamParser() {
+        m_factory = XMLInputFactory.newInstance();
+        m_factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        m_factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        m_unmarshaller = JaxbUtils.getUnmarshallerFor(Event.class, null, false);
+    }
+
+    /**
+     * Parses the given document, handing each event to the listener as soon
+     * as its closing tag has been read.
+     *
+     * @return the number of events parsed
+     */
+    int parse(final InputStream in, final Listener listener) throws XMLStreamException, JAXBException {
+        final XMLStreamReader reader = new EventNamespaceReader(m_factory.createXMLStreamReader(in));
+        try {
+            int count = 0;
+            int type = reader.getEventType();
+            while (true) {
+                if (type == XMLStreamConstants.START_ELEMENT && EVENT_ELEMENT.equals(reader.getLocalName())) {
+                    // leaves the reader on the token after </event>
+                    listener.onEvent(m_unmarshaller.unmarshal(reader, Event.class).getValue());
+                    count++;
+                    type = reader.getEventType();
+                } else if (reader.hasNext()) {
+                    type = reader.next();
+                } else {
+                    return count;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reports elements without a namespace as members of the event namespace.
+     */
+    private static final class EventNamespaceReader extends StreamReaderDelegate {
+        EventNamespaceReader(final XMLStreamReader reader) {
+            super(reader);
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            final String namespace = super.getNamespaceURI();
+            if (namespace == null || namespace.length() == 0) {
+                return EVENT_NAMESPACE;
+            }
+            return namespace;
+        }
+
+        @Override
+        public QName getName() {
+            return new QName(getNamespaceURI(), getLocalName());
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import java.text.DateFormat;
+import java.util.Comparator;
+import java.util.Date;
+
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Orders the events of a single record by their time stamp. Events without
+ * a time, or with a time that cannot be parsed, sort first.
+ *
+ * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
+ * @author <a href="http;//www.opennms.org">OpenNMS </a>
+ */
+final class EventTimeComparator implements Comparator<Event> {
+    public int compare(final Event e1, final Event e2) {
+        final boolean e1t = (e1.getTime() != null);
+        final boolean e2t = (e2.getTime() != null);
+        if (e1t && !e2t) {
+            return 1;
+        } else if (!e1t && e2t) {
+            return -1;
+        } else if (!e1t && !e2t) {
+            return 0;
+        }
+
+        final DateFormat fmt = DateFormat.getDateTimeInstance(DateFormat.FULL, DateFormat.FULL);
+
+        Date de1 = null;
+        try {
+            de1 = fmt.parse(e1.getTime());
+        } catch (final Throwable t) {
+        }
+
+        Date de2 = null;
+        try {
+            de2 = fmt.parse(e2.getTime());
+        } catch (final Throwable t) {
+        }
+
+        if (de1 != null && de2 != null) {
+            return (int) (de1.getTime() - de2.getTime());
+        } else if (de1 == null && de2 != null) {
+            return -1;
+        } else if (de1 != null && de2 == null) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+}
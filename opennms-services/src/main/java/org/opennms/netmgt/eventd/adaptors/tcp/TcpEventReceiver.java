@@ -43,6 +43,7 @@ import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.eventd.adaptors.EventHandler;
 import org.opennms.netmgt.eventd.adaptors.EventHandlerMBeanProxy;
+import org.opennms.netmgt.eventd.adaptors.EventQueueMonitor;
 import org.opennms.netmgt.eventd.adaptors.EventReceiver;
 import org.springframework.util.Assert;
 
@@ -51,10 +52,12 @@ import org.springframework.util.Assert;
  * This fiber sets up an server socket that accepts incoming connections on the
  * configured port (port 5817 by default).
  *
- * When a connection is established a new thread is started to process the
- * socket connection. The event document is decoded and each of the events are
- * passed to the handlers. Based upon the action of the handlers an event receipt
- * is generated and sent to the remote client.
+ * By default the connections are served by a {@link TcpNioServer}: one
+ * selector thread does all the socket I/O and a small pool of worker threads
+ * decodes the event documents. When <code>nonBlocking</code> is turned off a
+ * new thread is started to process each socket connection instead. Either way
+ * each of the events are passed to the handlers. Based upon the action of the
+ * handlers an event receipt is generated and sent to the remote client.
  *
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="http;//www.opennms.org">OpenNMS </a>
@@ -74,7 +77,7 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
     /**
      * The server socket
      */
-    private TcpServer m_server;
+    private TcpEventServer m_server;
 
     /**
      * The registered list of event handlers. Each incoming event will be
@@ -109,6 +112,22 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
      */
     private String m_ipAddress;
 
+    /**
+     * Whether to serve all connections from a selector instead of one thread
+     * per connection.
+     */
+    private boolean m_nonBlocking;
+
+    /**
+     * The number of threads decoding event records in non-blocking mode.
+     */
+    private int m_workerThreads;
+
+    /**
+     * Tells the non-blocking server when to stop reading events, may be null.
+     */
+    private EventQueueMonitor m_queueMonitor;
+
     /**
      * Constructs a new TCP/IP event receiver on the default TCP/IP port. The
      * server socket allocation is delayed until the fiber is actually started.
@@ -137,6 +156,9 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
         m_worker = null;
         m_logPrefix = null;
         m_recsPerConn = UNLIMITED_EVENTS;
+        m_nonBlocking = true;
+        m_workerThreads = TcpNioServer.DEFAULT_WORKER_THREADS;
+        m_queueMonitor = null;
     }
 
     /**
@@ -157,7 +179,11 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
         m_status = STARTING;
         try {
             InetAddress address = "*".equals(m_ipAddress) ? null : InetAddressUtils.addr(m_ipAddress);
-            m_server = new TcpServer(this, m_eventHandlers, m_tcpPort, address);
+            if (m_nonBlocking) {
+                m_server = new TcpNioServer(this, m_eventHandlers, m_tcpPort, address, m_workerThreads, m_queueMonitor);
+            } else {
+                m_server = new TcpServer(this, m_eventHandlers, m_tcpPort, address);
+            }
             if (m_logPrefix != null) {
                 m_server.setLogPrefix(m_logPrefix);
             }
@@ -367,6 +393,67 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
         m_recsPerConn = number.intValue();
     }
 
+    /**
+     * <p>isNonBlocking</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isNonBlocking() {
+        return m_nonBlocking;
+    }
+
+    /**
+     * <p>setNonBlocking</p>
+     *
+     * @param nonBlocking a boolean.
+     */
+    public void setNonBlocking(final boolean nonBlocking) {
+        assertNotRunning();
+
+        m_nonBlocking = nonBlocking;
+    }
+
+    /**
+     * <p>getWorkerThreads</p>
+     *
+     * @return a {@link java.lang.Integer} object.
+     */
+    public Integer getWorkerThreads() {
+        return m_workerThreads;
+    }
+
+    /**
+     * <p>setWorkerThreads</p>
+     *
+     * @param workerThreads a {@link java.lang.Integer} object.
+     */
+    public void setWorkerThreads(final Integer workerThreads) {
+        assertNotRunning();
+        Assert.isTrue(workerThreads.intValue() > 0, "workerThreads must be positive");
+
+        m_workerThreads = workerThreads.intValue();
+    }
+
+    /**
+     * <p>getQueueMonitor</p>
+     *
+     * @return a {@link org.opennms.netmgt.eventd.adaptors.EventQueueMonitor} object.
+     */
+    public EventQueueMonitor getQueueMonitor() {
+        return m_queueMonitor;
+    }
+
+    /**
+     * <p>setQueueMonitor</p>
+     *
+     * @param queueMonitor a {@link org.opennms.netmgt.eventd.adaptors.EventQueueMonitor} object.
+     */
+    public void setQueueMonitor(final EventQueueMonitor queueMonitor) {
+        assertNotRunning();
+
+        m_queueMonitor = queueMonitor;
+    }
+
     private void assertNotRunning() {
         Assert.state(m_status == START_PENDING || m_status == STOPPED, "The fiber is already running and cannot be modified or started");
     }
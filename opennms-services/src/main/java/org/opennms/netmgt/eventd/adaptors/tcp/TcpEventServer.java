@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+/**
+ * The listening side of the {@link TcpEventReceiver}. The receiver runs an
+ * instance in its own thread and stops it again when the receiver is stopped.
+ *
+ * @author ranger
+ * @version $Id: $
+ */
+interface TcpEventServer extends Runnable {
+    /**
+     * Stops the server and every connection it is handling.
+     *
+     * @throws java.lang.InterruptedException if any.
+     */
+    void stop() throws InterruptedException;
+
+    /**
+     * Returns true if this runnable is executing.
+     *
+     * @return a boolean.
+     */
+    boolean isAlive();
+
+    /**
+     * <p>setLogPrefix</p>
+     *
+     * @param prefix a {@link java.lang.String} object.
+     */
+    void setLogPrefix(String prefix);
+
+    /**
+     * <p>setEventsPerConnection</p>
+     *
+     * @param number a int.
+     */
+    void setEventsPerConnection(int number);
+}
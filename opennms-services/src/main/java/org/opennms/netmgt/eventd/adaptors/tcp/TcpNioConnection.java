@@ -0,0 +1,407 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.LogUtils;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+
+/**
+ * One client connection of the {@link TcpNioServer}. The selector thread
+ * feeds the bytes it reads into {@link #read(ByteBuffer)}, which cuts them
+ * into records at each closing &lt;/log&gt; tag just like the
+ * {@link TcpRecordHandler} does. Complete records are queued and processed in
+ * order by one worker thread at a time; the resulting event receipts are
+ * queued for the selector thread to write back to the client.
+ *
+ * @author ranger
+ * @version $Id: $
+ */
+final class TcpNioConnection implements Runnable {
+    /**
+     * The number of parsed but unprocessed records after which the selector
+     * stops reading from the connection.
+     */
+    private static final int MAX_PENDING_RECORDS = 16;
+
+    /**
+     * Records larger than this are treated as a broken client.
+     */
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The framer state in between two records.
+     */
+    private static final int BETWEEN_RECORDS = 8;
+
+    private static final ThreadLocal<EventStreamParser> s_parser = new ThreadLocal<EventStreamParser>() {
+        @Override
+        protected EventStreamParser initialValue() {
+            return new EventStreamParser();
+        }
+    };
+
+    private final TcpNioServer m_server;
+
+    private final SocketChannel m_channel;
+
+    private final String m_name;
+
+    private final List<EventHandler> m_handlers;
+
+    private final Queue<byte[]> m_records = new ConcurrentLinkedQueue<byte[]>();
+
+    /**
+     * The records that have been framed but not yet completely processed.
+     */
+    private final AtomicInteger m_pendingRecords = new AtomicInteger(0);
+
+    private final Queue<ByteBuffer> m_output = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private final AtomicBoolean m_scheduled = new AtomicBoolean(false);
+
+    // the remaining fields are only touched by the selector thread
+
+    private SelectionKey m_key;
+
+    private int m_level = BETWEEN_RECORDS;
+
+    private ByteArrayOutputStream m_record = null;
+
+    private int m_recsPerConn;
+
+    private boolean m_inputClosed = false;
+
+    TcpNioConnection(final TcpNioServer server, final SocketChannel channel, final List<EventHandler> handlers, final int recsPerConn) {
+        m_server = server;
+        m_channel = channel;
+        m_handlers = handlers;
+        m_recsPerConn = recsPerConn;
+
+        final Socket socket = channel.socket();
+        m_name = InetAddressUtils.str(socket.getInetAddress()) + ":" + socket.getPort();
+    }
+
+    String getName() {
+        return m_name;
+    }
+
+    SocketChannel getChannel() {
+        return m_channel;
+    }
+
+    SelectionKey getKey() {
+        return m_key;
+    }
+
+    void setKey(final SelectionKey key) {
+        m_key = key;
+    }
+
+    /**
+     * Reads what is available from the socket and queues every record that
+     * was completed by it.
+     */
+    void read(final ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        if (m_channel.read(buffer) < 0) {
+            LogUtils.debugf(this, "Connection %s closed its output", m_name);
+            m_inputClosed = true;
+            return;
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining() && !m_inputClosed) {
+            frame(buffer.get());
+        }
+    }
+
+    /**
+     * Looks for '&lt;/([a-zA-Z0-9]+:)?log&gt;', see {@link TcpRecordHandler}.
+     */
+    private void frame(final byte b) throws IOException {
+        final char ch = (char) (b & 0xff);
+
+        if (m_level == BETWEEN_RECORDS) {
+            // gobble up anything up to the start of the next record
+            if (ch != '<') {
+                return;
+            }
+            if (m_recsPerConn == 0) {
+                LogUtils.debugf(this, "Connection %s reached its record limit", m_name);
+                m_inputClosed = true;
+                return;
+            }
+            m_recsPerConn -= (m_recsPerConn > 0 ? 1 : 0);
+            m_record = new ByteArrayOutputStream();
+        }
+
+        m_record.write(b);
+        if (m_record.size() > MAX_RECORD_SIZE) {
+            throw new IOException("Event record from " + m_name + " exceeds " + MAX_RECORD_SIZE + " bytes");
+        }
+
+        switch (m_level) {
+        case 0:
+            m_level = (ch == '<' ? 1 : 0);
+            break;
+        case 1:
+            m_level = (ch == '/' ? 2 : 0);
+            break;
+        case 2:
+            m_level = (ch == 'l' ? 5 : (Character.isLetterOrDigit(ch) ? 3 : 0));
+            break;
+        case 3:
+            m_level = (ch == ':' ? 4 : (Character.isLetterOrDigit(ch) ? 3 : 0));
+            break;
+        case 4:
+            m_level = (ch == 'l' ? 5 : 0);
+            break;
+        case 5:
+            m_level = (ch == 'o' ? 6 : 0);
+            break;
+        case 6:
+            m_level = (ch == 'g' ? 7 : 0);
+            break;
+        case 7:
+            if (ch == '>') {
+                m_records.add(m_record.toByteArray());
+                m_pendingRecords.incrementAndGet();
+                m_record = null;
+                m_level = BETWEEN_RECORDS;
+                m_server.schedule(this);
+            } else {
+                m_level = 0;
+            }
+            break;
+        case BETWEEN_RECORDS:
+            // the '<' that opened the record
+            m_level = 1;
+            break;
+        default:
+            m_level = 0;
+        }
+    }
+
+    /**
+     * Writes as much of the queued receipts as the socket accepts.
+     */
+    void write() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = m_output.peek()) != null) {
+            m_channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            m_output.poll();
+        }
+    }
+
+    boolean isReadable() {
+        return !m_inputClosed && m_pendingRecords.get() < MAX_PENDING_RECORDS;
+    }
+
+    boolean hasOutput() {
+        return !m_output.isEmpty();
+    }
+
+    /**
+     * Returns true once the client is done sending, every record has been
+     * processed and every receipt has been written.
+     */
+    boolean isFinished() {
+        // the receipts of a record are queued before it stops being pending
+        return m_inputClosed && m_pendingRecords.get() == 0 && m_output.isEmpty();
+    }
+
+    void close() {
+        if (m_key != null) {
+            m_key.cancel();
+        }
+        try {
+            LogUtils.debugf(this, "closing connnection %s", m_name);
+            m_channel.close();
+        } catch (final IOException e) {
+            LogUtils.warnf(this, e, "An I/O exception occured while closing the TCP/IP connection.");
+        }
+    }
+
+    /**
+     * Hands this connection to a worker unless one is already processing
+     * its records.
+     *
+     * @return true if the caller must submit this connection to a worker
+     */
+    boolean claim() {
+        return m_scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Processes the queued records in the order they were received.
+     */
+    public void run() {
+        try {
+            byte[] record;
+            while ((record = m_records.poll()) != null) {
+                try {
+                    processRecord(record);
+                } catch (final Throwable t) {
+                    LogUtils.warnf(this, t, "An exception occured while processing an event record from %s.", m_name);
+                } finally {
+                    m_pendingRecords.decrementAndGet();
+                }
+            }
+        } finally {
+            m_scheduled.set(false);
+        }
+
+        // a record may have been queued after the loop found the queue empty
+        if (!m_records.isEmpty()) {
+            m_server.schedule(this);
+        }
+        m_server.update(this);
+    }
+
+    private void processRecord(final byte[] record) {
+        final List<Event> events = new ArrayList<Event>();
+        try {
+            s_parser.get().parse(new ByteArrayInputStream(record), new EventStreamParser.Listener() {
+                public void onEvent(final Event event) {
+                    events.add(event);
+                }
+            });
+            LogUtils.debugf(this, "Event record converted");
+        } catch (final Exception e) {
+            LogUtils.errorf(this, e, "Could not unmarshall the XML record.");
+            return;
+        }
+
+        if (events.isEmpty()) {
+            LogUtils.debugf(this, "The agent sent an empty event stream");
+            return;
+        }
+
+        Collections.sort(events, new EventTimeComparator());
+
+        final List<Event> okEvents = new ArrayList<Event>(events.size());
+        synchronized (m_handlers) {
+            for (final EventHandler hdl : m_handlers) {
+                for (final Event event : events) {
+                    try {
+                        LogUtils.debugf(this, "handling event: %s", event);
+
+                        if (hdl.processEvent(event)) {
+                            if (!okEvents.contains(event)) {
+                                okEvents.add(event);
+                            }
+                        }
+                    } catch (final Throwable t) {
+                        LogUtils.warnf(this, t, "An exception occured while processing an event.");
+                    }
+                }
+            }
+        }
+
+        boolean hasReceipt = false;
+        final EventReceipt receipt = new EventReceipt();
+        for (final Event event : okEvents) {
+            if (event.getUuid() != null) {
+                receipt.addUuid(event.getUuid());
+                hasReceipt = true;
+            }
+        }
+
+        if (hasReceipt) {
+            sendReceipt(receipt);
+        }
+    }
+
+    private void sendReceipt(final EventReceipt receipt) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final Writer writer = new OutputStreamWriter(bytes, "UTF-8");
+            JaxbUtils.marshal(receipt, writer);
+            writer.flush();
+            m_output.add(ByteBuffer.wrap(bytes.toByteArray()));
+        } catch (final IOException e) {
+            LogUtils.warnf(this, e, "Failed to create event-receipt XML document.");
+            return;
+        }
+
+        synchronized (m_handlers) {
+            for (final EventHandler hdl : m_handlers) {
+                try {
+                    hdl.receiptSent(receipt);
+                } catch (final Throwable t) {
+                    LogUtils.warnf(this, t, "An exception occured while processing an event receipt.");
+                }
+            }
+        }
+
+        if (LogUtils.isDebugEnabled(this)) {
+            try {
+                final StringWriter swriter = new StringWriter();
+                JaxbUtils.marshal(receipt, swriter);
+
+                LogUtils.debugf(this, "Queued Event Receipt {");
+                LogUtils.debugf(this, swriter.getBuffer().toString());
+                LogUtils.debugf(this, "}");
+            } catch (final Throwable e) {
+                LogUtils.errorf(this, e, "An error occured during marshalling of event receipt for the log.");
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "TcpNioConnection[" + m_name + "]";
+    }
+}
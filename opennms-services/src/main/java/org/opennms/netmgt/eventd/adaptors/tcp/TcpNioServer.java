@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.Fiber;
+import org.opennms.core.utils.ThreadCategory;
+import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.eventd.adaptors.EventQueueMonitor;
+
+/**
+ * A non-blocking implementation of the TCP event server. A single selector
+ * thread accepts connections, reads the event records from all of them and
+ * writes the event receipts back, while a small, fixed pool of worker threads
+ * parses the records and passes the events to the handlers. The number of
+ * threads therefore no longer grows with the number of connected clients.
+ *
+ * When an {@link EventQueueMonitor} is set and reports that the event queue is
+ * saturated, the server stops reading from every connection until the queue
+ * has drained again. The clients are then throttled by TCP flow control
+ * instead of having their events rejected.
+ *
+ * @author ranger
+ * @version $Id: $
+ */
+final class TcpNioServer implements TcpEventServer {
+    /**
+     * The default number of threads parsing and dispatching event records.
+     */
+    static final int DEFAULT_WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * How long the selector waits before checking the shutdown status, in
+     * milliseconds.
+     */
+    private static final long SELECT_TIMEOUT = 500;
+
+    /**
+     * How often the event queue is checked while reading is paused, in
+     * milliseconds.
+     */
+    private static final long PAUSED_SELECT_TIMEOUT = 100;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Fiber m_parent;
+
+    private final List<EventHandler> m_handlers;
+
+    private final int m_tcpPort;
+
+    private final InetAddress m_ipAddress;
+
+    private final int m_workerThreads;
+
+    private final EventQueueMonitor m_queueMonitor;
+
+    private final ServerSocketChannel m_serverChannel;
+
+    private final Selector m_selector;
+
+    /**
+     * Connections whose interest set must be re-evaluated by the selector
+     * thread after a worker processed their records.
+     */
+    private final Queue<TcpNioConnection> m_updates = new ConcurrentLinkedQueue<TcpNioConnection>();
+
+    private final ByteBuffer m_readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private volatile boolean m_stop;
+
+    private volatile Thread m_context;
+
+    private volatile ExecutorService m_workers;
+
+    private boolean m_paused;
+
+    private String m_logPrefix;
+
+    private int m_recsPerConn;
+
+    /**
+     * Constructs a new instance of a non-blocking server to handle incoming
+     * TCP connections.
+     *
+     * @param parent
+     *            The parent fiber
+     * @param handlers a {@link java.util.List} object.
+     * @param port
+     *            The port to listen on.
+     * @param address
+     *            The address to listen on, or null for all addresses.
+     * @param workerThreads
+     *            The number of threads processing the event records.
+     * @param queueMonitor
+     *            The monitor deciding when to stop reading, may be null.
+     * @throws java.io.IOException if any.
+     */
+    public TcpNioServer(Fiber parent, List<EventHandler> handlers, int port, InetAddress address, int workerThreads, EventQueueMonitor queueMonitor) throws IOException {
+        m_parent = parent;
+        m_handlers = handlers;
+        m_tcpPort = port;
+        m_ipAddress = address;
+        m_workerThreads = workerThreads;
+        m_queueMonitor = queueMonitor;
+        m_stop = false;
+        m_context = null;
+        m_logPrefix = org.opennms.netmgt.eventd.Eventd.LOG4J_CATEGORY;
+        m_recsPerConn = TcpEventReceiver.UNLIMITED_EVENTS;
+
+        try {
+            m_serverChannel = ServerSocketChannel.open();
+            m_serverChannel.socket().bind(new InetSocketAddress(m_ipAddress, m_tcpPort));
+            m_serverChannel.configureBlocking(false);
+            m_selector = Selector.open();
+            m_serverChannel.register(m_selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            IOException n = new IOException("Could not create listening TCP socket on " + m_ipAddress + ":" + m_tcpPort + ": " + e);
+            n.initCause(e);
+            throw n;
+        }
+    }
+
+    /**
+     * This is called inform the current execution of this object is stopped.
+     * Once called the object cannot be reused in another thread.
+     *
+     * @throws java.lang.InterruptedException if any.
+     */
+    public void stop() throws InterruptedException {
+        log().debug("stop method invoked");
+
+        m_stop = true;
+        m_selector.wakeup();
+
+        final Thread context = m_context;
+        if (context != null) {
+            if (log().isDebugEnabled()) {
+                log().debug("Joining context thread " + context.getName());
+            }
+
+            // the selector thread closes the connections and the worker pool on its way out
+            context.join();
+
+            if (log().isDebugEnabled()) {
+                log().debug("Thread context stopped and joined " + context.getName());
+            }
+
+            m_context = null;
+        } else {
+            closeAll();
+        }
+
+        log().debug("All TCP connections are closed");
+    }
+
+    private ThreadCategory log() {
+        return ThreadCategory.getInstance(getClass());
+    }
+
+    /**
+     * Returns true if this runnable is executing.
+     *
+     * @return a boolean.
+     */
+    public boolean isAlive() {
+        final Thread context = m_context;
+        return context != null && context.isAlive();
+    }
+
+    /**
+     * The selector loop. Accepts new connections, reads their event records
+     * and writes back the receipts the workers produced for them.
+     */
+    public void run() {
+        // get the thread context for the ability to stop the process
+        m_context = Thread.currentThread();
+        synchronized (m_context) {
+            m_context.notifyAll();
+        }
+
+        // get the log information
+        ThreadCategory.setPrefix(m_logPrefix);
+
+        // check to see if the thread has already been stopped.
+        if (m_stop) {
+            log().debug("Stop flag set on thread startup");
+            closeAll();
+            log().debug("Thread exiting");
+            return;
+        }
+
+        m_workers = new ThreadPoolExecutor(
+            m_workerThreads,
+            m_workerThreads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new LogPreservingThreadFactory("TcpEventWorker", m_workerThreads, true)
+        );
+
+        if (log().isDebugEnabled()) {
+            log().debug("Non-blocking server connection processor started on " + m_ipAddress + ":" + m_tcpPort + " with " + m_workerThreads + " worker threads");
+        }
+
+        /*
+         * Check the status of the fiber and respond
+         * correctly. When the fiber enters a STOPPED or
+         * STOP PENDING state then shutdown occurs by exiting
+         * the while loop
+         */
+        while (m_parent.getStatus() != Fiber.STOPPED && m_parent.getStatus() != Fiber.STOP_PENDING && !m_stop) {
+            try {
+                checkQueue();
+
+                TcpNioConnection updated;
+                while ((updated = m_updates.poll()) != null) {
+                    updateInterest(updated);
+                }
+
+                m_selector.select(m_paused ? PAUSED_SELECT_TIMEOUT : SELECT_TIMEOUT);
+
+                final Iterator<SelectionKey> keys = m_selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        handle(key, (TcpNioConnection) key.attachment());
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                log().error("Server Socket I/O Error: " + e, e);
+                break;
+            }
+        }
+
+        // Either a fatal I/O error has occured or the service has been stopped.
+        closeAll();
+
+        // Log the termination of this runnable
+        log().debug("TCP Server Shutdown");
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = m_serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+
+        channel.configureBlocking(false);
+
+        final TcpNioConnection connection = new TcpNioConnection(this, channel, m_handlers, m_recsPerConn);
+        connection.setKey(channel.register(m_selector, m_paused ? 0 : SelectionKey.OP_READ, connection));
+
+        if (log().isDebugEnabled()) {
+            log().debug("New connection accepted from " + connection.getName());
+        }
+    }
+
+    private void handle(final SelectionKey key, final TcpNioConnection connection) {
+        try {
+            if (key.isReadable()) {
+                connection.read(m_readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.write();
+            }
+            updateInterest(connection);
+        } catch (CancelledKeyException e) {
+            connection.close();
+        } catch (IOException e) {
+            log().warn("An I/O exception occured on connection " + connection.getName() + ": " + e, e);
+            connection.close();
+        }
+    }
+
+    /**
+     * Closes a connection once it is done, otherwise reads from it while it
+     * has room for more records and writes to it while it has receipts.
+     */
+    private void updateInterest(final TcpNioConnection connection) {
+        final SelectionKey key = connection.getKey();
+        if (key == null || !key.isValid()) {
+            return;
+        }
+
+        if (connection.isFinished()) {
+            connection.close();
+            return;
+        }
+
+        int ops = 0;
+        if (!m_paused && connection.isReadable()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (connection.hasOutput()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+
+        try {
+            key.interestOps(ops);
+        } catch (CancelledKeyException e) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Pauses or resumes reading from all connections depending on the state
+     * of the event queue.
+     */
+    private void checkQueue() {
+        final boolean saturated = m_queueMonitor != null && m_queueMonitor.isSaturated();
+        if (saturated == m_paused) {
+            return;
+        }
+
+        m_paused = saturated;
+        if (m_paused) {
+            log().warn("The event queue is saturated, pausing all TCP event connections");
+        } else {
+            log().info("The event queue has drained, resuming all TCP event connections");
+        }
+
+        for (final SelectionKey key : m_selector.keys()) {
+            if (key.attachment() instanceof TcpNioConnection) {
+                updateInterest((TcpNioConnection) key.attachment());
+            }
+        }
+    }
+
+    /**
+     * Submits the connection to a worker unless it is already being
+     * processed. Called whenever a record has been queued on it.
+     */
+    void schedule(final TcpNioConnection connection) {
+        final ExecutorService workers = m_workers;
+        if (workers == null || !connection.claim()) {
+            return;
+        }
+
+        try {
+            workers.execute(connection);
+        } catch (RejectedExecutionException e) {
+            log().debug("Not processing records from " + connection.getName() + ", the server is shutting down");
+        }
+    }
+
+    /**
+     * Asks the selector thread to re-evaluate the connection after a worker
+     * processed its records.
+     */
+    void update(final TcpNioConnection connection) {
+        m_updates.add(connection);
+        m_selector.wakeup();
+    }
+
+    private void closeAll() {
+        try {
+            final List<TcpNioConnection> connections = new ArrayList<TcpNioConnection>();
+            for (final SelectionKey key : m_selector.keys()) {
+                if (key.attachment() instanceof TcpNioConnection) {
+                    connections.add((TcpNioConnection) key.attachment());
+                }
+            }
+            if (log().isDebugEnabled()) {
+                log().debug("Closing " + connections.size() + " connections");
+            }
+            for (final TcpNioConnection connection : connections) {
+                connection.close();
+            }
+        } catch (ClosedSelectorException e) {
+            // already closed
+        }
+
+        try {
+            log().debug("closing the server socket connection");
+            m_serverChannel.close();
+            m_selector.close();
+        } catch (Throwable t) {
+            log().error("An I/O Error Occcured Closing the Server Socket: " + t, t);
+        }
+
+        final ExecutorService workers = m_workers;
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log().warn("Event record workers did not stop within 5 seconds");
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                log().warn("Interrupted while waiting for the event record workers to stop", e);
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * <p>setLogPrefix</p>
+     *
+     * @param prefix a {@link java.lang.String} object.
+     */
+    public void setLogPrefix(String prefix) {
+        m_logPrefix = prefix;
+    }
+
+    /**
+     * <p>setEventsPerConnection</p>
+     *
+     * @param number a int.
+     */
+    public void setEventsPerConnection(int number) {
+        m_recsPerConn = number;
+    }
+}
@@ -51,7 +51,7 @@ import org.opennms.netmgt.eventd.adaptors.EventHandler;
  * @author <a href="http;//www.opennms.org">OpenNMS </a>
  * 
  */
-final class TcpServer implements Runnable {
+final class TcpServer implements TcpEventServer {
     /**
      * The default TCP/IP port where the server listens for connections. Each
      * connection to the server will be processed by its own thread.
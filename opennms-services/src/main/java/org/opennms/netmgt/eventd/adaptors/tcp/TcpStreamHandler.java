@@ -39,11 +39,8 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.net.InetAddress;
 import java.net.Socket;
-import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -285,43 +282,7 @@ final class TcpStreamHandler implements Runnable {
             final Event[] events = eLog.getEvents().getEvent();
 
             // sort the events by time
-            Arrays.sort(events, new Comparator<Event>() {
-                public int compare(final Event e1, final Event e2) {
-                    final boolean e1t = (e1.getTime() != null);
-                    final boolean e2t = (e2.getTime() != null);
-                    if (e1t && !e2t) {
-                        return 1;
-                    } else if (!e1t && e2t) {
-                        return -1;
-                    } else if (!e1t && !e2t) {
-                        return 0;
-                    }
-
-                    final DateFormat fmt = DateFormat.getDateTimeInstance(DateFormat.FULL, DateFormat.FULL);
-
-                    Date de1 = null;
-                    try {
-                        de1 = fmt.parse(e1.getTime());
-                    } catch (final Throwable t) {
-                    }
-
-                    Date de2 = null;
-                    try {
-                        de2 = fmt.parse(e2.getTime());
-                    } catch (final Throwable t) {
-                    }
-
-                    if (de1 != null && de2 != null) {
-                        return (int) (de1.getTime() - de2.getTime());
-                    } else if (de1 == null && de2 != null) {
-                        return -1;
-                    } else if (de1 != null && de2 == null) {
-                        return 1;
-                    } else {
-                        return 0;
-                    }
-                }
-            });
+            Arrays.sort(events, new EventTimeComparator());
 
             // process the events
             if (events != null && events.length != 0) {
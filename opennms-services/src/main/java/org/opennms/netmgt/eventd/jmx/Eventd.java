@@ -28,7 +28,12 @@
 
 package org.opennms.netmgt.eventd.jmx;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.netmgt.eventd.ListenerQueueStatistics;
+import org.opennms.netmgt.eventd.processor.BatchStatistics;
 
 /**
  * <p>Eventd class.</p>
@@ -48,4 +53,72 @@ public class Eventd extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
     protected String getSpringContext() {
         return "eventDaemonContext";       
     }
+
+    private BatchStatistics getBatchStatistics() {
+        if (getDaemon().getEventWriter() == null) {
+            return null;
+        }
+        return getDaemon().getEventWriter().getBatchStatistics();
+    }
+
+    /** {@inheritDoc} */
+    public long getEventBatchesWritten() {
+        final BatchStatistics stats = getBatchStatistics();
+        return stats == null ? 0 : stats.getBatchesWritten();
+    }
+
+    /** {@inheritDoc} */
+    public long getBatchedEventsWritten() {
+        final BatchStatistics stats = getBatchStatistics();
+        return stats == null ? 0 : stats.getEventsWritten();
+    }
+
+    /** {@inheritDoc} */
+    public long getEventBatchesFailed() {
+        final BatchStatistics stats = getBatchStatistics();
+        return stats == null ? 0 : stats.getBatchesFailed();
+    }
+
+    /** {@inheritDoc} */
+    public long getMaxEventBatchSize() {
+        final BatchStatistics stats = getBatchStatistics();
+        return stats == null ? 0 : stats.getMaxBatchSize();
+    }
+
+    /** {@inheritDoc} */
+    public String getEventBatchSizeHistogram() {
+        final BatchStatistics stats = getBatchStatistics();
+        return stats == null ? "" : stats.getBatchSizeHistogram();
+    }
+
+    /** {@inheritDoc} */
+    public String getEventBatchLatencyHistogram() {
+        final BatchStatistics stats = getBatchStatistics();
+        return stats == null ? "" : stats.getBatchLatencyHistogram();
+    }
+
+    private List<ListenerQueueStatistics> getListenerQueues() {
+        if (getDaemon().getEventIpcManagerImpl() == null) {
+            return Collections.emptyList();
+        }
+        return getDaemon().getEventIpcManagerImpl().getListenerQueueStatistics();
+    }
+
+    /** {@inheritDoc} */
+    public String getListenerQueueStatistics() {
+        final StringBuilder buf = new StringBuilder();
+        for (final ListenerQueueStatistics stats : getListenerQueues()) {
+            buf.append(stats).append('\n');
+        }
+        return buf.toString();
+    }
+
+    /** {@inheritDoc} */
+    public long getListenerEventsDropped() {
+        long dropped = 0;
+        for (final ListenerQueueStatistics stats : getListenerQueues()) {
+            dropped += stats.getEventsDropped();
+        }
+        return dropped;
+    }
 }
@@ -37,4 +37,43 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface EventdMBean extends BaseOnmsMBean {
+    /**
+     * @return the number of event batches committed by the event writer
+     */
+    public long getEventBatchesWritten();
+
+    /**
+     * @return the number of events committed in batches by the event writer
+     */
+    public long getBatchedEventsWritten();
+
+    /**
+     * @return the number of event batches that were rolled back
+     */
+    public long getEventBatchesFailed();
+
+    /**
+     * @return the largest batch committed by the event writer
+     */
+    public long getMaxEventBatchSize();
+
+    /**
+     * @return the distribution of event batch sizes
+     */
+    public String getEventBatchSizeHistogram();
+
+    /**
+     * @return the distribution of event batch latencies in milliseconds
+     */
+    public String getEventBatchLatencyHistogram();
+
+    /**
+     * @return the queue depth, drops and lag of each event listener, one listener per line
+     */
+    public String getListenerQueueStatistics();
+
+    /**
+     * @return the number of events discarded because a listener's queue was full
+     */
+    public long getListenerEventsDropped();
 }
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and simple bucketed histograms describing the batches written by
+ * a {@link JdbcEventWriter} running in group-commit mode.  All methods are
+ * thread-safe; the values are exposed over JMX through the Eventd MBean.
+ *
+ * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
+ */
+public final class BatchStatistics {
+    private static final long[] SIZE_BOUNDS = { 1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024 };
+    private static final long[] LATENCY_BOUNDS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000 };
+
+    private final AtomicLong m_batchesWritten = new AtomicLong();
+    private final AtomicLong m_eventsWritten = new AtomicLong();
+    private final AtomicLong m_batchesFailed = new AtomicLong();
+    private final AtomicLong m_maxBatchSize = new AtomicLong();
+
+    private final AtomicLongArray m_sizeBuckets = new AtomicLongArray(SIZE_BOUNDS.length + 1);
+    private final AtomicLongArray m_latencyBuckets = new AtomicLongArray(LATENCY_BOUNDS.length + 1);
+
+    /**
+     * Record a successfully committed batch.
+     *
+     * @param size the number of events in the batch
+     * @param latency the time in milliseconds between the first event joining
+     *        the batch and the commit completing
+     */
+    public void batchCommitted(final int size, final long latency) {
+        m_batchesWritten.incrementAndGet();
+        m_eventsWritten.addAndGet(size);
+        m_sizeBuckets.incrementAndGet(bucketFor(SIZE_BOUNDS, size));
+        m_latencyBuckets.incrementAndGet(bucketFor(LATENCY_BOUNDS, latency));
+
+        long max = m_maxBatchSize.get();
+        while (size > max && !m_maxBatchSize.compareAndSet(max, size)) {
+            max = m_maxBatchSize.get();
+        }
+    }
+
+    /**
+     * Record a batch that was rolled back.
+     */
+    public void batchFailed() {
+        m_batchesFailed.incrementAndGet();
+    }
+
+    public long getBatchesWritten() {
+        return m_batchesWritten.get();
+    }
+
+    public long getEventsWritten() {
+        return m_eventsWritten.get();
+    }
+
+    public long getBatchesFailed() {
+        return m_batchesFailed.get();
+    }
+
+    public long getMaxBatchSize() {
+        return m_maxBatchSize.get();
+    }
+
+    /**
+     * <p>getBatchSizeHistogram</p>
+     *
+     * @return the batch size distribution, formatted as "&lt;=bound:count" pairs
+     */
+    public String getBatchSizeHistogram() {
+        return format(SIZE_BOUNDS, m_sizeBuckets);
+    }
+
+    /**
+     * <p>getBatchLatencyHistogram</p>
+     *
+     * @return the batch latency distribution in milliseconds, formatted as
+     *         "&lt;=bound:count" pairs
+     */
+    public String getBatchLatencyHistogram() {
+        return format(LATENCY_BOUNDS, m_latencyBuckets);
+    }
+
+    private static int bucketFor(final long[] bounds, final long value) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (value <= bounds[i]) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+
+    private static String format(final long[] bounds, final AtomicLongArray buckets) {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < bounds.length; i++) {
+            buf.append("<=").append(bounds[i]).append(':').append(buckets.get(i)).append(", ");
+        }
+        buf.append('>').append(bounds[bounds.length - 1]).append(':').append(buckets.get(bounds.length));
+        return buf.toString();
+    }
+}
@@ -30,11 +30,18 @@ package org.opennms.netmgt.eventd.processor;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 import org.opennms.core.utils.DBUtils;
 import org.opennms.core.utils.LogUtils;
@@ -53,6 +60,7 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
+import org.springframework.util.Assert;
 
 /**
  * EventWriter loads the information in each 'Event' into the database.
@@ -68,6 +76,13 @@ import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
  *
  * Values for the ' <parms>' block are loaded with each parm name and parm value
  * delimited with the NAME_VAL_DELIM.
+ *
+ * When batchSize is greater than 1, events handed to the writer concurrently
+ * by the eventd handler threads are group-committed: they share a single
+ * transaction, their IDs are allocated with one query and they are inserted
+ * with a JDBC batch.  {@link #process(Header, Event)} still only returns once
+ * the event has been committed, so the broadcast that follows always sees a
+ * persisted event with its dbid set.
  * 
  * @deprecated Replace with a Hibernate implementation. See bug NMS-3033. Actually
  * it doesn't have any details. :P
@@ -86,6 +101,39 @@ import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
 public final class JdbcEventWriter extends AbstractJdbcPersister implements EventProcessor, InitializingBean {
+    private static final Pattern NEXTVAL_PATTERN = Pattern.compile("^\\s*SELECT\\s+nextval\\(\\s*'[^']+'\\s*\\)\\s*$", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The maximum number of events written in a single transaction.  A value
+     * of 1 disables group commit and writes each event in its own transaction.
+     */
+    private int m_batchSize = 1;
+
+    /**
+     * The maximum time, in milliseconds, the first event of a batch waits for
+     * other events to join it before the batch is flushed.  With a value of 0
+     * batches are only formed from events that arrive while the previous batch
+     * is being committed.
+     */
+    private long m_batchTimeout = 0;
+
+    private String m_getNextIdBlockString;
+
+    private final BatchStatistics m_batchStatistics = new BatchStatistics();
+
+    /**
+     * Guards {@link #m_pendingBatch}.
+     */
+    private final Object m_batchLock = new Object();
+
+    /**
+     * Serializes batch flushes so that batches are committed, and their event
+     * IDs allocated, in the order in which they were opened.
+     */
+    private final Lock m_flushLock = new ReentrantLock(true);
+
+    private PendingBatch m_pendingBatch;
+
     /**
      * {@inheritDoc}
      *
@@ -98,6 +146,16 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
 
         LogUtils.debugf(this, "JdbcEventWriter: processing %s nodeid: %d ipaddr: %s serviceid: %s time: %s", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
 
+        if (m_batchSize > 1) {
+            processBatched(eventHeader, event);
+        } else {
+            processSingle(eventHeader, event);
+        }
+
+        LogUtils.debugf(this, "EventWriter finished for : %s", event.getUei());
+    }
+
+    private void processSingle(final Header eventHeader, final Event event) throws SQLException, DataAccessException {
         final Connection connection = getDataSource().getConnection();
 
         try {
@@ -133,8 +191,199 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
                 LogUtils.warnf(this, e, "SQLException while closing database connection.");
             }
         }
+    }
 
-        LogUtils.debugf(this, "EventWriter finished for : %s", event.getUei());
+    /**
+     * Group commit: the calling thread adds its event to the open batch.  The
+     * thread that opened the batch becomes its leader and flushes it once it
+     * holds the flush lock; every other thread waits until the batch has been
+     * committed.  Either way, this method only returns once the event has its
+     * dbid and is durable, so later processors (the broadcaster in particular)
+     * see exactly the same contract as in single-event mode.  If the batch
+     * insert fails the leader writes the events again one at a time, so only
+     * the events that cannot be stored on their own fail.
+     */
+    private void processBatched(final Header eventHeader, final Event event) throws SQLException, DataAccessException {
+        final PendingBatch batch;
+        final boolean leader;
+
+        synchronized (m_batchLock) {
+            if (m_pendingBatch == null || m_pendingBatch.size() >= m_batchSize) {
+                m_pendingBatch = new PendingBatch();
+                leader = true;
+            } else {
+                leader = false;
+            }
+            batch = m_pendingBatch;
+            batch.add(eventHeader, event);
+            if (batch.size() >= m_batchSize) {
+                m_batchLock.notifyAll();
+            }
+        }
+
+        if (leader) {
+            m_flushLock.lock();
+            try {
+                closeBatch(batch);
+                flushBatch(batch);
+            } finally {
+                m_flushLock.unlock();
+                // wake the followers even if the flush died with an Error
+                batch.complete();
+            }
+        }
+
+        batch.awaitCompletion(event);
+    }
+
+    private void closeBatch(final PendingBatch batch) {
+        synchronized (m_batchLock) {
+            final long deadline = batch.getCreated() + m_batchTimeout;
+            long remaining = deadline - System.currentTimeMillis();
+            while (batch.size() < m_batchSize && remaining > 0) {
+                try {
+                    m_batchLock.wait(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            if (m_pendingBatch == batch) {
+                m_pendingBatch = null;
+            }
+        }
+    }
+
+    private void flushBatch(final PendingBatch batch) {
+        if (!insertBatch(batch)) {
+            insertEach(batch);
+        }
+    }
+
+    /**
+     * Write the whole batch in a single transaction.
+     *
+     * @return true if the batch was committed
+     */
+    private boolean insertBatch(final PendingBatch batch) {
+        final List<Header> headers = batch.getHeaders();
+        final List<Event> events = batch.getEvents();
+
+        Connection connection = null;
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            connection = getDataSource().getConnection();
+            d.watch(connection);
+            connection.setAutoCommit(false);
+
+            try {
+                final int[] eventIds = getNextIds(events.size(), connection);
+
+                final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
+                d.watch(insStmt);
+
+                for (int i = 0; i < events.size(); i++) {
+                    final Event event = events.get(i);
+                    synchronized (event) {
+                        event.setDbid(eventIds[i]);
+                    }
+                    bindEvent(insStmt, headers.get(i), event, eventIds[i], connection);
+                    insStmt.addBatch();
+                }
+
+                insStmt.executeBatch();
+                connection.commit();
+
+                m_batchStatistics.batchCommitted(events.size(), System.currentTimeMillis() - batch.getCreated());
+                LogUtils.debugf(this, "SUCCESSFULLY committed a batch of %d events (dbids %d-%d).", events.size(), eventIds[0], eventIds[eventIds.length - 1]);
+                batch.written();
+                return true;
+            } catch (final SQLException e) {
+                rollbackBatch(batch, connection, e);
+            } catch (final DataAccessException e) {
+                rollbackBatch(batch, connection, e);
+            } catch (final RuntimeException e) {
+                rollbackBatch(batch, connection, e);
+            }
+        } catch (final SQLException e) {
+            LogUtils.warnf(this, e, "Unable to get a database connection for a batch of %d events.", events.size());
+            m_batchStatistics.batchFailed();
+        } finally {
+            d.cleanUp();
+        }
+        return false;
+    }
+
+    private void rollbackBatch(final PendingBatch batch, final Connection connection, final Exception e) {
+        LogUtils.warnf(this, e, "Error inserting a batch of %d events into the datastore, retrying them one at a time.", batch.size());
+        try {
+            connection.rollback();
+        } catch (final Throwable e2) {
+            LogUtils.warnf(this, e2, "Rollback of transaction failed.");
+        }
+        m_batchStatistics.batchFailed();
+    }
+
+    /**
+     * Write the events of a failed batch one transaction each, recording the
+     * failure of every event that still cannot be stored.
+     */
+    private void insertEach(final PendingBatch batch) {
+        final List<Header> headers = batch.getHeaders();
+        final List<Event> events = batch.getEvents();
+
+        for (int i = 0; i < events.size(); i++) {
+            final Event event = events.get(i);
+            try {
+                processSingle(headers.get(i), event);
+            } catch (final SQLException e) {
+                batch.failed(event, e);
+            } catch (final DataAccessException e) {
+                batch.failed(event, e);
+            } catch (final RuntimeException e) {
+                batch.failed(event, e);
+            }
+        }
+        batch.written();
+    }
+
+    /**
+     * Allocate a block of event IDs in a single round trip when the configured
+     * ID query is a plain <code>nextval()</code> call, and fall back to one
+     * query per event otherwise.
+     */
+    private int[] getNextIds(final int count, final Connection connection) throws SQLException {
+        final int[] ids = new int[count];
+        if (m_getNextIdBlockString == null || count == 1) {
+            for (int i = 0; i < count; i++) {
+                ids[i] = getNextId();
+            }
+            return ids;
+        }
+
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final PreparedStatement stmt = connection.prepareStatement(m_getNextIdBlockString);
+            d.watch(stmt);
+            stmt.setInt(1, count);
+            final ResultSet rs = stmt.executeQuery();
+            d.watch(rs);
+
+            int i = 0;
+            while (rs.next() && i < count) {
+                ids[i++] = rs.getInt(1);
+            }
+            if (i != count) {
+                throw new SQLException("Expected " + count + " event IDs from '" + m_getNextIdBlockString + "' but only got " + i);
+            }
+            // sequence values can arrive out of order from a set-returning query
+            Arrays.sort(ids);
+            return ids;
+        } finally {
+            d.cleanUp();
+        }
     }
 
     /**
@@ -162,184 +411,191 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
             final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
             d.watch(insStmt);
 
-            // eventID
-            insStmt.setInt(1, eventID);
-
-            // eventUEI
-            insStmt.setString(2, Constants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
+            bindEvent(insStmt, eventHeader, event, eventID, connection);
 
-            // nodeID
-            final Long nodeid = event.getNodeid();
-            set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
+            // execute
+            insStmt.executeUpdate();
+        } finally {
+            d.cleanUp();
+        }
 
-            // eventTime
-            insStmt.setTimestamp(4, getEventTime(event));
+        LogUtils.debugf(this, "SUCCESSFULLY added %s related  data into the EVENTS table.", event.getUei());
+    }
 
-            // Resolve the event host to a hostname using the ipInterface table
-            String hostname = getEventHost(event, connection);
+    /**
+     * Bind the columns of the EVENTS insert statement for a single event.
+     */
+    private void bindEvent(final PreparedStatement insStmt, final Header eventHeader, final Event event, final int eventID, final Connection connection) throws SQLException {
+        // eventID
+        insStmt.setInt(1, eventID);
 
-            // eventHost
-            set(insStmt, 5, Constants.format(hostname, EVENT_HOST_FIELD_SIZE));
+        // eventUEI
+        insStmt.setString(2, Constants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
 
-            // ipAddr
-            set(insStmt, 6, Constants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
+        // nodeID
+        final Long nodeid = event.getNodeid();
+        set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
 
-            // eventDpName
-            String dpName = "localhost";
-            if (eventHeader != null && eventHeader.getDpName() != null) {
-                dpName = Constants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
-            } else if (event.getDistPoller() != null) {
-                dpName = Constants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
-            }
-            insStmt.setString(7, dpName);
+        // eventTime
+        insStmt.setTimestamp(4, getEventTime(event));
 
-            // eventSnmpHost
-            set(insStmt, 8, Constants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
+        // Resolve the event host to a hostname using the ipInterface table
+        String hostname = getEventHost(event, connection);
 
-            // service identifier - convert the service name to a service id
-            set(insStmt, 9, getEventServiceId(event));
+        // eventHost
+        set(insStmt, 5, Constants.format(hostname, EVENT_HOST_FIELD_SIZE));
 
-            // eventSnmp
-            if (event.getSnmp() != null) {
-                insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
-            } else {
-                insStmt.setNull(10, Types.VARCHAR);
-            }
+        // ipAddr
+        set(insStmt, 6, Constants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
 
-            // eventParms
-
-            // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
-            final String parametersString=Parameter.format(event);
-            set(insStmt, 11, Constants.format(parametersString, 0));
-
-            // eventCreateTime
-            final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
-            insStmt.setTimestamp(12, eventCreateTime);
-
-            // eventDescr
-            set(insStmt, 13, Constants.format(event.getDescr(), 0));
-
-            // eventLoggroup
-            set(insStmt, 14, (event.getLoggroupCount() > 0) ? Constants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
-
-            // eventLogMsg
-            // eventLog
-            // eventDisplay
-            if (event.getLogmsg() != null) {
-                // set log message
-                set(insStmt, 15, Constants.format(event.getLogmsg().getContent(), 0));
-                String logdest = event.getLogmsg().getDest();
-                if (logdest.equals("logndisplay")) {
-                    // if 'logndisplay' set both log and display column to yes
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("logonly")) {
-                    // if 'logonly' set log column to true
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_NO);
-                } else if (logdest.equals("displayonly")) {
-                    // if 'displayonly' set display column to true
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("suppress")) {
-                    // if 'suppress' set both log and display to false
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_NO);
-                }
-            } else {
-                insStmt.setNull(15, Types.VARCHAR);
-
-                /*
-                 * If this is an event that had no match in the event conf
-                 * mark it as to be logged and displayed so that there
-                 * are no events that slip through the system
-                 * without the user knowing about them
-                 */
-                set(insStmt, 17, MSG_YES);
-            }
+        // eventDpName
+        String dpName = "localhost";
+        if (eventHeader != null && eventHeader.getDpName() != null) {
+            dpName = Constants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
+        } else if (event.getDistPoller() != null) {
+            dpName = Constants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
+        }
+        insStmt.setString(7, dpName);
 
-            // eventSeverity
-            set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
+        // eventSnmpHost
+        set(insStmt, 8, Constants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
 
-            // eventPathOutage
-            set(insStmt, 19, (event.getPathoutage() != null) ? Constants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
+        // service identifier - convert the service name to a service id
+        set(insStmt, 9, getEventServiceId(event));
 
-            // eventCorrelation
-            set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.eventd.db.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
+        // eventSnmp
+        if (event.getSnmp() != null) {
+            insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
+        } else {
+            insStmt.setNull(10, Types.VARCHAR);
+        }
 
-            // eventSuppressedCount
-            insStmt.setNull(21, Types.INTEGER);
+        // eventParms
 
-            // eventOperInstruct
-            set(insStmt, 22, Constants.format(event.getOperinstruct(), EVENT_OPERINSTRUCT_FIELD_SIZE));
+        // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
+        final String parametersString=Parameter.format(event);
+        set(insStmt, 11, Constants.format(parametersString, 0));
 
-            // eventAutoAction
-            set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
+        // eventCreateTime
+        final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
+        insStmt.setTimestamp(12, eventCreateTime);
 
-            // eventOperAction / eventOperActionMenuText
-            if (event.getOperactionCount() > 0) {
-                final List<Operaction> a = new ArrayList<Operaction>();
-                final List<String> b = new ArrayList<String>();
+        // eventDescr
+        set(insStmt, 13, Constants.format(event.getDescr(), 0));
 
-                for (final Operaction eoa : event.getOperactionCollection()) {
-                    a.add(eoa);
-                    b.add(eoa.getMenutext());
-                }
+        // eventLoggroup
+        set(insStmt, 14, (event.getLoggroupCount() > 0) ? Constants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
 
-                set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
-                set(insStmt, 25, Constants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
-            } else {
-                insStmt.setNull(24, Types.VARCHAR);
-                insStmt.setNull(25, Types.VARCHAR);
+        // eventLogMsg
+        // eventLog
+        // eventDisplay
+        if (event.getLogmsg() != null) {
+            // set log message
+            set(insStmt, 15, Constants.format(event.getLogmsg().getContent(), 0));
+            String logdest = event.getLogmsg().getDest();
+            if (logdest.equals("logndisplay")) {
+                // if 'logndisplay' set both log and display column to yes
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("logonly")) {
+                // if 'logonly' set log column to true
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_NO);
+            } else if (logdest.equals("displayonly")) {
+                // if 'displayonly' set display column to true
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("suppress")) {
+                // if 'suppress' set both log and display to false
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_NO);
             }
+        } else {
+            insStmt.setNull(15, Types.VARCHAR);
+
+            /*
+             * If this is an event that had no match in the event conf
+             * mark it as to be logged and displayed so that there
+             * are no events that slip through the system
+             * without the user knowing about them
+             */
+            set(insStmt, 17, MSG_YES);
+        }
 
-            // eventNotification, this column no longer needed
-            insStmt.setNull(26, Types.VARCHAR);
+        // eventSeverity
+        set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
 
-            // eventTroubleTicket / eventTroubleTicket state
-            if (event.getTticket() != null) {
-                set(insStmt, 27, Constants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
-                set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
-            } else {
-                insStmt.setNull(27, Types.VARCHAR);
-                insStmt.setNull(28, Types.INTEGER);
-            }
+        // eventPathOutage
+        set(insStmt, 19, (event.getPathoutage() != null) ? Constants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
 
-            // eventForward
-            set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.eventd.db.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+        // eventCorrelation
+        set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.eventd.db.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
 
-            // event mouseOverText
-            set(insStmt, 30, Constants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+        // eventSuppressedCount
+        insStmt.setNull(21, Types.INTEGER);
 
-            // eventAckUser
-            if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
-                set(insStmt, 31, Constants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+        // eventOperInstruct
+        set(insStmt, 22, Constants.format(event.getOperinstruct(), EVENT_OPERINSTRUCT_FIELD_SIZE));
 
-                // eventAckTime - if autoacknowledge is present,
-                // set time to event create time
-                set(insStmt, 32, eventCreateTime);
-            } else {
-                insStmt.setNull(31, Types.INTEGER);
-                insStmt.setNull(32, Types.TIMESTAMP);
-            }
+        // eventAutoAction
+        set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
 
-            // eventSource
-            set(insStmt, 33, Constants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+        // eventOperAction / eventOperActionMenuText
+        if (event.getOperactionCount() > 0) {
+            final List<Operaction> a = new ArrayList<Operaction>();
+            final List<String> b = new ArrayList<String>();
 
-            // ifindex
-            if (event.hasIfIndex()) {
-                set(insStmt, 34, event.getIfIndex());
-            } else {
-                insStmt.setNull(34, Types.INTEGER);
+            for (final Operaction eoa : event.getOperactionCollection()) {
+                a.add(eoa);
+                b.add(eoa.getMenutext());
             }
-            
-            // execute
-            insStmt.executeUpdate();
-        } finally {
-            d.cleanUp();
+
+            set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
+            set(insStmt, 25, Constants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
+        } else {
+            insStmt.setNull(24, Types.VARCHAR);
+            insStmt.setNull(25, Types.VARCHAR);
         }
 
-        LogUtils.debugf(this, "SUCCESSFULLY added %s related  data into the EVENTS table.", event.getUei());
+        // eventNotification, this column no longer needed
+        insStmt.setNull(26, Types.VARCHAR);
+
+        // eventTroubleTicket / eventTroubleTicket state
+        if (event.getTticket() != null) {
+            set(insStmt, 27, Constants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
+            set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
+        } else {
+            insStmt.setNull(27, Types.VARCHAR);
+            insStmt.setNull(28, Types.INTEGER);
+        }
+
+        // eventForward
+        set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.eventd.db.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+
+        // event mouseOverText
+        set(insStmt, 30, Constants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+
+        // eventAckUser
+        if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
+            set(insStmt, 31, Constants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+
+            // eventAckTime - if autoacknowledge is present,
+            // set time to event create time
+            set(insStmt, 32, eventCreateTime);
+        } else {
+            insStmt.setNull(31, Types.INTEGER);
+            insStmt.setNull(32, Types.TIMESTAMP);
+        }
+
+        // eventSource
+        set(insStmt, 33, Constants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+
+        // ifindex
+        if (event.hasIfIndex()) {
+            set(insStmt, 34, event.getIfIndex());
+        } else {
+            insStmt.setNull(34, Types.INTEGER);
+        }
     }
 
 
@@ -413,4 +669,143 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
             return event.getHost();
         }
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterPropertiesSet() throws SQLException {
+        super.afterPropertiesSet();
+        Assert.state(m_batchSize > 0, "property batchSize must be greater than zero");
+        Assert.state(m_batchTimeout >= 0, "property batchTimeout must not be negative");
+
+        if (NEXTVAL_PATTERN.matcher(getGetNextIdString()).matches()) {
+            m_getNextIdBlockString = getGetNextIdString().trim() + " FROM generate_series(1, ?)";
+        } else {
+            m_getNextIdBlockString = null;
+        }
+    }
+
+    /**
+     * <p>getBatchSize</p>
+     *
+     * @return the maximum number of events committed in one transaction
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * <p>setBatchSize</p>
+     *
+     * @param batchSize the maximum number of events committed in one
+     *        transaction; 1 disables group commit
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * <p>getBatchTimeout</p>
+     *
+     * @return the maximum time in milliseconds a batch waits to fill up
+     */
+    public long getBatchTimeout() {
+        return m_batchTimeout;
+    }
+
+    /**
+     * <p>setBatchTimeout</p>
+     *
+     * @param batchTimeout the maximum time in milliseconds a batch waits to
+     *        fill up before it is flushed
+     */
+    public void setBatchTimeout(final long batchTimeout) {
+        m_batchTimeout = batchTimeout;
+    }
+
+    /**
+     * <p>getBatchStatistics</p>
+     *
+     * @return a {@link org.opennms.netmgt.eventd.processor.BatchStatistics} object.
+     */
+    public BatchStatistics getBatchStatistics() {
+        return m_batchStatistics;
+    }
+
+    /**
+     * The events gathered into a single group-committed transaction, in the
+     * order in which they will be assigned event IDs.
+     */
+    private static final class PendingBatch {
+        private final long m_created = System.currentTimeMillis();
+        private final List<Header> m_headers = new ArrayList<Header>();
+        private final List<Event> m_events = new ArrayList<Event>();
+        private final Map<Event, Exception> m_failures = new IdentityHashMap<Event, Exception>();
+        private boolean m_written = false;
+        private boolean m_completed = false;
+
+        public long getCreated() {
+            return m_created;
+        }
+
+        // only called while holding the writer's batch lock
+        public void add(final Header header, final Event event) {
+            m_headers.add(header);
+            m_events.add(event);
+        }
+
+        public int size() {
+            return m_events.size();
+        }
+
+        public List<Header> getHeaders() {
+            return m_headers;
+        }
+
+        public List<Event> getEvents() {
+            return m_events;
+        }
+
+        // every event not marked as failed has been committed
+        public synchronized void written() {
+            m_written = true;
+        }
+
+        public synchronized void failed(final Event event, final Exception failure) {
+            m_failures.put(event, failure);
+        }
+
+        public synchronized void complete() {
+            m_completed = true;
+            notifyAll();
+        }
+
+        public synchronized void awaitCompletion(final Event event) throws SQLException {
+            boolean interrupted = false;
+            while (!m_completed) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!m_written) {
+                throw new SQLException("The batch of " + m_events.size() + " events was abandoned before it was written");
+            }
+
+            final Exception failure = m_failures.get(event);
+            if (failure == null) {
+                return;
+            } else if (failure instanceof SQLException) {
+                throw (SQLException)failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException)failure;
+            } else {
+                throw new SQLException("Unable to persist event: " + failure, failure);
+            }
+        }
+    }
 }
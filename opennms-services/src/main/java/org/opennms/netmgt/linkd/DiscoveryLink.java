@@ -58,10 +58,16 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     private List<NodeToNodeLink> m_links = new ArrayList<NodeToNodeLink>();
 
+    // the links in m_links, to find duplicates without scanning the list
+    private Set<NodeToNodeLink> m_linkSet = new HashSet<NodeToNodeLink>();
+
     private List<MacToNodeLink> m_maclinks = new ArrayList<MacToNodeLink>();
 
     private Map<Integer, LinkableNode> m_bridgeNodes = new HashMap<Integer, LinkableNode>();
 
+    // bridge identifier to bridge node, built from m_bridgeNodes when first needed
+    private Map<String, LinkableNode> m_bridgeIdentifierNodes = null;
+
     private List<LinkableNode> m_routerNodes = new ArrayList<LinkableNode>();
 
     private List<LinkableNode> m_lldpNodes = new ArrayList<LinkableNode>();
@@ -71,10 +77,10 @@ public final class DiscoveryLink implements ReadyRunnable {
     private List<LinkableNode> m_cdpNodes = new ArrayList<LinkableNode>();
 
     // this is the list of MAC address just parsed by discovery process
-    private List<String> m_macsParsed = new ArrayList<String>();
+    private Set<String> m_macsParsed = new HashSet<String>();
 
     // this is the list of MAC address excluded by discovery process
-    private List<String> macsExcluded = new ArrayList<String>();
+    private Set<String> macsExcluded = new HashSet<String>();
 
     // this is the list of atinterfaces for which to be discovery link
     // here there aren't the bridge identifier because they should be
@@ -230,6 +236,7 @@ public final class DiscoveryLink implements ReadyRunnable {
         getLinksFromCdp();
 
         m_bridgeNodes.clear();
+        m_bridgeIdentifierNodes = null;
         m_routerNodes.clear();
         m_cdpNodes.clear();
         m_macsParsed.clear();
@@ -243,6 +250,7 @@ public final class DiscoveryLink implements ReadyRunnable {
         m_linkd.updateDiscoveryLinkCollection(this);
 
         m_links.clear();
+        m_linkSet.clear();
         m_maclinks.clear();
 
         // rescheduling activities
@@ -974,20 +982,23 @@ public final class DiscoveryLink implements ReadyRunnable {
     }
 
     private boolean isMacIdentifierOfBridgeNode(String macAddress) {
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            if (curNode.isBridgeIdentifier(macAddress))
-                return true;
-        }
-        return false;
+        return getNodeFromMacIdentifierOfBridgeNode(macAddress) != null;
     }
 
     private LinkableNode getNodeFromMacIdentifierOfBridgeNode(
             final String macAddress) {
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            if (curNode.isBridgeIdentifier(macAddress))
-                return curNode;
+        if (m_bridgeIdentifierNodes == null) {
+            m_bridgeIdentifierNodes = new HashMap<String, LinkableNode>();
+            for (final LinkableNode curNode : m_bridgeNodes.values()) {
+                for (final String curBridgeIdentifier : curNode.getBridgeIdentifiers()) {
+                    // the first bridge with an identifier wins, as when the bridges were scanned in order
+                    if (!m_bridgeIdentifierNodes.containsKey(curBridgeIdentifier)) {
+                        m_bridgeIdentifierNodes.put(curBridgeIdentifier, curNode);
+                    }
+                }
+            }
         }
-        return null;
+        return m_bridgeIdentifierNodes.get(macAddress);
     }
 
     private List<LinkableNode> getBridgesFromMacs(final Set<String> macs) {
@@ -1242,13 +1253,11 @@ public final class DiscoveryLink implements ReadyRunnable {
             LogUtils.warnf(this, "addNodetoNodeLink: node link is null.");
             return;
         }
-        for (NodeToNodeLink curNnLink : m_links) {
-            if (curNnLink.equals(nnlink)) {
-                LogUtils.infof(this,
-                               "addNodetoNodeLink: link %s exists, not adding",
-                               nnlink.toString());
-                return;
-            }
+        if (!m_linkSet.add(nnlink)) {
+            LogUtils.infof(this,
+                           "addNodetoNodeLink: link %s exists, not adding",
+                           nnlink.toString());
+            return;
         }
         LogUtils.debugf(this, "addNodetoNodeLink: adding link %s",
                         nnlink.toString());
@@ -117,9 +117,12 @@ public class NodeToNodeLink {
 	/** {@inheritDoc} */
 	@Override
 	public int hashCode() {
+	    // equals() matches a link against its reverse, so both ends must hash the same way round
 	    return new HashCodeBuilder(17, 57)
 	        .append(m_nodeId)
 	        .append(m_ifIndex)
+	        .toHashCode()
+	        + new HashCodeBuilder(17, 57)
 	        .append(m_nodeParentId)
 	        .append(m_parentIfIndex)
 	        .toHashCode();
@@ -178,6 +178,9 @@ public final class BroadcastEventProcessor implements EventListener {
             return;
         }
 
+        // keep the inventory that notification rules are checked against current
+        m_notificationManager.updateFilterCache(event);
+
         boolean notifsOn = computeNullSafeStatus();
 
         if (notifsOn && (checkCriticalPath(event, notifsOn))) {
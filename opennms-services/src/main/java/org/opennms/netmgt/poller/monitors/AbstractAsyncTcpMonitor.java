@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollStatusCallback;
+import org.opennms.netmgt.poller.nio.AsyncPollEngine;
+import org.opennms.netmgt.poller.nio.ConversationFactory;
+import org.opennms.netmgt.poller.nio.TcpConversation;
+
+/**
+ * <p>
+ * Base class for asynchronous monitors that hold a line oriented
+ * conversation with a single TCP port.  Subclasses supply the conversation;
+ * connecting, timeouts and retries are handled by the shared
+ * {@link AsyncPollEngine}.
+ * </p>
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
+ */
+abstract public class AbstractAsyncTcpMonitor extends AbstractAsyncServiceMonitor {
+
+    /** Constant <code>PARAMETER_PORT="port"</code> */
+    public static final String PARAMETER_PORT = "port";
+
+    private final int m_defaultPort;
+    private final int m_defaultRetry;
+    private final int m_defaultTimeout;
+
+    /**
+     * <p>Constructor for AbstractAsyncTcpMonitor.</p>
+     *
+     * @param defaultPort the port to use when none is configured
+     * @param defaultRetry the retries to use when none are configured
+     * @param defaultTimeout the timeout to use when none is configured
+     */
+    protected AbstractAsyncTcpMonitor(int defaultPort, int defaultRetry, int defaultTimeout) {
+        m_defaultPort = defaultPort;
+        m_defaultRetry = defaultRetry;
+        m_defaultTimeout = defaultTimeout;
+    }
+
+    /** {@inheritDoc} */
+    public void pollAsync(final MonitoredService svc, final Map<String, Object> parameters, PollStatusCallback callback) {
+        NetworkInterface<InetAddress> iface = svc.getNetInterface();
+
+        if (iface.getType() != NetworkInterface.TYPE_INET)
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+
+        TimeoutTracker tracker = new TimeoutTracker(parameters, m_defaultRetry, m_defaultTimeout);
+        int port = determinePort(parameters);
+        InetAddress addr = iface.getAddress();
+
+        if (log().isDebugEnabled())
+            log().debug("pollAsync: address = " + InetAddressUtils.str(addr) + ", port = " + port + ", " + tracker);
+
+        getPollEngine().pollTcp(new InetSocketAddress(addr, port), tracker, new ConversationFactory<TcpConversation>() {
+            public TcpConversation createConversation() {
+                return AbstractAsyncTcpMonitor.this.createConversation(svc, parameters);
+            }
+        }, callback);
+    }
+
+    /** {@inheritDoc} */
+    protected long getPollTimeout(Map<String, Object> parameters) {
+        TimeoutTracker tracker = new TimeoutTracker(parameters, m_defaultRetry, m_defaultTimeout);
+        return getPollTimeout(tracker.getTimeoutInMillis(), tracker.getRetry() + 1);
+    }
+
+    /**
+     * <p>determinePort</p>
+     *
+     * @param parameters a {@link java.util.Map} object.
+     * @return the port to connect to
+     */
+    protected int determinePort(Map<String, Object> parameters) {
+        return ParameterMap.getKeyedInteger(parameters, PARAMETER_PORT, m_defaultPort);
+    }
+
+    /**
+     * Creates the conversation for one attempt.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param parameters a {@link java.util.Map} object.
+     * @return a {@link org.opennms.netmgt.poller.nio.TcpConversation} object.
+     */
+    abstract protected TcpConversation createConversation(MonitoredService svc, Map<String, Object> parameters);
+
+    /**
+     * <p>getPollEngine</p>
+     *
+     * @return a {@link org.opennms.netmgt.poller.nio.AsyncPollEngine} object.
+     */
+    protected AsyncPollEngine getPollEngine() {
+        return AsyncPollEngine.getInstance();
+    }
+
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.LogUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollStatusCallback;
+import org.opennms.netmgt.poller.nio.AsyncPollEngine;
+import org.opennms.netmgt.poller.nio.ConversationFactory;
+import org.opennms.netmgt.poller.nio.UdpConversation;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+/**
+ * <P>
+ * Asynchronous counterpart of {@link DnsMonitor}.  Sends an A query for the
+ * <code>lookup</code> host (the local host address by default) over UDP and
+ * reports the service as available unless the response code is one of the
+ * <code>fatal-response-codes</code>.  Takes the same parameters as
+ * DnsMonitor.
+ * </P>
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
+ */
+@Distributable
+final public class AsyncDnsMonitor extends AbstractAsyncServiceMonitor {
+    /**
+     * Default DNS port.
+     */
+    private static final int DEFAULT_PORT = 53;
+
+    /**
+     * Default retries.
+     */
+    private static final int DEFAULT_RETRY = 0;
+
+    /**
+     * Default timeout. Specifies how long (in milliseconds) to wait for a
+     * response from the monitored interface.
+     */
+    private static final int DEFAULT_TIMEOUT = 5000;
+
+    /**
+     * Default list of fatal response codes, the same as DnsMonitor.
+     */
+    private static final int[] DEFAULT_FATAL_RESP_CODES = { 2 };
+
+    /** {@inheritDoc} */
+    public void pollAsync(MonitoredService svc, Map<String, Object> parameters, PollStatusCallback callback) {
+        NetworkInterface<InetAddress> iface = svc.getNetInterface();
+
+        if (iface.getType() != NetworkInterface.TYPE_INET)
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+
+        TimeoutTracker timeoutTracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+
+        String lookup = ParameterMap.getKeyedString(parameters, "lookup", null);
+        if (lookup == null || lookup.length() == 0) {
+            lookup = InetAddressUtils.getLocalHostAddressAsString();
+            if (lookup == null) {
+                throw new UnsupportedOperationException("Unable to look up local host address.");
+            }
+        }
+
+        final List<Integer> fatalCodes = new ArrayList<Integer>();
+        for (final int code : ParameterMap.getKeyedIntegerArray(parameters, "fatal-response-codes", DEFAULT_FATAL_RESP_CODES)) {
+            fatalCodes.add(code);
+        }
+
+        final InetAddress address = iface.getAddress();
+        final String addr = InetAddressUtils.str(address);
+
+        final Name name;
+        try {
+            name = Name.fromString(lookup, Name.root);
+        } catch (final IOException e) {
+            callback.complete(logDown(Level.WARN, "IOException while polling address: " + addr + " " + e.getMessage(), e));
+            return;
+        }
+
+        getPollEngine().pollUdp(new InetSocketAddress(address, port), timeoutTracker, new ConversationFactory<UdpConversation>() {
+            public UdpConversation createConversation() {
+                return new DnsConversation(name, addr, fatalCodes);
+            }
+        }, callback);
+    }
+
+    /** {@inheritDoc} */
+    protected long getPollTimeout(Map<String, Object> parameters) {
+        TimeoutTracker timeoutTracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        return getPollTimeout(timeoutTracker.getTimeoutInMillis(), timeoutTracker.getRetry() + 1);
+    }
+
+    /**
+     * <p>getPollEngine</p>
+     *
+     * @return a {@link org.opennms.netmgt.poller.nio.AsyncPollEngine} object.
+     */
+    protected AsyncPollEngine getPollEngine() {
+        return AsyncPollEngine.getInstance();
+    }
+
+    private final class DnsConversation extends UdpConversation {
+        private final Message m_query;
+        private final String m_addr;
+        private final List<Integer> m_fatalCodes;
+
+        DnsConversation(Name name, String addr, List<Integer> fatalCodes) {
+            m_query = Message.newQuery(Record.newRecord(name, Type.A, DClass.IN));
+            m_addr = addr;
+            m_fatalCodes = fatalCodes;
+        }
+
+        @Override
+        public ByteBuffer getRequest() {
+            return ByteBuffer.wrap(m_query.toWire());
+        }
+
+        @Override
+        public PollStatus responseReceived(ByteBuffer datagram, double responseTime) {
+            final byte[] bytes = new byte[datagram.remaining()];
+            datagram.get(bytes);
+
+            final Message response;
+            try {
+                response = new Message(bytes);
+            } catch (final IOException e) {
+                LogUtils.debugf(this, "ignoring unparseable DNS response from %s: %s", m_addr, e.getMessage());
+                return null;
+            }
+            if (response.getHeader().getID() != m_query.getHeader().getID()) {
+                LogUtils.debugf(this, "ignoring DNS response from %s for another query", m_addr);
+                return null;
+            }
+
+            final Integer rcode = response.getHeader().getRcode();
+            LogUtils.debugf(this, "received response code: %s", rcode);
+
+            if (m_fatalCodes.contains(rcode)) {
+                return logDown(Level.DEBUG, "Received an invalid DNS response for address: " + m_addr);
+            } else {
+                return logUp(Level.DEBUG, responseTime, "valid DNS request received, responseTime= " + responseTime + "ms");
+            }
+        }
+
+        @Override
+        public PollStatus timedOut(long timeoutInMillis) {
+            return logDown(Level.DEBUG, "Never received valid DNS response for address: " + m_addr);
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.apache.commons.lang.StringUtils;
+import org.opennms.core.utils.IPLike;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollStatusCallback;
+import org.opennms.netmgt.poller.nio.AsyncPollEngine;
+import org.opennms.netmgt.poller.nio.ConversationFactory;
+import org.opennms.netmgt.poller.nio.TcpConversation;
+
+/**
+ * <p>
+ * Asynchronous counterpart of {@link HttpMonitor}.  Sends a GET for the
+ * configured url to each port in turn until one answers with an acceptable
+ * response code and, if <code>response-text</code> is set, a body containing
+ * the text (or matching the regular expression when it starts with '~').
+ * </p>
+ *
+ * <p>
+ * Takes the same parameters as HttpMonitor.  The <code>verbose</code>
+ * parameter is ignored.
+ * </p>
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
+ */
+@Distributable
+public class AsyncHttpMonitor extends AbstractAsyncServiceMonitor {
+
+    /**
+     * Default retries.
+     */
+    private static final int DEFAULT_RETRY = 0;
+
+    /**
+     * Default timeout. Specifies how long (in milliseconds) to wait for data
+     * from the monitored interface.
+     */
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    /** {@inheritDoc} */
+    public void pollAsync(MonitoredService svc, final Map<String, Object> parameters, final PollStatusCallback callback) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final int[] ports = determinePorts(parameters);
+        final String command = buildCommand(svc, parameters);
+        final String responseRange = HttpMonitor.determineResponse(parameters);
+        final String responseText = HttpMonitor.determineResponseText(parameters);
+
+        final ConversationFactory<TcpConversation> factory = new ConversationFactory<TcpConversation>() {
+            public TcpConversation createConversation() {
+                return new HttpConversation(command, responseRange, responseText);
+            }
+        };
+
+        pollPort(iface.getAddress(), ports, 0, parameters, factory, callback);
+    }
+
+    private void pollPort(final InetAddress addr, final int[] ports, final int portIndex, final Map<String, Object> parameters, final ConversationFactory<TcpConversation> factory, final PollStatusCallback callback) {
+        TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        if (log().isDebugEnabled()) {
+            log().debug("Port = " + ports[portIndex] + ", Address = " + InetAddressUtils.str(addr) + ", " + tracker);
+        }
+
+        getPollEngine().pollTcp(new InetSocketAddress(addr, ports[portIndex]), tracker, factory, new PollStatusCallback() {
+            public void complete(PollStatus status) {
+                if (status.isAvailable()) {
+                    callback.complete(status);
+                } else if (portIndex + 1 < ports.length) {
+                    pollPort(addr, ports, portIndex + 1, parameters, factory, callback);
+                } else {
+                    callback.complete(PollStatus.get(status.getStatusCode(), status.getReason() + "/Ports: " + StringUtils.join(toObjects(ports), ',')));
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Each configured port is tried in turn, so the wait covers all of them.
+     */
+    protected long getPollTimeout(Map<String, Object> parameters) {
+        TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        return getPollTimeout(tracker.getTimeoutInMillis(), (tracker.getRetry() + 1) * determinePorts(parameters).length);
+    }
+
+    private static Integer[] toObjects(int[] ports) {
+        Integer[] objects = new Integer[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            objects[i] = ports[i];
+        }
+        return objects;
+    }
+
+    /**
+     * <p>determinePorts</p>
+     *
+     * @param parameters a {@link java.util.Map} object.
+     * @return an array of int.
+     */
+    protected int[] determinePorts(final Map<String, Object> parameters) {
+        return ParameterMap.getKeyedIntegerArray(parameters, HttpMonitor.PARAMETER_PORT, HttpMonitor.DEFAULT_PORTS);
+    }
+
+    private String buildCommand(MonitoredService svc, Map<String, Object> parameters) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("GET ").append(HttpMonitor.determineUrl(parameters)).append(" HTTP/1.1\r\n");
+        sb.append("Connection: CLOSE \r\n");
+        sb.append("Host: ").append(determineVirtualHost(svc, parameters)).append("\r\n");
+        sb.append("User-Agent: ").append(HttpMonitor.determineUserAgent(parameters)).append("\r\n");
+
+        final String credentials = HttpMonitor.determineBasicAuthentication(parameters);
+        if (credentials != null) {
+            sb.append("Authorization: Basic ").append(credentials).append("\r\n");
+        }
+
+        for (final String parmKey : parameters.keySet()) {
+            if (HttpMonitor.HEADER_PATTERN.matcher(parmKey).matches()) {
+                sb.append(HttpMonitor.determineHttpHeader(parameters, parmKey)).append("\r\n");
+            }
+        }
+
+        sb.append("\r\n");
+        return sb.toString();
+    }
+
+    private String determineVirtualHost(MonitoredService svc, Map<String, Object> parameters) {
+        final String virtualHost = ParameterMap.getKeyedString(parameters, HttpMonitor.PARAMETER_HOST_NAME, null);
+        if (StringUtils.isNotBlank(virtualHost)) {
+            return virtualHost;
+        }
+
+        final InetAddress addr = svc.getNetInterface().getAddress();
+        if (ParameterMap.getKeyedBoolean(parameters, HttpMonitor.PARAMETER_RESOLVE_IP, false)) {
+            return addr.getCanonicalHostName();
+        } else if (ParameterMap.getKeyedBoolean(parameters, HttpMonitor.PARAMETER_NODE_LABEL_HOST_NAME, false)) {
+            return svc.getNodeLabel();
+        } else if (addr instanceof Inet6Address) {
+            // Wrap IPv6 addresses in square brackets
+            return "[" + InetAddressUtils.str(addr) + "]";
+        } else {
+            return InetAddressUtils.str(addr);
+        }
+    }
+
+    /**
+     * <p>getPollEngine</p>
+     *
+     * @return a {@link org.opennms.netmgt.poller.nio.AsyncPollEngine} object.
+     */
+    protected AsyncPollEngine getPollEngine() {
+        return AsyncPollEngine.getInstance();
+    }
+
+    private final class HttpConversation extends TcpConversation {
+        private final String m_command;
+        private final String m_responseRange;
+        private final String m_responseText;
+
+        private boolean m_statusLineRead = false;
+        private boolean m_headerFinished = false;
+        private double m_responseTime;
+
+        HttpConversation(String command, String responseRange, String responseText) {
+            m_command = command;
+            m_responseRange = responseRange;
+            m_responseText = StringUtils.isNotBlank(responseText) ? responseText : null;
+        }
+
+        @Override
+        public void connected(double responseTime) {
+            send(m_command);
+        }
+
+        @Override
+        public void lineReceived(String line, double responseTime) {
+            if (!m_statusLineRead) {
+                m_statusLineRead = true;
+                m_responseTime = responseTime;
+                statusLineReceived(line);
+            } else if (!m_headerFinished) {
+                // skip the HTTP headers
+                m_headerFinished = line.length() == 0;
+            } else if (matchesResponseText(line)) {
+                if (log().isDebugEnabled()) {
+                    log().debug("response-text: " + m_responseText + ": found.");
+                }
+                complete(PollStatus.available(m_responseTime));
+            }
+        }
+
+        private void statusLineReceived(String line) {
+            if (log().isDebugEnabled()) {
+                log().debug("poll: response= " + line);
+                log().debug("poll: responseTime= " + m_responseTime + "ms");
+            }
+            if (!line.startsWith("HTTP/")) {
+                complete(PollStatus.unresponsive("Invalid HTTP response: " + line));
+                return;
+            }
+
+            final StringTokenizer t = new StringTokenizer(line);
+            t.nextToken();
+            int code = -1;
+            if (t.hasMoreTokens()) {
+                try {
+                    code = Integer.parseInt(t.nextToken());
+                } catch (final NumberFormatException e) {
+                    log().info("Error converting response code, response = " + line);
+                }
+            }
+            if (!IPLike.matchNumericListOrRange(String.valueOf(code), m_responseRange)) {
+                complete(PollStatus.unavailable("HTTP response value: " + code + ". Expecting: " + m_responseRange + "."));
+            } else if (m_responseText == null) {
+                complete(PollStatus.available(m_responseTime));
+            }
+        }
+
+        private boolean matchesResponseText(String line) {
+            if (m_responseText.charAt(0) == '~') {
+                return line.matches(m_responseText.substring(1));
+            }
+            return line.indexOf(m_responseText) != -1;
+        }
+
+        @Override
+        public PollStatus closed() {
+            if (m_statusLineRead) {
+                return PollStatus.unavailable("Matching text: [" + m_responseText + "] not found in body of HTTP response");
+            }
+            return super.closed();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.util.Map;
+
+import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.nio.TcpConversation;
+
+/**
+ * Asynchronous counterpart of {@link ImapMonitor}.  Expects a "* OK "
+ * greeting, sends LOGOUT and expects the "* BYE " untagged reply followed by
+ * the tagged OK.  The response time is taken when the greeting arrives.
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
+ */
+@Distributable
+final public class AsyncImapMonitor extends AbstractAsyncTcpMonitor {
+
+    /**
+     * Default IMAP port.
+     */
+    private static final int DEFAULT_PORT = 143;
+
+    /**
+     * Default retries.
+     */
+    private static final int DEFAULT_RETRY = 0;
+
+    /**
+     * Default timeout. Specifies how long (in milliseconds) to wait for data
+     * from the monitored interface.
+     */
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    private static final String IMAP_START_RESPONSE_PREFIX = "* OK ";
+    private static final String IMAP_LOGOUT_REQUEST = "ONMSPOLLER LOGOUT\r\n";
+    private static final String IMAP_BYE_RESPONSE_PREFIX = "* BYE ";
+    private static final String IMAP_LOGOUT_RESPONSE_PREFIX = "ONMSPOLLER OK ";
+
+    /**
+     * <p>Constructor for AsyncImapMonitor.</p>
+     */
+    public AsyncImapMonitor() {
+        super(DEFAULT_PORT, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected TcpConversation createConversation(MonitoredService svc, Map<String, Object> parameters) {
+        return new TcpConversation() {
+            private String m_expected = IMAP_START_RESPONSE_PREFIX;
+            private double m_responseTime;
+
+            @Override
+            public void lineReceived(String line, double responseTime) {
+                if (!line.startsWith(m_expected)) {
+                    complete(PollStatus.unavailable("Unexpected IMAP response: " + line));
+                } else if (m_expected == IMAP_START_RESPONSE_PREFIX) {
+                    m_responseTime = responseTime;
+                    send(IMAP_LOGOUT_REQUEST);
+                    m_expected = IMAP_BYE_RESPONSE_PREFIX;
+                } else if (m_expected == IMAP_BYE_RESPONSE_PREFIX) {
+                    m_expected = IMAP_LOGOUT_RESPONSE_PREFIX;
+                } else {
+                    complete(PollStatus.available(m_responseTime));
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.nio.TcpConversation;
+
+/**
+ * Asynchronous counterpart of {@link SmtpMonitor}.  Expects a 220 banner,
+ * sends HELO and expects 250, then sends QUIT and expects 221.  Multi-line
+ * replies are read up to their last line.  The response time is taken when
+ * the HELO reply arrives.
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
+ */
+@Distributable
+final public class AsyncSmtpMonitor extends AbstractAsyncTcpMonitor {
+
+    /**
+     * Default SMTP port.
+     */
+    private static final int DEFAULT_PORT = 25;
+
+    /**
+     * Default retries.
+     */
+    private static final int DEFAULT_RETRY = 0;
+
+    /**
+     * Default timeout. Specifies how long (in milliseconds) to wait for data
+     * from the monitored interface.
+     */
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    /**
+     * The name of the local host.
+     */
+    private static final String LOCALHOST_NAME = InetAddressUtils.getLocalHostName();
+
+    /**
+     * <p>Constructor for AsyncSmtpMonitor.</p>
+     */
+    public AsyncSmtpMonitor() {
+        super(DEFAULT_PORT, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected TcpConversation createConversation(MonitoredService svc, Map<String, Object> parameters) {
+        return new SmtpConversation();
+    }
+
+    private static final class SmtpConversation extends TcpConversation {
+        private static final int BANNER = 0;
+        private static final int HELO = 1;
+        private static final int QUIT = 2;
+
+        private int m_state = BANNER;
+        private double m_responseTime;
+
+        @Override
+        public void lineReceived(String line, double responseTime) {
+            // wait for the last line of a multi-line reply
+            if (line.length() > 3 && line.charAt(3) == '-') {
+                return;
+            }
+
+            int rc;
+            try {
+                rc = Integer.parseInt(new StringTokenizer(line).nextToken());
+            } catch (RuntimeException e) {
+                complete(PollStatus.unavailable("Invalid SMTP reply: " + line));
+                return;
+            }
+
+            switch (m_state) {
+            case BANNER:
+                if (rc != 220) {
+                    complete(PollStatus.unavailable("Unexpected SMTP banner: " + line));
+                    return;
+                }
+                send("HELO " + LOCALHOST_NAME + "\r\n");
+                m_state = HELO;
+                break;
+            case HELO:
+                if (rc != 250) {
+                    complete(PollStatus.unavailable("Unexpected reply to HELO: " + line));
+                    return;
+                }
+                m_responseTime = responseTime;
+                send("QUIT\r\n");
+                m_state = QUIT;
+                break;
+            default:
+                if (rc == 221) {
+                    complete(PollStatus.available(m_responseTime));
+                } else {
+                    complete(PollStatus.unavailable("Unexpected reply to QUIT: " + line));
+                }
+            }
+        }
+    }
+
+}
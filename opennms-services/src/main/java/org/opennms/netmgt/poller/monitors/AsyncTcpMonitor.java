@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.util.Map;
+
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.nio.TcpConversation;
+
+/**
+ * Asynchronous counterpart of {@link TcpMonitor}.  Connects to the
+ * configured port and, if a <code>banner</code> parameter is given, checks
+ * that the first line sent by the server contains it.  Takes the same
+ * parameters as TcpMonitor.
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
+ */
+@Distributable
+final public class AsyncTcpMonitor extends AbstractAsyncTcpMonitor {
+
+    /**
+     * Default port.
+     */
+    private static final int DEFAULT_PORT = -1;
+
+    /**
+     * Default retries.
+     */
+    private static final int DEFAULT_RETRY = 0;
+
+    /**
+     * Default timeout. Specifies how long (in milliseconds) to wait for data
+     * from the monitored interface.
+     */
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    /**
+     * <p>Constructor for AsyncTcpMonitor.</p>
+     */
+    public AsyncTcpMonitor() {
+        super(DEFAULT_PORT, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected int determinePort(Map<String, Object> parameters) {
+        int port = super.determinePort(parameters);
+        if (port == DEFAULT_PORT) {
+            throw new RuntimeException("AsyncTcpMonitor: required parameter 'port' is not present in supplied properties.");
+        }
+        return port;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected TcpConversation createConversation(MonitoredService svc, Map<String, Object> parameters) {
+        final String bannerMatch = ParameterMap.getKeyedString(parameters, TcpMonitor.PARAMETER_BANNER, null);
+
+        return new TcpConversation() {
+            @Override
+            public void connected(double responseTime) {
+                if (bannerMatch == null || bannerMatch.length() == 0 || bannerMatch.equals("*")) {
+                    complete(PollStatus.available(responseTime));
+                }
+            }
+
+            @Override
+            public void lineReceived(String banner, double responseTime) {
+                if (log().isDebugEnabled()) {
+                    log().debug("poll: banner = " + banner);
+                    log().debug("poll: responseTime= " + responseTime + "ms");
+                }
+                if (banner.indexOf(bannerMatch) > -1) {
+                    complete(PollStatus.available(responseTime));
+                } else {
+                    complete(PollStatus.unavailable("Banner: '" + banner + "' does not contain match string '" + bannerMatch + "'"));
+                }
+            }
+        };
+    }
+
+}
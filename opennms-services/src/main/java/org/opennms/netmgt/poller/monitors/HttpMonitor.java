@@ -71,12 +71,12 @@ import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
  */
 @Distributable
 public class HttpMonitor extends AbstractServiceMonitor {
-    private static final Pattern HEADER_PATTERN = Pattern.compile("header[0-9]+$");
+    static final Pattern HEADER_PATTERN = Pattern.compile("header[0-9]+$");
 
     /**
      * Default HTTP ports.
      */
-    private static final int[] DEFAULT_PORTS = { 80, 8080, 8888};
+    static final int[] DEFAULT_PORTS = { 80, 8080, 8888};
 
     /**
      * Default retries.
@@ -226,7 +226,7 @@ public class HttpMonitor extends AbstractServiceMonitor {
         return (verbose != null && verbose.equalsIgnoreCase("true")) ? true : false;
     }
 
-    private static String determineUserAgent(final Map<String, Object> parameters) {
+    static String determineUserAgent(final Map<String, Object> parameters) {
         String agent = ParameterMap.getKeyedString(parameters, PARAMETER_USER_AGENT, null);
         if (isBlank(agent)) {
             return "OpenNMS HttpMonitor";
@@ -254,19 +254,19 @@ public class HttpMonitor extends AbstractServiceMonitor {
         return credentials;
     }
 
-    private static String determineHttpHeader(final Map<String, Object> parameters, String key) {
+    static String determineHttpHeader(final Map<String, Object> parameters, String key) {
         return ParameterMap.getKeyedString(parameters, key, null);
     }
     
-    private static String determineResponseText(final Map<String, Object> parameters) {
+    static String determineResponseText(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_RESPONSE_TEXT, null);
     }
 
-    private static String determineResponse(final Map<String, Object> parameters) {
+    static String determineResponse(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_RESPONSE, determineDefaultResponseRange(determineUrl(parameters)));
     }
 
-    private static String determineUrl(final Map<String, Object> parameters) {
+    static String determineUrl(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_URL, DEFAULT_URL);
     }
 
@@ -0,0 +1,775 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.nio;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ThreadCategory;
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.PollStatusCallback;
+
+/**
+ * <p>
+ * Drives asynchronous TCP and UDP polls from a single selector thread.
+ * </p>
+ *
+ * <p>
+ * Each poll is made of one or more attempts as described by its
+ * {@link TimeoutTracker}: an attempt that times out, fails or ends with a
+ * status other than available is retried while retries remain, and the
+ * status of the last attempt is reported.  Strict timeouts are honoured by
+ * delaying the next attempt on a timer instead of sleeping.  The number of
+ * attempts in flight is capped so a burst of polls against dead addresses
+ * cannot exhaust file descriptors; attempts beyond the cap wait in a queue
+ * and their timeouts only start once they are running.
+ * </p>
+ *
+ * <p>
+ * Callbacks are invoked on the selector thread and must not block.
+ * </p>
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+public class AsyncPollEngine implements Runnable {
+
+    /** Constant <code>MAX_ACTIVE_PROPERTY="org.opennms.netmgt.poller.nio.maxActivePolls"</code> */
+    public static final String MAX_ACTIVE_PROPERTY = "org.opennms.netmgt.poller.nio.maxActivePolls";
+
+    /** Constant <code>DEFAULT_MAX_ACTIVE=4096</code> */
+    public static final int DEFAULT_MAX_ACTIVE = 4096;
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int MAX_DATAGRAM_SIZE = 64 * 1024;
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    private static AsyncPollEngine s_instance;
+
+    private final int m_maxActive;
+    private final Queue<Runnable> m_tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean m_wakeupPending = new AtomicBoolean(false);
+    private final AtomicLong m_completed = new AtomicLong(0);
+
+    // only touched by the selector thread
+    private final PriorityQueue<Timeout> m_timeouts = new PriorityQueue<Timeout>();
+    private final Queue<PollTask> m_waiting = new LinkedList<PollTask>();
+    private final ByteBuffer m_readBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+    private long m_timeoutSequence = 0;
+    private boolean m_admitting = false;
+
+    private volatile int m_active = 0;
+    private volatile int m_queued = 0;
+    private volatile boolean m_running = false;
+    private Selector m_selector;
+    private Thread m_thread;
+
+    /**
+     * Returns the engine shared by all asynchronous monitors, starting it on
+     * first use.
+     *
+     * @return a {@link org.opennms.netmgt.poller.nio.AsyncPollEngine} object.
+     */
+    public static synchronized AsyncPollEngine getInstance() {
+        if (s_instance == null) {
+            AsyncPollEngine engine = new AsyncPollEngine(Integer.getInteger(MAX_ACTIVE_PROPERTY, DEFAULT_MAX_ACTIVE));
+            engine.start();
+            s_instance = engine;
+        }
+        return s_instance;
+    }
+
+    /**
+     * <p>Constructor for AsyncPollEngine.</p>
+     *
+     * @param maxActive the maximum number of attempts in flight at once
+     */
+    public AsyncPollEngine(int maxActive) {
+        if (maxActive < 1) {
+            throw new IllegalArgumentException("maxActive must be at least 1");
+        }
+        m_maxActive = maxActive;
+    }
+
+    /**
+     * Opens the selector and starts the selector thread.
+     */
+    public synchronized void start() {
+        if (m_running) {
+            return;
+        }
+        try {
+            m_selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open a selector for asynchronous polling", e);
+        }
+        m_running = true;
+        m_thread = new Thread(this, "AsyncPollEngine");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /**
+     * Stops the selector thread.  Polls still in progress are completed with
+     * an unknown status.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            if (!m_running) {
+                return;
+            }
+            m_running = false;
+            thread = m_thread;
+            m_selector.wakeup();
+        }
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * <p>getActivePolls</p>
+     *
+     * @return the number of attempts currently in flight
+     */
+    public int getActivePolls() {
+        return m_active;
+    }
+
+    /**
+     * <p>getQueuedPolls</p>
+     *
+     * @return the number of attempts waiting for a free slot
+     */
+    public int getQueuedPolls() {
+        return m_queued;
+    }
+
+    /**
+     * <p>getCompletedPolls</p>
+     *
+     * @return the number of polls whose callback has been invoked
+     */
+    public long getCompletedPolls() {
+        return m_completed.get();
+    }
+
+    /**
+     * Starts a TCP poll.
+     *
+     * @param address the address and port to connect to
+     * @param tracker the timeout and retry settings for the poll
+     * @param factory creates the conversation for each attempt
+     * @param callback notified once the poll has finished
+     */
+    public void pollTcp(InetSocketAddress address, TimeoutTracker tracker, ConversationFactory<? extends TcpConversation> factory, PollStatusCallback callback) {
+        submit(new TcpPollTask(address, tracker, factory, callback));
+    }
+
+    /**
+     * Starts a UDP poll.
+     *
+     * @param address the address and port to send the request to
+     * @param tracker the timeout and retry settings for the poll
+     * @param factory creates the conversation for each attempt
+     * @param callback notified once the poll has finished
+     */
+    public void pollUdp(InetSocketAddress address, TimeoutTracker tracker, ConversationFactory<? extends UdpConversation> factory, PollStatusCallback callback) {
+        submit(new UdpPollTask(address, tracker, factory, callback));
+    }
+
+    private void submit(final PollTask task) {
+        if (!m_running) {
+            throw new IllegalStateException("The asynchronous poll engine is not running");
+        }
+        if (Thread.currentThread() == m_thread) {
+            task.start();
+            return;
+        }
+        m_tasks.add(new Runnable() {
+            public void run() {
+                task.start();
+            }
+        });
+        if (m_wakeupPending.compareAndSet(false, true)) {
+            m_selector.wakeup();
+        }
+    }
+
+    /**
+     * <p>run</p>
+     */
+    public void run() {
+        while (m_running) {
+            try {
+                long wait = runExpiredTimeouts();
+                m_selector.select(wait);
+                m_wakeupPending.set(false);
+
+                Runnable task;
+                while ((task = m_tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = m_selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    PollTask pollTask = (PollTask) key.attachment();
+                    if (key.isValid() && pollTask.isCurrent(key)) {
+                        pollTask.ready(key);
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (Throwable e) {
+                log().error("Unexpected exception in the asynchronous poll loop", e);
+            }
+        }
+        shutdown();
+    }
+
+    private void shutdown() {
+        Runnable task;
+        while ((task = m_tasks.poll()) != null) {
+            task.run();
+        }
+        for (SelectionKey key : m_selector.keys()) {
+            PollTask pollTask = (PollTask) key.attachment();
+            if (pollTask.isCurrent(key)) {
+                pollTask.abort();
+            }
+        }
+        PollTask waiting;
+        while ((waiting = m_waiting.poll()) != null) {
+            waiting.abort();
+        }
+        while (!m_timeouts.isEmpty()) {
+            m_timeouts.poll().m_task.abort();
+        }
+        try {
+            m_selector.close();
+        } catch (IOException e) {
+            log().debug("Error closing the asynchronous poll selector", e);
+        }
+    }
+
+    /**
+     * Fires every timeout that has expired.
+     *
+     * @return milliseconds until the next timeout, or 0 if there is none
+     */
+    private long runExpiredTimeouts() {
+        while (!m_timeouts.isEmpty()) {
+            Timeout next = m_timeouts.peek();
+            long remaining = next.m_when - System.nanoTime();
+            if (remaining > 0) {
+                return Math.max(1L, TimeUnit.MILLISECONDS.convert(remaining, TimeUnit.NANOSECONDS));
+            }
+            m_timeouts.poll();
+            next.m_task.expired(next.m_generation);
+        }
+        return 0L;
+    }
+
+    private void schedule(PollTask task, long delayInNanos) {
+        m_timeouts.add(new Timeout(System.nanoTime() + delayInNanos, m_timeoutSequence++, task, task.m_generation));
+    }
+
+    private void admitWaiting() {
+        // attempts that finish straight away call back in here; let the outermost call do the work
+        if (m_admitting) {
+            return;
+        }
+        m_admitting = true;
+        try {
+            while (m_active < m_maxActive && !m_waiting.isEmpty()) {
+                m_queued = m_waiting.size() - 1;
+                m_waiting.poll().begin();
+            }
+        } finally {
+            m_admitting = false;
+        }
+    }
+
+    private static ThreadCategory log() {
+        return ThreadCategory.getInstance(AsyncPollEngine.class);
+    }
+
+    private static final class Timeout implements Comparable<Timeout> {
+        private final long m_when;
+        private final long m_sequence;
+        private final PollTask m_task;
+        private final int m_generation;
+
+        Timeout(long when, long sequence, PollTask task, int generation) {
+            m_when = when;
+            m_sequence = sequence;
+            m_task = task;
+            m_generation = generation;
+        }
+
+        public int compareTo(Timeout o) {
+            long diff = m_when - o.m_when;
+            if (diff == 0) {
+                diff = m_sequence - o.m_sequence;
+            }
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * One poll, possibly made of several attempts.  Every method runs on the
+     * selector thread.
+     */
+    private abstract class PollTask {
+        protected final InetSocketAddress m_address;
+        protected final TimeoutTracker m_tracker;
+        private final PollStatusCallback m_callback;
+
+        /** Bumped whenever an attempt starts, waits or ends so stale timeouts are ignored. */
+        private int m_generation = 0;
+        private boolean m_waitingToStart = false;
+        private boolean m_inProgress = false;
+        private boolean m_done = false;
+        protected SelectionKey m_key;
+
+        PollTask(InetSocketAddress address, TimeoutTracker tracker, PollStatusCallback callback) {
+            m_address = address;
+            m_tracker = tracker;
+            m_callback = callback;
+        }
+
+        void start() {
+            m_tracker.reset();
+            scheduleAttempt();
+        }
+
+        private void scheduleAttempt() {
+            long delay = m_tracker.getNanosUntilNextAttempt();
+            if (delay > 0) {
+                m_generation++;
+                m_waitingToStart = true;
+                schedule(this, delay);
+            } else {
+                begin();
+            }
+        }
+
+        void begin() {
+            if (m_active >= m_maxActive) {
+                m_waiting.add(this);
+                m_queued = m_waiting.size();
+                return;
+            }
+            m_active++;
+            m_generation++;
+            m_inProgress = true;
+            m_tracker.startAttempt();
+            try {
+                open();
+            } catch (IOException e) {
+                failed(e);
+            } catch (Throwable e) {
+                unexpected(e);
+            }
+        }
+
+        void expired(int generation) {
+            if (generation != m_generation) {
+                return;
+            }
+            if (m_waitingToStart) {
+                m_waitingToStart = false;
+                begin();
+            } else if (m_inProgress) {
+                if (log().isDebugEnabled()) {
+                    log().debug("Poll of " + describe() + " timed out with " + m_tracker);
+                }
+                finish(timedOut(m_tracker.getTimeoutInMillis()), true);
+            }
+        }
+
+        void ready(SelectionKey key) {
+            try {
+                handle(key);
+            } catch (IOException e) {
+                failed(e);
+            } catch (Throwable e) {
+                unexpected(e);
+            }
+        }
+
+        boolean isCurrent(SelectionKey key) {
+            return m_inProgress && key == m_key;
+        }
+
+        /**
+         * Restarts the inactivity timeout for the current attempt.
+         */
+        protected void resetTimeout() {
+            m_generation++;
+            schedule(this, TimeUnit.NANOSECONDS.convert(m_tracker.getSoTimeout(), TimeUnit.MILLISECONDS));
+        }
+
+        protected SelectionKey register(SelectableChannel channel, int ops) throws IOException {
+            m_key = channel.register(m_selector, ops, this);
+            return m_key;
+        }
+
+        protected void failed(IOException e) {
+            final String addr = describe();
+            if (e instanceof NoRouteToHostException) {
+                finish(PollStatus.unavailable("No route to host exception for address " + addr), false);
+            } else if (e instanceof ConnectException || e instanceof PortUnreachableException) {
+                finish(PollStatus.unavailable("Connection exception for address: " + addr + ": " + e.getMessage()), true);
+            } else {
+                finish(PollStatus.unavailable("IOException while polling address: " + addr + ": " + e.getMessage()), true);
+            }
+        }
+
+        private void unexpected(Throwable e) {
+            log().warn("Unexpected exception while polling " + describe(), e);
+            finish(PollStatus.unavailable("Unexpected exception while polling address: " + describe() + ": " + e.getMessage()), false);
+        }
+
+        /**
+         * Ends the current attempt and either retries or reports the status.
+         */
+        protected void finish(PollStatus status, boolean mayRetry) {
+            if (!m_inProgress) {
+                return;
+            }
+            m_inProgress = false;
+            m_generation++;
+            close();
+            m_active--;
+
+            m_tracker.nextAttempt();
+            if (!status.isAvailable() && mayRetry && m_tracker.shouldRetry()) {
+                if (log().isDebugEnabled()) {
+                    log().debug("Retrying poll of " + describe() + " after: " + status.getReason());
+                }
+                scheduleAttempt();
+            } else {
+                complete(status);
+            }
+            admitWaiting();
+        }
+
+        void abort() {
+            if (m_done) {
+                return;
+            }
+            if (m_inProgress) {
+                m_inProgress = false;
+                close();
+                m_active--;
+            }
+            m_generation++;
+            complete(PollStatus.unknown("Asynchronous polling was stopped before the poll of " + describe() + " completed"));
+        }
+
+        private void complete(PollStatus status) {
+            m_done = true;
+            m_completed.incrementAndGet();
+            try {
+                m_callback.complete(status);
+            } catch (Throwable e) {
+                log().warn("Poll callback for " + describe() + " threw an exception", e);
+            }
+        }
+
+        private void close() {
+            if (m_key != null) {
+                m_key.cancel();
+                try {
+                    m_key.channel().close();
+                } catch (IOException e) {
+                    log().debug("Error closing channel to " + describe(), e);
+                }
+                m_key = null;
+            }
+            closed();
+        }
+
+        protected String describe() {
+            return InetAddressUtils.str(m_address.getAddress()) + ":" + m_address.getPort();
+        }
+
+        protected abstract void open() throws IOException;
+
+        protected abstract void handle(SelectionKey key) throws IOException;
+
+        protected abstract PollStatus timedOut(long timeoutInMillis);
+
+        /** Releases per-attempt state once the channel has been closed. */
+        protected abstract void closed();
+    }
+
+    private final class TcpPollTask extends PollTask {
+        private final ConversationFactory<? extends TcpConversation> m_factory;
+        private final StringBuilder m_line = new StringBuilder();
+        private TcpConversation m_conversation;
+        private ByteBuffer m_output;
+
+        TcpPollTask(InetSocketAddress address, TimeoutTracker tracker, ConversationFactory<? extends TcpConversation> factory, PollStatusCallback callback) {
+            super(address, tracker, callback);
+            m_factory = factory;
+        }
+
+        @Override
+        protected void open() throws IOException {
+            m_conversation = m_factory.createConversation();
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                if (channel.connect(m_address)) {
+                    register(channel, 0);
+                    connected();
+                } else {
+                    register(channel, SelectionKey.OP_CONNECT);
+                    resetTimeout();
+                }
+            } catch (IOException e) {
+                if (m_key == null) {
+                    channel.close();
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        protected void handle(SelectionKey key) throws IOException {
+            if (key.isConnectable()) {
+                if (((SocketChannel) key.channel()).finishConnect()) {
+                    connected();
+                }
+                return;
+            }
+            if (key.isWritable()) {
+                write();
+            }
+            if (isCurrent(key) && key.isReadable()) {
+                read();
+            }
+        }
+
+        private void connected() throws IOException {
+            if (log().isDebugEnabled()) {
+                log().debug("Connected to " + describe());
+            }
+            m_conversation.connected(m_tracker.elapsedTimeInMillis());
+            if (progress()) {
+                resetTimeout();
+            }
+        }
+
+        private void read() throws IOException {
+            SocketChannel channel = (SocketChannel) m_key.channel();
+            m_readBuffer.clear();
+            int count = channel.read(m_readBuffer);
+            if (count < 0) {
+                if (m_line.length() > 0) {
+                    // deliver the unterminated last line the way BufferedReader.readLine() would
+                    String line = m_line.toString();
+                    m_line.setLength(0);
+                    m_conversation.lineReceived(line, m_tracker.elapsedTimeInMillis());
+                    if (!progress()) {
+                        return;
+                    }
+                }
+                finish(m_conversation.closed(), true);
+                return;
+            }
+            m_readBuffer.flip();
+            while (m_readBuffer.hasRemaining()) {
+                char c = (char) (m_readBuffer.get() & 0xff);
+                if (c == '\n' || m_line.length() >= MAX_LINE_LENGTH) {
+                    int len = m_line.length();
+                    if (c == '\n' && len > 0 && m_line.charAt(len - 1) == '\r') {
+                        m_line.setLength(len - 1);
+                    }
+                    String line = m_line.toString();
+                    m_line.setLength(0);
+                    if (c != '\n') {
+                        m_line.append(c);
+                    }
+                    m_conversation.lineReceived(line, m_tracker.elapsedTimeInMillis());
+                    if (!progress()) {
+                        return;
+                    }
+                } else {
+                    m_line.append(c);
+                }
+            }
+            resetTimeout();
+        }
+
+        private void write() throws IOException {
+            SocketChannel channel = (SocketChannel) m_key.channel();
+            channel.write(m_output);
+            if (!m_output.hasRemaining()) {
+                m_output = null;
+                m_key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Flushes queued output and finishes the attempt if the conversation
+         * has completed.
+         *
+         * @return true if the attempt is still in progress
+         */
+        private boolean progress() throws IOException {
+            if (m_conversation.isComplete()) {
+                finish(m_conversation.getStatus(), true);
+                return false;
+            }
+            String text = m_conversation.takeOutput();
+            if (text != null) {
+                ByteBuffer bytes = CHARSET.encode(text);
+                if (m_output == null) {
+                    m_output = bytes;
+                } else {
+                    ByteBuffer joined = ByteBuffer.allocate(m_output.remaining() + bytes.remaining());
+                    joined.put(m_output).put(bytes).flip();
+                    m_output = joined;
+                }
+                write();
+            }
+            m_key.interestOps(m_output == null ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return true;
+        }
+
+        @Override
+        protected PollStatus timedOut(long timeoutInMillis) {
+            return m_conversation.timedOut(timeoutInMillis);
+        }
+
+        @Override
+        protected void closed() {
+            m_line.setLength(0);
+            m_output = null;
+        }
+    }
+
+    private final class UdpPollTask extends PollTask {
+        private final ConversationFactory<? extends UdpConversation> m_factory;
+        private UdpConversation m_conversation;
+        private ByteBuffer m_request;
+
+        UdpPollTask(InetSocketAddress address, TimeoutTracker tracker, ConversationFactory<? extends UdpConversation> factory, PollStatusCallback callback) {
+            super(address, tracker, callback);
+            m_factory = factory;
+        }
+
+        @Override
+        protected void open() throws IOException {
+            m_conversation = m_factory.createConversation();
+            m_request = m_conversation.getRequest();
+            DatagramChannel channel = DatagramChannel.open();
+            try {
+                channel.configureBlocking(false);
+                channel.connect(m_address);
+                register(channel, SelectionKey.OP_READ);
+            } catch (IOException e) {
+                if (m_key == null) {
+                    channel.close();
+                }
+                throw e;
+            }
+            send();
+            resetTimeout();
+        }
+
+        private void send() throws IOException {
+            DatagramChannel channel = (DatagramChannel) m_key.channel();
+            if (channel.write(m_request) > 0 || !m_request.hasRemaining()) {
+                m_request = null;
+                m_key.interestOps(SelectionKey.OP_READ);
+            } else {
+                m_key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        @Override
+        protected void handle(SelectionKey key) throws IOException {
+            if (key.isWritable() && m_request != null) {
+                send();
+            }
+            if (isCurrent(key) && key.isReadable()) {
+                DatagramChannel channel = (DatagramChannel) key.channel();
+                m_readBuffer.clear();
+                if (channel.read(m_readBuffer) <= 0) {
+                    return;
+                }
+                m_readBuffer.flip();
+                PollStatus status = m_conversation.responseReceived(m_readBuffer.asReadOnlyBuffer(), m_tracker.elapsedTimeInMillis());
+                if (status != null) {
+                    finish(status, true);
+                }
+            }
+        }
+
+        @Override
+        protected PollStatus timedOut(long timeoutInMillis) {
+            return m_conversation.timedOut(timeoutInMillis);
+        }
+
+        @Override
+        protected void closed() {
+            m_request = null;
+        }
+    }
+
+}
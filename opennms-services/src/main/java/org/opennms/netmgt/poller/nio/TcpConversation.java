@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.nio;
+
+import org.opennms.netmgt.model.PollStatus;
+
+/**
+ * <p>
+ * A line oriented exchange with a TCP service, driven by the
+ * {@link AsyncPollEngine} selector thread.  A new conversation is created for
+ * every attempt.  Subclasses react to the connection being established and to
+ * each line the server sends, queue requests with {@link #send(String)} and
+ * finish the attempt with {@link #complete(PollStatus)}.
+ * </p>
+ *
+ * <p>
+ * All methods are called from the selector thread and must not block.
+ * </p>
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+public abstract class TcpConversation {
+
+    private final StringBuilder m_output = new StringBuilder();
+    private PollStatus m_status;
+
+    /**
+     * Called once the connection has been established.  The default waits
+     * for the server to speak first.
+     *
+     * @param responseTime milliseconds since the attempt was started
+     */
+    public void connected(double responseTime) {
+    }
+
+    /**
+     * Called for every line received from the server, without the line
+     * terminator.
+     *
+     * @param line a {@link java.lang.String} object.
+     * @param responseTime milliseconds since the attempt was started
+     */
+    public abstract void lineReceived(String line, double responseTime);
+
+    /**
+     * Called when the server closes the connection before the conversation
+     * has completed.
+     *
+     * @return the status of the attempt
+     */
+    public PollStatus closed() {
+        return PollStatus.unavailable("Connection closed by the remote host before the conversation completed");
+    }
+
+    /**
+     * Called when the server does not answer within the timeout.
+     *
+     * @param timeoutInMillis the timeout that expired
+     * @return the status of the attempt
+     */
+    public PollStatus timedOut(long timeoutInMillis) {
+        return PollStatus.unavailable("No response received within " + timeoutInMillis + "ms");
+    }
+
+    /**
+     * Queues text to be written to the server.
+     *
+     * @param text a {@link java.lang.String} object.
+     */
+    protected final void send(String text) {
+        m_output.append(text);
+    }
+
+    /**
+     * Ends the attempt with the given status.  Attempts that end with a
+     * status other than available are retried while retries remain.
+     *
+     * @param status a {@link org.opennms.netmgt.model.PollStatus} object.
+     */
+    protected final void complete(PollStatus status) {
+        m_status = status;
+    }
+
+    final boolean isComplete() {
+        return m_status != null;
+    }
+
+    final PollStatus getStatus() {
+        return m_status;
+    }
+
+    final String takeOutput() {
+        if (m_output.length() == 0) {
+            return null;
+        }
+        String output = m_output.toString();
+        m_output.setLength(0);
+        return output;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.nio;
+
+import java.nio.ByteBuffer;
+
+import org.opennms.netmgt.model.PollStatus;
+
+/**
+ * <p>
+ * A single request/response exchange with a UDP service, driven by the
+ * {@link AsyncPollEngine} selector thread.  A new conversation is created for
+ * every attempt so each attempt can use its own request identifier.
+ * </p>
+ *
+ * <p>
+ * All methods are called from the selector thread and must not block.
+ * </p>
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS</a>
+ */
+public abstract class UdpConversation {
+
+    /**
+     * <p>getRequest</p>
+     *
+     * @return the datagram to send
+     */
+    public abstract ByteBuffer getRequest();
+
+    /**
+     * Called for every datagram received from the service.
+     *
+     * @param response the datagram, positioned for reading
+     * @param responseTime milliseconds since the attempt was started
+     * @return the status of the attempt, or null if the datagram does not
+     *         answer this request and the conversation should keep waiting
+     */
+    public abstract PollStatus responseReceived(ByteBuffer response, double responseTime);
+
+    /**
+     * Called when no response arrives within the timeout.
+     *
+     * @param timeoutInMillis the timeout that expired
+     * @return the status of the attempt
+     */
+    public PollStatus timedOut(long timeoutInMillis) {
+        return PollStatus.unavailable("No response received within " + timeoutInMillis + "ms");
+    }
+
+}
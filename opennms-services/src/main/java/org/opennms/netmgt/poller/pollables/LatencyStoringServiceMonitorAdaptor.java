@@ -44,9 +44,12 @@ import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.config.PollerConfig;
 import org.opennms.netmgt.config.poller.Package;
+import org.opennms.netmgt.dao.support.RrdResourceIndex;
 import org.opennms.netmgt.model.PollStatus;
 import org.opennms.netmgt.model.RrdRepository;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatusCallback;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
@@ -101,8 +104,45 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
 
     /** {@inheritDoc} */
     public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
-        PollStatus status = m_serviceMonitor.poll(svc, parameters);
+        return processStatus(svc, m_serviceMonitor.poll(svc, parameters), parameters);
+    }
+
+    /**
+     * <p>isAsync</p>
+     *
+     * @return true if the wrapped monitor is an {@link AsyncServiceMonitor}
+     */
+    public boolean isAsync() {
+        return m_serviceMonitor instanceof AsyncServiceMonitor;
+    }
+
+    /**
+     * Starts an asynchronous poll with the wrapped monitor.  The callback is
+     * given the raw status from the monitor; it must be passed to
+     * {@link #processStatus(MonitoredService, PollStatus, Map)} from a thread
+     * that is allowed to block before it is used.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param parameters a {@link java.util.Map} object.
+     * @param callback a {@link org.opennms.netmgt.poller.PollStatusCallback} object.
+     */
+    public void pollAsync(MonitoredService svc, Map<String, Object> parameters, PollStatusCallback callback) {
+        if (!isAsync()) {
+            throw new IllegalStateException(m_serviceMonitor.getClass().getName() + " does not support asynchronous polling");
+        }
+        ((AsyncServiceMonitor) m_serviceMonitor).pollAsync(svc, parameters, callback);
+    }
 
+    /**
+     * Stores the response times of a poll and applies the invert-status
+     * parameter.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param status the status returned by the wrapped monitor
+     * @param parameters a {@link java.util.Map} object.
+     * @return the status to report for the service
+     */
+    public PollStatus processStatus(MonitoredService svc, PollStatus status, Map<String, Object> parameters) {
         if (!status.getProperties().isEmpty()) {
             storeResponseTime(svc, new LinkedHashMap<String, Number>(status.getProperties()), parameters);
         }
@@ -285,7 +325,11 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
         final String hostAddress = InetAddressUtils.str(addr);
 		String path = repository + File.separator + hostAddress;
 
-        return RrdUtils.createRRD(hostAddress, path, rrdBaseName, m_pollerConfig.getStep(m_pkg), dsList, rraList);
+        boolean created = RrdUtils.createRRD(hostAddress, path, rrdBaseName, m_pollerConfig.getStep(m_pkg), dsList, rraList);
+        if (created) {
+            RrdResourceIndex.notifyFileCreated(new File(path, rrdBaseName + RrdUtils.getExtension()));
+        }
+        return created;
 
     }
 
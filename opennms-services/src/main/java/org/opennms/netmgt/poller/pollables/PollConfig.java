@@ -47,6 +47,24 @@ public interface PollConfig extends Timer {
      */
     public PollStatus poll();
 
+    /**
+     * <p>isAsync</p>
+     *
+     * @return true if the service can be polled with {@link #pollAsync(Runnable)}
+     */
+    public boolean isAsync();
+
+    /**
+     * Starts an asynchronous poll and runs the completion once it has
+     * finished.  The next call to {@link #poll()} returns the status of the
+     * asynchronous poll instead of polling again.  Starting a poll while
+     * another is outstanding abandons the outstanding one: its status is
+     * dropped and its completion is never run.
+     *
+     * @param completion a {@link java.lang.Runnable} object.
+     */
+    public void pollAsync(Runnable completion);
+
     /**
      * <p>getCurrentTime</p>
      *
@@ -30,6 +30,8 @@ package org.opennms.netmgt.poller.pollables;
 
 import java.net.InetAddress;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.EventConstants;
@@ -70,6 +72,16 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     private volatile PollStatus m_oldStatus;
     private volatile Schedule m_schedule;
     private volatile long m_statusChangeTime = 0L;
+    private final AtomicBoolean m_asyncPollInProgress = new AtomicBoolean(false);
+    private final AtomicInteger m_skippedAsyncPolls = new AtomicInteger();
+    private volatile boolean m_asyncStatusReceived;
+
+    /**
+     * The number of scheduled polls skipped while waiting for an
+     * asynchronous poll before it is given up on.
+     */
+    static final int MAX_SKIPPED_ASYNC_POLLS = 3;
+
     /**
      * <p>Constructor for PollableService.</p>
      *
@@ -361,7 +373,60 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      * <p>run</p>
      */
     public void run() {
-        doRun(500);
+        if (m_pollConfig.isAsync()) {
+            startAsyncPoll();
+        } else {
+            doRun(500);
+        }
+    }
+
+    /**
+     * Starts an asynchronous poll without holding the tree lock.  Once the
+     * monitor reports back, the usual scheduled poll runs on a scheduler
+     * thread and picks up the status the monitor reported instead of polling
+     * again, so status changes are processed exactly as for a synchronous
+     * poll.  A poll the monitor has not reported back on after
+     * {@link #MAX_SKIPPED_ASYNC_POLLS} scheduled polls is abandoned, while one
+     * that has reported back but is postponed is always waited for; starting
+     * a new one makes the poll config ignore its result if it ever arrives.
+     */
+    private void startAsyncPoll() {
+        if (!m_asyncPollInProgress.compareAndSet(false, true)) {
+            if (m_asyncStatusReceived || m_skippedAsyncPolls.incrementAndGet() < MAX_SKIPPED_ASYNC_POLLS) {
+                log().info("Skipping poll of "+this+" because the previous asynchronous poll has not completed");
+                return;
+            }
+            log().warn("Abandoning the asynchronous poll of "+this+" because the monitor has not reported back in "+MAX_SKIPPED_ASYNC_POLLS+" poll intervals");
+        }
+        m_skippedAsyncPolls.set(0);
+        m_asyncStatusReceived = false;
+        log().debug("Start Asynchronous Poll of service "+this);
+        m_pollConfig.pollAsync(new Runnable() {
+            public void run() {
+                m_asyncStatusReceived = true;
+                boolean postponed = false;
+                try {
+                    doRun(500);
+                } catch (PostponeNecessary e) {
+                    postponed = true;
+                    throw e;
+                } finally {
+                    if (!postponed) {
+                        m_asyncPollInProgress.set(false);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>isAsyncPollInProgress</p>
+     *
+     * @return true while an asynchronous poll has been started and its
+     *         status has not been processed yet
+     */
+    boolean isAsyncPollInProgress() {
+        return m_asyncPollInProgress.get();
     }
     
     /**
@@ -30,6 +30,7 @@ package org.opennms.netmgt.poller.pollables;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.config.PollOutagesConfig;
@@ -39,8 +40,13 @@ import org.opennms.netmgt.config.poller.Package;
 import org.opennms.netmgt.config.poller.Parameter;
 import org.opennms.netmgt.config.poller.Service;
 import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.PollStatusCallback;
 import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.scheduler.PostponeNecessary;
+import org.opennms.netmgt.scheduler.ReadyRunnable;
+import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.ScheduleInterval;
+import org.opennms.netmgt.scheduler.ScheduleTimer;
 import org.opennms.netmgt.scheduler.Timer;
 
 /**
@@ -58,7 +64,9 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
     private Package m_pkg;
     private Timer m_timer;
     private Service m_configService;
-	private ServiceMonitor m_serviceMonitor;
+	private LatencyStoringServiceMonitorAdaptor m_serviceMonitor;
+    private final AtomicReference<PollStatus> m_asyncStatus = new AtomicReference<PollStatus>();
+    private final AtomicReference<PollStatusCallback> m_asyncCallback = new AtomicReference<PollStatusCallback>();
 
     /**
      * <p>Constructor for PollableServiceConfig.</p>
@@ -106,8 +114,14 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         synchronized(this) {
             packageName = m_pkg.getName();
         }
+        PollStatus asyncStatus = m_asyncStatus.getAndSet(null);
         try {
-            ServiceMonitor monitor = getServiceMonitor();
+            LatencyStoringServiceMonitorAdaptor monitor = getServiceMonitor();
+            if (asyncStatus != null) {
+                PollStatus result = monitor.processStatus(m_service, asyncStatus, getParameters());
+                ThreadCategory.getInstance(getClass()).debug("Finish asynchronous polling "+m_service+" using pkg " + packageName + " result = "+result);
+                return result;
+            }
             ThreadCategory.getInstance(getClass()).debug("Polling "+m_service+" using pkg " + packageName);
             PollStatus result = monitor.poll(m_service, getParameters());
             ThreadCategory.getInstance(getClass()).debug("Finish polling "+m_service+" using pkg " + packageName + " result = "+result);
@@ -118,7 +132,71 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         }
     }
 
-	private synchronized ServiceMonitor getServiceMonitor() {
+    /**
+     * <p>isAsync</p>
+     *
+     * @return true if the service monitor supports asynchronous polling
+     */
+    public boolean isAsync() {
+        return getServiceMonitor().isAsync();
+    }
+
+    /**
+     * Starts an asynchronous poll.  When the monitor reports back, the status
+     * is held for the next call to {@link #poll()} and the completion is run
+     * on a scheduler thread.  If the completion cannot get the locks it needs
+     * it may throw {@link PostponeNecessary} and it will be run again later.
+     *
+     * @param completion a {@link java.lang.Runnable} object.
+     */
+    public void pollAsync(final Runnable completion) {
+        ThreadCategory.getInstance(getClass()).debug("Polling "+m_service+" asynchronously");
+        final PollStatusCallback callback = new PollStatusCallback() {
+            public void complete(PollStatus status) {
+                if (!m_asyncCallback.compareAndSet(this, null)) {
+                    ThreadCategory.getInstance(PollableServiceConfig.class).info("Ignoring the result of an abandoned asynchronous poll of "+m_service+": "+status);
+                    return;
+                }
+                m_asyncStatus.set(status);
+                runCompletion(completion);
+            }
+        };
+        m_asyncCallback.set(callback);
+        try {
+            getServiceMonitor().pollAsync(m_service, getParameters(), callback);
+        } catch (Throwable e) {
+            ThreadCategory.getInstance(getClass()).error("Unexpected exception while polling "+m_service+". Marking service as DOWN", e);
+            callback.complete(PollStatus.down("Unexpected exception while polling "+m_service+". "+e));
+        }
+    }
+
+    private void runCompletion(final Runnable completion) {
+        if (!(m_timer instanceof ScheduleTimer)) {
+            completion.run();
+            return;
+        }
+        final ScheduleTimer timer = (ScheduleTimer) m_timer;
+        timer.schedule(0, new ReadyRunnable() {
+            public boolean isReady() {
+                return true;
+            }
+
+            public void run() {
+                try {
+                    completion.run();
+                } catch (PostponeNecessary e) {
+                    // Chose a random number of seconds between 5 and 14 to wait before trying again
+                    timer.schedule(Schedule.random.nextInt(10)*1000+5000, this);
+                }
+            }
+
+            public String toString() {
+                return "Completion of asynchronous poll of " + m_service;
+            }
+        });
+    }
+
+	private synchronized LatencyStoringServiceMonitorAdaptor getServiceMonitor() {
 		if (m_serviceMonitor == null) {
 			ServiceMonitor monitor = m_pollerConfig.getServiceMonitor(m_service.getSvcName());
 			m_serviceMonitor = new LatencyStoringServiceMonitorAdaptor(monitor, m_pollerConfig, m_pkg);
@@ -146,7 +224,7 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
      * Should be called when thresholds configuration has been reloaded
      */
     public synchronized void refreshThresholds() {
-        ((LatencyStoringServiceMonitorAdaptor)getServiceMonitor()).refreshThresholds();
+        getServiceMonitor().refreshThresholds();
     }
 
 
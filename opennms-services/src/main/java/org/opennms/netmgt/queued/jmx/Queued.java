@@ -234,5 +234,70 @@ public class Queued extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
         }
     }
 
+    /**
+     * <p>getFilesWithSignificantWork</p>
+     *
+     * @return a int.
+     */
+    public int getFilesWithSignificantWork() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getFilesWithSignificantWork();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getFilesWithInsignificantWork</p>
+     *
+     * @return a int.
+     */
+    public int getFilesWithInsignificantWork() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getFilesWithInsignificantWork();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getOldestPendingAge</p>
+     *
+     * @return a long.
+     */
+    public long getOldestPendingAge() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getOldestPendingAge();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getWriteThreadsRunning</p>
+     *
+     * @return a int.
+     */
+    public int getWriteThreadsRunning() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getWriteThreadsRunning();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getWriterStats</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getWriterStats() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getWriterStats();
+        } else {
+            return "";
+        }
+    }
+
 
 }
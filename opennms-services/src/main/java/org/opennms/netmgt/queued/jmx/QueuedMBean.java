@@ -115,5 +115,35 @@ public interface QueuedMBean extends BaseOnmsMBean {
 	 * @return a long.
 	 */
 	public long getStartTime();
+	/**
+	 * <p>getFilesWithSignificantWork</p>
+	 *
+	 * @return a int.
+	 */
+	public int getFilesWithSignificantWork();
+	/**
+	 * <p>getFilesWithInsignificantWork</p>
+	 *
+	 * @return a int.
+	 */
+	public int getFilesWithInsignificantWork();
+	/**
+	 * <p>getOldestPendingAge</p>
+	 *
+	 * @return a long.
+	 */
+	public long getOldestPendingAge();
+	/**
+	 * <p>getWriteThreadsRunning</p>
+	 *
+	 * @return a int.
+	 */
+	public int getWriteThreadsRunning();
+	/**
+	 * <p>getWriterStats</p>
+	 *
+	 * @return a {@link java.lang.String} object.
+	 */
+	public String getWriterStats();
 
 }
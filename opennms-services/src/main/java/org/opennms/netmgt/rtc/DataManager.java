@@ -39,12 +39,15 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.sql.DataSource;
 
@@ -60,9 +63,12 @@ import org.opennms.netmgt.config.categories.Categorygroup;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.filter.FilterParseException;
 import org.opennms.netmgt.rtc.datablock.RTCCategory;
+import org.opennms.netmgt.rtc.datablock.RTCCategoryDownTime;
 import org.opennms.netmgt.rtc.datablock.RTCHashMap;
 import org.opennms.netmgt.rtc.datablock.RTCNode;
 import org.opennms.netmgt.rtc.datablock.RTCNodeKey;
+import org.opennms.netmgt.rtc.datablock.RTCNodeSnapshot;
+import org.opennms.netmgt.rtc.datablock.RTCNodeSvcTime;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowCallbackHandler;
 import org.xml.sax.SAXException;
@@ -82,6 +88,12 @@ import org.xml.sax.SAXException;
  * 'nodeGainedService' event would result in the 'nodeGainedService()' method
  * being called by the DataUpdater(s).
  *
+ * The availability of each category is kept as a running aggregate that is
+ * updated as outages start and end, and each node's services are published
+ * as an immutable snapshot after every change. The value and count getters
+ * read these without taking the DataManager lock, so building the XML sent
+ * to the UI does not hold up event processing.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -91,8 +103,11 @@ public class DataManager extends Object {
 
 		Map<String,Set<Integer>> m_categoryNodeIdLists = new HashMap<String,Set<Integer>>();
 
+		Set<Long> m_nodeIds = new HashSet<Long>();
+
 		public void processRow(ResultSet rs) throws SQLException {
 			RTCNodeKey key = new RTCNodeKey(rs.getLong("nodeid"), InetAddressUtils.addr(rs.getString("ipaddr")), rs.getString("servicename"));
+			m_nodeIds.add(key.getNodeID());
 			processKey(key);
 			processOutage(key, rs.getTimestamp("ifLostService"), rs.getTimestamp("ifRegainedService"));
 		}
@@ -174,6 +189,10 @@ public class DataManager extends Object {
 			addOutageToRTCNode(rtcN, ifLostService, ifRegainedService);
 			
 		}
+
+		public Set<Long> getNodeIds() {
+			return m_nodeIds;
+		}
 	}
 
 	/**
@@ -181,6 +200,16 @@ public class DataManager extends Object {
      */
     private Map<String, RTCCategory> m_categories;
 
+    /**
+     * The running down time of each category, keyed by category label
+     */
+    private Map<String, RTCCategoryDownTime> m_downTimes;
+
+    /**
+     * The published state of each node's services, keyed by node ID
+     */
+    private final ConcurrentMap<Long, RTCNodeSnapshot> m_snapshots = new ConcurrentHashMap<Long, RTCNodeSnapshot>();
+
     /**
      * map keyed using the RTCNodeKey or node ID or node ID/IP address
      */
@@ -222,6 +251,10 @@ public class DataManager extends Object {
 		}
 
 		rtcN.addSvcTime(lostTime, regainedTime);
+
+		for (String catLabel : rtcN.getCategories()) {
+			m_downTimes.get(catLabel).outageAdded(rtcN, lostTime, regainedTime);
+		}
 	}
 
 	private void addRTCNode(RTCNode rtcN) {
@@ -231,7 +264,10 @@ public class DataManager extends Object {
 	private void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
 
 		// add the category info to the node
-        rtcN.addCategory(cat.getLabel());
+		if (!rtcN.belongsTo(cat.getLabel())) {
+			rtcN.addCategory(cat.getLabel());
+			m_downTimes.get(cat.getLabel()).addService(rtcN);
+		}
 
 		// Add node to category
 		cat.addNode(rtcN);
@@ -240,6 +276,35 @@ public class DataManager extends Object {
 		    log().debug("rtcN : " + rtcN.getNodeID() + "/" + rtcN.getIP() + "/" + rtcN.getSvcName() + " added to cat: " + cat.getLabel());
 	}
 
+	private void serviceLost(RTCNode rtcN, long t) {
+		if (rtcN.nodeLostService(t)) {
+			for (String catLabel : rtcN.getCategories()) {
+				m_downTimes.get(catLabel).outageAdded(rtcN, t, -1);
+			}
+		}
+	}
+
+	private void serviceRegained(RTCNode rtcN, long t) {
+		RTCNodeSvcTime svcTime = rtcN.nodeRegainedService(t);
+		if (svcTime != null && svcTime.getRegainedTime() != -1) {
+			for (String catLabel : rtcN.getCategories()) {
+				m_downTimes.get(catLabel).outageClosed(rtcN, svcTime.getLostTime(), svcTime.getRegainedTime());
+			}
+		}
+	}
+
+	/**
+	 * Replace the published snapshot of a node with its current services.
+	 */
+	private void publish(long nodeid) {
+		List<RTCNode> rtcNodes = m_map.getRTCNodes(nodeid);
+		if (rtcNodes.isEmpty()) {
+			m_snapshots.remove(nodeid);
+		} else {
+			m_snapshots.put(nodeid, new RTCNodeSnapshot(rtcNodes));
+		}
+	}
+
     /**
      * Creates the categories map. Reads the categories from the categories.xml
      * and creates the 'RTCCategory's map
@@ -262,6 +327,7 @@ public class DataManager extends Object {
         }
 
         m_categories = new HashMap<String, RTCCategory>();
+        m_downTimes = new HashMap<String, RTCCategoryDownTime>();
 
         cFactory.getReadLock().lock();
         try {
@@ -270,6 +336,7 @@ public class DataManager extends Object {
     
                 for (final org.opennms.netmgt.config.categories.Category cat : cg.getCategories().getCategoryCollection()) {
                     m_categories.put(new RTCCategory(cat, commonRule).getLabel(), new RTCCategory(cat, commonRule));
+                    m_downTimes.put(cat.getLabel(), new RTCCategoryDownTime(RTCManager.getRollingWindow()));
                 }
             }
         } finally {
@@ -328,13 +395,16 @@ public class DataManager extends Object {
 		long window = (new Date()).getTime() - RTCManager.getRollingWindow();
 		Timestamp windowTS = new Timestamp(window);
 
-    	RowCallbackHandler rowHandler = new RTCNodeProcessor();
+    	RTCNodeProcessor rowHandler = new RTCNodeProcessor();
 
     	Object[] sqlArgs = createArgs(windowTS, windowTS, args);
     	
     	JdbcTemplate template = new JdbcTemplate(getConnectionFactory());
     	template.query(getOutagesInWindow, sqlArgs, rowHandler);
-    	
+
+    	for (Long nodeid : rowHandler.getNodeIds()) {
+    		publish(nodeid);
+    	}
     }
 
 	private Object[] createArgs(Object arg1, Object arg2, Object[] remaining) {
@@ -501,8 +571,8 @@ public class DataManager extends Object {
         }
 
         // inform node
-        rtcN.nodeLostService(t);
-
+        serviceLost(rtcN, t);
+        publish(nodeid);
     }
 
     /**
@@ -517,8 +587,9 @@ public class DataManager extends Object {
      */
     public synchronized void interfaceDown(long nodeid, InetAddress ip, long t) {
         for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeLostService(t);
+            serviceLost(rtcN, t);
         }
+        publish(nodeid);
     }
 
     /**
@@ -531,8 +602,9 @@ public class DataManager extends Object {
      */
     public synchronized void nodeDown(long nodeid, long t) {
     	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeLostService(t);
+            serviceLost(rtcN, t);
         }
+        publish(nodeid);
     }
 
     /**
@@ -545,8 +617,9 @@ public class DataManager extends Object {
      */
     public synchronized void nodeUp(long nodeid, long t) {
     	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeRegainedService(t);
+            serviceRegained(rtcN, t);
         }
+        publish(nodeid);
     }
 
     /**
@@ -561,8 +634,9 @@ public class DataManager extends Object {
      */
     public synchronized void interfaceUp(long nodeid, InetAddress ip, long t) {
         for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeRegainedService(t);
+            serviceRegained(rtcN, t);
         }
+        publish(nodeid);
     }
 
     /**
@@ -587,7 +661,8 @@ public class DataManager extends Object {
         }
 
         // inform node
-        rtcN.nodeRegainedService(t);
+        serviceRegained(rtcN, t);
+        publish(nodeid);
     }
 
     /**
@@ -621,6 +696,8 @@ public class DataManager extends Object {
         while (catIter.hasNext()) {
             String catlabel = (String) catIter.next();
 
+            m_downTimes.get(catlabel).removeService(rtcN);
+
             RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
 
             // get nodes in this category
@@ -644,7 +721,7 @@ public class DataManager extends Object {
         // finally remove from map
         
         m_map.delete(rtcN);
-
+        publish(nodeid);
     }
     
     /**
@@ -711,10 +788,16 @@ public class DataManager extends Object {
 			cat.deleteNode(nodeid);
 		}
     	
+    	for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+    		for (String catLabel : rtcN.getCategories()) {
+    			m_downTimes.get(catLabel).removeService(rtcN);
+    		}
+    	}
+
     	m_map.deleteNode(nodeid);
     	
     	populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
-    	
+    	publish(nodeid);
     }
 
     /**
@@ -765,6 +848,8 @@ public class DataManager extends Object {
             }
 
         }
+        publish(oldNodeId);
+        publish(newNodeId);
     }
 
     /**
@@ -780,8 +865,16 @@ public class DataManager extends Object {
      * @return the value(uptime) for the category in the last 'rollingWindow'
      *         starting at current time
      */
-    public synchronized double getValue(String catLabel, long curTime, long rollingWindow) {
-        return m_map.getValue(catLabel, curTime, rollingWindow);
+    public double getValue(String catLabel, long curTime, long rollingWindow) {
+        RTCCategoryDownTime downTime = m_downTimes.get(catLabel);
+        if (downTime != null && downTime.getRollingWindow() == rollingWindow) {
+            return downTime.getValue(curTime);
+        }
+
+        // not a window we keep a running total for, so walk the nodes
+        synchronized (this) {
+            return m_map.getValue(catLabel, curTime, rollingWindow);
+        }
     }
 
     /**
@@ -799,8 +892,9 @@ public class DataManager extends Object {
      * @return the value(uptime) for the node in the last 'rollingWindow'
      *         starting at current time in the context of the passed category
      */
-    public synchronized double getValue(long nodeid, String catLabel, long curTime, long rollingWindow) {
-        return m_map.getValue(nodeid, catLabel, curTime, rollingWindow);
+    public double getValue(long nodeid, String catLabel, long curTime, long rollingWindow) {
+        RTCNodeSnapshot snapshot = m_snapshots.get(nodeid);
+        return snapshot == null ? 100.0 : snapshot.getValue(catLabel, curTime, rollingWindow);
     }
 
     /**
@@ -814,8 +908,9 @@ public class DataManager extends Object {
      * @return the service count for the nodeid in the context of the passed
      *         category
      */
-    public synchronized int getServiceCount(long nodeid, String catLabel) {
-        return m_map.getServiceCount(nodeid, catLabel);
+    public int getServiceCount(long nodeid, String catLabel) {
+        RTCNodeSnapshot snapshot = m_snapshots.get(nodeid);
+        return snapshot == null ? 0 : snapshot.getServiceCount(catLabel);
     }
 
     /**
@@ -829,8 +924,9 @@ public class DataManager extends Object {
      * @return the service down count for the nodeid in the context of the
      *         passed category
      */
-    public synchronized int getServiceDownCount(long nodeid, String catLabel) {
-        return m_map.getServiceDownCount(nodeid, catLabel);
+    public int getServiceDownCount(long nodeid, String catLabel) {
+        RTCNodeSnapshot snapshot = m_snapshots.get(nodeid);
+        return snapshot == null ? 0 : snapshot.getServiceDownCount(catLabel);
     }
 
     /**
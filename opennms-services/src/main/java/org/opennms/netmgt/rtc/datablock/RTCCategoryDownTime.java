@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Running total of the down time of all of the services in a category over
+ * the rolling window, so that the category value does not have to be
+ * recomputed from every service's outages.
+ *
+ * <p>The down time of closed outages is kept in a ring of time buckets that
+ * together span the rolling window; buckets that fall out of the window are
+ * simply overwritten. Open outages are kept by service until they are
+ * closed. Each outage transition is O(1) and reading the value costs one
+ * pass over the ring. The part of the oldest bucket that lies before the
+ * start of the window is prorated, so the value is exact to within one
+ * bucket (1/1440 of the window).</p>
+ *
+ * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
+ */
+public class RTCCategoryDownTime {
+    private static final int BUCKET_COUNT = 1440;
+
+    private final long m_rollingWindow;
+
+    private final long m_bucketSize;
+
+    /**
+     * The bucket number each slot currently holds, -1 if unused. One slot
+     * more than the window needs so that the bucket holding the start of
+     * the window is still available.
+     */
+    private final long[] m_bucketNumbers = new long[BUCKET_COUNT + 1];
+
+    /**
+     * The down time of closed outages within the bucket held by each slot.
+     */
+    private final long[] m_bucketDownTimes = new long[BUCKET_COUNT + 1];
+
+    /**
+     * The lost time of each service in the category that is currently down.
+     */
+    private final Map<RTCNode, Long> m_openOutages = new IdentityHashMap<RTCNode, Long>();
+
+    private int m_serviceCount;
+
+    /**
+     * <p>Constructor for RTCCategoryDownTime.</p>
+     *
+     * @param rollingWindow
+     *            the rolling window in milliseconds
+     */
+    public RTCCategoryDownTime(long rollingWindow) {
+        m_rollingWindow = rollingWindow;
+        m_bucketSize = Math.max(1, (rollingWindow + BUCKET_COUNT - 1) / BUCKET_COUNT);
+        Arrays.fill(m_bucketNumbers, -1);
+    }
+
+    /**
+     * <p>getRollingWindow</p>
+     *
+     * @return the rolling window in milliseconds
+     */
+    public long getRollingWindow() {
+        return m_rollingWindow;
+    }
+
+    /**
+     * Add a service to the category, along with the outages it already has.
+     *
+     * @param rtcN
+     *            the service
+     */
+    public synchronized void addService(RTCNode rtcN) {
+        m_serviceCount++;
+        for (RTCNodeSvcTime svcTime : rtcN.getServiceTimes()) {
+            addOutage(rtcN, svcTime.getLostTime(), svcTime.getRegainedTime(), 1);
+        }
+    }
+
+    /**
+     * Remove a service and its outages from the category.
+     *
+     * @param rtcN
+     *            the service
+     */
+    public synchronized void removeService(RTCNode rtcN) {
+        m_serviceCount--;
+        for (RTCNodeSvcTime svcTime : rtcN.getServiceTimes()) {
+            addOutage(rtcN, svcTime.getLostTime(), svcTime.getRegainedTime(), -1);
+        }
+    }
+
+    /**
+     * Add an outage of a service in the category.
+     *
+     * @param rtcN
+     *            the service
+     * @param lostTime
+     *            time at which service was lost
+     * @param regainedTime
+     *            time at which service was regained, -1 if it is still down
+     */
+    public synchronized void outageAdded(RTCNode rtcN, long lostTime, long regainedTime) {
+        addOutage(rtcN, lostTime, regainedTime, 1);
+    }
+
+    /**
+     * Close the open outage of a service in the category.
+     *
+     * @param rtcN
+     *            the service
+     * @param lostTime
+     *            time at which service was lost
+     * @param regainedTime
+     *            time at which service was regained
+     */
+    public synchronized void outageClosed(RTCNode rtcN, long lostTime, long regainedTime) {
+        m_openOutages.remove(rtcN);
+        addClosedOutage(lostTime, regainedTime, 1);
+    }
+
+    private void addOutage(RTCNode rtcN, long lostTime, long regainedTime, int sign) {
+        if (lostTime < 0) {
+            return;
+        }
+        if (regainedTime <= 0) {
+            if (sign > 0) {
+                m_openOutages.put(rtcN, lostTime);
+            } else {
+                m_openOutages.remove(rtcN);
+            }
+        } else {
+            addClosedOutage(lostTime, regainedTime, sign);
+        }
+    }
+
+    private void addClosedOutage(long lostTime, long regainedTime, int sign) {
+        if (regainedTime <= lostTime) {
+            return;
+        }
+
+        long last = (regainedTime - 1) / m_bucketSize;
+        // anything older than a full ring before the end can never be read
+        long first = Math.max(lostTime / m_bucketSize, last - m_bucketNumbers.length + 1);
+
+        for (long bucket = first; bucket <= last; bucket++) {
+            int slot = (int) (bucket % m_bucketNumbers.length);
+            if (m_bucketNumbers[slot] != bucket) {
+                if (m_bucketNumbers[slot] > bucket) {
+                    // the slot has moved on, so this part has expired
+                    continue;
+                }
+                m_bucketNumbers[slot] = bucket;
+                m_bucketDownTimes[slot] = 0;
+            }
+            long start = Math.max(lostTime, bucket * m_bucketSize);
+            long end = Math.min(regainedTime, (bucket + 1) * m_bucketSize);
+            m_bucketDownTimes[slot] += sign * (end - start);
+        }
+    }
+
+    /**
+     * <p>getServiceCount</p>
+     *
+     * @return the number of services in the category
+     */
+    public synchronized int getServiceCount() {
+        return m_serviceCount;
+    }
+
+    /**
+     * Get the total down time of the services in the category in the
+     * rolling window that ends at <code>curTime</code>.
+     *
+     * @param curTime
+     *            the current time
+     * @return the down time in milliseconds
+     */
+    public synchronized double getDownTime(long curTime) {
+        long startTime = curTime - m_rollingWindow;
+        long first = startTime / m_bucketSize;
+        long last = curTime / m_bucketSize;
+
+        double downTime = 0;
+        for (long bucket = first; bucket <= last; bucket++) {
+            int slot = (int) (bucket % m_bucketNumbers.length);
+            if (m_bucketNumbers[slot] != bucket) {
+                continue;
+            }
+            long bucketStart = bucket * m_bucketSize;
+            if (bucketStart < startTime) {
+                downTime += m_bucketDownTimes[slot] * (double) (bucketStart + m_bucketSize - startTime) / m_bucketSize;
+            } else {
+                downTime += m_bucketDownTimes[slot];
+            }
+        }
+
+        for (long lostTime : m_openOutages.values()) {
+            if (lostTime < curTime) {
+                downTime += curTime - Math.max(lostTime, startTime);
+            }
+        }
+
+        return downTime;
+    }
+
+    /**
+     * Get the availability of the category in the rolling window that ends
+     * at <code>curTime</code>.
+     *
+     * @param curTime
+     *            the current time
+     * @return the percentage of time the services in the category were up,
+     *         100 if there are none
+     */
+    public synchronized double getValue(long curTime) {
+        if (m_serviceCount <= 0) {
+            return 100.0;
+        }
+        return 100 * (1 - (getDownTime(curTime) / (m_rollingWindow * 1.0 * m_serviceCount)));
+    }
+}
@@ -185,8 +185,10 @@ public class RTCNode {
      *
      * @param t
      *            the time at which service was lost
+     * @return true if a new outage was started, false if the service was
+     *         already down
      */
-    public synchronized void nodeLostService(long t) {
+    public synchronized boolean nodeLostService(long t) {
         // check if the last element in the times list is 'open'
         // i.e. is waiting for a regained service - if yes,
         // don't add anything
@@ -198,13 +200,14 @@ public class RTCNode {
             if (stime.getRegainedTime() == -1) {
                 // last event was a 'lostService'
                 // ignore this event
-                return;
+                return false;
             }
         }
 
         // create a new entry
         RTCNodeSvcTime newStime = new RTCNodeSvcTime(t);
         m_svcTimesList.add(newStime);
+        return true;
     }
 
     /**
@@ -214,8 +217,10 @@ public class RTCNode {
      *
      * @param t
      *            the time at which node regained service
+     * @return the outage that was closed, or null if the service was not
+     *         down
      */
-    public synchronized void nodeRegainedService(long t) {
+    public synchronized RTCNodeSvcTime nodeRegainedService(long t) {
         int listsize = m_svcTimesList.size();
         if (listsize > 0) {
             RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
@@ -223,11 +228,13 @@ public class RTCNode {
             if (stime.getRegainedTime() != -1) {
                 // last event was a 'regainedService'
                 // ignore this event
-                return;
+                return null;
             }
 
             stime.setRegainedTime(t);
+            return stime;
         }
+        return null;
     }
 
     /**
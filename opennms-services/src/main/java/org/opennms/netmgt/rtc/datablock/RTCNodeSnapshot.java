@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable copy of the services of a node, their categories and their
+ * outages. The data manager publishes a new snapshot whenever one of the
+ * node's services changes, so readers never have to lock the live data.
+ *
+ * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
+ */
+public class RTCNodeSnapshot {
+    private static final class Service {
+        private final List<String> m_categories;
+        private final List<RTCNodeSvcTime> m_svcTimes;
+        private final boolean m_down;
+
+        private Service(RTCNode rtcN) {
+            m_categories = new ArrayList<String>(rtcN.getCategories());
+            m_svcTimes = new ArrayList<RTCNodeSvcTime>(rtcN.getServiceTimes().size());
+            for (RTCNodeSvcTime svcTime : rtcN.getServiceTimes()) {
+                m_svcTimes.add(new RTCNodeSvcTime(svcTime.getLostTime(), svcTime.getRegainedTime()));
+            }
+            m_down = rtcN.isServiceCurrentlyDown();
+        }
+
+        private long getDownTime(long curTime, long rollingWindow) {
+            long downTime = 0;
+            for (RTCNodeSvcTime svcTime : m_svcTimes) {
+                downTime += svcTime.getDownTime(curTime, rollingWindow);
+            }
+            return downTime;
+        }
+    }
+
+    private final List<Service> m_services;
+
+    /**
+     * <p>Constructor for RTCNodeSnapshot.</p>
+     *
+     * @param rtcNodes
+     *            the services of the node
+     */
+    public RTCNodeSnapshot(Collection<RTCNode> rtcNodes) {
+        m_services = new ArrayList<Service>(rtcNodes.size());
+        for (RTCNode rtcN : rtcNodes) {
+            m_services.add(new Service(rtcN));
+        }
+    }
+
+    /**
+     * Get the availability of the node's services in a category.
+     *
+     * @param catLabel
+     *            the category label
+     * @param curTime
+     *            the current time
+     * @param rollingWindow
+     *            the rolling window
+     * @return the percentage of time the node's services in the category
+     *         were up, 100 if it has none
+     */
+    public double getValue(String catLabel, long curTime, long rollingWindow) {
+        long outageTime = 0;
+        int count = 0;
+        for (Service service : m_services) {
+            if (service.m_categories.contains(catLabel)) {
+                outageTime += service.getDownTime(curTime, rollingWindow);
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return 100.0;
+        }
+        return 100 * (1 - (outageTime * 1.0 / (rollingWindow * 1.0 * count)));
+    }
+
+    /**
+     * Get the number of the node's services in a category.
+     *
+     * @param catLabel
+     *            the category label
+     * @return the service count
+     */
+    public int getServiceCount(String catLabel) {
+        int count = 0;
+        for (Service service : m_services) {
+            if (service.m_categories.contains(catLabel)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of the node's services in a category that are
+     * currently down.
+     *
+     * @param catLabel
+     *            the category label
+     * @return the service down count
+     */
+    public int getServiceDownCount(String catLabel) {
+        int count = 0;
+        for (Service service : m_services) {
+            if (service.m_down && service.m_categories.contains(catLabel)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -28,8 +28,9 @@
 
 package org.opennms.netmgt.rtc.utils;
 
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.List;
 
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.EventConstants;
@@ -100,34 +101,37 @@ public class EuiLevelMapper extends Object {
 
         // get a handle to data
         DataManager rtcDataMgr = RTCManager.getDataManager();
-        synchronized (rtcDataMgr) {
-            // category label
-            levelCat.setCatlabel(rtcCat.getLabel());
+        // the values come from running totals and published snapshots, so
+        // the data manager lock is not held while the level is built; only
+        // the node list of the category needs to be copied under its lock
+        List<Long> nodeIds;
+        synchronized (rtcCat.getNodes()) {
+            nodeIds = new ArrayList<Long>(rtcCat.getNodes());
+        }
 
-            // value for this category
-            levelCat.setCatvalue(rtcDataMgr.getValue(rtcCat.getLabel(), curTime, rWindow));
+        // category label
+        levelCat.setCatlabel(rtcCat.getLabel());
 
-            // nodes in this category
-            Iterator<Long> nodeIter = rtcCat.getNodes().iterator();
-            while (nodeIter.hasNext()) {
-                Long rtcNodeid = nodeIter.next();
-                long nodeID = rtcNodeid.longValue();
+        // value for this category
+        levelCat.setCatvalue(rtcDataMgr.getValue(rtcCat.getLabel(), curTime, rWindow));
 
-                Node levelNode = new Node();
-                levelNode.setNodeid(nodeID);
+        // nodes in this category
+        for (Long rtcNodeid : nodeIds) {
+            long nodeID = rtcNodeid.longValue();
 
-                // value for this node for this category
-                levelNode.setNodevalue(rtcDataMgr.getValue(nodeID, rtcCat.getLabel(), curTime, rWindow));
+            Node levelNode = new Node();
+            levelNode.setNodeid(nodeID);
 
-                // node service count
-                levelNode.setNodesvccount(rtcDataMgr.getServiceCount(nodeID, rtcCat.getLabel()));
+            // value for this node for this category
+            levelNode.setNodevalue(rtcDataMgr.getValue(nodeID, rtcCat.getLabel(), curTime, rWindow));
 
-                // node service down count
-                levelNode.setNodesvcdowncount(rtcDataMgr.getServiceDownCount(nodeID, rtcCat.getLabel()));
-                // add the node
-                levelCat.addNode(levelNode);
-            }
+            // node service count
+            levelNode.setNodesvccount(rtcDataMgr.getServiceCount(nodeID, rtcCat.getLabel()));
 
+            // node service down count
+            levelNode.setNodesvcdowncount(rtcDataMgr.getServiceDownCount(nodeID, rtcCat.getLabel()));
+            // add the node
+            levelCat.addNode(levelNode);
         }
 
         // add category
@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.opennms.core.utils.ThreadCategory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Scheduler} backed by a hashed timing wheel.
+ *
+ * <p>Scheduling a runnable only appends it to a lock-free hand-off queue, so
+ * callers never block each other or the dispatcher. A single worker thread
+ * wakes up at the end of every tick, moves newly scheduled runnables into
+ * their wheel buckets and expires the current bucket, handing everything
+ * that is due and ready to the thread pool. Both operations are O(1) per
+ * runnable, and a runnable fires at most one tick after its deadline.</p>
+ *
+ * <p>A runnable that is due but not {@link ReadyRunnable#isReady() ready} is
+ * checked again after <code>org.opennms.netmgt.scheduler.notReadyDelay</code>
+ * milliseconds (default 1000) without holding up anything scheduled behind
+ * it. The tick length and the number of buckets can be changed with
+ * <code>org.opennms.netmgt.scheduler.tickDuration</code> (milliseconds,
+ * default 10) and <code>org.opennms.netmgt.scheduler.wheelSize</code>
+ * (default 4096).</p>
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final long DEFAULT_TICK_DURATION = Long.getLong("org.opennms.netmgt.scheduler.tickDuration", 10L);
+
+    private static final int DEFAULT_WHEEL_SIZE = Integer.getInteger("org.opennms.netmgt.scheduler.wheelSize", 4096);
+
+    private static final long DEFAULT_NOT_READY_DELAY = Long.getLong("org.opennms.netmgt.scheduler.notReadyDelay", 1000L);
+
+    /**
+     * A scheduled runnable. The bucket links and round count are only ever
+     * touched by the worker thread.
+     */
+    private static final class Entry {
+        private final ReadyRunnable m_runnable;
+        private final long m_deadline;
+        private long m_remainingRounds;
+        private Entry m_next;
+
+        private Entry(ReadyRunnable runnable, long deadline) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+        }
+    }
+
+    private final String m_name;
+
+    private final long m_tickDuration;
+
+    private final long m_notReadyDelay;
+
+    private final Entry[] m_wheel;
+
+    private final int m_mask;
+
+    /**
+     * The wheel's time origin, from {@link System#nanoTime()}. Deadlines are
+     * kept in nanoseconds relative to it.
+     */
+    private final long m_origin;
+
+    /**
+     * Runnables that have been scheduled but not yet placed on the wheel.
+     */
+    private final Queue<Entry> m_pending = new ConcurrentLinkedQueue<Entry>();
+
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+
+    private final ExecutorService m_runner;
+
+    private long m_tick;
+
+    private volatile int m_status;
+
+    private Thread m_worker;
+
+    /**
+     * Constructs a new instance of the scheduler using the default tick
+     * duration and wheel size.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(String parent, int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickDuration
+     *            The length of a tick in milliseconds.
+     * @param wheelSize
+     *            The number of buckets on the wheel, rounded up to a power
+     *            of two.
+     */
+    public TimingWheelScheduler(String parent, int maxSize, long tickDuration, int wheelSize) {
+        Assert.isTrue(tickDuration > 0, "tickDuration must be positive");
+        Assert.isTrue(wheelSize > 0 && wheelSize <= (1 << 30), "wheelSize must be between 1 and 2^30");
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+
+        m_name = parent + "Scheduler";
+        m_tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        m_notReadyDelay = DEFAULT_NOT_READY_DELAY;
+        m_wheel = new Entry[size];
+        m_mask = size - 1;
+        m_origin = System.nanoTime();
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(
+            maxSize,
+            new LogPreservingThreadFactory(getClass().getSimpleName(), maxSize, false)
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The runnable is run once <code>interval</code> milliseconds have
+     * elapsed and it reports that it is ready.
+     */
+    public void schedule(long interval, ReadyRunnable runnable) {
+        if (log().isDebugEnabled()) {
+            log().debug("schedule: Adding ready runnable "+runnable+" at interval " + interval);
+        }
+        enqueue(runnable, Math.max(0, interval));
+    }
+
+    /**
+     * Schedules a runnable the way {@link LegacyScheduler#schedule(ReadyRunnable, long)}
+     * does: it is run as soon as it reports that it is ready. The interval is
+     * only used as a hint for when to check first.
+     *
+     * @param runnable
+     *            The element to run when interval expires.
+     * @param interval
+     *            The interval after which to check the runnable.
+     */
+    public void schedule(ReadyRunnable runnable, long interval) {
+        schedule(interval, runnable);
+    }
+
+    private void enqueue(ReadyRunnable runnable, long delay) {
+        long deadline = System.nanoTime() - m_origin + TimeUnit.MILLISECONDS.toNanos(delay);
+        m_pending.offer(new Entry(runnable, deadline));
+        m_scheduled.incrementAndGet();
+    }
+
+    /**
+     * <p>getCurrentTime</p>
+     *
+     * @return a long.
+     */
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>start</p>
+     */
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        log().info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        log().info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * Returns total number of elements currently scheduled.
+     *
+     * @return the number of runnables waiting to be run
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /**
+     * The main method of the scheduler. Each pass sleeps until the end of
+     * the current tick, places newly scheduled runnables on the wheel and
+     * dispatches the expired ones from the current bucket.
+     */
+    public void run() {
+        synchronized (this) {
+            // a pause may already have been requested
+            if (m_status == STARTING) {
+                m_status = RUNNING;
+            }
+            // don't replay the ticks that passed before we were started
+            m_tick = (System.nanoTime() - m_origin) / m_tickDuration;
+        }
+
+        log().debug("run: scheduler running");
+
+        for (;;) {
+            // sleep until the end of the current tick; ticks missed while
+            // paused or busy are caught up on without sleeping
+            long now = System.nanoTime() - m_origin;
+            long tickEnd = (m_tick + 1) * m_tickDuration;
+            if (tickEnd > now) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(tickEnd - now);
+                } catch (InterruptedException e) {
+                    // check the status below
+                }
+            }
+
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    if (log().isDebugEnabled()) {
+                        log().debug("run: status = " + m_status + ", time to exit");
+                    }
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    if (m_status == PAUSE_PENDING) {
+                        log().debug("run: pausing.");
+                    }
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                if (m_status == RESUME_PENDING) {
+                    log().debug("run: resuming.");
+                    m_status = RUNNING;
+                }
+
+                if (m_status != RUNNING) {
+                    continue;
+                }
+            }
+
+            transferPending();
+            expire(m_tick & m_mask);
+            m_tick++;
+        }
+
+        log().debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /**
+     * Move newly scheduled runnables into the bucket for the tick in which
+     * they expire.
+     */
+    private void transferPending() {
+        Entry entry;
+        while ((entry = m_pending.poll()) != null) {
+            long expiryTick = entry.m_deadline / m_tickDuration;
+            entry.m_remainingRounds = (expiryTick - m_tick) / m_wheel.length;
+
+            // anything already overdue goes in the current bucket
+            int bucket = (int) (Math.max(expiryTick, m_tick) & m_mask);
+            entry.m_next = m_wheel[bucket];
+            m_wheel[bucket] = entry;
+        }
+    }
+
+    /**
+     * Dispatch the entries of a bucket that are due in this round and count
+     * down the rest.
+     */
+    private void expire(long bucket) {
+        int index = (int) bucket;
+        Entry previous = null;
+        Entry entry = m_wheel[index];
+        while (entry != null) {
+            Entry next = entry.m_next;
+            if (entry.m_remainingRounds <= 0) {
+                if (previous == null) {
+                    m_wheel[index] = next;
+                } else {
+                    previous.m_next = next;
+                }
+                entry.m_next = null;
+                dispatch(entry);
+            } else {
+                entry.m_remainingRounds--;
+                previous = entry;
+            }
+            entry = next;
+        }
+    }
+
+    private void dispatch(Entry entry) {
+        m_scheduled.decrementAndGet();
+        ReadyRunnable runnable = entry.m_runnable;
+        try {
+            if (!runnable.isReady()) {
+                enqueue(runnable, m_notReadyDelay);
+                return;
+            }
+            if (log().isDebugEnabled()) {
+                log().debug("run: found ready runnable "+runnable);
+            }
+            m_runner.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            log().warn("run: unable to run " + runnable + ", the thread pool has been shut down");
+        } catch (Throwable t) {
+            log().error("run: unexpected error checking " + runnable + ": " + t, t);
+        }
+    }
+
+    private ThreadCategory log() {
+        return ThreadCategory.getInstance(getClass());
+    }
+}
@@ -36,9 +36,9 @@ import org.opennms.netmgt.dao.ResourceDao;
 import org.opennms.netmgt.dao.RrdDao;
 import org.opennms.netmgt.dao.support.AttributeMatchingResourceVisitor;
 import org.opennms.netmgt.dao.support.FilterResourceWalker;
+import org.opennms.netmgt.dao.support.ParallelRrdStatisticAttributeVisitor;
 import org.opennms.netmgt.dao.support.ResourceAttributeFilteringResourceVisitor;
 import org.opennms.netmgt.dao.support.ResourceTypeFilteringResourceVisitor;
-import org.opennms.netmgt.dao.support.RrdStatisticAttributeVisitor;
 import org.opennms.netmgt.filter.FilterDao;
 import org.opennms.netmgt.model.AttributeStatistic;
 import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
@@ -52,7 +52,7 @@ import org.springframework.beans.factory.InitializingBean;
  */
 public class FilteredReportInstance extends AbstractReportInstance implements ReportInstance, InitializingBean {
     private final AttributeStatisticVisitorWithResults m_attributeStatisticVisitor;
-    private final RrdStatisticAttributeVisitor m_rrdVisitor = new RrdStatisticAttributeVisitor();
+    private final ParallelRrdStatisticAttributeVisitor m_rrdVisitor = new ParallelRrdStatisticAttributeVisitor();
     private final AttributeMatchingResourceVisitor m_attributeVisitor = new AttributeMatchingResourceVisitor();
     private final ResourceTypeFilteringResourceVisitor m_resourceTypeVisitor = new ResourceTypeFilteringResourceVisitor();
     private final FilterResourceWalker m_walker = new FilterResourceWalker();
@@ -120,7 +120,13 @@ public class FilteredReportInstance extends AbstractReportInstance implements Re
     @Override
     public void walk() {
         setJobStartedDate(new Date());
-        m_walker.walk();
+        m_rrdVisitor.start();
+        try {
+            m_walker.walk();
+            m_rrdVisitor.finish();
+        } finally {
+            m_rrdVisitor.cancel();
+        }
         setJobCompletedDate(new Date());
     }
 
@@ -34,10 +34,10 @@ import java.util.SortedSet;
 import org.opennms.netmgt.dao.ResourceDao;
 import org.opennms.netmgt.dao.RrdDao;
 import org.opennms.netmgt.dao.support.AttributeMatchingResourceVisitor;
+import org.opennms.netmgt.dao.support.ParallelRrdStatisticAttributeVisitor;
 import org.opennms.netmgt.dao.support.ResourceAttributeFilteringResourceVisitor;
 import org.opennms.netmgt.dao.support.ResourceTreeWalker;
 import org.opennms.netmgt.dao.support.ResourceTypeFilteringResourceVisitor;
-import org.opennms.netmgt.dao.support.RrdStatisticAttributeVisitor;
 import org.opennms.netmgt.model.AttributeStatistic;
 import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
 import org.springframework.beans.factory.InitializingBean;
@@ -50,7 +50,7 @@ import org.springframework.beans.factory.InitializingBean;
  */
 public class UnfilteredReportInstance extends AbstractReportInstance implements ReportInstance, InitializingBean {
     private final AttributeStatisticVisitorWithResults m_attributeStatisticVisitor;
-    private final RrdStatisticAttributeVisitor m_rrdVisitor = new RrdStatisticAttributeVisitor();
+    private final ParallelRrdStatisticAttributeVisitor m_rrdVisitor = new ParallelRrdStatisticAttributeVisitor();
     private final AttributeMatchingResourceVisitor m_attributeVisitor = new AttributeMatchingResourceVisitor();
     private final ResourceTypeFilteringResourceVisitor m_resourceTypeVisitor = new ResourceTypeFilteringResourceVisitor();
     private final ResourceTreeWalker m_walker = new ResourceTreeWalker();
@@ -90,7 +90,13 @@ public class UnfilteredReportInstance extends AbstractReportInstance implements
      */
     public void walk() {
         setJobStartedDate(new Date());
-        m_walker.walk();
+        m_rrdVisitor.start();
+        try {
+            m_walker.walk();
+            m_rrdVisitor.finish();
+        } finally {
+            m_rrdVisitor.cancel();
+        }
         setJobCompletedDate(new Date());
     }
 
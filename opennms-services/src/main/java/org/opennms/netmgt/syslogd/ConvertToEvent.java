@@ -36,8 +36,6 @@ import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -48,10 +46,7 @@ import org.opennms.core.utils.LogUtils;
 import org.opennms.netmgt.config.SyslogdConfigFactory;
 import org.opennms.netmgt.config.syslogd.HideMatch;
 import org.opennms.netmgt.config.syslogd.HideMessage;
-import org.opennms.netmgt.config.syslogd.HostaddrMatch;
-import org.opennms.netmgt.config.syslogd.HostnameMatch;
 import org.opennms.netmgt.config.syslogd.ParameterAssignment;
-import org.opennms.netmgt.config.syslogd.ProcessMatch;
 import org.opennms.netmgt.config.syslogd.UeiList;
 import org.opennms.netmgt.config.syslogd.UeiMatch;
 import org.opennms.netmgt.model.events.EventBuilder;
@@ -97,7 +92,21 @@ final class ConvertToEvent {
 
     private static Class<? extends SyslogParser> m_parserClass = null;
 
-    private static Map<String,Pattern> m_patterns = new ConcurrentHashMap<String,Pattern>();
+    /**
+     * The static <code>getParser(String)</code> factory method of the
+     * configured parser class, looked up once rather than per message.
+     */
+    private static volatile Method m_parserFactory = null;
+
+    private static volatile String m_localHostName = null;
+
+    /**
+     * The compiled <code>uei-list</code>; rebuilt whenever a different list
+     * (that is, a reloaded configuration) is passed in.
+     */
+    private static volatile UeiMatcher m_ueiMatcher = null;
+
+    private static volatile CompiledHideMessage m_hideMessage = null;
 
     /**
      * Private constructor to prevent the used of <em>new</em> except by the
@@ -115,7 +124,94 @@ final class ConvertToEvent {
 
     public static void invalidate() {
         m_parserClass = null;
-        m_patterns.clear();
+        m_parserFactory = null;
+        m_localHostName = null;
+        m_ueiMatcher = null;
+        m_hideMessage = null;
+    }
+
+    /**
+     * Compile the <code>uei-list</code> and <code>hide-message</code>
+     * configuration ahead of the first message.
+     *
+     * @param ueiList a {@link org.opennms.netmgt.config.syslogd.UeiList} object.
+     * @param hideMessage a {@link org.opennms.netmgt.config.syslogd.HideMessage} object.
+     */
+    static void compile(final UeiList ueiList, final HideMessage hideMessage) {
+        getUeiMatcher(ueiList);
+        getHideMessage(hideMessage);
+    }
+
+    static UeiMatcher getUeiMatcher(final UeiList ueiList) {
+        UeiMatcher matcher = m_ueiMatcher;
+        if (matcher == null || matcher.getSource() != ueiList) {
+            matcher = new UeiMatcher(ueiList);
+            m_ueiMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    /**
+     * <p>getUeiMatchHitCounts</p>
+     *
+     * @return the per-rule hit counts of the current <code>uei-list</code>
+     */
+    static String getUeiMatchHitCounts() {
+        final UeiMatcher matcher = m_ueiMatcher;
+        return matcher == null ? "" : matcher.getHitCounts();
+    }
+
+    private static CompiledHideMessage getHideMessage(final HideMessage hideMessage) {
+        CompiledHideMessage compiled = m_hideMessage;
+        if (compiled == null || compiled.m_source != hideMessage) {
+            compiled = new CompiledHideMessage(hideMessage);
+            m_hideMessage = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Resolve the parser class from the configuration and look up its
+     * <code>getParser(String)</code> factory method.
+     */
+    private static Method getParserFactory() {
+        Method factory = m_parserFactory;
+        if (factory == null) {
+            if (m_parserClass == null) {
+                final String parser = SyslogdConfigFactory.getInstance().getParser();
+                try {
+                    m_parserClass = Class.forName(parser).asSubclass(SyslogParser.class);
+                } catch (final Exception ex) {
+                    LogUtils.debugf(ConvertToEvent.class, ex, "Unable to instantiate Syslog parser class specified in config: %s", parser);
+                    m_parserClass = CustomSyslogParser.class;
+                }
+            }
+            try {
+                factory = m_parserClass.getDeclaredMethod("getParser", String.class);
+            } catch (final NoSuchMethodException ex) {
+                LogUtils.warnf(ConvertToEvent.class, ex, "Syslog parser class '%s' has no getParser(String) method, using %s", m_parserClass.getName(), CustomSyslogParser.class.getName());
+                m_parserClass = CustomSyslogParser.class;
+                try {
+                    factory = CustomSyslogParser.class.getDeclaredMethod("getParser", String.class);
+                } catch (final NoSuchMethodException e) {
+                    throw new IllegalStateException("CustomSyslogParser has no getParser(String) method", e);
+                }
+            }
+            m_parserFactory = factory;
+        }
+        return factory;
+    }
+
+    /**
+     * The local host name used as the host of syslog events; resolved once.
+     */
+    static String getLocalHostName() {
+        String hostName = m_localHostName;
+        if (hostName == null) {
+            hostName = InetAddressUtils.getLocalHostName();
+            m_localHostName = hostName;
+        }
+        return hostName;
     }
 
     /**
@@ -152,15 +248,7 @@ final class ConvertToEvent {
                                final int len, final String matchPattern, final int hostGroup, final int messageGroup,
                                final UeiList ueiList, final HideMessage hideMessage, final String discardUei)
             throws UnsupportedEncodingException, MessageDiscardedException {
-        if (m_parserClass == null) {
-            final String parser = SyslogdConfigFactory.getInstance().getParser();
-            try {
-                m_parserClass = Class.forName(parser).asSubclass(SyslogParser.class);
-            } catch (final Exception ex) {
-                LogUtils.debugf(ConvertToEvent.class, ex, "Unable to instantiate Syslog parser class specified in config: %s", parser);
-                m_parserClass = CustomSyslogParser.class;
-            }
-        }
+        final Method parserFactory = getParserFactory();
 
         String deZeroedData = new String(data, 0, len, "US-ASCII");
         if (deZeroedData.endsWith("\0")) {
@@ -173,11 +261,9 @@ final class ConvertToEvent {
 
         final SyslogParser parser;
         try {
-            Method m = m_parserClass.getDeclaredMethod("getParser", String.class);
-            Object[] args = new Object[] { e.m_eventXML };
-            parser = (SyslogParser)m.invoke(ConvertToEvent.class, args);
+            parser = (SyslogParser)parserFactory.invoke(null, e.m_eventXML);
         } catch (final Exception ex) {
-            LogUtils.debugf(ConvertToEvent.class, ex, "Unable to get parser for class '%s'", m_parserClass.getName());
+            LogUtils.debugf(ConvertToEvent.class, ex, "Unable to get parser for class '%s'", parserFactory.getDeclaringClass().getName());
             throw new MessageDiscardedException(ex);
         }
 
@@ -204,7 +290,7 @@ final class ConvertToEvent {
         bldr.setCreationTime(message.getDate());
 
         // Set event host
-        bldr.setHost(InetAddressUtils.getLocalHostName());
+        bldr.setHost(getLocalHostName());
 
         final String hostAddress = message.getHostAddress();
         if (hostAddress != null && hostAddress.length() > 0) {
@@ -237,69 +323,23 @@ final class ConvertToEvent {
         * node to match against nodeId.
          */
 
-        Pattern msgPat = null;
-        Matcher msgMat = null;
-
         // Time to verify UEI matching.
 
-        final String fullText = message.getFullText();
-        final String matchedText = message.getMatchedMessage();
-
-        final List<UeiMatch> ueiMatch = ueiList == null? null : ueiList.getUeiMatchCollection();
-        if (ueiMatch == null) {
+        if (ueiList == null) {
             LogUtils.warnf(ConvertToEvent.class, "No ueiList configured.");
         } else {
-            for (final UeiMatch uei : ueiMatch) {
-                final boolean otherStuffMatches = matchFacility(uei.getFacilityCollection(), facilityTxt) &&
-                                                  matchSeverity(uei.getSeverityCollection(), priorityTxt) &&
-                                                  matchProcess(uei.getProcessMatch(), message.getProcessName()) && 
-                                                  matchHostname(uei.getHostnameMatch(), message.getHostName()) &&
-                                                  matchHostAddr(uei.getHostaddrMatch(), message.getHostAddress());
-                
-                if (otherStuffMatches && uei.getMatch().getType().equals("substr")) {
-                    if (matchSubstring(discardUei, bldr, matchedText, uei)) {
-                        break;
-                    }
-                } else if (otherStuffMatches && (uei.getMatch().getType().startsWith("regex"))) {
-                    if (matchRegex(message, uei, bldr, discardUei)) {
-                        break;
-                    }
-                }
+            final UeiMatcher.Match match = getUeiMatcher(ueiList).match(message, facilityTxt, priorityTxt);
+            if (match != null) {
+                applyMatch(match, bldr, discardUei);
             }
         }
 
         // Time to verify if we need to hide the message
-        boolean doHide = false;
-        final List<HideMatch> hideMatch = hideMessage == null? null : hideMessage.getHideMatchCollection();
-        if (hideMatch == null) {
+        if (hideMessage == null) {
             LogUtils.warnf(ConvertToEvent.class, "No hideMessage configured.");
-        } else {
-            for (final HideMatch hide : hideMatch) {
-                if (hide.getMatch().getType().equals("substr")) {
-                    if (fullText.contains(hide.getMatch().getExpression())) {
-                        // We should hide the message based on this match
-                    	doHide = true;
-                    }            	
-                } else if (hide.getMatch().getType().equals("regex")) {
-                	try {
-                    	msgPat = Pattern.compile(hide.getMatch().getExpression(), Pattern.MULTILINE);
-                    	msgMat = msgPat.matcher(fullText);            		
-                	} catch (PatternSyntaxException pse) {
-                	    LogUtils.warnf(ConvertToEvent.class, pse, "Failed to compile regex pattern '%s'", hide.getMatch().getExpression());
-                		msgMat = null;
-                	}
-                	if ((msgMat != null) && (msgMat.find())) {
-                        // We should hide the message based on this match
-                		doHide = true;
-                	}
-                }
-                if (doHide) {
-                    LogUtils.debugf(ConvertToEvent.class, "Hiding syslog message from Event - May contain sensitive data");
-                    message.setMessage(HIDDEN_MESSAGE);
-    	            // We want to stop here, no point in checking further hideMatches
-    	            break;
-                }
-            }
+        } else if (getHideMessage(hideMessage).matches(message.getFullText())) {
+            LogUtils.debugf(ConvertToEvent.class, "Hiding syslog message from Event - May contain sensitive data");
+            message.setMessage(HIDDEN_MESSAGE);
         }
 
         // Using parms provides configurability.
@@ -323,155 +363,76 @@ final class ConvertToEvent {
         return e;
     }
 
-    private static boolean matchFind(final String expression, final String input, final String context) {
-        final Pattern pat = getPattern(expression);
-        if (pat == null) {
-            LogUtils.debugf(ConvertToEvent.class, "Unable to get pattern for expression '%s' in %s context", expression, context);
-            return false;
-        }
-        final Matcher mat = pat.matcher(input);
-        if (mat != null && mat.find()) return true;
-        return false;
-    }
-    
-    private static boolean matchHostAddr(final HostaddrMatch hostaddrMatch, final String hostAddress) {
-        if (hostaddrMatch == null) return true;
-        if (hostAddress == null) return false;
-        
-        final String expression = hostaddrMatch.getExpression();
-        
-        if (matchFind(expression, hostAddress, "hostaddr-match")) {
-            LogUtils.tracef(ConvertToEvent.class, "Successful regex hostaddr-match for input '%s' against expression '%s'", hostAddress, expression);
-            return true;
-        }
-        return false;
-    }
-    
-    private static boolean matchHostname(final HostnameMatch hostnameMatch, final String hostName) {
-        if (hostnameMatch == null) return true;
-        if (hostName == null) return false;
-        
-        final String expression = hostnameMatch.getExpression();
-        
-        if (matchFind(expression, hostName, "hostname-match")) {
-            LogUtils.tracef(ConvertToEvent.class, "Successful regex hostname-match for input '%s' against expression '%s'", hostName, expression);
-            return true;
-        }
-        return false;
-    }
-
-    private static boolean matchProcess(final ProcessMatch processMatch, final String processName) {
-        if (processMatch == null) return true;
-        if (processName == null) return false;
-
-        final String expression = processMatch.getExpression();
-
-        if (matchFind(expression, processName, "process-match")) {
-            LogUtils.tracef("Successful regex process-match for input '%s' against expression '%s'", processName, expression);
-            return true;
+    private static void applyMatch(final UeiMatcher.Match match, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+        final boolean traceEnabled = LogUtils.isTraceEnabled(ConvertToEvent.class);
+        final UeiMatch uei = match.getUeiMatch();
+        if (discardUei.equals(uei.getUei())) {
+            if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Specified UEI '%s' is same as discard-uei, discarding this message.", uei.getUei());
+            throw new MessageDiscardedException();
         }
-        return false;
-    }
 
-    private static boolean matchSeverity(List<String> severities, String priorityTxt) {
-        if (severities.size() == 0) return true;
-        for (String severity : severities) {
-            if (severity.toLowerCase().equals(priorityTxt.toLowerCase())) return true;
-        }
-        return false;
-    }
+        // We matched a UEI
+        bldr.setUei(uei.getUei());
 
-    private static boolean matchFacility(List<String> facilities, String facilityTxt) {
-        if (facilities.size() == 0) return true;
-        for (String facility : facilities) {
-            if (facility.toLowerCase().equals(facilityTxt.toLowerCase())) return true;
+        final Matcher msgMat = match.getMatcher();
+        if (msgMat == null) {
+            if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Changed the UEI of a Syslogd event, based on substring match, to : %s", uei.getUei());
+            return;
         }
-        return false;
-    }
-
-    private static Pattern getPattern(final String expression) {
-        final Pattern msgPat = m_patterns.get(expression);
-        if (msgPat == null) {
-            try {
-                final Pattern newPat = Pattern.compile(expression, Pattern.MULTILINE);
-                m_patterns.put(expression, newPat);
-                return newPat;
-            } catch(final PatternSyntaxException pse) {
-                LogUtils.warnf(ConvertToEvent.class, pse, "Failed to compile regex pattern '%s'", expression);
-        	}
+        if (msgMat.groupCount() > 0 && uei.getMatch().isDefaultParameterMapping()) {
+            if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Doing default parameter mappings for this regex match.");
+            for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
+                if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Added parm 'group%d' with value '%s' to Syslogd event based on regex match group", groupNum, msgMat.group(groupNum));
+                bldr.addParam("group"+groupNum, msgMat.group(groupNum));
+            }
         }
-        return msgPat;
-    }
-
-    private static boolean matchSubstring(final String discardUei, final EventBuilder bldr, String message, final UeiMatch uei) throws MessageDiscardedException {
-        boolean doIMatch = false;
-        boolean traceEnabled = LogUtils.isTraceEnabled(ConvertToEvent.class);
-        if (message.contains(uei.getMatch().getExpression())) {
-            if (discardUei.equals(uei.getUei())) {
-                if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Specified UEI '%s' is same as discard-uei, discarding this message.", uei.getUei());
-                throw new MessageDiscardedException();
-            } else {
-                //We can pass a new UEI on this
-        	    if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Changed the UEI of a Syslogd event, based on substring match, to : %s", uei.getUei());
-                bldr.setUei(uei.getUei());
-                // I think we want to stop processing here so the first
-                // ueiMatch wins, right?
-                doIMatch = true;
+        if (msgMat.groupCount() > 0 && uei.getParameterAssignmentCount() > 0) {
+            if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Doing user-specified parameter assignments for this regex match.");
+            for (ParameterAssignment assignment : uei.getParameterAssignmentCollection()) {
+                String parmName = assignment.getParameterName();
+                String parmValue = msgMat.group(assignment.getMatchingGroup());
+                parmValue = parmValue == null ? "" : parmValue;
+                bldr.addParam(parmName, parmValue);
+                if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Added parm '%s' with value '%s' to Syslogd event based on user-specified parameter assignment", parmName, parmValue);
             }
-        } else {
-            if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "No substring match for text of a Syslogd event to : %s", uei.getMatch().getExpression());
         }
-        return doIMatch;
     }
 
-    private static boolean matchRegex(final SyslogMessage message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
-        boolean traceEnabled = LogUtils.isTraceEnabled(ConvertToEvent.class);
-        final String expression = uei.getMatch().getExpression();
-        final Pattern msgPat = getPattern(expression);
-        final Matcher msgMat;
-        if (msgPat == null) {
-            LogUtils.debugf(ConvertToEvent.class, "Unable to create pattern for expression '%s'", expression);
-            return false;
-        } else {
-            final String text;
-            if (message.getMatchedMessage() != null) {
-                text = message.getMatchedMessage();
-            } else {
-                text = message.getFullText();
+    /**
+     * The <code>hide-message</code> configuration with its regular
+     * expressions compiled.
+     */
+    private static final class CompiledHideMessage {
+        private final HideMessage m_source;
+        private final List<String> m_substrings = new ArrayList<String>();
+        private final List<Pattern> m_patterns = new ArrayList<Pattern>();
+
+        private CompiledHideMessage(final HideMessage hideMessage) {
+            m_source = hideMessage;
+            if (hideMessage == null) return;
+            for (final HideMatch hide : hideMessage.getHideMatchCollection()) {
+                final String expression = hide.getMatch().getExpression();
+                if (hide.getMatch().getType().equals("substr")) {
+                    m_substrings.add(expression);
+                } else if (hide.getMatch().getType().equals("regex")) {
+                    try {
+                        m_patterns.add(Pattern.compile(expression, Pattern.MULTILINE));
+                    } catch (final PatternSyntaxException pse) {
+                        LogUtils.warnf(ConvertToEvent.class, pse, "Failed to compile regex pattern '%s'", expression);
+                    }
+                }
             }
-            msgMat = msgPat.matcher(text);
         }
-        if ((msgMat != null) && (msgMat.find())) {
-            if (discardUei.equals(uei.getUei())) {
-                LogUtils.debugf(ConvertToEvent.class, "Specified UEI '%s' is same as discard-uei, discarding this message.", uei.getUei());
-                throw new MessageDiscardedException();
-            }
 
-            // We matched a UEI
-            bldr.setUei(uei.getUei());
-            if (msgMat.groupCount() > 0 && uei.getMatch().isDefaultParameterMapping()) {
-                if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Doing default parameter mappings for this regex match.");
-                for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
-                    if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Added parm 'group%d' with value '%s' to Syslogd event based on regex match group", groupNum, msgMat.group(groupNum));
-                    bldr.addParam("group"+groupNum, msgMat.group(groupNum));
-                }
+        private boolean matches(final String fullText) {
+            for (final String substring : m_substrings) {
+                if (fullText.contains(substring)) return true;
             }
-            if (msgMat.groupCount() > 0 && uei.getParameterAssignmentCount() > 0) {
-                if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Doing user-specified parameter assignments for this regex match.");
-                for (ParameterAssignment assignment : uei.getParameterAssignmentCollection()) {
-                    String parmName = assignment.getParameterName();
-                    String parmValue = msgMat.group(assignment.getMatchingGroup());
-                    parmValue = parmValue == null ? "" : parmValue;
-                    bldr.addParam(parmName, parmValue);
-                    if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Added parm '%s' with value '%s' to Syslogd event based on user-specified parameter assignment", parmName, parmValue);
-                }
+            for (final Pattern pattern : m_patterns) {
+                if (pattern.matcher(fullText).find()) return true;
             }
-            // I think we want to stop processing here so the first
-            // ueiMatch wins, right?
-            return true;
+            return false;
         }
-        if (traceEnabled) LogUtils.tracef(ConvertToEvent.class, "Message '%s' did not regex-match pattern '%s'", message.getMessage(), expression);
-        return false;
     }
 
     /**
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton that finds every one of a fixed set of
+ * substrings in a single pass over the input text.
+ *
+ * <p>Instances are immutable once built and may be shared by any number of
+ * threads.</p>
+ */
+final class MultiSubstringMatcher {
+
+    /** Sorted transition characters, per state. */
+    private final char[][] m_keys;
+
+    /** Target states, parallel to <code>m_keys</code>. */
+    private final int[][] m_targets;
+
+    /** Failure links, per state. */
+    private final int[] m_fail;
+
+    /** The ids of the patterns that end in a state, including those reached through its failure links. */
+    private final int[][] m_output;
+
+    private final int m_patternCount;
+
+    /**
+     * <p>Constructor for MultiSubstringMatcher.</p>
+     *
+     * @param patterns the substrings to search for; the id of a pattern is its position in the list
+     */
+    MultiSubstringMatcher(final List<String> patterns) {
+        m_patternCount = patterns.size();
+
+        final List<Map<Character,Integer>> gotos = new ArrayList<Map<Character,Integer>>();
+        final List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+        gotos.add(new TreeMap<Character,Integer>());
+        outputs.add(new ArrayList<Integer>());
+
+        for (int id = 0; id < patterns.size(); id++) {
+            final String pattern = patterns.get(id);
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                final Character c = Character.valueOf(pattern.charAt(i));
+                Integer next = gotos.get(state).get(c);
+                if (next == null) {
+                    next = Integer.valueOf(gotos.size());
+                    gotos.add(new TreeMap<Character,Integer>());
+                    outputs.add(new ArrayList<Integer>());
+                    gotos.get(state).put(c, next);
+                }
+                state = next.intValue();
+            }
+            outputs.get(state).add(Integer.valueOf(id));
+        }
+
+        final int states = gotos.size();
+        m_keys = new char[states][];
+        m_targets = new int[states][];
+        m_fail = new int[states];
+        m_output = new int[states][];
+
+        for (int s = 0; s < states; s++) {
+            final Map<Character,Integer> transitions = gotos.get(s);
+            m_keys[s] = new char[transitions.size()];
+            m_targets[s] = new int[transitions.size()];
+            int i = 0;
+            for (final Map.Entry<Character,Integer> entry : transitions.entrySet()) {
+                m_keys[s][i] = entry.getKey().charValue();
+                m_targets[s][i] = entry.getValue().intValue();
+                i++;
+            }
+        }
+
+        // breadth-first, so the failure state of a node is always complete before the node itself
+        final LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (final int child : m_targets[0]) {
+            m_fail[child] = 0;
+            queue.add(Integer.valueOf(child));
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.removeFirst().intValue();
+            for (int i = 0; i < m_keys[state].length; i++) {
+                final char c = m_keys[state][i];
+                final int child = m_targets[state][i];
+                int fail = m_fail[state];
+                while (fail != 0 && transition(fail, c) < 0) {
+                    fail = m_fail[fail];
+                }
+                final int next = transition(fail, c);
+                m_fail[child] = next < 0 ? 0 : next;
+                outputs.get(child).addAll(outputs.get(m_fail[child]));
+                queue.add(Integer.valueOf(child));
+            }
+        }
+
+        for (int s = 0; s < states; s++) {
+            final List<Integer> ids = outputs.get(s);
+            m_output[s] = new int[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                m_output[s][i] = ids.get(i).intValue();
+            }
+        }
+    }
+
+    private int transition(final int state, final char c) {
+        final char[] keys = m_keys[state];
+        int low = 0;
+        int high = keys.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (keys[mid] < c) {
+                low = mid + 1;
+            } else if (keys[mid] > c) {
+                high = mid - 1;
+            } else {
+                return m_targets[state][mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * <p>getPatternCount</p>
+     *
+     * @return the number of patterns in the automaton
+     */
+    int getPatternCount() {
+        return m_patternCount;
+    }
+
+    /**
+     * Scan the text once and report which patterns occur in it.
+     *
+     * @param text the text to search
+     * @return a {@link java.util.BitSet} with the ids of the patterns found
+     */
+    BitSet findAll(final CharSequence text) {
+        final BitSet found = new BitSet(m_patternCount);
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            int next = transition(state, c);
+            while (next < 0 && state != 0) {
+                state = m_fail[state];
+                next = transition(state, c);
+            }
+            state = next < 0 ? 0 : next;
+            for (final int id : m_output[state]) {
+                found.set(id);
+            }
+        }
+        return found;
+    }
+}
@@ -29,7 +29,9 @@
 package org.opennms.netmgt.syslogd;
 
 import java.io.IOException;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.channels.DatagramChannel;
 
 import org.opennms.core.fiber.Fiber;
 import org.opennms.core.utils.InetAddressUtils;
@@ -51,6 +53,13 @@ import org.opennms.netmgt.xml.event.EventReceipt;
  * @author <a href="http://www.oculan.com">Oculan Corporation </a>
  */
 public final class SyslogHandler implements Fiber {
+    /**
+     * The socket receive buffer size requested from the kernel; large enough
+     * to absorb bursts while the receiver threads are busy.  The kernel may
+     * cap it (net.core.rmem_max on Linux).
+     */
+    private static final int RECEIVE_BUFFER_SIZE = 8 * 1024 * 1024;
+
     /**
      * The UDP receiver thread.
      */
@@ -62,9 +71,9 @@ public final class SyslogHandler implements Fiber {
     private volatile int m_status;
 
     /**
-     * The UDP socket for receipt and transmission of packets from agents.
+     * The UDP channel for receipt of packets from agents.
      */
-    private DatagramSocket m_dgSock;
+    private DatagramChannel m_dgChannel;
 
     private final String m_ForwardingRegexp;
 
@@ -108,7 +117,7 @@ public final class SyslogHandler implements Fiber {
      * <p>Constructor for SyslogHandler.</p>
      */
     public SyslogHandler() {
-        m_dgSock = null;
+        m_dgChannel = null;
         m_dgPort = m_syslogdConfig.getSyslogPort();
         m_dgIp = m_syslogdConfig.getListenAddress();
 
@@ -128,7 +137,7 @@ public final class SyslogHandler implements Fiber {
 
         m_status = START_PENDING;
 
-        m_dgSock = null;
+        m_dgChannel = null;
         m_receiver = null;
         m_logPrefix = null;
     }
@@ -152,34 +161,48 @@ public final class SyslogHandler implements Fiber {
         m_status = STARTING;
 
         try {
+            m_dgChannel = DatagramChannel.open();
+            try {
+                m_dgChannel.socket().setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+            } catch (SocketException e) {
+                ThreadCategory.getInstance(getClass()).info("Failed to set the receive buffer to " + RECEIVE_BUFFER_SIZE, e);
+            }
             if (m_dgIp != null && m_dgIp.length() != 0) {
-                m_dgSock = new DatagramSocket(m_dgPort, InetAddressUtils.addr(m_dgIp));
+                m_dgChannel.socket().bind(new InetSocketAddress(InetAddressUtils.addr(m_dgIp), m_dgPort));
             } else {
-                m_dgSock = new DatagramSocket(m_dgPort);
+                m_dgChannel.socket().bind(new InetSocketAddress(m_dgPort));
             }
 
-            m_receiver = new SyslogReceiver(m_dgSock, m_ForwardingRegexp,
+            ConvertToEvent.compile(m_UeiList, m_HideMessages);
+
+            m_receiver = new SyslogReceiver(m_dgChannel, m_ForwardingRegexp,
                     m_MatchingGroupHost,
                     m_MatchingGroupMessage,
                     m_UeiList,
                     m_HideMessages,
-                    m_DiscardUei);
+                    m_DiscardUei,
+                    m_syslogdConfig.getNewSuspectOnMessage(),
+                    m_syslogdConfig.getReceiverThreads(),
+                    m_syslogdConfig.getProcessingThreads(),
+                    m_syslogdConfig.getQueueSize(),
+                    m_syslogdConfig.getOverflowPolicy());
 
             if (m_logPrefix != null) {
                 m_receiver.setLogPrefix(m_logPrefix);
             }
         } catch (IOException e) {
+            m_status = STOPPED;
             throw new java.lang.reflect.UndeclaredThrowableException(e);
         }
 
-        Thread rThread = new Thread(m_receiver, "Syslog Event Receiver["
-                + getIpAddress() + ":" + m_dgPort + "]");
-
         try {
-            rThread.start();
-
+            m_receiver.start("Syslog Event Receiver[" + getIpAddress() + ":" + m_dgPort + "]");
         } catch (RuntimeException e) {
-            rThread.interrupt();
+            try {
+                m_receiver.stop();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
 
             m_status = STOPPED;
             throw e;
@@ -210,7 +233,11 @@ public final class SyslogHandler implements Fiber {
                     e);
         }
 
-        m_dgSock.close();
+        try {
+            m_dgChannel.close();
+        } catch (IOException e) {
+            ThreadCategory.getInstance(getClass()).debug("Error closing the syslog channel", e);
+        }
 
         m_status = STOPPED;
     }
@@ -294,6 +321,51 @@ public final class SyslogHandler implements Fiber {
         m_logPrefix = prefix;
     }
 
+    /**
+     * <p>getMessagesReceived</p>
+     *
+     * @return the number of datagrams read from the syslog socket
+     */
+    public long getMessagesReceived() {
+        return m_receiver == null ? 0 : m_receiver.getMessagesReceived();
+    }
+
+    /**
+     * <p>getMessagesDropped</p>
+     *
+     * @return the number of messages dropped because the processing queue was full
+     */
+    public long getMessagesDropped() {
+        return m_receiver == null ? 0 : m_receiver.getMessagesDropped();
+    }
+
+    /**
+     * <p>getMessagesProcessed</p>
+     *
+     * @return the number of messages turned into events
+     */
+    public long getMessagesProcessed() {
+        return m_receiver == null ? 0 : m_receiver.getMessagesProcessed();
+    }
+
+    /**
+     * <p>getMessagesDiscarded</p>
+     *
+     * @return the number of messages that could not be parsed or matched the discard UEI
+     */
+    public long getMessagesDiscarded() {
+        return m_receiver == null ? 0 : m_receiver.getMessagesDiscarded();
+    }
+
+    /**
+     * <p>getQueueDepth</p>
+     *
+     * @return the number of messages waiting to be processed
+     */
+    public int getQueueDepth() {
+        return m_receiver == null ? 0 : m_receiver.getQueueDepth();
+    }
+
     public interface EventHandler {
         public boolean processEvent(Event event);
 
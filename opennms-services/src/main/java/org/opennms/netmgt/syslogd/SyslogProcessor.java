@@ -34,7 +34,6 @@ import java.util.List;
 import java.util.concurrent.Callable;
 
 import org.opennms.core.concurrent.EndOfTheWaterfall;
-import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.config.SyslogdConfigFactory;
@@ -60,9 +59,13 @@ final class SyslogProcessor implements EndOfTheWaterfall {
     private final ConvertToEvent m_event;
 
     public SyslogProcessor(ConvertToEvent event) {
+        this(event, SyslogdConfigFactory.getInstance().getNewSuspectOnMessage());
+    }
+
+    SyslogProcessor(ConvertToEvent event, boolean newSuspectOnMessage) {
         m_event = event;
-        m_NewSuspectOnMessage = SyslogdConfigFactory.getInstance().getNewSuspectOnMessage();
-        m_localAddr = InetAddressUtils.getLocalHostName();
+        m_NewSuspectOnMessage = newSuspectOnMessage;
+        m_localAddr = ConvertToEvent.getLocalHostName();
     }
 
     /**
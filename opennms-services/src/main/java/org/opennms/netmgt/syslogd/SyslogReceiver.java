@@ -29,52 +29,69 @@
 package org.opennms.netmgt.syslogd;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
-import org.opennms.core.concurrent.WaterfallExecutor;
 import org.opennms.core.utils.ThreadCategory;
 import org.opennms.netmgt.config.syslogd.HideMessage;
 import org.opennms.netmgt.config.syslogd.UeiList;
 
 /**
+ * Reads syslog datagrams from a {@link DatagramChannel} and hands them to a
+ * bounded pool of processing threads.
+ *
+ * Each receiver thread owns a single direct buffer that is reused for every
+ * datagram, so the only per-message allocation on the receive side is the
+ * copy of the message bytes.  Received messages go into a bounded queue; when
+ * it is full the message is either dropped and counted ("drop") or the
+ * receiver threads wait for room ("block"), which leaves further datagrams in
+ * the socket receive buffer.
+ *
  * @deprecated This class should be combined with {@link SyslogHandler}
  * 
  * @author <a href="mailto:weave@oculan.com">Brian Weaver</a>
  * @author <a href="http://www.oculan.com">Oculan Corporation</a>
  * @fiddler joed
  */
-class SyslogReceiver implements Runnable {
+class SyslogReceiver {
 
-    private static final int SOCKET_TIMEOUT = 500;
-    
     private static final String LOG4J_CATEGORY = "OpenNMS.Syslogd";
 
+    /**
+     * The largest possible UDP payload.
+     */
+    private static final int MAX_PACKET_SIZE = 0xffff;
+
+    /** Constant <code>OVERFLOW_POLICY_BLOCK="block"</code> */
+    static final String OVERFLOW_POLICY_BLOCK = "block";
+
     /**
      * The Fiber's status.
      */
     private volatile boolean m_stop;
 
     /**
-     * The UDP socket for receipt and transmission of packets from agents.
+     * The UDP channel for receipt of packets from agents.
      */
-    private final DatagramSocket m_dgSock;
+    private final DatagramChannel m_channel;
 
     /**
-     * The context thread
+     * The receiver threads.
      */
-    private Thread m_context;
+    private final List<Thread> m_readers = new ArrayList<Thread>();
 
     /**
      * The log prefix
@@ -93,46 +110,73 @@ class SyslogReceiver implements Runnable {
 
     private final HideMessage m_HideMessages;
 
-    private final List<ExecutorService> m_executors = new ArrayList<ExecutorService>();
+    private final boolean m_newSuspectOnMessage;
+
+    private final int m_receiverThreads;
+
+    private final int m_processingThreads;
+
+    private final int m_queueSize;
+
+    private final boolean m_blockOnOverflow;
+
+    private ThreadPoolExecutor m_executor;
+
+    private final AtomicLong m_messagesReceived = new AtomicLong();
+
+    private final AtomicLong m_messagesDropped = new AtomicLong();
+
+    private final AtomicLong m_messagesProcessed = new AtomicLong();
+
+    private final AtomicLong m_messagesDiscarded = new AtomicLong();
 
     /**
      * construct a new receiver
      *
-     * @param sock
+     * @param channel
      * @param matchPattern
      * @param hostGroup
      * @param messageGroup
      */
-    SyslogReceiver(DatagramSocket sock, String matchPattern, int hostGroup, int messageGroup,
-                   UeiList ueiList, HideMessage hideMessages, String discardUei) {
+    SyslogReceiver(DatagramChannel channel, String matchPattern, int hostGroup, int messageGroup,
+                   UeiList ueiList, HideMessage hideMessages, String discardUei, boolean newSuspectOnMessage,
+                   int receiverThreads, int processingThreads, int queueSize, String overflowPolicy) {
         m_stop = false;
-        m_dgSock = sock;
+        m_channel = channel;
         m_matchPattern = matchPattern;
         m_hostGroup = hostGroup;
         m_messageGroup = messageGroup;
         m_discardUei = discardUei;
         m_UeiList = ueiList;
         m_HideMessages = hideMessages;
+        m_newSuspectOnMessage = newSuspectOnMessage;
+        m_receiverThreads = receiverThreads;
+        m_processingThreads = processingThreads;
+        m_queueSize = queueSize;
+        m_blockOnOverflow = OVERFLOW_POLICY_BLOCK.equals(overflowPolicy);
         m_logPrefix = LOG4J_CATEGORY;
+    }
 
-        m_executors.add(new ThreadPoolExecutor(
-            1,
-            Integer.MAX_VALUE,
-            100L,
-            TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<Runnable>(),
-            new LogPreservingThreadFactory(getClass().getSimpleName(), Integer.MAX_VALUE, false)
-        ));
-
-        m_executors.add(new ThreadPoolExecutor(
-            1,
-            Integer.MAX_VALUE,
-            100L,
+    /**
+     * Start the processing pool and the receiver threads.
+     */
+    void start(String name) {
+        m_executor = new ThreadPoolExecutor(
+            m_processingThreads,
+            m_processingThreads,
+            1000L,
             TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<Runnable>(),
-            new LogPreservingThreadFactory(getClass().getSimpleName(), Integer.MAX_VALUE, false)
-        ));
-}
+            new ArrayBlockingQueue<Runnable>(m_queueSize),
+            new LogPreservingThreadFactory("SyslogProcessor", m_processingThreads, true),
+            m_blockOnOverflow ? new BlockPolicy() : new DropPolicy()
+        );
+
+        for (int i = 1; i <= m_receiverThreads; i++) {
+            final Thread reader = new Thread(new Reader(), name + "-" + i);
+            m_readers.add(reader);
+            reader.start();
+        }
+    }
 
     /*
      * stop the current receiver
@@ -142,107 +186,188 @@ class SyslogReceiver implements Runnable {
     void stop() throws InterruptedException {
         m_stop = true;
 
-        // Shut down the thread pools that are executing SyslogConnection and SyslogProcessor tasks
-        for (ExecutorService service : m_executors) {
-            service.shutdown();
+        ThreadCategory log = ThreadCategory.getInstance(getClass());
+
+        // Interrupting a thread blocked in DatagramChannel.receive() closes the channel
+        for (Thread reader : m_readers) {
+            log.debug("Stopping and joining thread context " + reader.getName());
+            reader.interrupt();
         }
+        for (Thread reader : m_readers) {
+            reader.join();
+        }
+        log.debug("Receiver threads stopped and joined");
 
-        if (m_context != null) {
-            ThreadCategory log = ThreadCategory.getInstance(getClass());
-            log.debug("Stopping and joining thread context " + m_context.getName());
-            m_context.interrupt();
-            m_context.join();
-            log.debug("Thread context stopped and joined");
+        if (m_executor != null) {
+            m_executor.shutdown();
+            if (!m_executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("Syslog processing threads did not finish within 5 seconds, " + m_executor.getQueue().size() + " messages were not processed");
+                m_executor.shutdownNow();
+            }
         }
     }
 
     /**
-     * The execution context.
+     * <p>setLogPrefix</p>
+     *
+     * @param prefix a {@link java.lang.String} object.
      */
-    @Override
-    public void run() {
-        // get the context
-        m_context = Thread.currentThread();
+    protected void setLogPrefix(String prefix) {
+        m_logPrefix = prefix;
+    }
 
-        // Get a log instance
-        ThreadCategory.setPrefix(m_logPrefix);
-        ThreadCategory log = ThreadCategory.getInstance(getClass());
+    long getMessagesReceived() {
+        return m_messagesReceived.get();
+    }
 
-        if (m_stop) {
-            log.debug("Stop flag set before thread started, exiting");
-            return;
-        } else
-            log.debug("Thread context started");
+    long getMessagesDropped() {
+        return m_messagesDropped.get();
+    }
 
-        // allocate a buffer
-        final int length = 0xffff;
-        final byte[] buffer = new byte[length];
+    long getMessagesProcessed() {
+        return m_messagesProcessed.get();
+    }
 
-        // set an SO timeout to make sure we don't block forever
-        // if a socket is closed.
-        try {
-            log.debug("Setting socket timeout to " + SOCKET_TIMEOUT + "ms");
-            m_dgSock.setSoTimeout(SOCKET_TIMEOUT);
-        } catch (SocketException e) {
-            log.warn("An I/O error occured while trying to set the socket timeout", e);
+    long getMessagesDiscarded() {
+        return m_messagesDiscarded.get();
+    }
+
+    int getQueueDepth() {
+        return m_executor == null ? 0 : m_executor.getQueue().size();
+    }
+
+    /**
+     * The execution context of a receiver thread.
+     */
+    private class Reader implements Runnable {
+        @Override
+        public void run() {
+            // Get a log instance
+            ThreadCategory.setPrefix(m_logPrefix);
+            ThreadCategory log = ThreadCategory.getInstance(SyslogReceiver.class);
+
+            if (m_stop) {
+                log.debug("Stop flag set before thread started, exiting");
+                return;
+            } else
+                log.debug("Thread context started");
+
+            // one buffer per receiver thread, reused for every datagram
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+
+            // now start processing incoming requests
+            while (!m_stop) {
+                if (Thread.currentThread().isInterrupted()) {
+                    log.debug("Thread context interrupted");
+                    break;
+                }
+
+                try {
+                    buffer.clear();
+                    final SocketAddress source = m_channel.receive(buffer);
+                    if (source == null) {
+                        continue;
+                    }
+                    buffer.flip();
+                    final byte[] data = new byte[buffer.remaining()];
+                    buffer.get(data);
+
+                    m_messagesReceived.incrementAndGet();
+                    m_executor.execute(new MessageTask((InetSocketAddress)source, data));
+                } catch (ClosedChannelException e) {
+                    // also covers AsynchronousCloseException and ClosedByInterruptException
+                    if (!m_stop) {
+                        log.error("The syslog channel was closed unexpectedly, exiting", e);
+                    }
+                    break;
+                } catch (RejectedExecutionException e) {
+                    if (!m_stop) {
+                        log.error("Syslog processing pool rejected a message, exiting", e);
+                    }
+                    break;
+                } catch (IOException e) {
+                    log.error("An I/O exception occured on the datagram receipt port, exiting", e);
+                    break;
+                }
+
+            } // end while status OK
+
+            log.debug("Thread context exiting");
         }
+    }
 
-        // Increase the receive buffer for the socket
+    /**
+     * Converts a single received message to an event and sends it.  Runs on
+     * one of the processing threads.
+     *
+     * @param source the agent that sent the message
+     * @param data the message as received
+     */
+    void process(final InetSocketAddress source, final byte[] data) {
         try {
-            log.debug("Setting receive buffer size to " + length);
-            m_dgSock.setReceiveBufferSize(length);
-        } catch (SocketException e) {
-            log.info("Failed to set the receive buffer to " + length, e);
+            final ConvertToEvent re = ConvertToEvent.make(source.getAddress(), source.getPort(), data, data.length, m_matchPattern, m_hostGroup, m_messageGroup, m_UeiList, m_HideMessages, m_discardUei);
+            new SyslogProcessor(re, m_newSuspectOnMessage).call();
+            m_messagesProcessed.incrementAndGet();
+        } catch (final UnsupportedEncodingException e) {
+            ThreadCategory.getInstance(SyslogReceiver.class).debug("Failure to convert package", e);
+            m_messagesDiscarded.incrementAndGet();
+        } catch (final MessageDiscardedException e) {
+            ThreadCategory.getInstance(SyslogReceiver.class).debug("Message discarded, returning without enqueueing event.", e);
+            m_messagesDiscarded.incrementAndGet();
         }
-        // set to avoid numerous tracing message
-        boolean ioInterrupted = false;
-        // now start processing incoming requests
-        while (!m_stop) {
-            if (m_context.isInterrupted()) {
-                log.debug("Thread context interrupted");
-                break;
-            }
-
-            try {
-                if (!ioInterrupted) {
-                    log.debug("Waiting on a datagram to arrive");
-                }
+    }
 
-                DatagramPacket pkt = new DatagramPacket(buffer, length);
-                m_dgSock.receive(pkt);
-
-                //SyslogConnection *Must* copy packet data and InetAddress as DatagramPacket is a mutable type
-                WaterfallExecutor.waterfall(m_executors, new SyslogConnection(pkt, m_matchPattern, m_hostGroup, m_messageGroup, m_UeiList, m_HideMessages, m_discardUei));
-                ioInterrupted = false; // reset the flag
-            } catch (SocketTimeoutException e) {
-                ioInterrupted = true;
-                continue;
-            } catch (InterruptedIOException e) {
-                ioInterrupted = true;
-                continue;
-            } catch (ExecutionException e) {
-                log.error("Task execution failed in " + this.getClass().getSimpleName(), e);
-                break;
-            } catch (InterruptedException e) {
-                log.error("Task interrupted in " + this.getClass().getSimpleName(), e);
-                break;
-            } catch (IOException e) {
-                log.error("An I/O exception occured on the datagram receipt port, exiting", e);
-                break;
-            }
+    /**
+     * Hands a single received message to {@link SyslogReceiver#process}.
+     */
+    private class MessageTask implements Runnable {
+        private final InetSocketAddress m_source;
+        private final byte[] m_data;
 
-        } // end while status OK
+        MessageTask(InetSocketAddress source, byte[] data) {
+            m_source = source;
+            m_data = data;
+        }
 
-        log.debug("Thread context exiting");
+        @Override
+        public void run() {
+            process(m_source, m_data);
+        }
+    }
 
+    /**
+     * Counts and discards messages that do not fit in the processing queue.
+     */
+    private class DropPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Syslog processing pool has been shut down");
+            }
+            final long dropped = m_messagesDropped.incrementAndGet();
+            // don't flood the log during a storm
+            if ((dropped & (dropped - 1)) == 0) {
+                ThreadCategory.getInstance(SyslogReceiver.class).warn("Syslog processing queue is full (" + m_queueSize + " messages); " + dropped + " messages dropped so far");
+            }
+        }
     }
 
     /**
-     * <p>setLogPrefix</p>
-     *
-     * @param prefix a {@link java.lang.String} object.
+     * Makes the receiver thread wait until there is room in the processing
+     * queue.
      */
-    protected void setLogPrefix(String prefix) {
-        m_logPrefix = prefix;
+    private static class BlockPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Syslog processing pool has been shut down");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room in the syslog processing queue", e);
+            }
+        }
     }
 }
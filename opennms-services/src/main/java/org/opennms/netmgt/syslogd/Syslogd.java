@@ -192,4 +192,57 @@ import org.opennms.netmgt.dao.EventDao;
         m_eventDao = eventDao;
     }
 
+    /**
+     * <p>getMessagesReceived</p>
+     *
+     * @return the number of syslog datagrams received
+     */
+    public long getMessagesReceived() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesReceived();
+    }
+
+    /**
+     * <p>getMessagesDropped</p>
+     *
+     * @return the number of syslog messages dropped because the processing queue was full
+     */
+    public long getMessagesDropped() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesDropped();
+    }
+
+    /**
+     * <p>getMessagesProcessed</p>
+     *
+     * @return the number of syslog messages turned into events
+     */
+    public long getMessagesProcessed() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesProcessed();
+    }
+
+    /**
+     * <p>getMessagesDiscarded</p>
+     *
+     * @return the number of syslog messages that were discarded
+     */
+    public long getMessagesDiscarded() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesDiscarded();
+    }
+
+    /**
+     * <p>getQueueDepth</p>
+     *
+     * @return the number of syslog messages waiting to be processed
+     */
+    public int getQueueDepth() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getQueueDepth();
+    }
+
+    /**
+     * <p>getUeiMatchHitCounts</p>
+     *
+     * @return the number of messages each uei-match rule has matched
+     */
+    public String getUeiMatchHitCounts() {
+        return ConvertToEvent.getUeiMatchHitCounts();
+    }
 }
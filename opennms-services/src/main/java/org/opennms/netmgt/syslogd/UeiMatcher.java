@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.core.utils.LogUtils;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+
+/**
+ * The syslogd <code>uei-list</code>, compiled once when the configuration
+ * is loaded.
+ *
+ * <p>All regular expressions are compiled up front. The facility, severity
+ * and process constraints of the rules are resolved per distinct
+ * facility/severity/process combination and cached, so a message is only
+ * tested against the rules that can match it. The bodies of all
+ * <code>substr</code> rules are searched for with a single Aho-Corasick pass
+ * over the message. The first matching rule, in configuration order, wins,
+ * as before.</p>
+ *
+ * @see MultiSubstringMatcher
+ */
+final class UeiMatcher {
+
+    /**
+     * Upper bound for the candidate cache; process names are free-form, so
+     * the number of combinations seen is not bounded by the configuration.
+     */
+    private static final int MAX_CACHED_SELECTORS = 4096;
+
+    private static final int[] NO_RULES = new int[0];
+
+    private final UeiList m_source;
+
+    private final Rule[] m_rules;
+
+    private final MultiSubstringMatcher m_substrings;
+
+    private final AtomicLongArray m_hits;
+
+    private final ConcurrentMap<String,int[]> m_candidates = new ConcurrentHashMap<String,int[]>();
+
+    /**
+     * The result of a successful match.
+     */
+    static final class Match {
+        private final UeiMatch m_ueiMatch;
+        private final Matcher m_matcher;
+
+        private Match(final UeiMatch ueiMatch, final Matcher matcher) {
+            m_ueiMatch = ueiMatch;
+            m_matcher = matcher;
+        }
+
+        /**
+         * @return the configured rule that matched
+         */
+        UeiMatch getUeiMatch() {
+            return m_ueiMatch;
+        }
+
+        /**
+         * @return the regex matcher positioned on the match, or null for a substring rule
+         */
+        Matcher getMatcher() {
+            return m_matcher;
+        }
+    }
+
+    private static final class Rule {
+        private final UeiMatch m_ueiMatch;
+        private final Set<String> m_facilities;
+        private final Set<String> m_severities;
+        private final Pattern m_process;
+        private final Pattern m_hostname;
+        private final Pattern m_hostaddr;
+        private final boolean m_substring;
+        private final String m_expression;
+        private final Pattern m_pattern;
+        private final boolean m_valid;
+        private int m_substringId = -1;
+
+        private Rule(final UeiMatch ueiMatch) {
+            m_ueiMatch = ueiMatch;
+            m_facilities = lowerCase(ueiMatch.getFacilityCollection());
+            m_severities = lowerCase(ueiMatch.getSeverityCollection());
+
+            final String type = ueiMatch.getMatch().getType();
+            m_expression = ueiMatch.getMatch().getExpression();
+            m_substring = "substr".equals(type);
+
+            boolean valid = m_substring || type.startsWith("regex");
+            Pattern process = null, hostname = null, hostaddr = null, pattern = null;
+            try {
+                if (ueiMatch.getProcessMatch() != null) {
+                    process = Pattern.compile(ueiMatch.getProcessMatch().getExpression(), Pattern.MULTILINE);
+                }
+                if (ueiMatch.getHostnameMatch() != null) {
+                    hostname = Pattern.compile(ueiMatch.getHostnameMatch().getExpression(), Pattern.MULTILINE);
+                }
+                if (ueiMatch.getHostaddrMatch() != null) {
+                    hostaddr = Pattern.compile(ueiMatch.getHostaddrMatch().getExpression(), Pattern.MULTILINE);
+                }
+                if (valid && !m_substring) {
+                    pattern = Pattern.compile(m_expression, Pattern.MULTILINE);
+                }
+            } catch (final PatternSyntaxException pse) {
+                LogUtils.warnf(UeiMatcher.class, pse, "Failed to compile regex pattern '%s' in uei-match for %s; the rule will never match", pse.getPattern(), ueiMatch.getUei());
+                valid = false;
+            }
+            m_process = process;
+            m_hostname = hostname;
+            m_hostaddr = hostaddr;
+            m_pattern = pattern;
+            m_valid = valid;
+        }
+
+        private static Set<String> lowerCase(final List<String> values) {
+            if (values.size() == 0) return null;
+            final Set<String> set = new HashSet<String>();
+            for (final String value : values) {
+                set.add(value.toLowerCase());
+            }
+            return set;
+        }
+
+        private boolean selects(final String facility, final String severity, final String processName) {
+            if (!m_valid) return false;
+            if (m_facilities != null && !m_facilities.contains(facility)) return false;
+            if (m_severities != null && !m_severities.contains(severity)) return false;
+            if (m_process != null && (processName == null || !m_process.matcher(processName).find())) return false;
+            return true;
+        }
+
+        private boolean matchesHost(final String hostName, final String hostAddress) {
+            if (m_hostname != null && (hostName == null || !m_hostname.matcher(hostName).find())) return false;
+            if (m_hostaddr != null && (hostAddress == null || !m_hostaddr.matcher(hostAddress).find())) return false;
+            return true;
+        }
+    }
+
+    /**
+     * <p>Constructor for UeiMatcher.</p>
+     *
+     * @param ueiList the configured list, may be null
+     */
+    UeiMatcher(final UeiList ueiList) {
+        m_source = ueiList;
+
+        final List<UeiMatch> ueiMatches = ueiList == null ? new ArrayList<UeiMatch>() : ueiList.getUeiMatchCollection();
+        m_rules = new Rule[ueiMatches.size()];
+        m_hits = new AtomicLongArray(m_rules.length);
+
+        final List<String> substrings = new ArrayList<String>();
+        final Map<String,Integer> substringIds = new HashMap<String,Integer>();
+        for (int i = 0; i < m_rules.length; i++) {
+            final Rule rule = new Rule(ueiMatches.get(i));
+            if (rule.m_valid && rule.m_substring && rule.m_expression.length() > 0) {
+                Integer id = substringIds.get(rule.m_expression);
+                if (id == null) {
+                    id = Integer.valueOf(substrings.size());
+                    substrings.add(rule.m_expression);
+                    substringIds.put(rule.m_expression, id);
+                }
+                rule.m_substringId = id.intValue();
+            }
+            m_rules[i] = rule;
+        }
+        m_substrings = new MultiSubstringMatcher(substrings);
+
+        LogUtils.debugf(this, "Compiled %d uei-match rules (%d distinct substrings)", m_rules.length, substrings.size());
+    }
+
+    /**
+     * <p>getSource</p>
+     *
+     * @return the {@link org.opennms.netmgt.config.syslogd.UeiList} this matcher was compiled from
+     */
+    UeiList getSource() {
+        return m_source;
+    }
+
+    /**
+     * Find the first rule, in configuration order, that matches the message.
+     *
+     * @param message the parsed message
+     * @param facilityTxt the message facility
+     * @param priorityTxt the message severity
+     * @return the match, or null if no rule matched
+     */
+    Match match(final SyslogMessage message, final String facilityTxt, final String priorityTxt) {
+        final int[] candidates = getCandidates(facilityTxt.toLowerCase(), priorityTxt.toLowerCase(), message.getProcessName());
+        if (candidates.length == 0) {
+            return null;
+        }
+
+        final boolean traceEnabled = LogUtils.isTraceEnabled(UeiMatcher.class);
+        final String matchedText = message.getMatchedMessage();
+        final String regexText = matchedText != null ? matchedText : message.getFullText();
+        BitSet substringsFound = null;
+
+        for (final int index : candidates) {
+            final Rule rule = m_rules[index];
+            if (!rule.matchesHost(message.getHostName(), message.getHostAddress())) {
+                continue;
+            }
+
+            if (rule.m_substring) {
+                if (matchedText == null) {
+                    continue;
+                }
+                final boolean found;
+                if (rule.m_substringId < 0) {
+                    found = true;
+                } else {
+                    if (substringsFound == null) {
+                        substringsFound = m_substrings.findAll(matchedText);
+                    }
+                    found = substringsFound.get(rule.m_substringId);
+                }
+                if (found) {
+                    m_hits.incrementAndGet(index);
+                    return new Match(rule.m_ueiMatch, null);
+                }
+                if (traceEnabled) LogUtils.tracef(UeiMatcher.class, "No substring match for text of a Syslogd event to : %s", rule.m_expression);
+            } else {
+                final Matcher msgMat = rule.m_pattern.matcher(regexText);
+                if (msgMat.find()) {
+                    m_hits.incrementAndGet(index);
+                    return new Match(rule.m_ueiMatch, msgMat);
+                }
+                if (traceEnabled) LogUtils.tracef(UeiMatcher.class, "Message '%s' did not regex-match pattern '%s'", message.getMessage(), rule.m_expression);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The rules whose facility, severity and process constraints accept the
+     * given values, in configuration order.
+     */
+    private int[] getCandidates(final String facility, final String severity, final String processName) {
+        final String key = facility + '\0' + severity + '\0' + (processName == null ? "\0" : processName);
+        int[] candidates = m_candidates.get(key);
+        if (candidates == null) {
+            final List<Integer> selected = new ArrayList<Integer>();
+            for (int i = 0; i < m_rules.length; i++) {
+                if (m_rules[i].selects(facility, severity, processName)) {
+                    selected.add(Integer.valueOf(i));
+                }
+            }
+            if (selected.isEmpty()) {
+                candidates = NO_RULES;
+            } else {
+                candidates = new int[selected.size()];
+                for (int i = 0; i < candidates.length; i++) {
+                    candidates[i] = selected.get(i).intValue();
+                }
+            }
+            if (m_candidates.size() < MAX_CACHED_SELECTORS) {
+                m_candidates.putIfAbsent(key, candidates);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * <p>getHitCounts</p>
+     *
+     * @return the number of messages each rule has matched, in configuration order
+     */
+    String getHitCounts() {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < m_rules.length; i++) {
+            if (i > 0) buf.append(", ");
+            buf.append('#').append(i + 1).append(' ').append(m_rules[i].m_ueiMatch.getUei()).append(':').append(m_hits.get(i));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * <p>getHitCount</p>
+     *
+     * @param index the position of the rule in the <code>uei-list</code>
+     * @return the number of messages the rule has matched
+     */
+    long getHitCount(final int index) {
+        return m_hits.get(index);
+    }
+}
@@ -82,4 +82,34 @@ public class Syslogd implements SyslogdMBean {
     public String getStatusText() {
         return org.opennms.core.fiber.Fiber.STATUS_NAMES[getStatus()];
     }
+
+    /** {@inheritDoc} */
+    public long getMessagesReceived() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesReceived();
+    }
+
+    /** {@inheritDoc} */
+    public long getMessagesDropped() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesDropped();
+    }
+
+    /** {@inheritDoc} */
+    public long getMessagesProcessed() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesProcessed();
+    }
+
+    /** {@inheritDoc} */
+    public long getMessagesDiscarded() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesDiscarded();
+    }
+
+    /** {@inheritDoc} */
+    public int getQueueDepth() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getQueueDepth();
+    }
+
+    /** {@inheritDoc} */
+    public String getUeiMatchHitCounts() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getUeiMatchHitCounts();
+    }
 }
@@ -37,4 +37,33 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface SyslogdMBean extends BaseOnmsMBean {
+    /**
+     * @return the number of syslog datagrams received
+     */
+    public long getMessagesReceived();
+
+    /**
+     * @return the number of syslog messages dropped because the processing queue was full
+     */
+    public long getMessagesDropped();
+
+    /**
+     * @return the number of syslog messages turned into events
+     */
+    public long getMessagesProcessed();
+
+    /**
+     * @return the number of syslog messages that were discarded
+     */
+    public long getMessagesDiscarded();
+
+    /**
+     * @return the number of syslog messages waiting to be processed
+     */
+    public int getQueueDepth();
+
+    /**
+     * @return the number of messages each uei-match rule has matched
+     */
+    public String getUeiMatchHitCounts();
 }
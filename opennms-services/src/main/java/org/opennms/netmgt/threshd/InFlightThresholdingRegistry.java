@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which node/interface/service combinations have had their
+ * thresholds evaluated in-flight, on the values collectd or pollerd had
+ * just collected, rather than by Threshd reading the same values back out
+ * of the RRD files.
+ *
+ * <p>Threshd checks here before each run and only falls back to the RRD
+ * path when nothing has evaluated the service recently, for example when
+ * thresholding-enabled is off for the collectd package or collection for
+ * the interface is failing.  Setting the
+ * <code>org.opennms.threshd.deferToInFlight</code> system property to
+ * false makes Threshd always run its own checks.</p>
+ */
+public abstract class InFlightThresholdingRegistry {
+    /** System property that turns deferring to in-flight thresholding off. */
+    public static final String DEFER_PROPERTY = "org.opennms.threshd.deferToInFlight";
+
+    /*
+     * One small entry per node/interface/service, holding the time of the
+     * last in-flight evaluation in milliseconds.
+     */
+    private static final ConcurrentHashMap<String, Long> s_lastEvaluated = new ConcurrentHashMap<String, Long>();
+
+    private InFlightThresholdingRegistry() {
+    }
+
+    private static String getKey(int nodeId, String hostAddress, String serviceName) {
+        return nodeId + "/" + hostAddress + "/" + serviceName;
+    }
+
+    /**
+     * Record that the thresholds of a service were just evaluated in-flight.
+     *
+     * @param nodeId a int.
+     * @param hostAddress a {@link java.lang.String} object.
+     * @param serviceName a {@link java.lang.String} object.
+     */
+    public static void evaluated(int nodeId, String hostAddress, String serviceName) {
+        s_lastEvaluated.put(getKey(nodeId, hostAddress, serviceName), System.currentTimeMillis());
+    }
+
+    /**
+     * Whether Threshd can skip its RRD based check of a service because the
+     * thresholds were evaluated in-flight within the last maxAge milliseconds.
+     *
+     * @param nodeId a int.
+     * @param hostAddress a {@link java.lang.String} object.
+     * @param serviceName a {@link java.lang.String} object.
+     * @param maxAge a long.
+     * @return a boolean.
+     */
+    public static boolean isEvaluated(int nodeId, String hostAddress, String serviceName, long maxAge) {
+        if (!Boolean.valueOf(System.getProperty(DEFER_PROPERTY, "true"))) {
+            return false;
+        }
+        final Long lastEvaluated = s_lastEvaluated.get(getKey(nodeId, hostAddress, serviceName));
+        return lastEvaluated != null && System.currentTimeMillis() - lastEvaluated <= maxAge;
+    }
+
+    /**
+     * Forget a service, so Threshd goes back to checking it itself.
+     *
+     * @param nodeId a int.
+     * @param hostAddress a {@link java.lang.String} object.
+     * @param serviceName a {@link java.lang.String} object.
+     */
+    public static void remove(int nodeId, String hostAddress, String serviceName) {
+        s_lastEvaluated.remove(getKey(nodeId, hostAddress, serviceName));
+    }
+
+    /**
+     * Forget every service.
+     */
+    public static void clear() {
+        s_lastEvaluated.clear();
+    }
+}
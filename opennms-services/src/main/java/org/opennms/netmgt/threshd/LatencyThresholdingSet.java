@@ -95,7 +95,9 @@ public class LatencyThresholdingSet extends ThresholdingSet {
         //Yes, we have to know a little too much about the implementation details of CollectionResourceWrapper to say that, but
         // we have little choice
         CollectionResourceWrapper resourceWrapper = new CollectionResourceWrapper(new Date(), m_nodeId, m_hostAddress, m_serviceName, m_repository, latencyResource, attributesMap);
-        return Collections.unmodifiableList(applyThresholds(resourceWrapper, attributesMap));
+        List<Event> events = applyThresholds(resourceWrapper, attributesMap);
+        InFlightThresholdingRegistry.evaluated(m_nodeId, m_hostAddress, m_serviceName);
+        return Collections.unmodifiableList(events);
     }
     
     /*
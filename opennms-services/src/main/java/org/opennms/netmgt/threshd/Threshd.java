@@ -49,8 +49,9 @@ import org.opennms.netmgt.config.threshd.Package;
 import org.opennms.netmgt.config.threshd.Thresholder;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.model.capsd.DbIfServiceEntry;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
+import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.springframework.dao.DataRetrievalFailureException;
 
 /**
@@ -81,7 +82,7 @@ public final class Threshd extends AbstractServiceDaemon {
     /**
      * Reference to the threshd scheduler
      */
-    private volatile LegacyScheduler m_scheduler;
+    private volatile Scheduler m_scheduler;
 
     /**
      * Indicates if all the existing interfaces have been scheduled
@@ -180,14 +181,14 @@ public final class Threshd extends AbstractServiceDaemon {
             }
         };
 
-        m_scheduler.schedule(interfaceScheduler, 0);
+        m_scheduler.schedule(0, interfaceScheduler);
     }
 
     private void initializeScheduler() {
         try {
             log().debug("start: Creating threshd scheduler");
 
-            m_scheduler = new LegacyScheduler("Threshd", m_threshdConfig.getConfiguration().getThreads());
+            m_scheduler = SchedulerFactory.createScheduler("Threshd", m_threshdConfig.getConfiguration().getThreads());
         } catch (RuntimeException e) {
             log().fatal("start: Failed to create threshd scheduler", e);
             throw e;
@@ -293,9 +294,9 @@ public final class Threshd extends AbstractServiceDaemon {
     /**
      * Returns reference to the scheduler
      *
-     * @return a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @return a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public LegacyScheduler getScheduler() {
+    public Scheduler getScheduler() {
         return m_scheduler;
     }
 
@@ -444,7 +445,7 @@ public final class Threshd extends AbstractServiceDaemon {
                 // interval (default is 5 minutes). This should give
                 // the collector a chance to update the RRD file so
                 // there is data available to be fetched.
-                m_scheduler.schedule(tSvc, tSvc.getInterval());
+                m_scheduler.schedule(tSvc.getInterval(), tSvc);
 
                 if (log().isDebugEnabled())
                     log().debug("scheduleService: " + nodeId + "/" + ipAddress + " scheduled for " + svcName + " threshold checking");
@@ -44,8 +44,8 @@ import org.opennms.netmgt.eventd.EventIpcManagerFactory;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventProxy;
 import org.opennms.netmgt.poller.InetNetworkInterface;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
+import org.opennms.netmgt.scheduler.Scheduler;
 
 /**
  * <P>
@@ -101,7 +101,7 @@ final class ThresholdableService extends InetNetworkInterface implements Thresho
     /**
      * The scheduler for threshd
      */
-    private final LegacyScheduler m_scheduler;
+    private final Scheduler m_scheduler;
 
     /**
      * Service updates
@@ -331,7 +331,15 @@ final class ThresholdableService extends InetNetworkInterface implements Thresho
         // that threshold checking should be skipped
         if (scheduledOutage()) {
             // Outage applied...reschedule the service and return
-            m_scheduler.schedule(this, m_service.getInterval());
+            m_scheduler.schedule(m_service.getInterval(), this);
+            return;
+        }
+
+        // Collectd or pollerd already evaluate these thresholds on the values they
+        // just stored, only read them back from the RRDs when that has stopped
+        if (InFlightThresholdingRegistry.isEvaluated(m_nodeId, getHostAddress(), m_service.getName(), 2 * m_service.getInterval())) {
+            LogUtils.debugf(this, "run: thresholds for %s/%s were evaluated in-flight, skipping threshold check", getHostAddress(), m_service.getName());
+            m_scheduler.schedule(m_service.getInterval(), this);
             return;
         }
 
@@ -374,7 +382,7 @@ final class ThresholdableService extends InetNetworkInterface implements Thresho
 
         // Reschedule ourselves
         //
-        m_scheduler.schedule(this, this.getInterval());
+        m_scheduler.schedule(this.getInterval(), this);
 
         return;
     }
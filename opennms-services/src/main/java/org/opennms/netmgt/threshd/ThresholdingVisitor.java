@@ -185,6 +185,17 @@ public class ThresholdingVisitor extends AbstractCollectionSetVisitor {
         proxy.sendAllEvents();
     }
     
+    /**
+     * Let Threshd know these thresholds are being evaluated in-flight so it
+     * does not read the same values back from the RRD files.
+     */
+    @Override
+    public void completeCollectionSet(CollectionSet set) {
+        if (m_thresholdingSet.hasThresholds()) {
+            InFlightThresholdingRegistry.evaluated(m_thresholdingSet.m_nodeId, m_thresholdingSet.m_hostAddress, m_thresholdingSet.m_serviceName);
+        }
+    }
+
     /*
      * Return the collection timestamp passed in at construct time.  Typically used by tests, but might be  useful elsewhere
      */
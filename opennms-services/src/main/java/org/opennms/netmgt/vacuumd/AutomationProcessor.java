@@ -56,6 +56,8 @@ import org.opennms.netmgt.model.events.Parameter;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Log;
 
 /**
  * This class used to process automations configured in
@@ -79,6 +81,7 @@ public class AutomationProcessor implements ReadyRunnable {
      */
     private final AutoEventProcessor m_autoEvent;
     private final ActionEventProcessor m_actionEvent;
+    private final AutomationStatistics m_statistics;
     
     private volatile Schedule m_schedule;
     private volatile boolean m_ready = false;
@@ -139,6 +142,55 @@ public class AutomationProcessor implements ReadyRunnable {
 			}
 		}
 
+		/**
+		 * Runs the trigger query on a cursor connection of the transaction,
+		 * reading the rows forward only, fetchSize at a time, rather than
+		 * loading them all first.
+		 */
+		ResultSet streamTriggerQuery(int fetchSize) throws SQLException {
+			try {
+				Connection conn = Transaction.getCursorConnection(m_trigger.getDataSource());
+
+				Statement triggerStatement = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				Transaction.register(triggerStatement);
+				triggerStatement.setFetchSize(fetchSize);
+
+				ResultSet triggerResultSet = triggerStatement.executeQuery(getTriggerSQL());
+				Transaction.register(triggerResultSet);
+
+				return triggerResultSet;
+			} catch (SQLException e) {
+				log().warn("Error executing trigger "+getName(), e);
+				throw e;
+			}
+		}
+
+		boolean hasRowCountRestriction() {
+			return hasTrigger() && m_trigger.getRowCount() != 0 && m_trigger.getOperator() != null;
+		}
+
+		/**
+		 * Counts the rows of the trigger query without fetching them, for
+		 * checking the row-count of a trigger whose rows are streamed.
+		 */
+		int countTriggerRows() throws SQLException {
+			String countSQL = "SELECT COUNT(*) FROM (" + getTriggerSQL().trim().replaceAll(";$", "") + ") AS triggerRows";
+			try {
+				Connection conn = Transaction.getCursorConnection(m_trigger.getDataSource());
+
+				Statement countStatement = conn.createStatement();
+				Transaction.register(countStatement);
+
+				ResultSet countResultSet = countStatement.executeQuery(countSQL);
+				Transaction.register(countResultSet);
+
+				return countResultSet.next() ? countResultSet.getInt(1) : 0;
+			} catch (SQLException e) {
+				log().warn("Error counting the rows of trigger "+getName(), e);
+				throw e;
+			}
+		}
+
 		/**
 		 * This method verifies that the number of rows in the result set of the trigger
 		 * match the defined operation in the config.  For example, if the user has specified
@@ -189,15 +241,30 @@ public class AutomationProcessor implements ReadyRunnable {
         
     }
     
+    /**
+     * Row, batch and timing counts of a single run of the automation.
+     */
+    static class RunCounts {
+        int m_rows = 0;
+        int m_batches = 0;
+        long m_executeTime = 0;
+    }
+    
     static class TriggerResults {
     	private final TriggerProcessor m_trigger;
     	private final ResultSet m_resultSet;
     	private final boolean m_successful;
+    	private final int m_rowCount;
     	
 		public TriggerResults(TriggerProcessor trigger, ResultSet set, boolean successful) {
+			this(trigger, set, successful, 0);
+		}
+
+		public TriggerResults(TriggerProcessor trigger, ResultSet set, boolean successful, int rowCount) {
 			m_trigger = trigger;
 			m_resultSet = set;
 			m_successful = successful;
+			m_rowCount = rowCount;
 		}
 		
 		public boolean hasTrigger() {
@@ -211,6 +278,10 @@ public class AutomationProcessor implements ReadyRunnable {
         public boolean isSuccessful() {
             return m_successful;
         }
+
+        public int getRowCount() {
+            return m_rowCount;
+        }
         
     }
     
@@ -218,6 +289,7 @@ public class AutomationProcessor implements ReadyRunnable {
         
         private final String m_automationName;
         private final Action m_action;
+        private List<String> m_actionColumns;
 
         public ActionProcessor(String automationName, Action action) {
             m_automationName = automationName;
@@ -259,7 +331,10 @@ public class AutomationProcessor implements ReadyRunnable {
          * @return
          */
         public List<String> getActionColumns() {
-        	return getTokenizedColumns(getActionSQL());
+            if (m_actionColumns == null) {
+                m_actionColumns = getTokenizedColumns(getActionSQL());
+            }
+            return m_actionColumns;
         }
 
         private List<String> getTokenizedColumns(String targetString) {
@@ -282,8 +357,7 @@ public class AutomationProcessor implements ReadyRunnable {
         }
         
         void assignStatementParameters(PreparedStatement stmt, ResultSet rs) throws SQLException {
-            List<String> actionColumns = getTokenizedColumns(getActionSQL());        
-            Iterator<String> it = actionColumns.iterator();
+            Iterator<String> it = getActionColumns().iterator();
             String actionColumnName = null;
             int i=0;
             while (it.hasNext()) {
@@ -604,22 +678,50 @@ public class AutomationProcessor implements ReadyRunnable {
             
             //Loop through the select results
             while (triggerResultSet.next()) {
-                // the uei will be set by the event assignments
-                EventBuilder bldr = new EventBuilder(null, "Automation");
-                ResultSetSymbolTable symbols = new ResultSetSymbolTable(triggerResultSet);
-                
-                try {
-                    if (m_actionEvent.isAddAllParms() && resultHasColumn(triggerResultSet, "eventParms") ) {
-                        bldr.setParms(Parameter.decode(triggerResultSet.getString("eventParms")));
-                    }
-                    buildEvent(bldr, symbols);
-                } catch (SQLExceptionHolder holder) {
-                    holder.rethrow();
+                Event event = buildEvent(triggerResultSet);
+                log().debug("processTriggerResults: Sending action-event " + event.getUei() + " for automation "+m_automationName);
+                sendEvent(event);
+            }
+
+        }
+
+        /**
+         * Builds the action-event for the current row of the trigger results.
+         */
+        Event buildEvent(ResultSet triggerResultSet) throws SQLException {
+            // the uei will be set by the event assignments
+            EventBuilder bldr = new EventBuilder(null, "Automation");
+            ResultSetSymbolTable symbols = new ResultSetSymbolTable(triggerResultSet);
+            
+            try {
+                if (m_actionEvent.isAddAllParms() && resultHasColumn(triggerResultSet, "eventParms") ) {
+                    bldr.setParms(Parameter.decode(triggerResultSet.getString("eventParms")));
                 }
-                log().debug("processTriggerResults: Sending action-event " + bldr.getEvent().getUei() + " for automation "+m_automationName);
-                sendEvent(bldr.getEvent());
+                buildEvent(bldr, symbols);
+            } catch (SQLExceptionHolder holder) {
+                holder.rethrow();
             }
+            return bldr.getEvent();
+        }
 
+        /**
+         * Sends the action-events built for a batch of trigger rows as a
+         * single event log.
+         */
+        void sendEvents(List<Event> events) {
+            if (events.isEmpty()) {
+                return;
+            }
+            
+            log().debug("sendEvents: Sending " + events.size() + " action-events for automation "+m_automationName);
+            
+            Events eventList = new Events();
+            for (Event event : events) {
+                eventList.addEvent(event);
+            }
+            Log eventLog = new Log();
+            eventLog.setEvents(eventList);
+            Vacuumd.getSingleton().getEventManager().sendNow(eventLog);
         }
 
         private boolean resultHasColumn(ResultSet resultSet, String columnName) {
@@ -659,6 +761,7 @@ public class AutomationProcessor implements ReadyRunnable {
         m_action = new ActionProcessor(m_automation.getName(), VacuumdConfigFactory.getInstance().getAction(m_automation.getActionName()));
         m_autoEvent = new AutoEventProcessor(m_automation.getName(), VacuumdConfigFactory.getInstance().getAutoEvent(m_automation.getAutoEventName()));
         m_actionEvent = new ActionEventProcessor(m_automation.getName(),VacuumdConfigFactory.getInstance().getActionEvent(m_automation.getActionEvent()));
+        m_statistics = Vacuumd.getSingleton().getAutomationStatistics(m_automation.getName());
     }
     
     /**
@@ -710,7 +813,9 @@ public class AutomationProcessor implements ReadyRunnable {
      * of triggers and actions defined for an automation.  An
      * automation may have 0 or 1 trigger and must have 1 action.
      * If the automation doesn't have a trigger than the action
-     * must not contain any tokens.
+     * must not contain any tokens.  When the automation has a
+     * batch-size its trigger rows are streamed and the action is
+     * committed a batch at a time instead of all at once.
      *
      * @throws java.sql.SQLException if any.
      * @return a boolean.
@@ -727,15 +832,23 @@ public class AutomationProcessor implements ReadyRunnable {
         log().debug("runAutomation: Executing trigger: "+m_automation.getTriggerName());
         
         
+        long startTime = System.currentTimeMillis();
+        RunCounts counts = new RunCounts();
+        boolean success = false;
+        
         Transaction.begin();
         try {
             log().debug("runAutomation: Processing automation: "+m_automation.getName());
 
-            TriggerResults results = processTrigger();
+            if (isBatched()) {
+                success = processBatches(counts);
+            } else {
+                TriggerResults results = processTrigger();
+                counts.m_rows = results.getRowCount();
             
-            boolean success = false;
-            if (results.isSuccessful()) {
-                success = processAction(results);
+                if (results.isSuccessful()) {
+                    success = processAction(results, counts);
+                }
             }
             
 			return success;
@@ -748,18 +861,26 @@ public class AutomationProcessor implements ReadyRunnable {
 
             log().debug("runAutomation: Ending processing of automation: "+m_automation.getName());
             
-            Transaction.end();         
+            try {
+                Transaction.end();
+            } finally {
+                m_statistics.record(startTime, System.currentTimeMillis() - startTime, counts.m_rows, counts.m_batches, counts.m_executeTime, success);
+            }
         }
 
     }
 
-    private boolean processAction(TriggerResults triggerResults) throws SQLException {
+    private boolean processAction(TriggerResults triggerResults, RunCounts counts) throws SQLException {
 		log().debug("runAutomation: running action(s)/actionEvent(s) for : "+m_automation.getName());
 		
         //Verfiy the trigger ResultSet returned the required number of rows and the required columns for the action statement
         m_action.checkForRequiredColumns(triggerResults);
         		
-		if (m_action.processAction(triggerResults)) {
+		long executeStart = System.currentTimeMillis();
+		boolean processed = m_action.processAction(triggerResults);
+		counts.m_executeTime += System.currentTimeMillis() - executeStart;
+		
+		if (processed) {
 		    m_actionEvent.processActionEvent(triggerResults);
 		    m_autoEvent.send();
 		    return true;
@@ -768,6 +889,72 @@ public class AutomationProcessor implements ReadyRunnable {
 		}
 	}
 
+    private boolean isBatched() {
+        return hasTrigger() && m_automation.hasBatchSize() && m_automation.getBatchSize() > 0;
+    }
+
+    /**
+     * Streams the trigger rows and runs the action for them in JDBC batches,
+     * committing each batch and then sending its action-events before the
+     * next batch is read.  A failure rolls back only the batch in progress.
+     */
+    private boolean processBatches(RunCounts counts) throws SQLException {
+        int batchSize = m_automation.getBatchSize();
+        
+        if (m_trigger.hasRowCountRestriction()) {
+            //the rows are not read ahead, so count them with a query of their own
+            Trigger trigger = m_trigger.getTrigger();
+            if (!m_trigger.triggerRowCheck(trigger.getRowCount(), trigger.getOperator(), m_trigger.countTriggerRows())) {
+                return false;
+            }
+        }
+        
+        ResultSet triggerResultSet = m_trigger.streamTriggerQuery(batchSize);
+        m_action.checkForRequiredColumns(new TriggerResults(m_trigger, triggerResultSet, true));
+        
+        PreparedStatement actionStatement = m_action.createPreparedStatement();
+        boolean eventPerRow = m_actionEvent.forEachResult();
+        List<Event> events = new ArrayList<Event>(eventPerRow ? batchSize : 0);
+        
+        int batchRows = 0;
+        while (triggerResultSet.next()) {
+            m_action.assignStatementParameters(actionStatement, triggerResultSet);
+            actionStatement.addBatch();
+            if (eventPerRow) {
+                events.add(m_actionEvent.buildEvent(triggerResultSet));
+            }
+            counts.m_rows++;
+            
+            if (++batchRows == batchSize) {
+                executeBatch(actionStatement, events, counts);
+                batchRows = 0;
+            }
+        }
+        
+        if (batchRows > 0) {
+            executeBatch(actionStatement, events, counts);
+        }
+        
+        log().debug("processBatches: processed "+counts.m_rows+" rows in "+counts.m_batches+" batches for automation "+m_automation.getName());
+        
+        if (!eventPerRow) {
+            m_actionEvent.send();
+        }
+        m_autoEvent.send();
+        return true;
+    }
+
+    private void executeBatch(PreparedStatement actionStatement, List<Event> events, RunCounts counts) throws SQLException {
+        long executeStart = System.currentTimeMillis();
+        actionStatement.executeBatch();
+        Transaction.commit();
+        counts.m_executeTime += System.currentTimeMillis() - executeStart;
+        counts.m_batches++;
+        
+        m_actionEvent.sendEvents(events);
+        events.clear();
+    }
+
 	private TriggerResults processTrigger() throws SQLException {
 		
 		if (m_trigger.hasTrigger()) {
@@ -775,8 +962,9 @@ public class AutomationProcessor implements ReadyRunnable {
             //beginning for processing.
 			
             ResultSet triggerResultSet = m_trigger.runTriggerQuery();
+            int resultRows = countRows(triggerResultSet);
 
-            TriggerResults triggerResults = new TriggerResults(m_trigger, triggerResultSet, verifyRowCount(triggerResultSet));
+            TriggerResults triggerResults = new TriggerResults(m_trigger, triggerResultSet, verifyRowCount(resultRows), resultRows);
 
 			return triggerResults;
             
@@ -798,11 +986,13 @@ public class AutomationProcessor implements ReadyRunnable {
         }
         
         
-        int resultRows;
-        boolean validRows = true;
         //determine if number of rows required by the trigger row-count and operator were
         //met by the trigger query, if so we'll run the action
-        resultRows = countRows(triggerResultSet);
+        return verifyRowCount(countRows(triggerResultSet));
+    }
+
+    private boolean verifyRowCount(int resultRows) {
+        boolean validRows = true;
         
         int triggerRowCount = m_trigger.getTrigger().getRowCount();
         String triggerOperator = m_trigger.getTrigger().getOperator();
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.vacuumd;
+
+import java.util.Date;
+
+/**
+ * Timing and row counts of the runs of a single automation.  Vacuumd keeps
+ * one of these per automation name so that the figures survive the
+ * {@link AutomationProcessor} being recreated on a configuration reload.
+ *
+ * @version $Id: $
+ */
+public class AutomationStatistics {
+
+    private final String m_automationName;
+
+    private long m_runs = 0;
+    private long m_failures = 0;
+    private long m_totalRows = 0;
+    private long m_totalExecuteTime = 0;
+
+    private Date m_lastStartTime = null;
+    private long m_lastRunTime = 0;
+    private int m_lastRowCount = 0;
+    private int m_lastBatchCount = 0;
+    private long m_lastExecuteTime = 0;
+
+    /**
+     * <p>Constructor for AutomationStatistics.</p>
+     *
+     * @param automationName a {@link java.lang.String} object.
+     */
+    public AutomationStatistics(String automationName) {
+        m_automationName = automationName;
+    }
+
+    /**
+     * Records a finished run of the automation.
+     *
+     * @param startTime when the run started in milliseconds
+     * @param runTime how long the whole run took in milliseconds
+     * @param rowCount the number of trigger rows that were processed
+     * @param batchCount the number of batches committed, 0 when the run was not batched
+     * @param executeTime the time spent executing and committing the action
+     *            statements in milliseconds, this includes any time spent
+     *            waiting for row locks
+     * @param successful whether the action was run
+     */
+    public synchronized void record(long startTime, long runTime, int rowCount, int batchCount, long executeTime, boolean successful) {
+        m_runs++;
+        if (!successful) {
+            m_failures++;
+        }
+        m_totalRows += rowCount;
+        m_totalExecuteTime += executeTime;
+
+        m_lastStartTime = new Date(startTime);
+        m_lastRunTime = runTime;
+        m_lastRowCount = rowCount;
+        m_lastBatchCount = batchCount;
+        m_lastExecuteTime = executeTime;
+    }
+
+    /**
+     * <p>getAutomationName</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getAutomationName() {
+        return m_automationName;
+    }
+
+    /**
+     * <p>getRuns</p>
+     *
+     * @return a long.
+     */
+    public synchronized long getRuns() {
+        return m_runs;
+    }
+
+    /**
+     * <p>getFailures</p>
+     *
+     * @return a long.
+     */
+    public synchronized long getFailures() {
+        return m_failures;
+    }
+
+    /**
+     * <p>getTotalRows</p>
+     *
+     * @return a long.
+     */
+    public synchronized long getTotalRows() {
+        return m_totalRows;
+    }
+
+    /**
+     * <p>getTotalExecuteTime</p>
+     *
+     * @return a long.
+     */
+    public synchronized long getTotalExecuteTime() {
+        return m_totalExecuteTime;
+    }
+
+    /**
+     * <p>getLastStartTime</p>
+     *
+     * @return a {@link java.util.Date} object.
+     */
+    public synchronized Date getLastStartTime() {
+        return m_lastStartTime;
+    }
+
+    /**
+     * <p>getLastRunTime</p>
+     *
+     * @return a long.
+     */
+    public synchronized long getLastRunTime() {
+        return m_lastRunTime;
+    }
+
+    /**
+     * <p>getLastRowCount</p>
+     *
+     * @return a int.
+     */
+    public synchronized int getLastRowCount() {
+        return m_lastRowCount;
+    }
+
+    /**
+     * <p>getLastBatchCount</p>
+     *
+     * @return a int.
+     */
+    public synchronized int getLastBatchCount() {
+        return m_lastBatchCount;
+    }
+
+    /**
+     * <p>getLastExecuteTime</p>
+     *
+     * @return a long.
+     */
+    public synchronized long getLastExecuteTime() {
+        return m_lastExecuteTime;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized String toString() {
+        return new StringBuilder(128)
+            .append(m_automationName)
+            .append(": runs=").append(m_runs)
+            .append(" failures=").append(m_failures)
+            .append(" rows=").append(m_totalRows)
+            .append(" executeTime=").append(m_totalExecuteTime).append("ms")
+            .append(" lastStart=").append(m_lastStartTime)
+            .append(" lastRunTime=").append(m_lastRunTime).append("ms")
+            .append(" lastRows=").append(m_lastRowCount)
+            .append(" lastBatches=").append(m_lastBatchCount)
+            .append(" lastExecuteTime=").append(m_lastExecuteTime).append("ms")
+            .toString();
+    }
+
+}
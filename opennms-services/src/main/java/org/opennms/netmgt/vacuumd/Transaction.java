@@ -95,6 +95,20 @@ public class Transaction {
         return getTX().doGetConnection(dsName);
     }
 
+    /**
+     * Returns a second connection to the named data source that is never
+     * committed by {@link #commit()} so that a cursor opened on it survives
+     * the intermediate commits of a batched automation.  The connection is
+     * rolled back and closed when the transaction ends.
+     *
+     * @param dsName a {@link java.lang.String} object.
+     * @return a {@link java.sql.Connection} object.
+     * @throws java.sql.SQLException if any.
+     */
+    public static Connection getCursorConnection(String dsName) throws SQLException {
+        return getTX().doGetCursorConnection(dsName);
+    }
+
     /**
      * <p>register</p>
      *
@@ -122,6 +136,16 @@ public class Transaction {
         getTX().doRollbackOnly();
     }
 
+    /**
+     * Commits the work done so far on the connections of this transaction
+     * without ending it.
+     *
+     * @throws java.sql.SQLException if any.
+     */
+    public static void commit() throws SQLException {
+        getTX().doCommit();
+    }
+
     /**
      * <p>end</p>
      *
@@ -139,6 +163,7 @@ public class Transaction {
 	}
     
     private Map<String, Connection> m_connections = new HashMap<String, Connection>();
+    private Map<String, Connection> m_cursorConnections = new HashMap<String, Connection>();
     private List<Statement> m_statements = new LinkedList<Statement>();
     private List<ResultSet> m_resultSets = new LinkedList<ResultSet>();
     private boolean m_rollbackOnly = false;
@@ -167,30 +192,54 @@ public class Transaction {
                     conn.commit();
                 }
             }
+            for(Connection conn : m_cursorConnections.values()) {
+                conn.rollback();
+            }
         } finally {
             doClose();
         }
     }
 
+    private void doCommit() throws SQLException {
+        if (m_rollbackOnly) {
+            throw new IllegalStateException("Cannot commit a transaction that has been marked rollback only");
+        }
+        for(Connection conn : m_connections.values()) {
+            conn.commit();
+        }
+    }
+
     private void doRollbackOnly() throws SQLException {
         m_rollbackOnly = true;
     }
 
     private Connection doGetConnection(String dsName) throws SQLException {
         if (!m_connections.containsKey(dsName)) {
-            DataSource ds = DataSourceFactory.getDataSource(dsName);
-            if (ds == null) {
-                throw new IllegalArgumentException("Could not find this datasource by using the DataSourceFactory: " + dsName);
-            }
-            Connection conn = ds.getConnection();
-            m_dbUtils.watch(conn);
-            m_connections.put(dsName, conn);
-            conn.setAutoCommit(false);
+            m_connections.put(dsName, openConnection(dsName));
         } 
         
         return m_connections.get(dsName);
     }
 
+    private Connection doGetCursorConnection(String dsName) throws SQLException {
+        if (!m_cursorConnections.containsKey(dsName)) {
+            m_cursorConnections.put(dsName, openConnection(dsName));
+        }
+
+        return m_cursorConnections.get(dsName);
+    }
+
+    private Connection openConnection(String dsName) throws SQLException {
+        DataSource ds = DataSourceFactory.getDataSource(dsName);
+        if (ds == null) {
+            throw new IllegalArgumentException("Could not find this datasource by using the DataSourceFactory: " + dsName);
+        }
+        Connection conn = ds.getConnection();
+        m_dbUtils.watch(conn);
+        conn.setAutoCommit(false);
+        return conn;
+    }
+
     /**
      * <p>finalize</p>
      */
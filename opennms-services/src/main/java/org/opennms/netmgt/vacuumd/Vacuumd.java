@@ -34,7 +34,11 @@ import java.lang.reflect.UndeclaredThrowableException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 
 import javax.sql.DataSource;
@@ -80,6 +84,8 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
 
     private volatile EventIpcManager m_eventMgr;
 
+    private final ConcurrentMap<String, AutomationStatistics> m_statistics = new ConcurrentHashMap<String, AutomationStatistics>();
+
     /**
      * <p>getSingleton</p>
      *
@@ -330,6 +336,34 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
         m_eventMgr = eventMgr;
     }
 
+    /**
+     * Returns the statistics kept for the named automation, creating them
+     * on first use.
+     *
+     * @param automationName a {@link java.lang.String} object.
+     * @return a {@link org.opennms.netmgt.vacuumd.AutomationStatistics} object.
+     */
+    public AutomationStatistics getAutomationStatistics(String automationName) {
+        AutomationStatistics stats = m_statistics.get(automationName);
+        if (stats == null) {
+            AutomationStatistics newStats = new AutomationStatistics(automationName);
+            stats = m_statistics.putIfAbsent(automationName, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * <p>getAutomationStatistics</p>
+     *
+     * @return a {@link java.util.Collection} object.
+     */
+    public Collection<AutomationStatistics> getAutomationStatistics() {
+        return Collections.unmodifiableCollection(m_statistics.values());
+    }
+
     /** {@inheritDoc} */
     public void onEvent(Event event) {
         
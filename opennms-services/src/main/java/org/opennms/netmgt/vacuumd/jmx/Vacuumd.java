@@ -28,8 +28,13 @@
 
 package org.opennms.netmgt.vacuumd.jmx;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.opennms.netmgt.eventd.EventIpcManagerFactory;
 import org.opennms.netmgt.model.events.EventIpcManager;
+import org.opennms.netmgt.vacuumd.AutomationStatistics;
 
 /**
  * Implementws the VacuumdMBead interface and delegeates the mbean
@@ -123,6 +128,59 @@ public class Vacuumd implements VacuumdMBean {
         return org.opennms.core.fiber.Fiber.STATUS_NAMES[getStatus()];
     }
 
+    /**
+     * <p>getNumAutomationRuns</p>
+     *
+     * @return a long.
+     */
+    public long getNumAutomationRuns() {
+        long runs = 0;
+        for (AutomationStatistics stats : getVacuumd().getAutomationStatistics()) {
+            runs += stats.getRuns();
+        }
+        return runs;
+    }
+
+    /**
+     * <p>getNumRowsProcessed</p>
+     *
+     * @return a long.
+     */
+    public long getNumRowsProcessed() {
+        long rows = 0;
+        for (AutomationStatistics stats : getVacuumd().getAutomationStatistics()) {
+            rows += stats.getTotalRows();
+        }
+        return rows;
+    }
+
+    /**
+     * <p>getTotalExecuteTime</p>
+     *
+     * @return a long.
+     */
+    public long getTotalExecuteTime() {
+        long time = 0;
+        for (AutomationStatistics stats : getVacuumd().getAutomationStatistics()) {
+            time += stats.getTotalExecuteTime();
+        }
+        return time;
+    }
+
+    /**
+     * <p>getAutomationStatistics</p>
+     *
+     * @return an array of {@link java.lang.String} objects.
+     */
+    public String[] getAutomationStatistics() {
+        List<String> lines = new ArrayList<String>();
+        for (AutomationStatistics stats : getVacuumd().getAutomationStatistics()) {
+            lines.add(stats.toString());
+        }
+        Collections.sort(lines);
+        return lines.toArray(new String[lines.size()]);
+    }
+
     private org.opennms.netmgt.vacuumd.Vacuumd getVacuumd() {
         return org.opennms.netmgt.vacuumd.Vacuumd.getSingleton();
     }
@@ -40,4 +40,25 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface VacuumdMBean extends BaseOnmsMBean {
+
+    /**
+     * @return the number of automation runs since Vacuumd started
+     */
+    public long getNumAutomationRuns();
+
+    /**
+     * @return the number of trigger rows processed by all automations
+     */
+    public long getNumRowsProcessed();
+
+    /**
+     * @return the milliseconds all automations spent executing and
+     *         committing action statements, including lock waits
+     */
+    public long getTotalExecuteTime();
+
+    /**
+     * @return one line of timing and row counts for each automation that has run
+     */
+    public String[] getAutomationStatistics();
 }
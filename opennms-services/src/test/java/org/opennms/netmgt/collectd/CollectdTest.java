@@ -327,6 +327,20 @@ public class CollectdTest extends TestCase {
     }
 
     public void testOneMatchingSpec() throws CollectionException, CollectionInitializationException {
+        // the strict interface DAO mock fails the test if collection loads the agent from the database
+        runOneMatchingSpec(true);
+    }
+
+    public void testOneMatchingSpecWithoutAgentSnapshots() throws CollectionException, CollectionInitializationException {
+        System.setProperty(Collectd.AGENT_SNAPSHOTS_PROPERTY, "false");
+        try {
+            runOneMatchingSpec(false);
+        } finally {
+            System.clearProperty(Collectd.AGENT_SNAPSHOTS_PROPERTY);
+        }
+    }
+
+    private void runOneMatchingSpec(boolean agentSnapshots) throws CollectionException, CollectionInitializationException {
         String svcName = "SNMP";
         OnmsIpInterface iface = getInterface();
 
@@ -353,7 +367,7 @@ public class CollectdTest extends TestCase {
 			}
         };      
         expect(m_collector.collect(isA(CollectionAgent.class), isA(EventProxy.class), isAMap(String.class, Object.class))).andReturn(collectionSetResult);
-        setupInterface(iface);
+        setupInterface(iface, agentSnapshots);
         
         setupTransactionManager();
   
@@ -404,9 +418,11 @@ public class CollectdTest extends TestCase {
         expectLastCall().anyTimes();
     }
 
-    private void setupInterface(OnmsIpInterface iface) {
+    private void setupInterface(OnmsIpInterface iface, boolean agentSnapshots) {
         expect(m_ipIfDao.findByServiceType("SNMP")).andReturn(Collections.singletonList(iface));
-        expect(m_ipIfDao.load(iface.getId())).andReturn(iface).atLeastOnce();
+        if (!agentSnapshots) {
+            expect(m_ipIfDao.load(iface.getId())).andReturn(iface).atLeastOnce();
+        }
     }
 
     private void setupCollector(String svcName) throws CollectionInitializationException {
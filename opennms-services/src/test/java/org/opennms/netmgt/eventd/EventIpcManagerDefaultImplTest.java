@@ -32,11 +32,16 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
 import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.model.events.BatchEventListener;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventListener;
 import org.opennms.netmgt.xml.event.Event;
@@ -453,6 +458,122 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         m_mocks.verifyAll();
     }
     
+    public void testBatchEventListenerReceivesQueuedEventsInOrder() throws Exception {
+        final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Event> received = Collections.synchronizedList(new ArrayList<Event>());
+
+        m_mocks.replayAll();
+
+        m_manager.addEventListener(new BatchEventListener() {
+            public String getName() {
+                return "batch listener";
+            }
+
+            public void onEvent(Event e) {
+                fail("onEvent should not be called on a BatchEventListener");
+            }
+
+            public void onEvents(List<Event> events) {
+                firstBatchStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                batchSizes.add(events.size());
+                received.addAll(events);
+            }
+        }, "uei.opennms.org/foo/");
+
+        List<Event> sent = new ArrayList<Event>();
+        for (int i = 0; i < 10; i++) {
+            Event event = new EventBuilder("uei.opennms.org/foo/event" + i, "testBatchEventListenerReceivesQueuedEventsInOrder").getEvent();
+            sent.add(event);
+            m_manager.broadcastNow(event);
+            if (i == 0) {
+                // hold the listener on the first event while the others queue up
+                assertTrue(firstBatchStarted.await(1, TimeUnit.SECONDS));
+            }
+        }
+        release.countDown();
+        waitForEventsDelivered(m_manager, 10);
+
+        m_mocks.verifyAll();
+
+        assertEquals(sent, received);
+        assertEquals(Arrays.asList(1, 9), batchSizes);
+
+        ListenerQueueStatistics stats = m_manager.getListenerQueueStatistics().get(0);
+        assertEquals("batch listener", stats.getListenerName());
+        assertEquals(10, stats.getEventsDelivered());
+        assertEquals(2, stats.getBatchesDelivered());
+        assertEquals(0, stats.getEventsDropped());
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    public void testFullListenerQueueCountsDroppedEvents() throws Exception {
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl();
+        manager.setEventHandler(m_eventHandler);
+        manager.setHandlerPoolSize(5);
+        manager.setHandlerQueueLength(2);
+        manager.afterPropertiesSet();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        m_mocks.replayAll();
+
+        manager.addEventListener(new EventListener() {
+            public String getName() {
+                return "slow listener";
+            }
+
+            public void onEvent(Event e) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        manager.broadcastNow(new EventBuilder("uei.opennms.org/foo/first", "testFullListenerQueueCountsDroppedEvents").getEvent());
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            manager.broadcastNow(new EventBuilder("uei.opennms.org/foo/next", "testFullListenerQueueCountsDroppedEvents").getEvent());
+        }
+
+        ListenerQueueStatistics stats = manager.getListenerQueueStatistics().get(0);
+        assertEquals(2, stats.getQueueDepth());
+        assertEquals(2, stats.getQueueCapacity());
+        assertEquals(3, stats.getEventsDropped());
+
+        release.countDown();
+        waitForEventsDelivered(manager, 3);
+
+        m_mocks.verifyAll();
+
+        assertEquals(3, manager.getListenerQueueStatistics().get(0).getEventsDelivered());
+    }
+
+    /**
+     * Waits for the first listener of the manager to have been handed the given
+     * number of events. The counts are updated after the listener returns, so
+     * they are polled rather than signalled from the listener itself.
+     */
+    private static void waitForEventsDelivered(EventIpcManagerDefaultImpl manager, long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (manager.getListenerQueueStatistics().get(0).getEventsDelivered() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out waiting for " + expected + " events to be delivered, got " + manager.getListenerQueueStatistics().get(0).getEventsDelivered());
+            }
+            Thread.sleep(10);
+        }
+    }
+
     public class MockEventListener implements EventListener {
         private List<Event> m_events = new ArrayList<Event>();
         
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.utils.LogUtils;
+import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.eventd.adaptors.EventQueueMonitor;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+
+/**
+ * Pushes the same load through the non-blocking and the thread-per-connection
+ * TCP event receivers and reports the event rate and the peak number of
+ * threads for each.
+ */
+public class TcpEventReceiverLoadTest {
+    private static final int CONNECTIONS = 100;
+    private static final int RECORDS_PER_CONNECTION = 20;
+    private static final int EVENTS = CONNECTIONS * RECORDS_PER_CONNECTION;
+    private static final int CLIENT_THREADS = 10;
+
+    private final CountingEventHandler m_handler = new CountingEventHandler();
+    private ExecutorService m_clients;
+    private TcpEventReceiver m_receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(false, "WARN");
+        m_clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_receiver != null) {
+            m_receiver.stop();
+        }
+        m_clients.shutdownNow();
+    }
+
+    @Test
+    @Ignore("load test that compares thread counts; run it by hand")
+    public void testNonBlockingUsesFewerThreads() throws Exception {
+        final int legacyThreads = runLoad(false);
+        m_receiver.stop();
+        m_handler.reset();
+
+        final int nioThreads = runLoad(true);
+
+        assertTrue("expected the non-blocking receiver (" + nioThreads + " threads) to need fewer threads than the thread-per-connection receiver (" + legacyThreads + " threads)", nioThreads < legacyThreads);
+    }
+
+    @Test
+    public void testPausesWhileQueueIsSaturated() throws Exception {
+        final AtomicBoolean saturated = new AtomicBoolean(true);
+        final AtomicReference<CountDownLatch> queueChecks = new AtomicReference<CountDownLatch>(new CountDownLatch(0));
+        final int port = getFreePort();
+        m_receiver = new TcpEventReceiver(port, "127.0.0.1");
+        m_receiver.setEventHandlers(Collections.<EventHandler>singletonList(m_handler));
+        m_receiver.setQueueMonitor(new EventQueueMonitor() {
+            @Override
+            public boolean isSaturated() {
+                queueChecks.get().countDown();
+                return saturated.get();
+            }
+        });
+        m_receiver.start();
+
+        final Socket socket = new Socket("127.0.0.1", port);
+        try {
+            final OutputStream out = socket.getOutputStream();
+            for (int i = 0; i < RECORDS_PER_CONNECTION; i++) {
+                out.write(getRecord(i, false).getBytes("UTF-8"));
+            }
+            out.flush();
+
+            // the server checks the queue on every pass of its select loop, so after a few checks it has seen the records
+            final CountDownLatch checks = new CountDownLatch(3);
+            queueChecks.set(checks);
+            assertTrue("the server stopped checking the event queue", checks.await(10, TimeUnit.SECONDS));
+            assertEquals(0, m_handler.getCount());
+
+            saturated.set(false);
+            m_handler.waitFor(RECORDS_PER_CONNECTION, 10000);
+            assertEquals(RECORDS_PER_CONNECTION, m_handler.getCount());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private int runLoad(final boolean nonBlocking) throws Exception {
+        final int port = getFreePort();
+        m_receiver = new TcpEventReceiver(port, "127.0.0.1");
+        m_receiver.setEventHandlers(Collections.<EventHandler>singletonList(m_handler));
+        m_receiver.setNonBlocking(nonBlocking);
+        m_receiver.start();
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        final int baseline = threads.getThreadCount();
+
+        // open all the connections before sending anything so they are served concurrently
+        final List<Socket> sockets = new ArrayList<Socket>(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            sockets.add(new Socket("127.0.0.1", port));
+        }
+
+        final long start = System.currentTimeMillis();
+        final List<Future<Integer>> results = new ArrayList<Future<Integer>>(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            final Socket socket = sockets.get(i);
+            final int connection = i;
+            results.add(m_clients.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    try {
+                        final StringBuilder records = new StringBuilder();
+                        for (int j = 0; j < RECORDS_PER_CONNECTION; j++) {
+                            records.append(getRecord(connection * RECORDS_PER_CONNECTION + j, j % 2 == 0));
+                        }
+                        final OutputStream out = socket.getOutputStream();
+                        out.write(records.toString().getBytes("UTF-8"));
+                        out.flush();
+                        socket.shutdownOutput();
+
+                        // read the receipts until the server closes the connection
+                        final InputStream in = socket.getInputStream();
+                        final byte[] buffer = new byte[4096];
+                        int total = 0;
+                        int read;
+                        while ((read = in.read(buffer)) >= 0) {
+                            total += read;
+                        }
+                        return total;
+                    } finally {
+                        socket.close();
+                    }
+                }
+            }));
+        }
+
+        final long mid = System.currentTimeMillis();
+        for (final Future<Integer> result : results) {
+            assertTrue("expected event receipts", result.get() > 0);
+        }
+        m_handler.waitFor(EVENTS, 60000);
+        final long end = System.currentTimeMillis();
+
+        assertEquals(EVENTS, m_handler.getCount());
+
+        final int peakThreads = threads.getPeakThreadCount() - baseline;
+        final long total = (end - start);
+        final double eventsPerSecond = (EVENTS * 1000.0) / (double) total;
+        LogUtils.infof(this, "%s receiver: total time: %d, wait time: %d, events per second: %8.4f, additional threads: %d", (nonBlocking ? "non-blocking" : "thread-per-connection"), total, (end - mid), eventsPerSecond, peakThreads);
+        return peakThreads;
+    }
+
+    private static String getRecord(final int id, final boolean qualified) {
+        return "<log" + (qualified ? " xmlns=\"http://xmlns.opennms.org/xsd/event\"" : "") + ">"
+            + "<events><event uuid=\"" + id + "\">"
+            + "<uei>uei.opennms.org/test/tcpLoad</uei>"
+            + "<source>TcpEventReceiverLoadTest</source>"
+            + "<interface>127.0.0.1</interface>"
+            + "</event></events></log>\n";
+    }
+
+    private static int getFreePort() throws Exception {
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static final class CountingEventHandler implements EventHandler {
+        private final AtomicInteger m_count = new AtomicInteger(0);
+
+        @Override
+        public boolean processEvent(final Event event) {
+            m_count.incrementAndGet();
+            synchronized (this) {
+                notifyAll();
+            }
+            return true;
+        }
+
+        @Override
+        public void receiptSent(final EventReceipt receipt) {
+        }
+
+        public int getCount() {
+            return m_count.get();
+        }
+
+        public void reset() {
+            m_count.set(0);
+        }
+
+        public synchronized void waitFor(final int count, final long timeout) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+            while (m_count.get() < count && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+    }
+}
@@ -28,7 +28,9 @@
 
 package org.opennms.netmgt.eventd.datablock;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.opennms.core.utils.InetAddressUtils.addr;
@@ -113,6 +115,48 @@ public class EventConfDataTest {
         assertTrue(EventConfData.eventValuePassesMaskValue("Is FooBar On Air", Collections.singletonList("~.*Foo[Bb]ar.*")));
     }
 
+    @Test
+    public void testFirstMatchOrderAcrossIndexBuckets() {
+        final org.opennms.netmgt.xml.eventconf.Event regex = createConfEvent("uei.opennms.org/test/regex", "source", "~^test.*$");
+        final org.opennms.netmgt.xml.eventconf.Event prefix = createConfEvent("uei.opennms.org/test/prefix", "source", "test%");
+        final org.opennms.netmgt.xml.eventconf.Event exact = createConfEvent("uei.opennms.org/test/exact", "source", "testSource");
+
+        final EventConfData data = new EventConfData();
+        data.put(regex);
+        data.put(prefix);
+        data.put(exact);
+
+        final Event event = new EventBuilder("uei.opennms.org/foo", "testSource").getEvent();
+        assertEquals(regex, data.getEvent(event));
+
+        data.clear();
+        data.put(prefix);
+        data.put(exact);
+        data.put(regex);
+        assertEquals(prefix, data.getEvent(event));
+
+        data.clear();
+        data.put(exact);
+        data.put(regex);
+        data.put(prefix);
+        assertEquals(exact, data.getEvent(event));
+
+        final Event other = new EventBuilder("uei.opennms.org/foo", "otherSource").getEvent();
+        assertNull(data.getEvent(other));
+    }
+
+    private static org.opennms.netmgt.xml.eventconf.Event createConfEvent(final String uei, final String mename, final String mevalue) {
+        final org.opennms.netmgt.xml.eventconf.Maskelement element = new org.opennms.netmgt.xml.eventconf.Maskelement();
+        element.setMename(mename);
+        element.addMevalue(mevalue);
+        final org.opennms.netmgt.xml.eventconf.Mask mask = new org.opennms.netmgt.xml.eventconf.Mask();
+        mask.addMaskelement(element);
+        final org.opennms.netmgt.xml.eventconf.Event event = new org.opennms.netmgt.xml.eventconf.Event();
+        event.setUei(uei);
+        event.setMask(mask);
+        return event;
+    }
+
     @Test
     public void testV1TrapNewSuspect() throws Exception {
         anticipateAndSend(null, "v1", null, 6, 1);
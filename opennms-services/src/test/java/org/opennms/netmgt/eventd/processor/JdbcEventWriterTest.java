@@ -30,6 +30,11 @@ package org.opennms.netmgt.eventd.processor;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.opennms.core.test.db.PopulatedTemporaryDatabaseTestCase;
 import org.opennms.netmgt.EventConstants;
@@ -250,4 +255,98 @@ public class JdbcEventWriterTest extends PopulatedTemporaryDatabaseTestCase {
         assertEquals("event count", 1, getJdbcTemplate().queryForInt("select count(*) from events"));
         assertEquals("event service ID", serviceId, getJdbcTemplate().queryForInt("select serviceID from events"));
     }
+
+    public void testBatchedWritesAssignUniqueIds() throws Exception {
+        m_jdbcEventWriter.setBatchSize(10);
+        m_jdbcEventWriter.setBatchTimeout(50);
+        m_jdbcEventWriter.afterPropertiesSet();
+
+        final int threadCount = 5;
+        final int eventsPerThread = 20;
+        final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            threads.add(new Thread("batch-writer-" + i) {
+                public void run() {
+                    for (int j = 0; j < eventsPerThread; j++) {
+                        final EventBuilder bldr = new EventBuilder("testUei", "testSource");
+                        bldr.setLogDest("logndisplay");
+                        final Event event = bldr.getEvent();
+                        try {
+                            m_jdbcEventWriter.process(null, event);
+                            events.add(event);
+                        } catch (final Throwable t) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("failures: " + failures, 0, failures.size());
+        assertEquals(threadCount * eventsPerThread, getJdbcTemplate().queryForInt("select count(*) from events"));
+
+        final Set<Integer> dbids = new HashSet<Integer>();
+        for (final Event event : events) {
+            assertTrue("event should have a dbid", event.hasDbid());
+            dbids.add(event.getDbid());
+            assertEquals(1, getJdbcTemplate().queryForInt("select count(*) from events where eventId = ?", event.getDbid()));
+        }
+        assertEquals("dbids should be unique", threadCount * eventsPerThread, dbids.size());
+
+        final BatchStatistics stats = m_jdbcEventWriter.getBatchStatistics();
+        assertEquals(threadCount * eventsPerThread, stats.getEventsWritten());
+        assertTrue(stats.getMaxBatchSize() <= 10);
+        assertEquals(0, stats.getBatchesFailed());
+    }
+
+    public void testFailedBatchOnlyFailsTheBadEvent() throws Exception {
+        m_jdbcEventWriter.setBatchSize(3);
+        m_jdbcEventWriter.setBatchTimeout(5000);
+        m_jdbcEventWriter.afterPropertiesSet();
+
+        final List<Event> written = Collections.synchronizedList(new ArrayList<Event>());
+        final List<Event> failed = Collections.synchronizedList(new ArrayList<Event>());
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++) {
+            // eventSource is NOT NULL, so the event without a source cannot be stored
+            final EventBuilder bldr = new EventBuilder("testUei", i == 1 ? null : "testSource");
+            bldr.setLogDest("logndisplay");
+            final Event event = bldr.getEvent();
+            threads.add(new Thread("batch-writer-" + i) {
+                public void run() {
+                    try {
+                        m_jdbcEventWriter.process(null, event);
+                        written.add(event);
+                    } catch (final Throwable t) {
+                        failed.add(event);
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("written events", 2, written.size());
+        assertEquals("failed events", 1, failed.size());
+        assertNull("the failed event has no source", failed.get(0).getSource());
+        assertEquals(2, getJdbcTemplate().queryForInt("select count(*) from events"));
+        for (final Event event : written) {
+            assertEquals(1, getJdbcTemplate().queryForInt("select count(*) from events where eventId = ?", event.getDbid()));
+        }
+        assertEquals(1, m_jdbcEventWriter.getBatchStatistics().getBatchesFailed());
+    }
 }
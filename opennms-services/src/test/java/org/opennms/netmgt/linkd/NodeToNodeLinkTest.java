@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.linkd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class NodeToNodeLinkTest {
+
+    @Test
+    public void testReversedLinkIsDuplicate() {
+        final NodeToNodeLink link = new NodeToNodeLink(1, 10);
+        link.setNodeparentid(2);
+        link.setParentifindex(20);
+
+        final NodeToNodeLink reversed = new NodeToNodeLink(2, 20);
+        reversed.setNodeparentid(1);
+        reversed.setParentifindex(10);
+
+        assertEquals(link, reversed);
+        assertEquals(link.hashCode(), reversed.hashCode());
+
+        final Set<NodeToNodeLink> links = new HashSet<NodeToNodeLink>();
+        links.add(link);
+        links.add(reversed);
+        assertEquals(1, links.size());
+    }
+
+}
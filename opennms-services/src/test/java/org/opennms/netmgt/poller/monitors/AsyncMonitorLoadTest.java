@@ -0,0 +1,525 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.utils.LogUtils;
+import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatusCallback;
+import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+import org.opennms.netmgt.poller.nio.AsyncPollEngine;
+
+/**
+ * Polls in-process stub servers with the asynchronous monitors and compares
+ * throughput and thread usage with the blocking TcpMonitor on a fixed pool of
+ * poller threads.  The comparison depends on the machine it runs on, so it is
+ * left out of the regular build.
+ */
+public class AsyncMonitorLoadTest {
+    private static final int POLLER_THREADS = 8;
+    private static final int POLLS = 20000;
+    private static final int DEAD_POLLS = 400;
+    private static final int DEAD_TIMEOUT = 250;
+    private static final int LIVE_TIMEOUT = 3000;
+
+    static {
+        // a single loopback listener drops SYNs long before a real network
+        // would, so keep the number of connections in flight modest
+        if (System.getProperty(AsyncPollEngine.MAX_ACTIVE_PROPERTY) == null) {
+            System.setProperty(AsyncPollEngine.MAX_ACTIVE_PROPERTY, "256");
+        }
+    }
+
+    private final List<StubServer> m_servers = new ArrayList<StubServer>();
+    private StubDnsServer m_dns;
+    private MonitoredService m_svc;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(false, "WARN");
+        m_svc = MonitorTestUtils.getMonitoredService(1, InetAddress.getByName("127.0.0.1"), "TEST");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (StubServer server : m_servers) {
+            server.stop();
+        }
+        if (m_dns != null) {
+            m_dns.stop();
+        }
+    }
+
+    @Test
+    public void testProtocols() throws Exception {
+        assertAvailable(new AsyncSmtpMonitor(), smtpServer());
+        assertAvailable(new AsyncPop3Monitor(), pop3Server());
+        assertAvailable(new AsyncImapMonitor(), imapServer());
+        assertAvailable(new AsyncHttpMonitor(), httpServer());
+
+        Map<String, Object> params = parameters(smtpServer().getPort());
+        params.put("banner", "ESMTP");
+        assertEquals(PollStatus.SERVICE_AVAILABLE, new AsyncTcpMonitor().poll(m_svc, params).getStatusCode());
+        params.put("banner", "IMAP");
+        PollStatus status = new AsyncTcpMonitor().poll(m_svc, params);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("does not contain match string"));
+
+        params = parameters(httpServer().getPort());
+        params.put("response-text", "~.*stub.*");
+        assertEquals(PollStatus.SERVICE_AVAILABLE, new AsyncHttpMonitor().poll(m_svc, params).getStatusCode());
+        params.put("response-text", "missing");
+        status = new AsyncHttpMonitor().poll(m_svc, params);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("not found in body"));
+        params.remove("response-text");
+        params.put("response", "300-399");
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, new AsyncHttpMonitor().poll(m_svc, params).getStatusCode());
+
+        m_dns = new StubDnsServer(0);
+        params = parameters(m_dns.getPort());
+        params.put("lookup", "localhost");
+        assertEquals(PollStatus.SERVICE_AVAILABLE, new AsyncDnsMonitor().poll(m_svc, params).getStatusCode());
+        m_dns.stop();
+        m_dns = new StubDnsServer(2);
+        params.put("port", String.valueOf(m_dns.getPort()));
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, new AsyncDnsMonitor().poll(m_svc, params).getStatusCode());
+    }
+
+    @Test
+    public void testRetriesUnresponsiveServer() throws Exception {
+        StubServer silent = silentServer();
+        Map<String, Object> params = parameters(silent.getPort());
+        params.put("retry", "2");
+
+        long start = System.currentTimeMillis();
+        PollStatus status = new AsyncPop3Monitor().poll(m_svc, params);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertEquals("expected one attempt and two retries", 3, silent.getConnections());
+        assertTrue("expected three timeouts but took " + elapsed + "ms", elapsed >= 3 * DEAD_TIMEOUT);
+    }
+
+    @Test
+    @Ignore("load test that compares timings; run it by hand")
+    public void testThroughputAgainstBlockingMonitor() throws Exception {
+        MockLogAppender.setupLogging(true, "INFO");
+
+        final StubServer smtp = smtpServer();
+        final Map<String, Object> params = parameters(smtp.getPort());
+        params.put("banner", "220");
+        params.put("timeout", String.valueOf(LIVE_TIMEOUT));
+
+        ThreadWatcher watcher = new ThreadWatcher();
+        long start = System.nanoTime();
+        int available = pollAsync(new AsyncTcpMonitor(), params, POLLS);
+        double asyncRate = rate(POLLS, start);
+        int asyncThreads = watcher.finish();
+        assertEquals(POLLS, available);
+
+        watcher = new ThreadWatcher();
+        start = System.nanoTime();
+        available = pollBlocking(new TcpMonitor(), params, POLLS);
+        double blockingRate = rate(POLLS, start);
+        int blockingThreads = watcher.finish();
+        assertEquals(POLLS, available);
+
+        LogUtils.infof(this, "live services: async %.0f polls/s (%d extra threads), blocking %.0f polls/s (%d extra threads)", asyncRate, asyncThreads, blockingRate, blockingThreads);
+
+        final StubServer silent = silentServer();
+        final Map<String, Object> dead = parameters(silent.getPort());
+        dead.put("banner", "220");
+
+        start = System.nanoTime();
+        pollAsync(new AsyncTcpMonitor(), dead, DEAD_POLLS);
+        long asyncDead = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        start = System.nanoTime();
+        pollBlocking(new TcpMonitor(), dead, DEAD_POLLS);
+        long blockingDead = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        LogUtils.infof(this, "unresponsive services: async %dms, blocking %dms for %d polls with a %dms timeout", asyncDead, blockingDead, DEAD_POLLS, DEAD_TIMEOUT);
+
+        assertTrue("expected the asynchronous monitor to wait out the timeouts concurrently", asyncDead < blockingDead / 4);
+    }
+
+    private void assertAvailable(ServiceMonitor monitor, StubServer server) {
+        PollStatus status = monitor.poll(m_svc, parameters(server.getPort()));
+        assertEquals(monitor.getClass().getSimpleName() + ": " + status.getReason(), PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+    }
+
+    private int pollAsync(AsyncServiceMonitor monitor, Map<String, Object> params, int polls) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(polls);
+        final AtomicInteger available = new AtomicInteger();
+        for (int i = 0; i < polls; i++) {
+            monitor.pollAsync(m_svc, params, new PollStatusCallback() {
+                public void complete(PollStatus status) {
+                    if (status.isAvailable()) {
+                        available.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue("asynchronous polls did not complete", latch.await(120, TimeUnit.SECONDS));
+        return available.get();
+    }
+
+    private int pollBlocking(final ServiceMonitor monitor, final Map<String, Object> params, int polls) throws InterruptedException {
+        final AtomicInteger available = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(POLLER_THREADS);
+        for (int i = 0; i < polls; i++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    if (monitor.poll(m_svc, params).isAvailable()) {
+                        available.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue("blocking polls did not complete", pool.awaitTermination(300, TimeUnit.SECONDS));
+        return available.get();
+    }
+
+    private static double rate(int polls, long startNanos) {
+        return polls * 1000000000.0 / (System.nanoTime() - startNanos);
+    }
+
+    private static Map<String, Object> parameters(int port) {
+        Map<String, Object> params = new ConcurrentSkipListMap<String, Object>();
+        params.put("port", String.valueOf(port));
+        params.put("retry", "0");
+        params.put("timeout", String.valueOf(DEAD_TIMEOUT));
+        return params;
+    }
+
+    private StubServer smtpServer() throws IOException {
+        return start(new Script("220 stub ESMTP ready\r\n") {
+            String reply(String line) {
+                if (line.startsWith("HELO")) {
+                    return "250-stub\r\n250 HELP\r\n";
+                }
+                return line.equals("QUIT") ? "221 bye\r\n" : "500 what?\r\n";
+            }
+        });
+    }
+
+    private StubServer pop3Server() throws IOException {
+        return start(new Script("+OK stub POP3 ready\r\n") {
+            String reply(String line) {
+                return line.equals("QUIT") ? "+OK bye\r\n" : "-ERR what?\r\n";
+            }
+        });
+    }
+
+    private StubServer imapServer() throws IOException {
+        return start(new Script("* OK stub IMAP ready\r\n") {
+            String reply(String line) {
+                return line.equals("ONMSPOLLER LOGOUT") ? "* BYE stub\r\nONMSPOLLER OK LOGOUT completed\r\n" : "* BAD what?\r\n";
+            }
+        });
+    }
+
+    private StubServer httpServer() throws IOException {
+        return start(new Script(null) {
+            String reply(String line) {
+                return line.length() == 0 ? "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nConnection: close\r\n\r\nhello from the\r\nstub server\r\n" : null;
+            }
+
+            boolean closeAfter(String line) {
+                return line.length() == 0;
+            }
+        });
+    }
+
+    private StubServer silentServer() throws IOException {
+        return start(new Script(null) {
+            String reply(String line) {
+                return null;
+            }
+        });
+    }
+
+    private StubServer start(Script script) throws IOException {
+        StubServer server = new StubServer(script);
+        m_servers.add(server);
+        return server;
+    }
+
+    /**
+     * Samples the number of live threads and reports the peak above the
+     * starting count.
+     */
+    private static final class ThreadWatcher extends Thread {
+        private final ThreadMXBean m_threads = ManagementFactory.getThreadMXBean();
+        private final int m_baseline = m_threads.getThreadCount();
+        private volatile boolean m_running = true;
+        private volatile int m_peak = m_baseline;
+
+        ThreadWatcher() {
+            setDaemon(true);
+            start();
+        }
+
+        public void run() {
+            while (m_running) {
+                m_peak = Math.max(m_peak, m_threads.getThreadCount());
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        int finish() throws InterruptedException {
+            m_running = false;
+            join();
+            return m_peak - m_baseline - 1;
+        }
+    }
+
+    private static abstract class Script {
+        private final String m_greeting;
+
+        Script(String greeting) {
+            m_greeting = greeting;
+        }
+
+        String greeting() {
+            return m_greeting;
+        }
+
+        abstract String reply(String line);
+
+        boolean closeAfter(String line) {
+            return line.equals("QUIT") || line.endsWith("LOGOUT");
+        }
+    }
+
+    /**
+     * A line oriented TCP server that serves every connection from one
+     * selector thread.
+     */
+    private static final class StubServer implements Runnable {
+        private final Script m_script;
+        private final Selector m_selector;
+        private final ServerSocketChannel m_server;
+        private final Thread m_thread;
+        private final AtomicInteger m_connections = new AtomicInteger();
+        private volatile boolean m_running = true;
+
+        StubServer(Script script) throws IOException {
+            m_script = script;
+            m_selector = Selector.open();
+            m_server = ServerSocketChannel.open();
+            m_server.socket().setReuseAddress(true);
+            m_server.socket().bind(new InetSocketAddress("127.0.0.1", 0), 4096);
+            m_server.configureBlocking(false);
+            m_server.register(m_selector, SelectionKey.OP_ACCEPT);
+            m_thread = new Thread(this, "StubServer");
+            m_thread.setDaemon(true);
+            m_thread.start();
+        }
+
+        int getPort() {
+            return m_server.socket().getLocalPort();
+        }
+
+        int getConnections() {
+            return m_connections.get();
+        }
+
+        void stop() throws Exception {
+            m_running = false;
+            m_selector.wakeup();
+            m_thread.join();
+        }
+
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            try {
+                while (m_running) {
+                    m_selector.select(100);
+                    Iterator<SelectionKey> keys = m_selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        try {
+                            if (key.isAcceptable()) {
+                                accept();
+                            } else if (key.isReadable()) {
+                                read(key, buffer);
+                            }
+                        } catch (IOException e) {
+                            key.channel().close();
+                        }
+                    }
+                }
+                for (SelectionKey key : m_selector.keys()) {
+                    key.channel().close();
+                }
+                m_selector.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = m_server.accept()) != null) {
+                m_connections.incrementAndGet();
+                channel.configureBlocking(false);
+                channel.register(m_selector, SelectionKey.OP_READ, new StringBuilder());
+                if (m_script.greeting() != null) {
+                    write(channel, m_script.greeting());
+                }
+            }
+        }
+
+        private void read(SelectionKey key, ByteBuffer buffer) throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            StringBuilder line = (StringBuilder) key.attachment();
+            buffer.clear();
+            if (channel.read(buffer) < 0) {
+                channel.close();
+                return;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                char c = (char) buffer.get();
+                if (c == '\r') {
+                    continue;
+                } else if (c != '\n') {
+                    line.append(c);
+                    continue;
+                }
+                String received = line.toString();
+                line.setLength(0);
+                String reply = m_script.reply(received);
+                if (reply != null) {
+                    write(channel, reply);
+                }
+                if (m_script.closeAfter(received)) {
+                    channel.close();
+                    return;
+                }
+            }
+        }
+
+        private static void write(SocketChannel channel, String text) throws IOException {
+            ByteBuffer out = ByteBuffer.wrap(text.getBytes("US-ASCII"));
+            while (out.hasRemaining()) {
+                if (channel.write(out) == 0) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers every DNS query with the given response code.
+     */
+    private static final class StubDnsServer implements Runnable {
+        private final DatagramChannel m_channel;
+        private final Thread m_thread;
+        private final int m_rcode;
+
+        StubDnsServer(int rcode) throws IOException {
+            m_rcode = rcode;
+            m_channel = DatagramChannel.open();
+            m_channel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+            m_thread = new Thread(this, "StubDnsServer");
+            m_thread.setDaemon(true);
+            m_thread.start();
+        }
+
+        int getPort() {
+            return m_channel.socket().getLocalPort();
+        }
+
+        void stop() throws Exception {
+            m_channel.close();
+            m_thread.join();
+        }
+
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            try {
+                while (true) {
+                    buffer.clear();
+                    SocketAddress client = m_channel.receive(buffer);
+                    buffer.flip();
+                    // same id and question, with the response bit and rcode set
+                    buffer.put(2, (byte) (buffer.get(2) | 0x80));
+                    buffer.put(3, (byte) ((buffer.get(3) & 0xf0) | m_rcode));
+                    m_channel.send(buffer, client);
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+    }
+
+}
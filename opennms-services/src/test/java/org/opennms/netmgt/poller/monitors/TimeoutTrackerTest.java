@@ -29,6 +29,7 @@
 package org.opennms.netmgt.poller.monitors;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.opennms.core.utils.TimeoutTracker;
@@ -92,4 +93,22 @@ public class TimeoutTrackerTest extends TestCase {
         assertTrue("Expected value for elapsedTimeInMillis should be less than " + maxTime, elapsedTimeInMillis < (maxTime + 1));
     }
 
+    public void testNanosUntilNextAttempt() {
+        
+        Map<String,?> emptyMap = Collections.emptyMap();
+        TimeoutTracker lenient = new TimeoutTracker(emptyMap, 1, 3000);
+        lenient.startAttempt();
+        lenient.nextAttempt();
+        assertEquals("non-strict trackers never wait", 0L, lenient.getNanosUntilNextAttempt());
+        
+        Map<String,Object> strictMap = new HashMap<String,Object>();
+        strictMap.put("strict-timeout", "true");
+        TimeoutTracker strict = new TimeoutTracker(strictMap, 1, 3000);
+        assertEquals("nothing to wait for before the first attempt", 0L, strict.getNanosUntilNextAttempt());
+        strict.startAttempt();
+        strict.nextAttempt();
+        long wait = strict.getNanosUntilNextAttempt();
+        assertTrue("expected to wait most of the timeout but was " + wait, wait > 2000000000L && wait <= 3000000000L);
+    }
+
 }
@@ -42,12 +42,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 
 import javax.sql.DataSource;
 
+import org.apache.log4j.Level;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -72,9 +78,13 @@ import org.opennms.netmgt.mock.MockVisitor;
 import org.opennms.netmgt.mock.MockVisitorAdapter;
 import org.opennms.netmgt.mock.OutageAnticipator;
 import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatusCallback;
 import org.opennms.netmgt.poller.mock.MockPollContext;
 import org.opennms.netmgt.poller.mock.MockScheduler;
 import org.opennms.netmgt.poller.mock.MockTimer;
+import org.opennms.netmgt.poller.monitors.AbstractAsyncServiceMonitor;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.ScheduleTimer;
 import org.opennms.netmgt.xml.event.Event;
@@ -2377,6 +2387,185 @@ public class PollablesTest {
         
     }
 
+    @Test
+    public void testAsyncPollCompletesOnSchedulerThread() throws Exception {
+        DeferredAsyncMonitor monitor = new DeferredAsyncMonitor();
+        MockService mSvc = addAsyncService(monitor);
+        PollableService pSvc = m_network.getService(2, getInetAddress("192.168.1.3"), "ASYNC");
+
+        pSvc.run();
+        assertEquals(1, monitor.getPollCount());
+        assertTrue(pSvc.isAsyncPollInProgress());
+
+        // the next scheduled poll does not start another one
+        pSvc.run();
+        assertEquals(1, monitor.getPollCount());
+
+        anticipateDown(mSvc);
+
+        monitor.complete(PollStatus.down());
+
+        // the status is processed by a scheduler thread, not the monitor's
+        assertUp(pSvc);
+        assertTrue(pSvc.isAsyncPollInProgress());
+        assertEquals(1, m_scheduler.getEntryCount());
+
+        m_scheduler.next();
+
+        verifyAnticipated();
+        assertDown(pSvc);
+        assertFalse(pSvc.isAsyncPollInProgress());
+
+        pSvc.run();
+        assertEquals(2, monitor.getPollCount());
+    }
+
+    @Test
+    public void testAsyncPollCompletesOnMonitorThreadWithoutScheduleTimer() throws Exception {
+        DeferredAsyncMonitor monitor = new DeferredAsyncMonitor();
+        MockService mSvc = addAsyncService(monitor);
+        PollableService pSvc = m_network.getService(2, getInetAddress("192.168.1.3"), "ASYNC");
+        Package pkg = findPackageForService(m_pollerConfig, "192.168.1.3", "ASYNC");
+        pSvc.setPollConfig(new PollableServiceConfig(pSvc, m_pollerConfig, m_pollerConfig, pkg, m_timer));
+
+        pSvc.run();
+        assertTrue(pSvc.isAsyncPollInProgress());
+
+        anticipateDown(mSvc);
+
+        monitor.complete(PollStatus.down());
+
+        verifyAnticipated();
+        assertDown(pSvc);
+        assertFalse(pSvc.isAsyncPollInProgress());
+        assertEquals(0, m_scheduler.getEntryCount());
+    }
+
+    @Test
+    public void testPostponedAsyncPollStaysInProgress() throws Exception {
+        DeferredAsyncMonitor monitor = new DeferredAsyncMonitor();
+        MockService mSvc = addAsyncService(monitor);
+        final PollableService pSvc = m_network.getService(2, getInetAddress("192.168.1.3"), "ASYNC");
+
+        pSvc.run();
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread locker = new Thread() {
+            public void run() {
+                pSvc.getNode().withTreeLock(new Runnable() {
+                    public void run() {
+                        locked.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        };
+        locker.start();
+        locked.await();
+
+        monitor.complete(PollStatus.down());
+        m_scheduler.next();
+
+        // the completion could not get the tree lock so it was rescheduled
+        assertUp(pSvc);
+        assertTrue(pSvc.isAsyncPollInProgress());
+        assertEquals(1, m_scheduler.getEntryCount());
+
+        // and scheduled polls keep waiting for it, however long it takes
+        for (int i = 0; i <= PollableService.MAX_SKIPPED_ASYNC_POLLS; i++) {
+            pSvc.run();
+        }
+        assertEquals(1, monitor.getPollCount());
+
+        release.countDown();
+        locker.join();
+
+        anticipateDown(mSvc);
+
+        m_scheduler.next();
+
+        verifyAnticipated();
+        assertDown(pSvc);
+        assertFalse(pSvc.isAsyncPollInProgress());
+    }
+
+    @Test
+    public void testAsyncPollExceptionMarksServiceDown() throws Exception {
+        DeferredAsyncMonitor monitor = new DeferredAsyncMonitor();
+        MockService mSvc = addAsyncService(monitor);
+        PollableService pSvc = m_network.getService(2, getInetAddress("192.168.1.3"), "ASYNC");
+
+        monitor.setFailure(new IllegalStateException("cannot start the poll"));
+
+        anticipateDown(mSvc);
+
+        pSvc.run();
+        m_scheduler.next();
+
+        verifyAnticipated();
+        assertDown(pSvc);
+        assertFalse(pSvc.isAsyncPollInProgress());
+
+        MockLogAppender.assertLogAtLevel(Level.ERROR);
+        MockLogAppender.resetEvents();
+    }
+
+    @Test
+    public void testAsyncPollWithoutResultIsAbandoned() throws Exception {
+        DeferredAsyncMonitor monitor = new DeferredAsyncMonitor();
+        MockService mSvc = addAsyncService(monitor);
+        PollableService pSvc = m_network.getService(2, getInetAddress("192.168.1.3"), "ASYNC");
+
+        pSvc.run();
+        for (int i = 1; i < PollableService.MAX_SKIPPED_ASYNC_POLLS; i++) {
+            pSvc.run();
+        }
+        assertEquals(1, monitor.getPollCount());
+
+        // the monitor never reported back, so the next poll starts over
+        pSvc.run();
+        assertEquals(2, monitor.getPollCount());
+        assertTrue(pSvc.isAsyncPollInProgress());
+
+        // a late result of the abandoned poll is dropped
+        monitor.complete(0, PollStatus.down());
+        assertEquals(0, m_scheduler.getEntryCount());
+        assertUp(pSvc);
+        assertTrue(pSvc.isAsyncPollInProgress());
+
+        anticipateDown(mSvc);
+
+        monitor.complete(PollStatus.down());
+        m_scheduler.next();
+
+        verifyAnticipated();
+        assertDown(pSvc);
+        assertFalse(pSvc.isAsyncPollInProgress());
+
+        MockLogAppender.assertLogAtLevel(Level.WARN);
+        MockLogAppender.resetEvents();
+    }
+
+    @Test
+    public void testSynchronousAsyncPollGivesUpWithoutResult() throws Exception {
+        DeferredAsyncMonitor monitor = new DeferredAsyncMonitor();
+        monitor.setPollTimeout(50);
+        addAsyncService(monitor);
+        PollableService pSvc = m_network.getService(2, getInetAddress("192.168.1.3"), "ASYNC");
+
+        PollStatus status = monitor.poll(pSvc, new HashMap<String, Object>());
+        assertEquals(1, monitor.getPollCount());
+        assertEquals(PollStatus.SERVICE_UNKNOWN, status.getStatusCode());
+
+        MockLogAppender.assertLogAtLevel(Level.WARN);
+        MockLogAppender.resetEvents();
+    }
+
     /**
      * @param i
      */
@@ -2565,5 +2754,55 @@ public class PollablesTest {
         return svc;
     }
 
+    private MockService addAsyncService(AsyncServiceMonitor monitor) {
+        m_pollerConfig.addService("ASYNC", monitor);
+        MockService mSvc = m_mockNetwork.addService(2, "192.168.1.3", "ASYNC");
+        m_db.writeService(mSvc);
+        PollableService pSvc = addServiceToNetwork(2, "Server", "192.168.1.3", "ASYNC");
+        assertNotNull(pSvc);
+        assertUp(pSvc);
+        return mSvc;
+    }
+
+    /**
+     * An asynchronous monitor that holds on to its callbacks until the test
+     * completes them.
+     */
+    static class DeferredAsyncMonitor extends AbstractAsyncServiceMonitor {
+        private final List<PollStatusCallback> m_callbacks = new ArrayList<PollStatusCallback>();
+        private RuntimeException m_failure;
+        private long m_pollTimeout = -1;
+
+        public void setFailure(RuntimeException failure) {
+            m_failure = failure;
+        }
+
+        public void setPollTimeout(long pollTimeout) {
+            m_pollTimeout = pollTimeout;
+        }
+
+        protected long getPollTimeout(Map<String, Object> parameters) {
+            return m_pollTimeout < 0 ? super.getPollTimeout(parameters) : m_pollTimeout;
+        }
+
+        public void pollAsync(MonitoredService svc, Map<String, Object> parameters, PollStatusCallback callback) {
+            m_callbacks.add(callback);
+            if (m_failure != null) {
+                throw m_failure;
+            }
+        }
+
+        public int getPollCount() {
+            return m_callbacks.size();
+        }
+
+        public void complete(PollStatus status) {
+            complete(m_callbacks.size() - 1, status);
+        }
+
+        public void complete(int poll, PollStatus status) {
+            m_callbacks.get(poll).complete(status);
+        }
+    }
 
 }
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RTCCategoryDownTimeTest {
+    private static final String CATEGORY = "Web Servers";
+
+    private static final long WINDOW = 24L * 60 * 60 * 1000;
+
+    // one bucket of the ring
+    private static final long BUCKET = WINDOW / 1440;
+
+    private static final long NOW = 22500000L * BUCKET;
+
+    private RTCCategoryDownTime m_downTime;
+
+    private RTCNode m_http;
+
+    private RTCNode m_icmp;
+
+    @Before
+    public void setUp() throws Exception {
+        m_downTime = new RTCCategoryDownTime(WINDOW);
+        m_http = createNode("HTTP");
+        m_icmp = createNode("ICMP");
+    }
+
+    private RTCNode createNode(String svcName) throws Exception {
+        RTCNode rtcN = new RTCNode(1, InetAddress.getByName("192.168.1.1"), svcName);
+        rtcN.addCategory(CATEGORY);
+        m_downTime.addService(rtcN);
+        return rtcN;
+    }
+
+    @Test
+    public void testNoServices() {
+        assertEquals(100.0, new RTCCategoryDownTime(WINDOW).getValue(NOW), 0.0);
+    }
+
+    @Test
+    public void testClosedOutage() {
+        m_downTime.outageAdded(m_http, NOW - 60 * BUCKET, NOW - 30 * BUCKET);
+
+        assertEquals(30 * BUCKET, m_downTime.getDownTime(NOW), 0.0);
+        assertEquals(100 * (1 - (30.0 * BUCKET) / (2 * WINDOW)), m_downTime.getValue(NOW), 0.0001);
+    }
+
+    @Test
+    public void testOpenOutageIsClosed() {
+        m_downTime.outageAdded(m_http, NOW - 10 * BUCKET, -1);
+        assertEquals(10 * BUCKET, m_downTime.getDownTime(NOW), 0.0);
+        assertEquals(12 * BUCKET, m_downTime.getDownTime(NOW + 2 * BUCKET), 0.0);
+
+        m_downTime.outageClosed(m_http, NOW - 10 * BUCKET, NOW - 5 * BUCKET);
+        assertEquals(5 * BUCKET, m_downTime.getDownTime(NOW), 0.0);
+        assertEquals(5 * BUCKET, m_downTime.getDownTime(NOW + 2 * BUCKET), 0.0);
+    }
+
+    @Test
+    public void testOutageLeavesWindow() {
+        m_downTime.outageAdded(m_http, NOW - 10 * BUCKET, NOW - 5 * BUCKET);
+
+        assertEquals(5 * BUCKET / 2, m_downTime.getDownTime(NOW - 15 * BUCKET / 2 + WINDOW), 0.0);
+        assertEquals(0.0, m_downTime.getDownTime(NOW + WINDOW), 0.0);
+    }
+
+    @Test
+    public void testRemoveService() {
+        m_http.nodeLostService(NOW - 20 * BUCKET);
+        m_http.nodeRegainedService(NOW - 10 * BUCKET);
+        m_downTime.outageAdded(m_http, NOW - 20 * BUCKET, NOW - 10 * BUCKET);
+        m_icmp.nodeLostService(NOW - 5 * BUCKET);
+        m_downTime.outageAdded(m_icmp, NOW - 5 * BUCKET, -1);
+
+        m_downTime.removeService(m_http);
+        assertEquals(1, m_downTime.getServiceCount());
+        assertEquals(5 * BUCKET, m_downTime.getDownTime(NOW), 0.0);
+
+        m_downTime.removeService(m_icmp);
+        assertEquals(0.0, m_downTime.getDownTime(NOW), 0.0);
+        assertEquals(100.0, m_downTime.getValue(NOW), 0.0);
+    }
+
+    /**
+     * The running total must agree with walking the outages of each service
+     * to within one bucket per outage.
+     */
+    @Test
+    public void testMatchesServiceTimes() {
+        Random random = new Random(42);
+        RTCNode[] services = new RTCNode[] { m_http, m_icmp };
+        long t = NOW - 2 * WINDOW;
+        int outages = 0;
+        while (t < NOW) {
+            RTCNode rtcN = services[random.nextInt(services.length)];
+            t += random.nextInt((int) (60 * BUCKET));
+            if (rtcN.nodeLostService(t)) {
+                m_downTime.outageAdded(rtcN, t, -1);
+                outages++;
+            } else {
+                RTCNodeSvcTime svcTime = rtcN.nodeRegainedService(t);
+                m_downTime.outageClosed(rtcN, svcTime.getLostTime(), svcTime.getRegainedTime());
+            }
+        }
+
+        for (long curTime = t; curTime < t + WINDOW; curTime += WINDOW / 7) {
+            long expected = m_http.getDownTime(CATEGORY, curTime, WINDOW) + m_icmp.getDownTime(CATEGORY, curTime, WINDOW);
+            assertEquals(expected, m_downTime.getDownTime(curTime), 2 * BUCKET);
+        }
+        assertTrue(outages > 0);
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.opennms.core.test.MockLogAppender;
+
+public class TimingWheelSchedulerTest extends TestCase {
+
+    private TimingWheelScheduler m_scheduler;
+    private List<String> m_runs;
+    private CountDownLatch m_latch;
+
+    class RecordingRunnable implements ReadyRunnable {
+        private final String m_name;
+        private final long m_earliest;
+        private volatile int m_notReadyChecks;
+
+        RecordingRunnable(String name, long delay, int notReadyChecks) {
+            m_name = name;
+            m_earliest = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            m_notReadyChecks = notReadyChecks;
+        }
+
+        public boolean isReady() {
+            return m_notReadyChecks-- <= 0;
+        }
+
+        public void run() {
+            m_runs.add(m_name + (System.nanoTime() >= m_earliest ? "" : " (early)"));
+            m_latch.countDown();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MockLogAppender.setupLogging();
+        // a small wheel so that longer intervals take more than one round
+        m_scheduler = new TimingWheelScheduler("Test", 2, 10, 8);
+        m_runs = new CopyOnWriteArrayList<String>();
+        m_scheduler.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_scheduler.stop();
+        MockLogAppender.assertNoWarningsOrGreater();
+        super.tearDown();
+    }
+
+    private void schedule(String name, long delay, int notReadyChecks) {
+        m_scheduler.schedule(delay, new RecordingRunnable(name, delay, notReadyChecks));
+    }
+
+    public void testRunsInDeadlineOrder() throws Exception {
+        m_latch = new CountDownLatch(4);
+        schedule("c", 250, 0);
+        schedule("a", 0, 0);
+        schedule("d", 400, 0);
+        schedule("b", 50, 0);
+
+        assertTrue("runnables did not all run", m_latch.await(5, TimeUnit.SECONDS));
+        assertEquals("[a, b, c, d]", m_runs.toString());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    public void testNotReadyDoesNotBlockOthers() throws Exception {
+        m_latch = new CountDownLatch(2);
+        schedule("notReadyOnce", 0, 1);
+        schedule("ready", 100, 0);
+
+        assertTrue("runnables did not all run", m_latch.await(5, TimeUnit.SECONDS));
+        assertEquals("[ready, notReadyOnce]", m_runs.toString());
+    }
+
+    public void testPauseHoldsDispatch() throws Exception {
+        m_latch = new CountDownLatch(1);
+        m_scheduler.pause();
+        schedule("a", 0, 0);
+
+        assertFalse("ran while paused", m_latch.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, m_scheduler.getScheduled());
+
+        m_scheduler.resume();
+        assertTrue("did not run after resume", m_latch.await(5, TimeUnit.SECONDS));
+        assertEquals("[a]", m_runs.toString());
+    }
+
+}
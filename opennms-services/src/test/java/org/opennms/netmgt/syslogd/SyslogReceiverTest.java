@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.utils.InetAddressUtils;
+
+/**
+ * Drives {@link SyslogReceiver} over a loopback channel with a processing
+ * step that blocks until the test releases it, so the processing queue can
+ * be filled on purpose.
+ */
+public class SyslogReceiverTest {
+    private static final String NAME = "SyslogReceiverTest";
+
+    private DatagramChannel m_channel;
+    private DatagramChannel m_sender;
+    private BlockingReceiver m_receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+
+        m_channel = DatagramChannel.open();
+        m_channel.socket().bind(new InetSocketAddress(InetAddressUtils.addr("127.0.0.1"), 0));
+        m_sender = DatagramChannel.open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_receiver != null) {
+            m_receiver.release();
+            m_receiver.stop();
+        }
+        m_sender.close();
+        m_channel.close();
+    }
+
+    @Test(timeout=30000)
+    public void testDropPolicyCountsDroppedMessages() throws Exception {
+        m_receiver = new BlockingReceiver(m_channel, 1, 2, "drop");
+        m_receiver.start(NAME);
+
+        send(1);
+        assertTrue("the first message was not processed", m_receiver.awaitProcessing());
+
+        // two fit in the queue, the other three are dropped
+        send(5);
+        waitForDropped(3);
+        assertEquals(6, m_receiver.getMessagesReceived());
+        assertEquals(2, m_receiver.getQueueDepth());
+        MockLogAppender.assertLogAtLevel(Level.WARN);
+
+        m_receiver.release();
+        waitForProcessed(3);
+        assertEquals(0, m_receiver.getQueueDepth());
+        assertEquals(3, m_receiver.getMessagesDropped());
+    }
+
+    @Test(timeout=30000)
+    public void testBlockPolicyWaitsForRoom() throws Exception {
+        m_receiver = new BlockingReceiver(m_channel, 1, 2, "block");
+        m_receiver.start(NAME);
+
+        send(1);
+        assertTrue("the first message was not processed", m_receiver.awaitProcessing());
+
+        // two fit in the queue, the reader waits with the fourth and the
+        // rest stay in the socket buffer
+        send(5);
+        waitForReceived(4);
+        assertEquals(2, m_receiver.getQueueDepth());
+
+        m_receiver.release();
+        waitForProcessed(6);
+        assertEquals(6, m_receiver.getMessagesReceived());
+        assertEquals(0, m_receiver.getMessagesDropped());
+    }
+
+    @Test(timeout=30000)
+    public void testStopWithSeveralReaders() throws Exception {
+        m_receiver = new BlockingReceiver(m_channel, 4, 100, "drop");
+        m_receiver.release();
+        m_receiver.start(NAME);
+        assertEquals(4, countReaders());
+
+        send(20);
+        waitForProcessed(20);
+        assertEquals(20, m_receiver.getMessagesReceived());
+        assertEquals(0, m_receiver.getMessagesDropped());
+
+        m_receiver.stop();
+        m_receiver = null;
+
+        assertEquals(0, countReaders());
+        assertFalse("stopping the readers should close the channel", m_channel.isOpen());
+    }
+
+    @Test(timeout=30000)
+    public void testStopWhileReadersWaitForRoom() throws Exception {
+        m_receiver = new BlockingReceiver(m_channel, 2, 2, "block");
+        m_receiver.start(NAME);
+
+        send(1);
+        assertTrue("the first message was not processed", m_receiver.awaitProcessing());
+
+        // both readers end up waiting for room in the queue
+        send(4);
+        waitForReceived(5);
+
+        final BlockingReceiver receiver = m_receiver;
+        m_receiver = null;
+        final Thread stopper = new Thread(NAME + "-stopper") {
+            public void run() {
+                try {
+                    receiver.stop();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        stopper.start();
+
+        // the waiting readers are interrupted and exit before the
+        // processing pool is shut down
+        while (countReaders() > 0) {
+            Thread.sleep(10);
+        }
+        receiver.release();
+        stopper.join();
+
+        assertFalse(m_channel.isOpen());
+        MockLogAppender.assertNotGreaterOrEqual(Level.ERROR);
+    }
+
+    private void send(final int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            m_sender.send(ByteBuffer.wrap(("<34>1 2010-08-19T22:14:15.000Z localhost test - - - message " + i).getBytes("US-ASCII")), m_channel.socket().getLocalSocketAddress());
+        }
+    }
+
+    private void waitForReceived(final long count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (m_receiver.getMessagesReceived() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, m_receiver.getMessagesReceived());
+    }
+
+    private void waitForDropped(final long count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (m_receiver.getMessagesDropped() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, m_receiver.getMessagesDropped());
+    }
+
+    private void waitForProcessed(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (m_receiver.getProcessed() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, m_receiver.getProcessed());
+    }
+
+    private static int countReaders() {
+        int readers = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith(NAME + "-") && !thread.getName().endsWith("-stopper")) {
+                readers++;
+            }
+        }
+        return readers;
+    }
+
+    /**
+     * A receiver whose processing threads wait for {@link #release()}
+     * instead of turning messages into events.
+     */
+    private static class BlockingReceiver extends SyslogReceiver {
+        private final CountDownLatch m_processing = new CountDownLatch(1);
+        private final CountDownLatch m_released = new CountDownLatch(1);
+        private final AtomicInteger m_processed = new AtomicInteger();
+
+        BlockingReceiver(final DatagramChannel channel, final int receiverThreads, final int queueSize, final String overflowPolicy) {
+            super(channel, null, 0, 0, null, null, null, false, receiverThreads, 1, queueSize, overflowPolicy);
+        }
+
+        @Override
+        void process(final InetSocketAddress source, final byte[] data) {
+            m_processing.countDown();
+            try {
+                m_released.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            m_processed.incrementAndGet();
+        }
+
+        boolean awaitProcessing() throws InterruptedException {
+            return m_processing.await(10, TimeUnit.SECONDS);
+        }
+
+        void release() {
+            m_released.countDown();
+        }
+
+        int getProcessed() {
+            return m_processed.get();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.Test;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.ProcessMatch;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+
+public class UeiMatcherTest {
+
+    @Test
+    public void testMultiSubstringMatcher() {
+        final MultiSubstringMatcher matcher = new MultiSubstringMatcher(Arrays.asList("he", "she", "his", "hers", "xyz"));
+        final BitSet found = matcher.findAll("ushers");
+        assertTrue(found.get(0));
+        assertTrue(found.get(1));
+        assertFalse(found.get(2));
+        assertTrue(found.get(3));
+        assertFalse(found.get(4));
+        assertTrue(matcher.findAll("").isEmpty());
+    }
+
+    @Test
+    public void testFirstMatchWinsAcrossBuckets() {
+        final UeiList ueiList = new UeiList();
+        ueiList.addUeiMatch(createUeiMatch("uei.opennms.org/test/mailOnly", "substr", "failed", "mail", null));
+        ueiList.addUeiMatch(createUeiMatch("uei.opennms.org/test/sshd", "substr", "failed", null, "^sshd$"));
+        ueiList.addUeiMatch(createUeiMatch("uei.opennms.org/test/regex", "regex", "login (\\w+) failed", null, null));
+        ueiList.addUeiMatch(createUeiMatch("uei.opennms.org/test/catchAll", "substr", "", null, null));
+
+        final UeiMatcher matcher = new UeiMatcher(ueiList);
+
+        UeiMatcher.Match match = matcher.match(createMessage("sshd", "login root failed"), "mail", "info");
+        assertNotNull(match);
+        assertEquals("uei.opennms.org/test/mailOnly", match.getUeiMatch().getUei());
+        assertNull(match.getMatcher());
+
+        match = matcher.match(createMessage("sshd", "login root failed"), "daemon", "info");
+        assertEquals("uei.opennms.org/test/sshd", match.getUeiMatch().getUei());
+
+        match = matcher.match(createMessage("crond", "login root failed"), "daemon", "info");
+        assertEquals("uei.opennms.org/test/regex", match.getUeiMatch().getUei());
+        assertEquals("root", match.getMatcher().group(1));
+
+        match = matcher.match(createMessage(null, "all is well"), "daemon", "info");
+        assertEquals("uei.opennms.org/test/catchAll", match.getUeiMatch().getUei());
+
+        assertEquals(1, matcher.getHitCount(0));
+        assertEquals(1, matcher.getHitCount(1));
+        assertEquals(1, matcher.getHitCount(2));
+        assertEquals(1, matcher.getHitCount(3));
+    }
+
+    @Test
+    public void testInvalidRegexNeverMatches() {
+        final UeiList ueiList = new UeiList();
+        ueiList.addUeiMatch(createUeiMatch("uei.opennms.org/test/broken", "regex", "foo(", null, null));
+
+        final UeiMatcher matcher = new UeiMatcher(ueiList);
+        assertNull(matcher.match(createMessage(null, "foo("), "daemon", "info"));
+    }
+
+    private static UeiMatch createUeiMatch(final String uei, final String type, final String expression, final String facility, final String process) {
+        final UeiMatch ueiMatch = new UeiMatch();
+        ueiMatch.setUei(uei);
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        ueiMatch.setMatch(match);
+        if (facility != null) {
+            ueiMatch.addFacility(facility);
+        }
+        if (process != null) {
+            final ProcessMatch processMatch = new ProcessMatch();
+            processMatch.setExpression(process);
+            ueiMatch.setProcessMatch(processMatch);
+        }
+        return ueiMatch;
+    }
+
+    private static SyslogMessage createMessage(final String processName, final String text) {
+        final SyslogMessage message = new SyslogMessage();
+        message.setFacility(SyslogFacility.SYSTEM);
+        message.setSeverity(SyslogSeverity.INFORMATIONAL);
+        message.setHostName("localhost");
+        message.setProcessName(processName);
+        message.setMessage(text);
+        return message;
+    }
+}
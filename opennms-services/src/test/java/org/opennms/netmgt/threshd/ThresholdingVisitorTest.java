@@ -253,6 +253,21 @@ public class ThresholdingVisitorTest {
         createVisitor();
     }
 
+    @Test
+    public void testCompleteCollectionSetDefersThreshd() {
+        InFlightThresholdingRegistry.clear();
+        ThresholdingVisitor visitor = createVisitor();
+        assertFalse(InFlightThresholdingRegistry.isEvaluated(1, "127.0.0.1", "SNMP", 300000));
+
+        visitor.visitCollectionSet(createAnonymousCollectionSet(new Date().getTime()));
+        visitor.completeCollectionSet(createAnonymousCollectionSet(new Date().getTime()));
+        assertTrue(InFlightThresholdingRegistry.isEvaluated(1, "127.0.0.1", "SNMP", 300000));
+        assertFalse(InFlightThresholdingRegistry.isEvaluated(1, "127.0.0.1", "HTTP", 300000));
+
+        InFlightThresholdingRegistry.remove(1, "127.0.0.1", "SNMP");
+        assertFalse(InFlightThresholdingRegistry.isEvaluated(1, "127.0.0.1", "SNMP", 300000));
+    }
+
     /*
      * This test uses this files from src/test/resources:
      * - thresd-configuration.xml
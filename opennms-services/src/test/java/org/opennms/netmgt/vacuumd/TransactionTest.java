@@ -123,6 +123,52 @@ public class TransactionTest extends TestCase {
         
     }
     
+    public void testIntermediateCommit() throws Exception {
+        
+        EasyMock.expect(m_ds.getConnection()).andReturn(m_conn);
+        m_conn.setAutoCommit(false);
+        m_conn.commit();
+        EasyMock.expectLastCall().times(2);
+        m_conn.close();
+        
+        m_ezMock.replayAll();
+        
+        Transaction.begin();
+        Transaction.getConnection("ds");
+        Transaction.commit();
+        Transaction.end();
+        
+        m_ezMock.verifyAll();
+        
+    }
+    
+    public void testCursorConnectionIsNotCommitted() throws Exception {
+        
+        EasyMock.expect(m_ds.getConnection()).andReturn(m_conn);
+        EasyMock.expect(m_ds.getConnection()).andReturn(m_conn2);
+        
+        m_conn.setAutoCommit(false);
+        m_conn.commit();
+        EasyMock.expectLastCall().times(2);
+        m_conn.close();
+        
+        m_conn2.setAutoCommit(false);
+        m_conn2.rollback();
+        m_conn2.close();
+        
+        m_ezMock.replayAll();
+        
+        Transaction.begin();
+        Connection conn = Transaction.getConnection("ds");
+        Connection cursorConn = Transaction.getCursorConnection("ds");
+        assertNotSame("Expected the cursor connection to be separate from the transaction connection", conn, cursorConn);
+        Transaction.commit();
+        Transaction.end();
+        
+        m_ezMock.verifyAll();
+        
+    }
+    
     public void testReturnSameConnection() throws Exception {
         
         EasyMock.expect(m_ds.getConnection()).andReturn(m_conn);
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.tools.scheduler;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.ReadyRunnable;
+import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
+
+/**
+ * Compares {@link LegacyScheduler} and {@link TimingWheelScheduler} by
+ * scheduling the same workload on each from several threads and reporting
+ * schedule throughput, dispatch throughput and how late the runnables ran.
+ */
+public class SchedulerStresser {
+
+    static final String SCHEDULERS = System.getProperty("stresstest.schedulers", "legacy,wheel");
+
+    static final int RUNNABLE_COUNT = Integer.getInteger("stresstest.runnables", 100000).intValue();
+
+    static final int THREAD_COUNT = Integer.getInteger("stresstest.threadcount", 4).intValue();
+
+    static final int POOL_SIZE = Integer.getInteger("stresstest.poolsize", 10).intValue();
+
+    //Runnables are spread over this many distinct intervals, like services sharing a polling package
+    static final int INTERVAL_COUNT = Integer.getInteger("stresstest.intervals", 10).intValue();
+
+    static final long MAX_INTERVAL = Long.getLong("stresstest.maxinterval", 10000L).longValue();
+
+    //Percentage of runnables that report they are not ready the first time they are checked
+    static final int NOT_READY_PERCENT = Integer.getInteger("stresstest.notreadypercent", 0).intValue();
+
+    static final long SEED = Long.getLong("stresstest.seed", 42L).longValue();
+
+    static class TimedRunnable implements ReadyRunnable {
+        private final long m_deadline;
+        private final long[] m_lateness;
+        private final int m_index;
+        private final CountDownLatch m_done;
+        private boolean m_postponed;
+
+        TimedRunnable(long interval, boolean postponed, long[] lateness, int index, CountDownLatch done) {
+            m_deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(interval);
+            m_postponed = postponed;
+            m_lateness = lateness;
+            m_index = index;
+            m_done = done;
+        }
+
+        /**
+         * Like the daemons' runnables, this is only ready once its own
+         * deadline has passed.
+         */
+        public boolean isReady() {
+            if (System.nanoTime() < m_deadline) {
+                return false;
+            }
+            if (m_postponed) {
+                m_postponed = false;
+                return false;
+            }
+            return true;
+        }
+
+        public void run() {
+            m_lateness[m_index] = System.nanoTime() - m_deadline;
+            m_done.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        print("Scheduling " + RUNNABLE_COUNT + " runnables from " + THREAD_COUNT + " threads over " + INTERVAL_COUNT + " intervals up to " + MAX_INTERVAL + "ms");
+
+        for (String name : SCHEDULERS.split(",")) {
+            stress(name.trim());
+        }
+    }
+
+    private static Scheduler createScheduler(String name) {
+        if ("legacy".equals(name)) {
+            return new LegacyScheduler("Stresser", POOL_SIZE);
+        } else if ("wheel".equals(name)) {
+            return new TimingWheelScheduler("Stresser", POOL_SIZE);
+        }
+        throw new IllegalArgumentException("Unknown scheduler " + name + ", expected legacy or wheel");
+    }
+
+    private static void stress(final String name) throws Exception {
+        final Scheduler scheduler = createScheduler(name);
+        final long[] lateness = new long[RUNNABLE_COUNT];
+        final CountDownLatch done = new CountDownLatch(RUNNABLE_COUNT);
+        final long[] intervals = new long[INTERVAL_COUNT];
+        for (int i = 0; i < INTERVAL_COUNT; i++) {
+            intervals[i] = MAX_INTERVAL * (i + 1) / INTERVAL_COUNT;
+        }
+
+        scheduler.start();
+
+        final AtomicInteger next = new AtomicInteger();
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            final Random random = new Random(SEED + t);
+            threads[t] = new Thread("Scheduling-" + t) {
+                public void run() {
+                    int index;
+                    while ((index = next.getAndIncrement()) < RUNNABLE_COUNT) {
+                        long interval = intervals[random.nextInt(intervals.length)];
+                        boolean postponed = random.nextInt(100) < NOT_READY_PERCENT;
+                        schedule(scheduler, interval, new TimedRunnable(interval, postponed, lateness, index, done));
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long scheduled = System.nanoTime();
+
+        done.await();
+        long finished = System.nanoTime();
+        scheduler.stop();
+
+        Arrays.sort(lateness);
+
+        print(name + ": scheduled " + rate(RUNNABLE_COUNT, scheduled - start) + " runnables/sec, "
+              + "all runnables ran within " + millis(finished - start) + "ms");
+        print(name + ": lateness p50=" + millis(percentile(lateness, 50))
+              + "ms p90=" + millis(percentile(lateness, 90))
+              + "ms p99=" + millis(percentile(lateness, 99))
+              + "ms max=" + millis(lateness[lateness.length - 1]) + "ms");
+    }
+
+    /**
+     * Use the per-interval queues of the legacy scheduler the way the
+     * daemons do; its schedule(long, ReadyRunnable) wraps every runnable in
+     * a time keeper on a single queue.
+     */
+    private static void schedule(Scheduler scheduler, long interval, ReadyRunnable runnable) {
+        if (scheduler instanceof LegacyScheduler) {
+            ((LegacyScheduler) scheduler).schedule(runnable, interval);
+        } else {
+            scheduler.schedule(interval, runnable);
+        }
+    }
+
+    static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    static long rate(int count, long nanos) {
+        return (long) (count * 1000000000.0 / Math.max(1, nanos));
+    }
+
+    static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1000000.0);
+    }
+
+    static void print(String s) {
+        System.out.println(s);
+    }
+}
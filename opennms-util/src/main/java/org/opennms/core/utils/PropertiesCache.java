@@ -139,7 +139,7 @@ public class PropertiesCache {
             }
         }
 
-        public void update(Map<String, String> props) throws IOException {
+        public boolean update(Map<String, String> props) throws IOException {
             lock.lock();
             try {
                 boolean save = false;
@@ -152,12 +152,13 @@ public class PropertiesCache {
                 if (save) {
                     write();
                 }
+                return save;
             } finally {
                 lock.unlock();
             }
         }
         
-        public void setProperty(String key, String value) throws IOException {
+        public boolean setProperty(String key, String value) throws IOException {
             lock.lock();
             try {
                 // first we do get to make sure the properties are loaded
@@ -165,7 +166,9 @@ public class PropertiesCache {
                 if (!value.equals(get().get(key))) {
                     get().put(key, value);
                     write();
+                    return true;
                 }
+                return false;
             } finally {
                 lock.unlock();
             }
@@ -256,10 +259,11 @@ public class PropertiesCache {
      *
      * @param propFile a {@link java.io.File} object.
      * @param props a {@link java.util.Map} object.
+     * @return true if the file was written, false if it already held these values
      * @throws java.io.IOException if any.
      */
-    public void updateProperties(File propFile, Map<String, String> props) throws IOException {
-        getHolder(propFile).update(props);
+    public boolean updateProperties(File propFile, Map<String, String> props) throws IOException {
+        return getHolder(propFile).update(props);
     }
     
     /**
@@ -268,10 +272,11 @@ public class PropertiesCache {
      * @param propFile a {@link java.io.File} object.
      * @param key a {@link java.lang.String} object.
      * @param value a {@link java.lang.String} object.
+     * @return true if the file was written, false if it already held this value
      * @throws java.io.IOException if any.
      */
-    public void setProperty(File propFile, String key, String value) throws IOException {
-        getHolder(propFile).setProperty(key, value);
+    public boolean setProperty(File propFile, String key, String value) throws IOException {
+        return getHolder(propFile).setProperty(key, value);
     }
     
     /**
@@ -101,6 +101,15 @@ public class TimeoutTracker {
     public long getTimeoutInSeconds() {
         return m_timeoutInSeconds;
     }
+
+    /**
+     * <p>getRetry</p>
+     *
+     * @return the number of retries after the first attempt
+     */
+    public int getRetry() {
+        return m_retry;
+    }
     
 
     /**
@@ -132,6 +141,20 @@ public class TimeoutTracker {
         return m_attempt;
     }
 
+    /**
+     * Returns how long {@link #startAttempt()} would sleep before starting
+     * the next attempt.  Callers that cannot block (for example a selector
+     * loop) can wait this long themselves before calling startAttempt.
+     *
+     * @return the delay in nanoseconds, 0 when strict timeouts are disabled
+     */
+    public long getNanosUntilNextAttempt() {
+        if (!m_strictTimeouts) {
+            return 0L;
+        }
+        return Math.max(0L, m_nextRetryTimeNanos - System.nanoTime());
+    }
+
     /**
      * <p>startAttempt</p>
      */
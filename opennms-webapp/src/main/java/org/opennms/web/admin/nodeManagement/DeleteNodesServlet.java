@@ -50,6 +50,7 @@ import org.opennms.core.utils.ThreadCategory;
 import org.opennms.core.utils.WebSecurityUtils;
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.dao.support.DefaultResourceDao;
+import org.opennms.netmgt.dao.support.RrdResourceIndex;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.web.api.Util;
@@ -107,6 +108,7 @@ public class DeleteNodesServlet extends HttpServlet {
             if (nodeDir.exists() && nodeDir.isDirectory()) {
                 log().debug("Attempting to delete node data directory: " + nodeDir.getAbsolutePath());
                 if (deleteDir(nodeDir)) {
+                    RrdResourceIndex.notifyPathRemoved(nodeDir);
                     log().info("Node SNMP data directory deleted successfully: " + nodeDir.getAbsolutePath());
                 } else {
                     log().warn("Node SNMP data directory *not* deleted successfully: " + nodeDir.getAbsolutePath());
@@ -120,6 +122,7 @@ public class DeleteNodesServlet extends HttpServlet {
                 if (intfDir.exists() && intfDir.isDirectory()) {
                     log().debug("Attempting to delete node response time data directory: " + intfDir.getAbsolutePath());
                     if (deleteDir(intfDir)) {
+                        RrdResourceIndex.notifyPathRemoved(intfDir);
                         log().info("Node response time data directory deleted successfully: " + intfDir.getAbsolutePath());
                     } else {
                         log().warn("Node response time data directory *not* deleted successfully: " + intfDir.getAbsolutePath());
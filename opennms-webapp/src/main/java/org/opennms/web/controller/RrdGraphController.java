@@ -38,6 +38,7 @@ import org.jrobin.core.timespec.TimeParser;
 import org.jrobin.core.timespec.TimeSpec;
 import org.opennms.core.utils.StreamUtils;
 import org.opennms.web.servlet.MissingParameterException;
+import org.opennms.web.svclayer.RrdGraphImage;
 import org.opennms.web.svclayer.RrdGraphService;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.AbstractController;
@@ -88,7 +89,7 @@ public class RrdGraphController extends AbstractController {
         long startTime = times[0];
         long endTime = times[1];
 
-        InputStream tempIn;
+        RrdGraphImage image;
         if ("true".equals(request.getParameter("adhoc"))) {
             String[] adhocRequiredParameters = new String[] {
                     "title",
@@ -113,7 +114,7 @@ public class RrdGraphController extends AbstractController {
             String[] dataSourceTitles = request.getParameterValues("dstitle");
             String[] styles = request.getParameterValues("style");
             
-            tempIn = m_rrdGraphService.getAdhocGraph(resourceId,
+            image = m_rrdGraphService.getAdhocGraphImage(resourceId,
                                                      title,
                                                      dataSources,
                                                      aggregateFunctions,
@@ -127,10 +128,25 @@ public class RrdGraphController extends AbstractController {
                 throw new MissingParameterException("report");
             }
             
-            tempIn = m_rrdGraphService.getPrefabGraph(resourceId,
+            image = m_rrdGraphService.getPrefabGraphImage(resourceId,
                                                       report, startTime, endTime);
         }
 
+        String etag = '"' + image.getETag() + '"';
+        response.setHeader("ETag", etag);
+        if (image.getLastModified() > 0) {
+            response.setDateHeader("Last-Modified", image.getLastModified());
+        }
+        // let browsers keep the image but make them ask before reusing it
+        response.setHeader("Cache-Control", "private, max-age=0, must-revalidate");
+
+        if (isNotModified(request, etag, image.getLastModified())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+
+        InputStream tempIn = image.getInputStream();
+
         response.setContentType("image/png");
         
         StreamUtils.streamToStream(tempIn, response.getOutputStream());
@@ -139,6 +155,32 @@ public class RrdGraphController extends AbstractController {
                 
         return null;
     }
+
+    /**
+     * Checks the request's validators against the graph.  If-None-Match
+     * takes precedence over If-Modified-Since, as required by RFC 2616.
+     */
+    static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates only have a resolution of one second
+        return lastModified > 0 && ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
     
     public long[] parseTimes(HttpServletRequest request) {
     	String startTime = request.getParameter("start");
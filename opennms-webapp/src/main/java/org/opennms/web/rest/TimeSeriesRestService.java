@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.rest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import net.sf.json.util.JSONUtils;
+
+import org.opennms.core.utils.LogUtils;
+import org.opennms.netmgt.dao.RrdDao;
+import org.opennms.netmgt.model.OnmsResource;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
+import org.opennms.web.svclayer.ResourceService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+import com.sun.jersey.spi.resource.PerRequest;
+
+/**
+ * Streams the raw rows of RRD attributes as JSON or CSV, depending on the
+ * Accept header.
+ *
+ * <pre>
+ * GET /rest/timeseries?resourceId=node[1].interfaceSnmp[eth0]&amp;attribute=ifHCInOctets&amp;start=...&amp;end=...&amp;cf=AVERAGE
+ * </pre>
+ *
+ * <p>resourceId may be given more than once.  Without an attribute parameter
+ * every RRD attribute of each resource is returned.  start and end are in
+ * milliseconds and default to the last day; timestamps in the output are in
+ * milliseconds as well.  Only the resources are looked up before the
+ * response starts, the rows are written as they are read from each RRD.</p>
+ *
+ * @since 1.13.0
+ */
+@Component
+@PerRequest
+@Scope("prototype")
+@Path("timeseries")
+public class TimeSeriesRestService extends OnmsRestService {
+    /** Media type of the CSV representation. */
+    public static final String TEXT_CSV = "text/csv";
+
+    private static final long DEFAULT_RANGE = 24L * 60L * 60L * 1000L;
+
+    private static final List<String> CONSOLIDATION_FUNCTIONS = Arrays.asList("AVERAGE", "MIN", "MAX", "LAST");
+
+    @Autowired
+    private ResourceService m_resourceService;
+
+    @Autowired
+    private RrdDao m_rrdDao;
+
+    /**
+     * <p>getJson</p>
+     *
+     * @param resourceIds the resources to fetch
+     * @param attributes the attributes to fetch from each resource, all when empty
+     * @param start start time in milliseconds
+     * @param end end time in milliseconds
+     * @param cf the consolidation function
+     * @return a {@link javax.ws.rs.core.StreamingOutput} object.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Transactional
+    public StreamingOutput getJson(@QueryParam("resourceId") final List<String> resourceIds, @QueryParam("attribute") final List<String> attributes, @QueryParam("start") final Long start, @QueryParam("end") final Long end, @QueryParam("cf") @DefaultValue("AVERAGE") final String cf) {
+        readLock();
+        try {
+            final long[] range = getRange(start, end);
+            return new JsonSeriesOutput(m_rrdDao, getSeries(resourceIds, attributes), getConsolidationFunction(cf), range[0], range[1]);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * <p>getCsv</p>
+     *
+     * @param resourceIds the resources to fetch
+     * @param attributes the attributes to fetch from each resource, all when empty
+     * @param start start time in milliseconds
+     * @param end end time in milliseconds
+     * @param cf the consolidation function
+     * @return a {@link javax.ws.rs.core.StreamingOutput} object.
+     */
+    @GET
+    @Produces(TEXT_CSV)
+    @Transactional
+    public StreamingOutput getCsv(@QueryParam("resourceId") final List<String> resourceIds, @QueryParam("attribute") final List<String> attributes, @QueryParam("start") final Long start, @QueryParam("end") final Long end, @QueryParam("cf") @DefaultValue("AVERAGE") final String cf) {
+        readLock();
+        try {
+            final long[] range = getRange(start, end);
+            return new CsvSeriesOutput(m_rrdDao, getSeries(resourceIds, attributes), getConsolidationFunction(cf), range[0], range[1]);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    private long[] getRange(final Long start, final Long end) {
+        final long e = end == null ? System.currentTimeMillis() : end;
+        final long s = start == null ? e - DEFAULT_RANGE : start;
+        if (s >= e) {
+            throw getException(Status.BAD_REQUEST, "start (" + s + ") must be before end (" + e + ")");
+        }
+        return new long[] { s, e };
+    }
+
+    private String getConsolidationFunction(final String cf) {
+        final String function = cf.toUpperCase();
+        if (!CONSOLIDATION_FUNCTIONS.contains(function)) {
+            throw getException(Status.BAD_REQUEST, "cf must be one of " + CONSOLIDATION_FUNCTIONS + ", not " + cf);
+        }
+        return function;
+    }
+
+    private List<Series> getSeries(final List<String> resourceIds, final List<String> attributes) {
+        if (resourceIds == null || resourceIds.isEmpty()) {
+            throw getException(Status.BAD_REQUEST, "At least one resourceId is required");
+        }
+
+        final List<Series> series = new ArrayList<Series>();
+        for (final String resourceId : resourceIds) {
+            final OnmsResource resource = m_resourceService.getResourceById(resourceId);
+            if (resource == null) {
+                throw getException(Status.NOT_FOUND, "No such resource " + resourceId);
+            }
+
+            final Map<String, RrdGraphAttribute> rrdAttributes = resource.getRrdGraphAttributes();
+            if (attributes == null || attributes.isEmpty()) {
+                for (final RrdGraphAttribute attribute : new TreeMap<String, RrdGraphAttribute>(rrdAttributes).values()) {
+                    series.add(new Series(resourceId, attribute));
+                }
+            } else {
+                for (final String name : attributes) {
+                    final RrdGraphAttribute attribute = rrdAttributes.get(name);
+                    if (attribute == null) {
+                        throw getException(Status.NOT_FOUND, "No attribute " + name + " on resource " + resourceId);
+                    }
+                    series.add(new Series(resourceId, attribute));
+                }
+            }
+        }
+        return series;
+    }
+
+    static class Series {
+        private final String m_resourceId;
+        private final RrdGraphAttribute m_attribute;
+
+        Series(final String resourceId, final RrdGraphAttribute attribute) {
+            m_resourceId = resourceId;
+            m_attribute = attribute;
+        }
+
+        public String getResourceId() {
+            return m_resourceId;
+        }
+
+        public RrdGraphAttribute getAttribute() {
+            return m_attribute;
+        }
+    }
+
+    /**
+     * Fetches each series in turn and hands its rows straight to the
+     * subclass, which writes them to the response.
+     */
+    static abstract class SeriesOutput implements StreamingOutput, RrdFetchHandler {
+        private final RrdDao m_rrdDao;
+        private final List<Series> m_series;
+        private final String m_consolidationFunction;
+        private final long m_start;
+        private final long m_end;
+
+        SeriesOutput(final RrdDao rrdDao, final List<Series> series, final String consolidationFunction, final long start, final long end) {
+            m_rrdDao = rrdDao;
+            m_series = series;
+            m_consolidationFunction = consolidationFunction;
+            m_start = start;
+            m_end = end;
+        }
+
+        public String getConsolidationFunction() {
+            return m_consolidationFunction;
+        }
+
+        public long getStart() {
+            return m_start;
+        }
+
+        public long getEnd() {
+            return m_end;
+        }
+
+        public void write(final OutputStream output) throws IOException {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"));
+            begin(writer);
+            for (final Series series : m_series) {
+                beginSeries(series);
+                String error = null;
+                try {
+                    m_rrdDao.fetch(series.getAttribute(), m_consolidationFunction, m_start, m_end, this);
+                } catch (final DataAccessException e) {
+                    // the response is already committed, so report the failure in-line and carry on
+                    LogUtils.warnf(this, e, "Unable to fetch attribute %s of resource %s", series.getAttribute().getName(), series.getResourceId());
+                    error = e.getMessage();
+                }
+                endSeries(series, error);
+            }
+            end();
+            writer.flush();
+        }
+
+        protected abstract void begin(Writer writer) throws IOException;
+
+        protected abstract void beginSeries(Series series) throws IOException;
+
+        protected abstract void endSeries(Series series, String error) throws IOException;
+
+        protected abstract void end() throws IOException;
+    }
+
+    /**
+     * Writes
+     * <code>{"start":...,"end":...,"consolidationFunction":"...","series":[{"resourceId":"...","attribute":"...","values":[[timestamp,value],...]}]}</code>
+     * with unknown values as null.
+     */
+    static class JsonSeriesOutput extends SeriesOutput {
+        private Writer m_writer;
+        private boolean m_firstSeries;
+        private boolean m_firstRow;
+
+        JsonSeriesOutput(final RrdDao rrdDao, final List<Series> series, final String consolidationFunction, final long start, final long end) {
+            super(rrdDao, series, consolidationFunction, start, end);
+        }
+
+        @Override
+        protected void begin(final Writer writer) throws IOException {
+            m_writer = writer;
+            m_firstSeries = true;
+            m_writer.write("{\"start\":");
+            m_writer.write(Long.toString(getStart()));
+            m_writer.write(",\"end\":");
+            m_writer.write(Long.toString(getEnd()));
+            m_writer.write(",\"consolidationFunction\":");
+            m_writer.write(JSONUtils.quote(getConsolidationFunction()));
+            m_writer.write(",\"series\":[");
+        }
+
+        @Override
+        protected void beginSeries(final Series series) throws IOException {
+            if (!m_firstSeries) {
+                m_writer.write(',');
+            }
+            m_firstSeries = false;
+            m_firstRow = true;
+            m_writer.write("{\"resourceId\":");
+            m_writer.write(JSONUtils.quote(series.getResourceId()));
+            m_writer.write(",\"attribute\":");
+            m_writer.write(JSONUtils.quote(series.getAttribute().getName()));
+            m_writer.write(",\"values\":[");
+        }
+
+        public void row(final long timestamp, final double[] values) throws IOException {
+            if (!m_firstRow) {
+                m_writer.write(',');
+            }
+            m_firstRow = false;
+            m_writer.write('[');
+            m_writer.write(Long.toString(timestamp));
+            m_writer.write(',');
+            final double value = values[0];
+            m_writer.write(Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value));
+            m_writer.write(']');
+        }
+
+        @Override
+        protected void endSeries(final Series series, final String error) throws IOException {
+            m_writer.write(']');
+            if (error != null) {
+                m_writer.write(",\"error\":");
+                m_writer.write(JSONUtils.quote(error));
+            }
+            m_writer.write('}');
+        }
+
+        @Override
+        protected void end() throws IOException {
+            m_writer.write("]}");
+        }
+    }
+
+    /**
+     * Writes one <code>resourceId,attribute,timestamp,value,error</code> line
+     * per row after a header line, with unknown values left empty. A series
+     * that could not be fetched ends with a line that only carries the
+     * error.
+     */
+    static class CsvSeriesOutput extends SeriesOutput {
+        private final String[] m_line = new String[5];
+        private CSVWriter m_writer;
+
+        CsvSeriesOutput(final RrdDao rrdDao, final List<Series> series, final String consolidationFunction, final long start, final long end) {
+            super(rrdDao, series, consolidationFunction, start, end);
+        }
+
+        @Override
+        protected void begin(final Writer writer) throws IOException {
+            m_writer = new CSVWriter(writer);
+            m_writer.writeNext(new String[] { "resourceId", "attribute", "timestamp", "value", "error" });
+        }
+
+        @Override
+        protected void beginSeries(final Series series) {
+            m_line[0] = series.getResourceId();
+            m_line[1] = series.getAttribute().getName();
+            m_line[4] = "";
+        }
+
+        public void row(final long timestamp, final double[] values) {
+            final double value = values[0];
+            m_line[2] = Long.toString(timestamp);
+            m_line[3] = Double.isNaN(value) || Double.isInfinite(value) ? "" : Double.toString(value);
+            m_writer.writeNext(m_line);
+        }
+
+        @Override
+        protected void endSeries(final Series series, final String error) throws IOException {
+            if (error != null) {
+                m_line[2] = "";
+                m_line[3] = "";
+                m_line[4] = error;
+                m_writer.writeNext(m_line);
+            }
+            // CSVWriter swallows write errors, so check once per series that the client is still there
+            if (m_writer.checkError()) {
+                throw new IOException("Failed to write rows for attribute " + series.getAttribute().getName() + " of resource " + series.getResourceId());
+            }
+        }
+
+        @Override
+        protected void end() throws IOException {
+            m_writer.flush();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.svclayer;
+
+import java.io.InputStream;
+
+/**
+ * <p>A graph that has been resolved to a concrete RRD command but not
+ * necessarily rendered yet.  The validators are available without
+ * rendering, so a request whose browser copy is still current can be
+ * answered without touching the RRD files' contents.</p>
+ */
+public interface RrdGraphImage {
+    /**
+     * <p>getETag</p>
+     *
+     * @return an entity tag that changes whenever the rendered image would change
+     */
+    public String getETag();
+
+    /**
+     * <p>getLastModified</p>
+     *
+     * @return the newest modification time of the RRD files used by the graph, in milliseconds
+     */
+    public long getLastModified();
+
+    /**
+     * Renders the graph, or fetches it from the graph cache.
+     *
+     * @return the PNG image
+     */
+    public InputStream getInputStream();
+}
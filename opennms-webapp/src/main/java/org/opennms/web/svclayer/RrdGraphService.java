@@ -71,4 +71,35 @@ public interface RrdGraphService {
             String title, String[] dataSources, String[] aggregateFunctions,
             String[] colors, String[] dataSourceTitles, String[] styles,
             long start, long end);
+
+    /**
+     * <p>getPrefabGraphImage</p>
+     *
+     * @param resourceId a {@link java.lang.String} object.
+     * @param report a {@link java.lang.String} object.
+     * @param start a long.
+     * @param end a long.
+     * @return a {@link org.opennms.web.svclayer.RrdGraphImage} object.
+     */
+    public RrdGraphImage getPrefabGraphImage(String resourceId,
+            String report, long start, long end);
+
+    /**
+     * <p>getAdhocGraphImage</p>
+     *
+     * @param resourceId a {@link java.lang.String} object.
+     * @param title a {@link java.lang.String} object.
+     * @param dataSources an array of {@link java.lang.String} objects.
+     * @param aggregateFunctions an array of {@link java.lang.String} objects.
+     * @param colors an array of {@link java.lang.String} objects.
+     * @param dataSourceTitles an array of {@link java.lang.String} objects.
+     * @param styles an array of {@link java.lang.String} objects.
+     * @param start a long.
+     * @param end a long.
+     * @return a {@link org.opennms.web.svclayer.RrdGraphImage} object.
+     */
+    public RrdGraphImage getAdhocGraphImage(String resourceId,
+            String title, String[] dataSources, String[] aggregateFunctions,
+            String[] colors, String[] dataSourceTitles, String[] styles,
+            long start, long end);
 }
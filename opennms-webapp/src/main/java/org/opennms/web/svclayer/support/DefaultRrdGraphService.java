@@ -29,7 +29,10 @@
 package org.opennms.web.svclayer.support;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -37,11 +40,13 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.text.SimpleDateFormat;
 
 import org.apache.regexp.RE;
 import org.apache.regexp.RESyntaxException;
 import org.opennms.core.utils.LogUtils;
+import org.opennms.core.utils.StreamUtils;
 import org.opennms.netmgt.dao.GraphDao;
 import org.opennms.netmgt.dao.ResourceDao;
 import org.opennms.netmgt.dao.RrdDao;
@@ -52,6 +57,7 @@ import org.opennms.netmgt.model.PrefabGraph;
 import org.opennms.netmgt.model.PrefabGraphType;
 import org.opennms.netmgt.model.RrdGraphAttribute;
 import org.opennms.web.graph.Graph;
+import org.opennms.web.svclayer.RrdGraphImage;
 import org.opennms.web.svclayer.RrdGraphService;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataAccessException;
@@ -75,12 +81,23 @@ public class DefaultRrdGraphService implements RrdGraphService, InitializingBean
     
     private RrdDao m_rrdDao;
 
+    private RrdGraphCache m_graphCache;
+
     /** {@inheritDoc} */
     @Override
     public InputStream getAdhocGraph(String resourceId, String title,
             String[] dataSources, String[] aggregateFunctions,
             String[] colors, String[] dataSourceTitles, String[] styles,
             long start, long end) {
+        return getAdhocGraphImage(resourceId, title, dataSources, aggregateFunctions, colors, dataSourceTitles, styles, start, end).getInputStream();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RrdGraphImage getAdhocGraphImage(String resourceId, String title,
+            String[] dataSources, String[] aggregateFunctions,
+            String[] colors, String[] dataSourceTitles, String[] styles,
+            long start, long end) {
         Assert.notNull(resourceId, "resourceId argument cannot be null");
         Assert.notNull(title, "title argument cannot be null");
         Assert.notNull(dataSources, "dataSources argument cannot be null");
@@ -94,6 +111,12 @@ public class DefaultRrdGraphService implements RrdGraphService, InitializingBean
 
         OnmsResource r = m_resourceDao.getResourceById(resourceId);
         Assert.notNull(r, "resource \"" + resourceId + "\" could not be located");
+
+        if (m_graphCache != null) {
+            long[] quantized = m_graphCache.quantize(start, end);
+            start = quantized[0];
+            end = quantized[1];
+        }
         
         String command = createAdHocCommand(t,
                                   r,
@@ -105,7 +128,73 @@ public class DefaultRrdGraphService implements RrdGraphService, InitializingBean
                                   dataSourceTitles,
                                   styles);
         
-        return getInputStreamForCommand(command);
+        return createGraphImage(command, r, dataSources, end);
+    }
+
+    /**
+     * Builds the cache key for a command: the command itself, the RRD
+     * directory and the modification time of every RRD file it reads.
+     * The last modified time also takes the end of the graph into account
+     * since a graph of a moving window changes even if no data arrives.
+     */
+    private RrdGraphImage createGraphImage(final String command, OnmsResource resource, String[] dsNames, long end) {
+        File workDir = m_resourceDao.getRrdDirectory(true);
+        Map<String, RrdGraphAttribute> attributes = resource.getRrdGraphAttributes();
+
+        StringBuilder key = new StringBuilder(command.length() + 64 * dsNames.length);
+        key.append(command).append('\n').append(workDir.getAbsolutePath());
+
+        long lastModified = Math.min(end, System.currentTimeMillis());
+        for (String dsName : dsNames) {
+            String rrdFile = attributes.get(dsName).getRrdRelativePath();
+            long modified = new File(workDir, rrdFile).lastModified();
+            key.append('\n').append(rrdFile).append('@').append(modified);
+            lastModified = Math.max(lastModified, modified);
+        }
+
+        return new DefaultRrdGraphImage(key.toString(), lastModified, command);
+    }
+
+    private class DefaultRrdGraphImage implements RrdGraphImage {
+        private final String m_key;
+        private final String m_tag;
+        private final long m_lastModified;
+        private final String m_command;
+
+        DefaultRrdGraphImage(String key, long lastModified, String command) {
+            m_key = key;
+            m_tag = RrdGraphCache.getTag(key);
+            m_lastModified = lastModified;
+            m_command = command;
+        }
+
+        public String getETag() {
+            return m_tag;
+        }
+
+        public long getLastModified() {
+            return m_lastModified;
+        }
+
+        public InputStream getInputStream() {
+            if (m_graphCache == null) {
+                return getInputStreamForCommand(m_command);
+            }
+
+            RrdGraphCache.Entry entry = m_graphCache.get(m_key, m_lastModified, new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    InputStream in = getInputStreamForCommand(m_command);
+                    try {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        StreamUtils.streamToStream(in, out);
+                        return out.toByteArray();
+                    } finally {
+                        in.close();
+                    }
+                }
+            });
+            return new ByteArrayInputStream(entry.getImage());
+        }
     }
 
     private InputStream getInputStreamForCommand(String command) {
@@ -145,6 +234,12 @@ public class DefaultRrdGraphService implements RrdGraphService, InitializingBean
     /** {@inheritDoc} */
     @Override
     public InputStream getPrefabGraph(String resourceId, String report, long start, long end) {
+        return getPrefabGraphImage(resourceId, report, start, end).getInputStream();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RrdGraphImage getPrefabGraphImage(String resourceId, String report, long start, long end) {
         Assert.notNull(resourceId, "resourceId argument cannot be null");
         Assert.notNull(report, "report argument cannot be null");
         Assert.isTrue(end > start, "end time " + end + " must be after start time" + start);
@@ -159,6 +254,12 @@ public class DefaultRrdGraphService implements RrdGraphService, InitializingBean
         Assert.notNull(r, "resource could not be located");
 
         PrefabGraph prefabGraph = m_graphDao.getPrefabGraph(report);
+
+        if (m_graphCache != null) {
+            long[] quantized = m_graphCache.quantize(start, end);
+            start = quantized[0];
+            end = quantized[1];
+        }
         
         Graph graph = new Graph(prefabGraph, r, new Date(start), new Date(end));
 
@@ -167,7 +268,7 @@ public class DefaultRrdGraphService implements RrdGraphService, InitializingBean
                                              m_resourceDao.getRrdDirectory(true),
                                              report);
         
-        return getInputStreamForCommand(command);
+        return createGraphImage(command, r, prefabGraph.getColumns(), end);
     }
     
     /**
@@ -446,6 +547,24 @@ public class DefaultRrdGraphService implements RrdGraphService, InitializingBean
         m_graphDao = graphDao;
     }
 
+    /**
+     * <p>getGraphCache</p>
+     *
+     * @return a {@link org.opennms.web.svclayer.support.RrdGraphCache} object.
+     */
+    public RrdGraphCache getGraphCache() {
+        return m_graphCache;
+    }
+
+    /**
+     * <p>setGraphCache</p>
+     *
+     * @param graphCache the cache for rendered graphs, or null to render every request
+     */
+    public void setGraphCache(RrdGraphCache graphCache) {
+        m_graphCache = graphCache;
+    }
+
     /**
      * <p>getRrdDao</p>
      *
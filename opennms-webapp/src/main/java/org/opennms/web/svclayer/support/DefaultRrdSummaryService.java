@@ -28,11 +28,18 @@
 
 package org.opennms.web.svclayer.support;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.netmgt.config.attrsummary.Attribute;
 import org.opennms.netmgt.config.attrsummary.Resource;
 import org.opennms.netmgt.config.attrsummary.Summary;
@@ -41,6 +48,7 @@ import org.opennms.netmgt.dao.ResourceDao;
 import org.opennms.netmgt.dao.RrdDao;
 import org.opennms.netmgt.dao.support.FilterWalker;
 import org.opennms.netmgt.dao.support.NodeSnmpResourceType;
+import org.opennms.netmgt.dao.support.ParallelRrdStatisticAttributeVisitor;
 import org.opennms.netmgt.filter.FilterDao;
 import org.opennms.netmgt.model.AbstractEntityVisitor;
 import org.opennms.netmgt.model.OnmsNode;
@@ -49,6 +57,7 @@ import org.opennms.netmgt.model.RrdGraphAttribute;
 import org.opennms.web.svclayer.RrdSummaryService;
 import org.opennms.web.svclayer.SummarySpecification;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.util.Assert;
 
 /**
@@ -160,9 +169,10 @@ public class DefaultRrdSummaryService implements RrdSummaryService, Initializing
             return m_root.getSummary();
         }
 
-        public void addAttribute(String name) {
+        public Attribute addAttribute(String name) {
             Assert.state(m_currentResource != null, "addResource must be called before calling addAttribute");
             m_currAttr = m_currentResource.addAttribute(name);
+            return m_currAttr;
         }
 
         public void setMin(double min){
@@ -210,6 +220,7 @@ public class DefaultRrdSummaryService implements RrdSummaryService, Initializing
     public RrdDao m_rrdDao;
     public NodeDao m_nodeDao;
     public Stats m_stats = new Stats();
+    private int m_threads = Integer.getInteger(ParallelRrdStatisticAttributeVisitor.THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
 
     static class OpStats {
         private String m_name;
@@ -233,6 +244,11 @@ public class DefaultRrdSummaryService implements RrdSummaryService, Initializing
             m_lastStarted = -1;
         }
 
+        void record(long nanos) {
+            m_count++;
+            m_total += nanos;
+        }
+
         @Override
         public String toString() {
             double total = (double)m_total;
@@ -244,19 +260,30 @@ public class DefaultRrdSummaryService implements RrdSummaryService, Initializing
 
     static class Stats {
         Map<String, OpStats> map = new LinkedHashMap<String, OpStats>();
-        public void begin(String operation) {
+        public synchronized void begin(String operation) {
             if (!map.containsKey(operation)) {
                 map.put(operation, new OpStats(operation));
             }
             map.get(operation).begin();
         }
 
-        public void end(String operation) {
+        public synchronized void end(String operation) {
             map.get(operation).end();
         }
 
+        /*
+         * begin/end can only time one call of an operation at a time, so
+         * work done on the fetch threads reports its own elapsed time here.
+         */
+        public synchronized void record(String operation, long nanos) {
+            if (!map.containsKey(operation)) {
+                map.put(operation, new OpStats(operation));
+            }
+            map.get(operation).record(nanos);
+        }
+
         @Override
-        public String toString() {
+        public synchronized String toString() {
             StringBuilder bldr = new StringBuilder(map.size()*50);
             for (OpStats opStat : map.values()) {
                 bldr.append(opStat);
@@ -278,6 +305,14 @@ public class DefaultRrdSummaryService implements RrdSummaryService, Initializing
      */
     public Summary getSummary(String filterRule, final long startTime, final long endTime, final String attributeSieve) {
         m_stats.begin("getSummary");
+        /*
+         * The node and resource walk stays on this thread since it uses the
+         * caller's Hibernate session.  The RRD reads for each resource are
+         * batched into one call and handed to a pool; the summary is only
+         * returned once all of them have filled in their attributes.
+         */
+        final ExecutorService executor = m_threads > 1 ? Executors.newFixedThreadPool(m_threads, new LogPreservingThreadFactory(getClass().getSimpleName(), m_threads, true)) : null;
+        final List<Future<?>> fetches = new LinkedList<Future<?>>();
         try {
             final SummaryBuilder bldr = new SummaryBuilder();
 
@@ -361,38 +396,79 @@ public class DefaultRrdSummaryService implements RrdSummaryService, Initializing
                 private void addAttributes(Collection<RrdGraphAttribute> attrs) {
                     m_stats.begin("addAttributes");
                     try {
+                        final List<RrdGraphAttribute> rrdAttrs = new ArrayList<RrdGraphAttribute>(attrs.size());
+                        final List<Attribute> summaryAttrs = new ArrayList<Attribute>(attrs.size());
                         for(RrdGraphAttribute attr : attrs) {
                             if (attr.getName().matches(attributeSieve)) {
-                                bldr.addAttribute(attr.getName());
-                                double[] values = getValues(attr);
-                                bldr.setMin(values[0]);
-                                bldr.setAverage(values[1]);
-                                bldr.setMax(values[2]);
+                                summaryAttrs.add(bldr.addAttribute(attr.getName()));
+                                rrdAttrs.add(attr);
+                            }
+                        }
+                        if (rrdAttrs.isEmpty()) {
+                            return;
+                        }
+
+                        Runnable fetch = new Runnable() {
+                            public void run() {
+                                double[][] values = getValues(rrdAttrs);
+                                for (int i = 0; i < values.length; i++) {
+                                    summaryAttrs.get(i).setMin(values[i][0]);
+                                    summaryAttrs.get(i).setAverage(values[i][1]);
+                                    summaryAttrs.get(i).setMax(values[i][2]);
+                                }
                             }
+                        };
+                        if (executor == null) {
+                            fetch.run();
+                        } else {
+                            fetches.add(executor.submit(fetch));
                         }
                     } finally {
                         m_stats.end("addAttributes");
                     }
                 }
 
-                private double[] getValues(RrdGraphAttribute attr) {
-                    m_stats.begin("getValues");
+                private double[][] getValues(List<RrdGraphAttribute> attrs) {
+                    long started = System.nanoTime();
                     try {
-                        return m_rrdDao.getPrintValues(attr, "AVERAGE", startTime*1000, endTime*1000, "MIN", "AVERAGE", "MAX");
+                        return m_rrdDao.getPrintValuesForAttributes(attrs, "AVERAGE", startTime*1000, endTime*1000, "MIN", "AVERAGE", "MAX");
                     } finally {
-                        m_stats.end("getValues");
+                        m_stats.record("getValues", System.nanoTime() - started);
                     }
                 }
 
             });
             walker.walk();
 
+            for (Future<?> fetch : fetches) {
+                waitFor(fetch);
+            }
+
             return bldr.getSummary();
         } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
             m_stats.end("getSummary");
         }
     }
 
+    private static void waitFor(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataRetrievalFailureException("Interrupted while waiting for RRD summary values", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new DataRetrievalFailureException("Failure reading RRD summary values", e.getCause());
+        }
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      *
@@ -433,6 +509,16 @@ public class DefaultRrdSummaryService implements RrdSummaryService, Initializing
         m_rrdDao = rrdDao;
     }
 
+    /**
+     * <p>setThreads</p>
+     *
+     * @param threads the number of threads reading RRD files, 1 reads on
+     *            the caller's thread
+     */
+    public void setThreads(int threads) {
+        m_threads = threads;
+    }
+
     /**
      * @return the nodeDao
      */
@@ -0,0 +1,569 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.svclayer.support;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.utils.LogUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.util.Assert;
+
+/**
+ * <p>Cache of rendered RRD graph images.</p>
+ *
+ * <p>Entries are keyed by a string that the caller builds from everything
+ * the image depends on: the fully expanded graph command (with its time
+ * range already quantized to {@link #getStep()}), the RRD directory and the
+ * modification time of every RRD file the command reads.  A new sample in
+ * any of the files therefore changes the key, so entries never have to be
+ * invalidated; stale ones simply age out.</p>
+ *
+ * <p>There are two tiers.  The memory tier is an LRU map bounded by the total
+ * size of the images it holds.  The optional disk tier keeps images in a
+ * directory, is bounded by its own size limit and survives restarts of the
+ * web application.  Images found on disk are promoted to memory.</p>
+ *
+ * @see RrdGraphCacheMBean
+ */
+public class RrdGraphCache implements RrdGraphCacheMBean, InitializingBean {
+    /** System property for the size of the memory tier in bytes, 0 disables it. */
+    public static final String MAX_MEMORY_SIZE_PROPERTY = "org.opennms.web.graphs.cache.maxMemorySize";
+
+    /** System property for the disk tier directory, unset disables it. */
+    public static final String DIRECTORY_PROPERTY = "org.opennms.web.graphs.cache.directory";
+
+    /** System property for the size of the disk tier in bytes. */
+    public static final String MAX_DISK_SIZE_PROPERTY = "org.opennms.web.graphs.cache.maxDiskSize";
+
+    /** System property for the step in seconds that graph time ranges are quantized to, 0 disables it. */
+    public static final String STEP_PROPERTY = "org.opennms.web.graphs.cache.step";
+
+    private static final String FILE_SUFFIX = ".graph";
+
+    /**
+     * A cached image together with the validators that are sent to
+     * browsers.
+     */
+    public static class Entry {
+        private final String m_tag;
+        private final long m_lastModified;
+        private final byte[] m_image;
+
+        Entry(String tag, long lastModified, byte[] image) {
+            m_tag = tag;
+            m_lastModified = lastModified;
+            m_image = image;
+        }
+
+        public String getTag() {
+            return m_tag;
+        }
+
+        public long getLastModified() {
+            return m_lastModified;
+        }
+
+        public byte[] getImage() {
+            return m_image;
+        }
+    }
+
+    private long m_maxMemorySize = Long.getLong(MAX_MEMORY_SIZE_PROPERTY, 32L * 1024L * 1024L);
+    private File m_directory = System.getProperty(DIRECTORY_PROPERTY) == null ? null : new File(System.getProperty(DIRECTORY_PROPERTY));
+    private long m_maxDiskSize = Long.getLong(MAX_DISK_SIZE_PROPERTY, 256L * 1024L * 1024L);
+    private long m_step = Long.getLong(STEP_PROPERTY, 300L);
+
+    private final LinkedHashMap<String, Entry> m_memory = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    private long m_memorySize = 0;
+    private final Object m_diskLock = new Object();
+    private long m_diskSize = 0;
+
+    private final AtomicLong m_memoryHits = new AtomicLong();
+    private final AtomicLong m_diskHits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final AtomicLong m_evictions = new AtomicLong();
+    private final AtomicLong m_sharedRenders = new AtomicLong();
+
+    private final ConcurrentHashMap<String, FutureTask<Entry>> m_rendering = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+    /**
+     * Computes the tag for a key.  The tag is the hex encoded SHA-1 of the
+     * key and is used both as the HTTP entity tag and as the file name in
+     * the disk tier.
+     *
+     * @param key a {@link java.lang.String} object.
+     * @return a {@link java.lang.String} object.
+     */
+    public static String getTag(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder tag = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                tag.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return tag.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not available", e);
+        }
+    }
+
+    /**
+     * Rounds a time range down so that its end falls on a step boundary,
+     * keeping its length.  Requests for "the last day" made within the same
+     * step then produce the same graph command.
+     *
+     * @param start start time in milliseconds
+     * @param end end time in milliseconds
+     * @return the quantized start and end in milliseconds
+     */
+    public long[] quantize(long start, long end) {
+        if (m_step <= 0) {
+            return new long[] { start, end };
+        }
+        long step = m_step * 1000L;
+        long shift = end % step;
+        return new long[] { start - shift, end - shift };
+    }
+
+    /**
+     * Looks up an image, first in memory and then on disk.
+     *
+     * @param key the cache key
+     * @return the cached entry or null if there is none
+     */
+    public Entry get(String key) {
+        String tag = getTag(key);
+
+        synchronized (m_memory) {
+            Entry entry = m_memory.get(tag);
+            if (entry != null) {
+                m_memoryHits.incrementAndGet();
+                return entry;
+            }
+        }
+
+        Entry entry = readFromDisk(tag);
+        if (entry != null) {
+            m_diskHits.incrementAndGet();
+            putInMemory(entry);
+            return entry;
+        }
+
+        m_misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Looks up an image and renders it on a miss.  When several requests
+     * miss on the same key at once only the first one renders; the others
+     * wait for and share its result.
+     *
+     * @param key the cache key
+     * @param lastModified the newest modification time of the RRD files the image is rendered from
+     * @param renderer renders the image
+     * @return the cached or newly rendered entry
+     */
+    public Entry get(final String key, final long lastModified, final Callable<byte[]> renderer) {
+        Entry entry = get(key);
+        if (entry != null) {
+            return entry;
+        }
+
+        String tag = getTag(key);
+        FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+            public Entry call() throws Exception {
+                return put(key, lastModified, renderer.call());
+            }
+        });
+
+        FutureTask<Entry> rendering = m_rendering.putIfAbsent(tag, task);
+        if (rendering == null) {
+            rendering = task;
+            try {
+                task.run();
+            } finally {
+                m_rendering.remove(tag, task);
+            }
+        } else {
+            m_sharedRenders.incrementAndGet();
+        }
+
+        try {
+            return rendering.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataRetrievalFailureException("Interrupted while waiting for graph to be rendered", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new DataRetrievalFailureException("Failure rendering graph", e.getCause());
+        }
+    }
+
+    /**
+     * Stores a rendered image in both tiers.
+     *
+     * @param key the cache key
+     * @param lastModified the newest modification time of the RRD files the image was rendered from
+     * @param image the rendered image
+     * @return the new entry
+     */
+    public Entry put(String key, long lastModified, byte[] image) {
+        Entry entry = new Entry(getTag(key), lastModified, image);
+        putInMemory(entry);
+        writeToDisk(entry);
+        return entry;
+    }
+
+    private void putInMemory(Entry entry) {
+        // an image bigger than a quarter of the tier would just push everything else out
+        if (entry.getImage().length > m_maxMemorySize / 4) {
+            return;
+        }
+
+        synchronized (m_memory) {
+            Entry previous = m_memory.put(entry.getTag(), entry);
+            if (previous != null) {
+                m_memorySize -= previous.getImage().length;
+            }
+            m_memorySize += entry.getImage().length;
+
+            Iterator<Entry> it = m_memory.values().iterator();
+            while (m_memorySize > m_maxMemorySize && it.hasNext()) {
+                m_memorySize -= it.next().getImage().length;
+                it.remove();
+                m_evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private File getFile(String tag) {
+        return new File(m_directory, tag + FILE_SUFFIX);
+    }
+
+    private Entry readFromDisk(String tag) {
+        if (m_directory == null) {
+            return null;
+        }
+
+        File file = getFile(tag);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            long lastModified = in.readLong();
+            byte[] image = new byte[(int) file.length() - 8];
+            in.readFully(image);
+
+            // touch the file so pruning removes the least recently used images first
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(tag, lastModified, image);
+        } catch (IOException e) {
+            LogUtils.debugf(this, e, "Unable to read cached graph %s", file);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeToDisk(Entry entry) {
+        if (m_directory == null) {
+            return;
+        }
+
+        File tmp = null;
+        DataOutputStream out = null;
+        try {
+            tmp = File.createTempFile(entry.getTag(), ".tmp", m_directory);
+            out = new DataOutputStream(new FileOutputStream(tmp));
+            out.writeLong(entry.getLastModified());
+            out.write(entry.getImage());
+            out.close();
+            out = null;
+
+            File file = getFile(entry.getTag());
+            synchronized (m_diskLock) {
+                long replaced = file.length();
+                if (!tmp.renameTo(file)) {
+                    LogUtils.debugf(this, "Unable to move %s to %s", tmp, file);
+                    return;
+                }
+                tmp = null;
+                m_diskSize += file.length() - replaced;
+                if (m_diskSize > m_maxDiskSize) {
+                    pruneDisk();
+                }
+            }
+        } catch (IOException e) {
+            LogUtils.warnf(this, e, "Unable to write cached graph to %s", m_directory);
+        } finally {
+            closeQuietly(out);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the disk tier is back
+     * under 90% of its limit.  Must be called holding m_diskLock.
+     */
+    private void pruneDisk() {
+        File[] files = getDiskFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File o1, File o2) {
+                long diff = o1.lastModified() - o2.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        for (int i = 0; i < files.length && size > m_maxDiskSize * 9 / 10; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+                m_evictions.incrementAndGet();
+            }
+        }
+        m_diskSize = size;
+    }
+
+    private File[] getDiskFiles() {
+        File[] files = m_directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) {
+            return;
+        }
+        try {
+            c.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * <p>clear</p>
+     */
+    public void clear() {
+        synchronized (m_memory) {
+            m_memory.clear();
+            m_memorySize = 0;
+        }
+        if (m_directory != null) {
+            synchronized (m_diskLock) {
+                for (File file : getDiskFiles()) {
+                    file.delete();
+                }
+                m_diskSize = 0;
+            }
+        }
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(m_maxMemorySize >= 0, "maxMemorySize property must not be negative");
+        Assert.state(m_step >= 0, "step property must not be negative");
+
+        if (m_directory != null) {
+            if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+                LogUtils.warnf(this, "Unable to create graph cache directory %s, the disk tier is disabled", m_directory);
+                m_directory = null;
+                return;
+            }
+            synchronized (m_diskLock) {
+                pruneDisk();
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getMemoryHits() {
+        return m_memoryHits.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getDiskHits() {
+        return m_diskHits.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getMisses() {
+        return m_misses.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getEvictions() {
+        return m_evictions.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getSharedRenders() {
+        return m_sharedRenders.get();
+    }
+
+    /** {@inheritDoc} */
+    public double getHitRatio() {
+        long hits = getMemoryHits() + getDiskHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /** {@inheritDoc} */
+    public int getMemoryEntries() {
+        synchronized (m_memory) {
+            return m_memory.size();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getMemorySize() {
+        synchronized (m_memory) {
+            return m_memorySize;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getDiskSize() {
+        synchronized (m_diskLock) {
+            return m_diskSize;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getMaxMemorySize() {
+        return m_maxMemorySize;
+    }
+
+    /**
+     * <p>setMaxMemorySize</p>
+     *
+     * @param maxMemorySize the size of the memory tier in bytes, 0 disables it
+     */
+    public void setMaxMemorySize(long maxMemorySize) {
+        m_maxMemorySize = maxMemorySize;
+    }
+
+    /** {@inheritDoc} */
+    public long getMaxDiskSize() {
+        return m_maxDiskSize;
+    }
+
+    /**
+     * <p>setMaxDiskSize</p>
+     *
+     * @param maxDiskSize the size of the disk tier in bytes
+     */
+    public void setMaxDiskSize(long maxDiskSize) {
+        m_maxDiskSize = maxDiskSize;
+    }
+
+    /**
+     * <p>getDirectory</p>
+     *
+     * @return a {@link java.io.File} object.
+     */
+    public File getDirectory() {
+        return m_directory;
+    }
+
+    /**
+     * <p>setDirectory</p>
+     *
+     * @param directory the disk tier directory, null disables the disk tier
+     */
+    public void setDirectory(File directory) {
+        m_directory = directory;
+    }
+
+    /** {@inheritDoc} */
+    public long getStep() {
+        return m_step;
+    }
+
+    /**
+     * <p>setStep</p>
+     *
+     * @param step the step in seconds that time ranges are quantized to, 0 disables quantizing
+     */
+    public void setStep(long step) {
+        m_step = step;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return String.format("RrdGraphCache[memoryHits=%d, diskHits=%d, misses=%d, sharedRenders=%d, evictions=%d, memoryEntries=%d, memorySize=%d, diskSize=%d]",
+                             getMemoryHits(), getDiskHits(), getMisses(), getSharedRenders(), getEvictions(), getMemoryEntries(), getMemorySize(), getDiskSize());
+    }
+}
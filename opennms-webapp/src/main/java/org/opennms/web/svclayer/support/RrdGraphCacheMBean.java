@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.svclayer.support;
+
+/**
+ * <p>Management interface exposing the hit/miss counters of the
+ * {@link RrdGraphCache}.</p>
+ */
+public interface RrdGraphCacheMBean {
+    /**
+     * @return the number of lookups answered from the memory tier
+     */
+    public long getMemoryHits();
+
+    /**
+     * @return the number of lookups answered from the disk tier
+     */
+    public long getDiskHits();
+
+    /**
+     * @return the number of lookups that required rendering the graph
+     */
+    public long getMisses();
+
+    /**
+     * @return the number of misses that waited for another request to render the same graph
+     */
+    public long getSharedRenders();
+
+    /**
+     * @return the number of images dropped from either tier to stay within its size limit
+     */
+    public long getEvictions();
+
+    /**
+     * @return the fraction of lookups answered from either tier
+     */
+    public double getHitRatio();
+
+    /**
+     * @return the number of images in the memory tier
+     */
+    public int getMemoryEntries();
+
+    /**
+     * @return the total size in bytes of the images in the memory tier
+     */
+    public long getMemorySize();
+
+    /**
+     * @return the size limit of the memory tier in bytes
+     */
+    public long getMaxMemorySize();
+
+    /**
+     * @return the approximate size in bytes of the disk tier
+     */
+    public long getDiskSize();
+
+    /**
+     * @return the size limit of the disk tier in bytes
+     */
+    public long getMaxDiskSize();
+
+    /**
+     * @return the step in seconds that graph time ranges are quantized to
+     */
+    public long getStep();
+
+    /**
+     * Drops every image from both tiers.
+     */
+    public void clear();
+}
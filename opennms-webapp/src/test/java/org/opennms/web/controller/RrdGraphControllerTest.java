@@ -795,4 +795,28 @@ public class RrdGraphControllerTest {
 		assertTimestampsEqualWithEpsilon(startDate.getTime(), start, 1000, "start");
 	}
 
+	/**
+	 * A matching entity tag wins over If-Modified-Since, a different one
+	 * means the graph must be sent again.
+	 */
+	@Test
+	public void testNotModified() {
+		String etag = "\"0123abcd\"";
+		long lastModified = 1300000000000L;
+
+		assertFalse(RrdGraphController.isNotModified(m_request, etag, lastModified));
+
+		m_request.addHeader("If-Modified-Since", lastModified + 500);
+		assertTrue(RrdGraphController.isNotModified(m_request, etag, lastModified));
+		assertFalse(RrdGraphController.isNotModified(m_request, etag, lastModified + 1000));
+
+		m_request.addHeader("If-None-Match", "\"ffff\", " + etag);
+		assertTrue(RrdGraphController.isNotModified(m_request, etag, lastModified + 1000));
+
+		m_request = new MockHttpServletRequest();
+		m_request.addHeader("If-Modified-Since", lastModified);
+		m_request.addHeader("If-None-Match", "\"ffff\"");
+		assertFalse(RrdGraphController.isNotModified(m_request, etag, lastModified));
+	}
+
 }
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.rest;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.same;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.dao.RrdDao;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.opennms.netmgt.rrd.RrdFetchHandler;
+import org.opennms.web.rest.TimeSeriesRestService.CsvSeriesOutput;
+import org.opennms.web.rest.TimeSeriesRestService.JsonSeriesOutput;
+import org.opennms.web.rest.TimeSeriesRestService.Series;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+public class TimeSeriesRestServiceTest {
+    private RrdDao m_rrdDao;
+    private RrdGraphAttribute m_inOctets;
+    private RrdGraphAttribute m_outOctets;
+    private List<Series> m_series;
+
+    @Before
+    public void setUp() {
+        m_rrdDao = createMock(RrdDao.class);
+        m_inOctets = new RrdGraphAttribute("ifInOctets", "snmp/1/eth0", "ifInOctets.jrb");
+        m_outOctets = new RrdGraphAttribute("ifOutOctets", "snmp/1/eth0", "ifOutOctets.jrb");
+
+        m_series = new ArrayList<Series>();
+        m_series.add(new Series("node[1].interfaceSnmp[eth0]", m_inOctets));
+        m_series.add(new Series("node[1].interfaceSnmp[eth0]", m_outOctets));
+    }
+
+    @Test
+    public void testJson() throws Exception {
+        expectRows(m_inOctets, 1.5, Double.NaN);
+        m_rrdDao.fetch(same(m_outOctets), eq("AVERAGE"), eq(1000L), eq(2000L), isA(RrdFetchHandler.class));
+        expectLastCall().andThrow(new DataAccessResourceFailureException("no \"file\""));
+        replay(m_rrdDao);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonSeriesOutput(m_rrdDao, m_series, "AVERAGE", 1000L, 2000L).write(out);
+
+        verify(m_rrdDao);
+        assertEquals("{\"start\":1000,\"end\":2000,\"consolidationFunction\":\"AVERAGE\",\"series\":["
+                     + "{\"resourceId\":\"node[1].interfaceSnmp[eth0]\",\"attribute\":\"ifInOctets\",\"values\":[[1000,1.5],[1300,null]]},"
+                     + "{\"resourceId\":\"node[1].interfaceSnmp[eth0]\",\"attribute\":\"ifOutOctets\",\"values\":[],\"error\":\"no \\\"file\\\"\"}"
+                     + "]}", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        expectRows(m_inOctets, 1.5, Double.NaN);
+        expectRows(m_outOctets, 2.0);
+        replay(m_rrdDao);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CsvSeriesOutput(m_rrdDao, m_series, "AVERAGE", 1000L, 2000L).write(out);
+
+        verify(m_rrdDao);
+        assertEquals("\"resourceId\",\"attribute\",\"timestamp\",\"value\",\"error\"\n"
+                     + "\"node[1].interfaceSnmp[eth0]\",\"ifInOctets\",\"1000\",\"1.5\",\"\"\n"
+                     + "\"node[1].interfaceSnmp[eth0]\",\"ifInOctets\",\"1300\",\"\",\"\"\n"
+                     + "\"node[1].interfaceSnmp[eth0]\",\"ifOutOctets\",\"1000\",\"2.0\",\"\"\n", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testCsvError() throws Exception {
+        m_rrdDao.fetch(same(m_inOctets), eq("AVERAGE"), eq(1000L), eq(2000L), isA(RrdFetchHandler.class));
+        expectLastCall().andThrow(new DataAccessResourceFailureException("no file"));
+        expectRows(m_outOctets, 2.0);
+        replay(m_rrdDao);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CsvSeriesOutput(m_rrdDao, m_series, "AVERAGE", 1000L, 2000L).write(out);
+
+        verify(m_rrdDao);
+        assertEquals("\"resourceId\",\"attribute\",\"timestamp\",\"value\",\"error\"\n"
+                     + "\"node[1].interfaceSnmp[eth0]\",\"ifInOctets\",\"\",\"\",\"no file\"\n"
+                     + "\"node[1].interfaceSnmp[eth0]\",\"ifOutOctets\",\"1000\",\"2.0\",\"\"\n", out.toString("UTF-8"));
+    }
+
+    private void expectRows(final RrdGraphAttribute attribute, final double... values) throws Exception {
+        m_rrdDao.fetch(same(attribute), eq("AVERAGE"), eq(1000L), eq(2000L), isA(RrdFetchHandler.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                RrdFetchHandler handler = (RrdFetchHandler) getCurrentArguments()[4];
+                double[] row = new double[1];
+                for (int i = 0; i < values.length; i++) {
+                    row[0] = values[i];
+                    handler.row(1000L + 300L * i, row);
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.svclayer.support;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.opennms.test.FileAnticipator;
+
+public class RrdGraphCacheTest extends TestCase {
+    private FileAnticipator m_fileAnticipator;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_fileAnticipator = new FileAnticipator();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_fileAnticipator.tearDown();
+    }
+
+    public void testQuantize() {
+        RrdGraphCache cache = new RrdGraphCache();
+        cache.setStep(300);
+
+        long end = 1300000123456L;
+        long[] quantized = cache.quantize(end - 86400000L, end);
+        assertEquals("end", 0, quantized[1] % 300000L);
+        assertTrue("end", quantized[1] <= end && end - quantized[1] < 300000L);
+        assertEquals("range", 86400000L, quantized[1] - quantized[0]);
+
+        cache.setStep(0);
+        assertEquals("unquantized end", end, cache.quantize(0, end)[1]);
+    }
+
+    public void testMemoryTierIsBoundedLru() {
+        RrdGraphCache cache = new RrdGraphCache();
+        cache.setMaxMemorySize(400);
+        cache.setDirectory(null);
+        cache.afterPropertiesSet();
+
+        cache.put("a", 1, new byte[100]);
+        cache.put("b", 1, new byte[100]);
+        cache.put("c", 1, new byte[100]);
+        assertNotNull(cache.get("a"));
+        cache.put("d", 1, new byte[100]);
+        cache.put("e", 1, new byte[100]);
+
+        assertNull("least recently used entry should be evicted", cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("e"));
+        assertEquals("memory size", 400, cache.getMemorySize());
+        assertEquals("evictions", 1, cache.getEvictions());
+        assertEquals("memory hits", 3, cache.getMemoryHits());
+        assertEquals("misses", 1, cache.getMisses());
+    }
+
+    public void testDiskTierSurvivesNewInstance() throws Exception {
+        File dir = m_fileAnticipator.tempDir("graphs");
+
+        RrdGraphCache cache = new RrdGraphCache();
+        cache.setDirectory(dir);
+        cache.afterPropertiesSet();
+        cache.put("graph", 1234L, new byte[] { 1, 2, 3 });
+
+        RrdGraphCache restarted = new RrdGraphCache();
+        restarted.setDirectory(dir);
+        restarted.afterPropertiesSet();
+
+        RrdGraphCache.Entry entry = restarted.get("graph");
+        assertNotNull("entry should be read from disk", entry);
+        assertEquals("last modified", 1234L, entry.getLastModified());
+        assertEquals("image length", 3, entry.getImage().length);
+        assertEquals("tag", RrdGraphCache.getTag("graph"), entry.getTag());
+        assertEquals("disk hits", 1, restarted.getDiskHits());
+
+        assertNotNull("entry should have been promoted to memory", restarted.get("graph"));
+        assertEquals("memory hits", 1, restarted.getMemoryHits());
+
+        restarted.clear();
+        assertNull(restarted.get("graph"));
+    }
+
+    public void testConcurrentMissesRenderOnce() throws Exception {
+        final RrdGraphCache cache = new RrdGraphCache();
+        cache.setDirectory(null);
+        cache.afterPropertiesSet();
+
+        final AtomicInteger renders = new AtomicInteger();
+        final CountDownLatch rendering = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<byte[]> renderer = new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                renders.incrementAndGet();
+                rendering.countDown();
+                release.await();
+                return new byte[] { 42 };
+            }
+        };
+
+        Thread first = new Thread() {
+            public void run() {
+                cache.get("graph", 1L, renderer);
+            }
+        };
+        first.start();
+        rendering.await();
+
+        Thread second = new Thread() {
+            public void run() {
+                cache.get("graph", 1L, renderer);
+            }
+        };
+        second.start();
+        while (cache.getSharedRenders() == 0 && second.isAlive()) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        first.join();
+        second.join();
+
+        assertEquals("renders", 1, renders.get());
+        assertEquals("shared renders", 1, cache.getSharedRenders());
+        assertEquals("image", 42, cache.get("graph").getImage()[0]);
+    }
+}